@@ -18,7 +18,11 @@
  ******************************************************************************/
 package org.apache.olingo.samples.client;
 
+import org.apache.http.HttpStatus;
+import org.apache.http.HttpVersion;
+import org.apache.http.message.BasicStatusLine;
 import org.apache.olingo.client.api.ODataClient;
+import org.apache.olingo.client.api.communication.ODataClientErrorException;
 import org.apache.olingo.client.api.communication.request.cud.ODataDeleteRequest;
 import org.apache.olingo.client.api.communication.request.cud.ODataEntityCreateRequest;
 import org.apache.olingo.client.api.communication.request.cud.ODataEntityUpdateRequest;
@@ -32,38 +36,261 @@ import org.apache.olingo.client.api.communication.response.ODataEntityUpdateResp
 import org.apache.olingo.client.api.communication.response.ODataRetrieveResponse;
 import org.apache.olingo.client.api.domain.*;
 import org.apache.olingo.client.api.serialization.ODataDeserializerException;
+import org.apache.olingo.client.api.uri.URIBuilder;
 import org.apache.olingo.client.core.ODataClientFactory;
+import org.apache.olingo.client.core.http.DefaultHttpClientFactory;
 import org.apache.olingo.commons.api.edm.*;
+import org.apache.olingo.commons.api.ex.ODataRuntimeException;
 import org.apache.olingo.commons.api.format.ContentType;
+import org.apache.olingo.samples.client.core.async.AsyncODataExecutor;
+import org.apache.olingo.samples.client.core.batch.BatchExecutor;
+import org.apache.olingo.samples.client.core.cache.EntityCache;
+import org.apache.olingo.samples.client.core.concurrent.SingleFlight;
+import org.apache.olingo.samples.client.core.concurrent.VirtualThreads;
+import org.apache.olingo.samples.client.core.edm.EdmMetadataCache;
+import org.apache.olingo.samples.client.core.edm.EdmPropertyIndex;
+import org.apache.olingo.samples.client.core.edm.PropertyDescriptor;
+import org.apache.olingo.samples.client.core.edm.TypeDescriptor;
+import org.apache.olingo.samples.client.core.export.CsvEncoder;
+import org.apache.olingo.samples.client.core.export.EntityExporter;
+import org.apache.olingo.samples.client.core.export.NdjsonEncoder;
+import org.apache.olingo.samples.client.core.export.RecordEncoder;
 import org.apache.olingo.samples.client.core.http.Adal4JOAuth2HttpClientFactory;
+import org.apache.olingo.samples.client.core.http.ClientCredentialsOAuth2HttpClientFactory;
+import org.apache.olingo.samples.client.core.http.ContentCodingHttpClientFactory;
+import org.apache.olingo.samples.client.core.http.PoolingHttpClientFactory;
+import org.apache.olingo.samples.client.core.http.RateLimitingHttpClientFactory;
+import org.apache.olingo.samples.client.core.http.RequestRateLimiter;
+import org.apache.olingo.samples.client.core.http.RetryPolicy;
+import org.apache.olingo.samples.client.core.http.RetryingHttpClientFactory;
+import org.apache.olingo.samples.client.core.read.CompanyFanOut;
+import org.apache.olingo.samples.client.core.read.JsonRowDecoder;
+import org.apache.olingo.samples.client.core.read.KeyBatchLoader;
+import org.apache.olingo.samples.client.core.read.ParallelEntitySetScanner;
+import org.apache.olingo.samples.client.core.read.PrefetchingEntitySetReader;
+import org.apache.olingo.samples.client.core.read.Projection;
+import org.apache.olingo.samples.client.core.read.ProjectionLearner;
+import org.apache.olingo.samples.client.core.read.RowHandler;
+import org.apache.olingo.samples.client.core.read.RowSchema;
+import org.apache.olingo.samples.client.core.replica.Replica;
+import org.apache.olingo.samples.client.core.replica.ReplicaStore;
+import org.apache.olingo.samples.client.core.snapshot.ColumnarSnapshotReader;
+import org.apache.olingo.samples.client.core.snapshot.ColumnarSnapshotWriter;
+import org.apache.olingo.samples.client.core.sync.CheckpointStore;
+import org.apache.olingo.samples.client.core.sync.DeltaSync;
+import org.apache.olingo.samples.client.core.sync.SyncSink;
+import org.apache.olingo.samples.client.core.write.BulkWriter;
 
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URI;
+import java.nio.file.Files;
 import java.nio.file.NoSuchFileException;
-import java.text.SimpleDateFormat;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.format.DateTimeFormatter;
+import java.time.format.FormatStyle;
 import java.util.*;
 import java.util.Map.Entry;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 
 /**
  *
  */
 public class OlingoSampleApp {
+    // thread-safe, unlike a SimpleDateFormat
+    private static final DateTimeFormatter DATE_TIME_FORMAT = DateTimeFormatter.ofLocalizedDateTime(FormatStyle.SHORT);
+
     private ODataClient client;
+    private RetryingHttpClientFactory connectionPool;
+    private RequestRateLimiter rateLimiter;
+    private AsyncODataExecutor asyncExecutor;
+    private ExecutorService lookupExecutor;
+    private int prefetchDepth;
+    private long prefetchMaxBufferedBytes;
+    private ParallelEntitySetScanner scanner;
+    private CompanyFanOut fanOut;
+    private String tenant;
+    private ProjectionLearner projectionLearner;
+    private EdmMetadataCache metadataCache;
+    private DeltaSync deltaSync;
+    private EntityCache entityCache;
+    private SingleFlight<String, ClientEntity> entityReads;
+    private final Map<String, KeyBatchLoader> keyLoaders = new ConcurrentHashMap<>();
+    private boolean keyBatchEnabled;
+    private int keyBatchMaxSize;
+    private long keyBatchMaxDelayMillis;
+    private int keyBatchMaxUrlLength;
+    private ExecutorService keyBatchExecutor;
+    private ReplicaStore replicaStore;
+    private Set<String> replicatedEntitySets = Collections.emptySet();
+    private int batchMaxOperations;
+    private int exportParallelism;
+    private int exportChunkSize;
+    private int bulkWorkers;
+    private int bulkMaxQueued;
+    private int bulkBatchSize;
     private String defaultCompany = "companies(d6a06f5d-0d04-473a-9edb-b79a792d84aa)";
 
     public OlingoSampleApp() {
         client = ODataClientFactory.getClient();
         Properties properties = loadProperties();
-        client.getConfiguration()
-                .setHttpClientFactory(new Adal4JOAuth2HttpClientFactory(properties.getProperty("authority"), properties.getProperty("clientId"), properties.getProperty("clientSecret"), properties.getProperty("redirectURI"), properties.getProperty("resourceURL")));
+        connectionPool = createConnectionPool(properties);
+        rateLimiter = new RequestRateLimiter(
+                Double.parseDouble(properties.getProperty("rateLimit.tenantPerSecond", "10")),
+                Integer.parseInt(properties.getProperty("rateLimit.tenantBurst", "10")),
+                Double.parseDouble(properties.getProperty("rateLimit.companyPerSecond", "5")),
+                Integer.parseInt(properties.getProperty("rateLimit.companyBurst", "5")),
+                Integer.parseInt(properties.getProperty("rateLimit.maxInFlight", "5")))
+                .setMaxWaitMillis(Long.parseLong(properties.getProperty("rateLimit.maxWaitMillis", String.valueOf(RequestRateLimiter.DEFAULT_MAX_WAIT_MILLIS))));
+        DefaultHttpClientFactory rateLimited = new RateLimitingHttpClientFactory(connectionPool, rateLimiter, properties.getProperty("authority"));
+        DefaultHttpClientFactory wrapped = new ContentCodingHttpClientFactory(rateLimited);
+        if ("client_credentials".equals(properties.getProperty("grantType"))) {
+            // unattended: service principal, with optional on-disk token cache
+            client.getConfiguration().setHttpClientFactory(ClientCredentialsOAuth2HttpClientFactory.fromProperties(wrapped, properties));
+        } else {
+            client.getConfiguration()
+                    .setHttpClientFactory(new Adal4JOAuth2HttpClientFactory(wrapped, properties.getProperty("authority"), properties.getProperty("clientId"), properties.getProperty("clientSecret"), properties.getProperty("redirectURI"), properties.getProperty("resourceURL")));
+        }
+        // same factory chain (token, content coding, rate limits), but non-blocking I/O
+        asyncExecutor = new AsyncODataExecutor(client, connectionPool.getPolicy(),
+                Integer.parseInt(properties.getProperty("async.maxTotal", String.valueOf(PoolingHttpClientFactory.DEFAULT_MAX_TOTAL))),
+                Integer.parseInt(properties.getProperty("async.maxPerRoute", String.valueOf(PoolingHttpClientFactory.DEFAULT_MAX_PER_ROUTE))),
+                Integer.parseInt(properties.getProperty("async.ioThreads", String.valueOf(AsyncODataExecutor.DEFAULT_IO_THREADS))),
+                Runtime.getRuntime().availableProcessors());
+        // blocking calls, many at a time: cheap on virtual threads (JDK 21+), a fixed pool otherwise
+        boolean virtualThreads = Boolean.parseBoolean(properties.getProperty("executor.virtualThreads", "true")) && VirtualThreads.isSupported();
+        int maxConcurrency = Integer.parseInt(properties.getProperty("executor.maxConcurrency", virtualThreads ? "1000" : "20"));
+        lookupExecutor = virtualThreads
+                ? VirtualThreads.newBoundedExecutor("odata-lookup-", maxConcurrency)
+                : Executors.newFixedThreadPool(maxConcurrency);
+        client.getConfiguration().setExecutor(lookupExecutor);
+        prefetchDepth = Integer.parseInt(properties.getProperty("prefetch.depth", String.valueOf(PrefetchingEntitySetReader.DEFAULT_DEPTH)));
+        prefetchMaxBufferedBytes = Long.parseLong(properties.getProperty("prefetch.maxBufferedBytes", String.valueOf(PrefetchingEntitySetReader.DEFAULT_MAX_BUFFERED_BYTES)));
+        scanner = new ParallelEntitySetScanner(client, lookupExecutor)
+                .setPartitions(Integer.parseInt(properties.getProperty("scan.partitions", String.valueOf(ParallelEntitySetScanner.DEFAULT_PARTITIONS))))
+                .setPartitioning(ParallelEntitySetScanner.Partitioning.valueOf(properties.getProperty("scan.partitioning", ParallelEntitySetScanner.Partitioning.KEY_RANGE.name())))
+                .setOrdered(Boolean.parseBoolean(properties.getProperty("scan.ordered", "false")))
+                .setReadAhead(prefetchDepth, prefetchMaxBufferedBytes);
+        // companies read at the same time are limited per tenant, which the global endpoint URL does not tell
+        tenant = properties.getProperty("authority");
+        fanOut = new CompanyFanOut(client, lookupExecutor)
+                .setMaxConcurrency(Integer.parseInt(properties.getProperty("fanOut.maxConcurrency", String.valueOf(CompanyFanOut.DEFAULT_MAX_CONCURRENCY))))
+                .setQueueCapacity(Integer.parseInt(properties.getProperty("fanOut.queueCapacity", String.valueOf(CompanyFanOut.DEFAULT_QUEUE_CAPACITY))));
+        defaultCompany = properties.getProperty("company", defaultCompany);
+        if (properties.getProperty("metadata.cacheDir") != null) {
+            // $metadata kept on disk and revalidated with conditional requests, parsed lazily per element
+            metadataCache = new EdmMetadataCache(client, Paths.get(properties.getProperty("metadata.cacheDir")))
+                    .setRevalidateAfter(Long.parseLong(properties.getProperty("metadata.revalidateAfterMillis", String.valueOf(EdmMetadataCache.DEFAULT_REVALIDATE_AFTER_MILLIS))));
+        }
+        int cacheMaxEntries = Integer.parseInt(properties.getProperty("cache.maxEntries", "0"));
+        if (cacheMaxEntries > 0) {
+            // key lookups served from memory, revalidated with If-None-Match once stale; cached entities are shared
+            entityCache = new EntityCache(client, cacheMaxEntries,
+                    Long.parseLong(properties.getProperty("cache.maxWeightBytes", String.valueOf(EntityCache.DEFAULT_MAX_WEIGHT))),
+                    Long.parseLong(properties.getProperty("cache.ttlMillis", String.valueOf(EntityCache.DEFAULT_TTL_MILLIS))));
+        }
+        if (Boolean.parseBoolean(properties.getProperty("singleFlight.enabled", "false"))) {
+            // concurrent identical GETs share one request, e.g. many workers looking up the same hot item; the entity
+            // read is then shared by them
+            entityReads = new SingleFlight<>(
+                    Long.parseLong(properties.getProperty("singleFlight.maxShareMillis", String.valueOf(SingleFlight.DEFAULT_MAX_SHARE_MILLIS))),
+                    Integer.parseInt(properties.getProperty("singleFlight.maxWaiters", String.valueOf(SingleFlight.DEFAULT_MAX_WAITERS))));
+        }
+        keyBatchEnabled = Boolean.parseBoolean(properties.getProperty("keyBatch.enabled", "false"));
+        keyBatchMaxSize = Integer.parseInt(properties.getProperty("keyBatch.maxBatchSize", String.valueOf(KeyBatchLoader.DEFAULT_MAX_BATCH_SIZE)));
+        keyBatchMaxDelayMillis = Long.parseLong(properties.getProperty("keyBatch.maxDelayMillis", String.valueOf(KeyBatchLoader.DEFAULT_MAX_DELAY_MILLIS)));
+        keyBatchMaxUrlLength = Integer.parseInt(properties.getProperty("keyBatch.maxUrlLength", String.valueOf(KeyBatchLoader.DEFAULT_MAX_URL_LENGTH)));
+        // not the lookup executor: its tasks block on the loaders' futures, and would leave no room for their queries
+        keyBatchExecutor = VirtualThreads.newBoundedExecutor("odata-key-batch-",
+                Integer.parseInt(properties.getProperty("keyBatch.maxConcurrency", "4")));
+        if (properties.getProperty("replica.dir") != null) {
+            // key lookups on master data answered from memory-mapped local copies, refreshed in the background
+            replicaStore = new ReplicaStore(client, Paths.get(properties.getProperty("replica.dir")),
+                    Long.parseLong(properties.getProperty("replica.refreshMillis", String.valueOf(ReplicaStore.DEFAULT_REFRESH_MILLIS))));
+            replicatedEntitySets = new HashSet<>(Arrays.asList(properties.getProperty("replica.entitySets", "items").split("\\s*,\\s*")));
+        }
+        exportParallelism = Integer.parseInt(properties.getProperty("export.parallelism", "1"));
+        exportChunkSize = Integer.parseInt(properties.getProperty("export.chunkSize", String.valueOf(EntityExporter.DEFAULT_CHUNK_SIZE)));
+        batchMaxOperations = Integer.parseInt(properties.getProperty("batch.maxOperations", String.valueOf(BatchExecutor.DEFAULT_MAX_OPERATIONS)));
+        bulkWorkers = Integer.parseInt(properties.getProperty("bulk.workers", String.valueOf(BulkWriter.DEFAULT_WORKERS)));
+        bulkMaxQueued = Integer.parseInt(properties.getProperty("bulk.maxQueued", String.valueOf(BulkWriter.DEFAULT_MAX_QUEUED)));
+        bulkBatchSize = Integer.parseInt(properties.getProperty("bulk.batchSize", String.valueOf(BulkWriter.DEFAULT_BATCH_SIZE)));
+        if (properties.getProperty("sync.checkpointDir") != null) {
+            // incremental sync only when told where to keep its checkpoints
+            deltaSync = new DeltaSync(client, new CheckpointStore(Paths.get(properties.getProperty("sync.checkpointDir"))))
+                    .setModifiedProperty(properties.getProperty("sync.modifiedProperty", DeltaSync.DEFAULT_MODIFIED_PROPERTY))
+                    .setOverlapMillis(Long.parseLong(properties.getProperty("sync.overlapMillis", String.valueOf(DeltaSync.DEFAULT_OVERLAP_MILLIS))));
+        }
+        if (Boolean.parseBoolean(properties.getProperty("projection.learning", "false"))) {
+            // reads without explicit $select are narrowed to the properties their callers were seen to use
+            projectionLearner = new ProjectionLearner(Integer.parseInt(properties.getProperty("projection.warmupRuns", String.valueOf(ProjectionLearner.DEFAULT_WARMUP_RUNS))));
+        }
     }
 
     public static void main(String[] params) throws Exception {
         OlingoSampleApp app = new OlingoSampleApp();
-        app.perform("https://api.businesscentral.dynamics.com/v1.0/api/beta");
+        try {
+            app.perform("https://api.businesscentral.dynamics.com/v1.0/api/beta");
+        } finally {
+            app.close();
+        }
+    }
+
+    private static RetryingHttpClientFactory createConnectionPool(Properties properties) {
+        RetryPolicy retryPolicy = new RetryPolicy()
+                .setMaxAttempts(Integer.parseInt(properties.getProperty("retry.maxAttempts", "5")));
+        RetryingHttpClientFactory pool = new RetryingHttpClientFactory(
+                Integer.parseInt(properties.getProperty("pool.maxTotal", String.valueOf(PoolingHttpClientFactory.DEFAULT_MAX_TOTAL))),
+                Integer.parseInt(properties.getProperty("pool.maxPerRoute", String.valueOf(PoolingHttpClientFactory.DEFAULT_MAX_PER_ROUTE))),
+                Long.parseLong(properties.getProperty("pool.idleTimeoutMillis", String.valueOf(PoolingHttpClientFactory.DEFAULT_IDLE_TIMEOUT_MILLIS))),
+                PoolingHttpClientFactory.DEFAULT_EVICTION_INTERVAL_MILLIS,
+                retryPolicy);
+        // the Business Central API host may get a limit of its own; ADAL4J reaches the AAD authority outside this pool
+        if (properties.getProperty("resourceURL") != null && properties.getProperty("pool.maxPerApiRoute") != null) {
+            pool.setMaxPerRoute(URI.create(properties.getProperty("resourceURL")), Integer.parseInt(properties.getProperty("pool.maxPerApiRoute")));
+        }
+        return pool;
+    }
+
+    /**
+     * Releases the pooled connections.
+     */
+    public void close() {
+        print("Connection pool: " + connectionPool.getTotalStats() + ", retries: " + connectionPool.getRetryCount());
+        print("Async retries: " + asyncExecutor.getRetryCount());
+        print("Rate limiter wait times: " + rateLimiter.getWaitStats());
+        if (entityCache != null) {
+            print("Entity cache: " + entityCache);
+        }
+        if (entityReads != null) {
+            print("Entity reads: " + entityReads);
+        }
+        for (KeyBatchLoader loader : keyLoaders.values()) {
+            loader.close();
+            print("Key lookups: " + loader);
+        }
+        keyBatchExecutor.shutdown();
+        if (replicaStore != null) {
+            replicaStore.close();
+            print("Replicas: " + replicaStore);
+        }
+        lookupExecutor.shutdown();
+        try {
+            asyncExecutor.close();
+        } catch (IOException e) {
+            System.err.println("Error while closing async client: " + e.getMessage());
+        }
+        connectionPool.shutdown();
     }
 
     private Properties loadProperties() {
@@ -107,11 +334,12 @@ public class OlingoSampleApp {
         print("Found Actions", actions);
 
         print("\n----- Inspect each property and its type of the first entity: " + etFqns.get(0) + "----");
-        EdmEntityType etype = edm.getEntityType(etFqns.get(0));
-        for (String propertyName : etype.getPropertyNames()) {
-            EdmProperty property = etype.getStructuralProperty(propertyName);
-            FullQualifiedName typeName = property.getType().getFullQualifiedName();
-            print("property '" + propertyName + "' " + typeName);
+        EdmPropertyIndex propertyIndex = EdmPropertyIndex.of(edm);
+        TypeDescriptor etype = propertyIndex.get(etFqns.get(0));
+        for (int ordinal = 0; ordinal < etype.size(); ordinal++) {
+            PropertyDescriptor property = etype.getProperty(ordinal);
+            print("property '" + property.getName() + "' " + property.getTypeName()
+                    + (property.isKey() ? " (key)" : "") + (property.isNullable() ? "" : " not null"));
         }
 
         print("\n----- Read Entities ------------------------------");
@@ -123,11 +351,140 @@ public class OlingoSampleApp {
             print("Entry:\n" + prettyPrint(ce.getProperties(), 0));
         }
 
+        print("\n----- Read Entities with $select ------------------------------");
+        iterator = readEntities(edm, serviceUrl, "items", "number", "displayName");
+        while (iterator.hasNext()) {
+            ClientEntity ce = iterator.next();
+            print("Entry:\n" + prettyPrint(ce.getProperties(), 0));
+        }
+
+        print("\n----- Read Entities, learning the $select ------------------------------");
+        for (int run = 0; run <= ProjectionLearner.DEFAULT_WARMUP_RUNS; run++) {
+            Iterator<ClientEntity> learning = readEntitiesLearning(edm, serviceUrl, "items", "perform.displayNames");
+            List<Object> displayNames = new ArrayList<>();
+            while (learning.hasNext()) {
+                displayNames.add(learning.next().getProperty("displayName").getPrimitiveValue());
+            }
+            print("Run " + run + " read " + displayNames.size() + " display names");
+        }
+
+        print("\n----- Read Entities with read-ahead ------------------------------");
+        try (PrefetchingEntitySetReader reader = readEntitiesPrefetching(serviceUrl, "items")) {
+            int count = 0;
+            while (reader.hasNext()) {
+                reader.next();
+                count++;
+            }
+            print("Read " + count + " entries in " + reader.getPageCount() + " pages, waited "
+                    + reader.getConsumerWaitNanos() / 1000000 + " ms for pages");
+        }
+
+        print("\n----- Read Entities with a parallel scan ------------------------------");
+        try (Stream<ClientEntity> scanned = scanEntities(edm, serviceUrl, "items", null)) {
+            print("Scanned " + scanned.count() + " entries");
+        }
+
+        print("\n----- Read Entities as rows, without ClientEntity ------------------------------");
+        long rows = readRows(edm, serviceUrl, "items", row -> {
+            if (row.getRowNumber() == 0) {
+                print("First row: " + row);
+            }
+        });
+        print("Decoded " + rows + " rows");
+
+        print("\n----- Export Entities ------------------------------");
+        for (String format : new String[]{".ndjson", ".csv"}) {
+            Path file = Files.createTempFile("items", format);
+            print("Exported " + exportEntities(edm, serviceUrl, "items", file) + " entries, " + Files.size(file) + " bytes to " + file);
+        }
+
+        print("\n----- Snapshot Entities in columns ------------------------------");
+        Path snapshot = Files.createTempFile("items", ".snapshot");
+        print("Stored " + snapshotEntities(edm, serviceUrl, "items", snapshot) + " rows, " + Files.size(snapshot) + " bytes to " + snapshot);
+        try (ColumnarSnapshotReader reader = new ColumnarSnapshotReader(snapshot)) {
+            int unitPrice = reader.indexOf("unitPrice");
+            double[] total = {0};
+            reader.scan(block -> {
+                for (int row = 0; row < block.getRowCount(); row++) {
+                    if (!block.isNull(unitPrice, row)) {
+                        total[0] += block.getDouble(unitPrice, row);
+                    }
+                }
+            });
+            print("Unit prices " + reader.getStats(unitPrice) + ", total " + total[0]);
+        }
+
+        print("\n----- Sync Entities incrementally ------------------------------");
+        if (deltaSync != null) {
+            List<Object> changed = new ArrayList<>();
+            for (int run = 0; run < 2; run++) {
+                DeltaSync.Result result = syncEntities(serviceUrl, "items", new SyncSink() {
+                    @Override
+                    public void upsert(ClientEntity entity) {
+                        changed.add(entity.getProperty("id").getPrimitiveValue().toValue());
+                    }
+
+                    @Override
+                    public void delete(URI id) {
+                        changed.add(id);
+                    }
+
+                    @Override
+                    public void flush() {
+                    }
+                });
+                print(result + ", checkpoint " + result.getCheckpoint());
+            }
+            print(changed.size() + " changes in total");
+        }
+
+        print("\n----- Read Entities of all companies ------------------------------");
+        List<CompanyFanOut.Company> companies = discoverCompanies(serviceUrl);
+        try (CompanyFanOut.Results results = readEntitiesAllCompanies(serviceUrl, companies, "items", null)) {
+            Map<String, Integer> perCompany = new TreeMap<>();
+            while (results.hasNext()) {
+                perCompany.merge(results.next().getCompany().toString(), 1, Integer::sum);
+            }
+            print("Items per company: " + perCompany);
+            results.getFailures().forEach(failure -> print("Failed " + failure));
+        }
+
         print("\n----- Read Entry ------------------------------");
         final UUID id = UUID.fromString("d84e0a58-f49d-4b38-a567-038baa924c49");
         ClientEntity entry = readEntityWithKey(edm, serviceUrl, "items", id);
         print("Single Entry:\n" + prettyPrint(entry.getProperties(), 0));
 
+        if (replicaStore != null) {
+            print("\n----- Read Entry from the local replica ------------------------------");
+            Replica replica = replica(edm, serviceUrl, "items");
+            if (!replica.isLoaded()) {
+                print("Replicated " + replica.refresh() + " entries");
+            }
+            print("Single Entry, " + replica.get(id).remaining() + " bytes:\n" + prettyPrint(readEntityWithKey(edm, serviceUrl, "items", id).getProperties(), 0));
+        }
+
+        print("\n----- Read Entries asynchronously ------------------------------");
+        List<ClientEntity> entries = readAllEntitiesAsync(serviceUrl, "items").join();
+        print("Read " + entries.size() + " entries, first one:\n" + prettyPrint(entries.get(0).getProperties(), 0));
+        entry = readEntityWithKeyAsync(serviceUrl, "items", id).join();
+        print("Single Entry:\n" + prettyPrint(entry.getProperties(), 0));
+
+        print("\n----- Read Entries by key, concurrently ------------------------------");
+        List<Object> ids = new ArrayList<>();
+        for (ClientEntity ce : entries) {
+            ids.add(ce.getProperty("id").getPrimitiveValue().toValue());
+        }
+        Map<Object, ClientEntity> byKey = readEntitiesWithKeys(edm, serviceUrl, "items", ids);
+        print("Looked up " + byKey.size() + " entries by key");
+        byKey = readEntitiesWithKeysBatched(serviceUrl, "items", ids);
+        print("Looked up " + byKey.size() + " entries by key in $batch requests");
+        List<CompletableFuture<Optional<ClientEntity>>> loads = new ArrayList<>();
+        for (Object key : ids) {
+            loads.add(loadEntityWithKey(edm, serviceUrl, "items", key));
+        }
+        print("Looked up " + loads.stream().map(CompletableFuture::join).filter(Optional::isPresent).count()
+                + " entries by key in $filter queries");
+
         //
 //    print("\n----- Read Entity with $expand  ------------------------------");
 //    entry = readEntityWithKeyExpand(edm, serviceUrl, "items", id, "baseUnitOfMeasure");
@@ -146,6 +503,12 @@ public class OlingoSampleApp {
 //    ClientEntity ce = loadEntity("/mymanufacturer.json");
 //    entry = createEntity(edm, serviceUrl, "Manufacturers", ce);
 
+//    print("\n----- Bulk Create Entries ------------------------------");
+//    BulkWriter.Summary summary = createEntities(serviceUrl, "Manufacturers",
+//            Stream.of("/mymanufacturer.json", "/mymanufacturer2.json").map(path -> loadEntity(path)));
+//    print(summary.toString());
+//    summary.getFailures().forEach(failure -> print(failure.toString()));
+
 //    print("\n----- Update Entry ------------------------------");
 //    ce = loadEntity("/mymanufacturer2.json");
 //    int sc = updateEntity(edm, serviceUrl, "Manufacturers", 123, ce);
@@ -190,7 +553,7 @@ public class OlingoSampleApp {
                 value = prettyPrint((Map<String, Object>) value, level + 1);
             } else if (value instanceof Calendar) {
                 Calendar cal = (Calendar) value;
-                value = SimpleDateFormat.getInstance().format(cal.getTime());
+                value = DATE_TIME_FORMAT.format(cal.toInstant().atZone(cal.getTimeZone().toZoneId()));
             }
             b.append(value).append("\n");
         }
@@ -230,20 +593,81 @@ public class OlingoSampleApp {
     }
 
     public Edm readEdm(String serviceUrl) throws IOException {
+        if (metadataCache != null) {
+            return metadataCache.getEdm(serviceUrl);
+        }
         EdmMetadataRequest request = client.getRetrieveRequestFactory().getMetadataRequest(serviceUrl);
         ODataRetrieveResponse<Edm> response = request.execute();
         return response.getBody();
     }
 
+    /**
+     * Streams the entity set into a file, as CSV if its name ends with .csv, as NDJSON otherwise, with the columns in
+     * the order of the Edm; chunks of export.chunkSize entities are encoded export.parallelism at a time.
+     *
+     * @return number of entities exported
+     */
+    public long exportEntities(Edm edm, String serviceUri, String entitySetName, Path file) throws IOException {
+        TypeDescriptor type = TypeDescriptor.of(edm.getEntityContainer().getEntitySet(entitySetName).getEntityType());
+        RecordEncoder encoder = file.getFileName().toString().endsWith(".csv") ? new CsvEncoder(type) : new NdjsonEncoder(type);
+        try (EntityExporter exporter = EntityExporter.toFile(file, encoder)
+                .setParallel(lookupExecutor, exportParallelism, exportChunkSize)) {
+            return exporter.export(readEntities(edm, serviceUri, entitySetName));
+        }
+    }
+
+    /**
+     * URI builder of the given company, e.g. companies(...); entity sets are appended to it.
+     */
+    private URIBuilder companyBuilder(String serviceUri, String company) {
+        return client.newURIBuilder(serviceUri).appendEntitySetSegment(company);
+    }
+
+    public List<CompanyFanOut.Company> discoverCompanies(String serviceUri) {
+        return fanOut.discoverCompanies(serviceUri);
+    }
+
+    /**
+     * Reads the entity set of all given companies concurrently, fanOut.maxConcurrency at a time; rows come tagged with
+     * their company. The results must be closed.
+     *
+     * @param filter $filter applied in every company, or null
+     */
+    public CompanyFanOut.Results readEntitiesAllCompanies(String serviceUri, List<CompanyFanOut.Company> companies,
+                                                          String entitySetName, String filter) {
+        return fanOut.query(tenant, serviceUri, companies, entitySetName, filter);
+    }
+
+    /**
+     * @param select properties to read, validated against the Edm; all if none
+     */
     public ClientEntitySetIterator<ClientEntitySet, ClientEntity> readEntities(Edm edm, String serviceUri,
-                                                                               String entitySetName) {
-        URI absoluteUri = client.newURIBuilder(serviceUri).appendEntitySetSegment(defaultCompany).appendEntitySetSegment(entitySetName).build();
-        return readEntities(edm, absoluteUri);
+                                                                               String entitySetName, String... select) {
+        URIBuilder builder = companyBuilder(serviceUri, defaultCompany).appendEntitySetSegment(entitySetName);
+        return readEntities(edm, projection(edm, entitySetName, select).apply(builder).build());
+    }
+
+    /**
+     * Like readEntities, but with projection.learning on, the $select is derived from the properties the callers of the
+     * given site read in the previous runs.
+     */
+    public Iterator<ClientEntity> readEntitiesLearning(Edm edm, String serviceUri, String entitySetName, String site) {
+        if (projectionLearner == null) {
+            return readEntities(edm, serviceUri, entitySetName);
+        }
+        Projection projection = projectionLearner.projectionFor(site, edm.getEntityContainer().getEntitySet(entitySetName).getEntityType());
+        URIBuilder builder = companyBuilder(serviceUri, defaultCompany).appendEntitySetSegment(entitySetName);
+        return projectionLearner.track(site, readEntities(edm, projection.apply(builder).build()), projection);
+    }
+
+    private static Projection projection(Edm edm, String entitySetName, String... select) {
+        EdmEntityType entityType = edm.getEntityContainer().getEntitySet(entitySetName).getEntityType();
+        return select.length == 0 ? Projection.all(entityType) : Projection.of(entityType, select);
     }
 
     public ClientEntitySetIterator<ClientEntitySet, ClientEntity> readEntitiesWithFilter(Edm edm, String serviceUri,
                                                                                          String entitySetName, String filterName) {
-        URI absoluteUri = client.newURIBuilder(serviceUri).appendEntitySetSegment(defaultCompany).appendEntitySetSegment(entitySetName).filter(filterName).build();
+        URI absoluteUri = companyBuilder(serviceUri, defaultCompany).appendEntitySetSegment(entitySetName).filter(filterName).build();
         return readEntities(edm, absoluteUri);
     }
 
@@ -258,20 +682,191 @@ public class OlingoSampleApp {
         return response.getBody();
     }
 
-    public ClientEntity readEntityWithKey(Edm edm, String serviceUri, String entitySetName, Object keyValue) {
-        URI absoluteUri = client.newURIBuilder(serviceUri).appendEntitySetSegment(defaultCompany).appendEntitySetSegment(entitySetName)
-                .appendKeySegment(keyValue).build();
-        return readEntity(edm, absoluteUri);
+    /**
+     * Like readEntities, but the following pages are fetched while the current one is consumed; close when done.
+     */
+    public PrefetchingEntitySetReader readEntitiesPrefetching(String serviceUri, String entitySetName) {
+        URI absoluteUri = companyBuilder(serviceUri, defaultCompany).appendEntitySetSegment(entitySetName).build();
+        return new PrefetchingEntitySetReader(client, absoluteUri, lookupExecutor, prefetchDepth, prefetchMaxBufferedBytes);
+    }
+
+    /**
+     * Reads a whole entity set with several concurrent requests, see scan.* properties; close the stream when done.
+     */
+    public Stream<ClientEntity> scanEntities(Edm edm, String serviceUri, String entitySetName, String filter) {
+        EdmEntityType entityType = edm.getEntityContainer().getEntitySet(entitySetName).getEntityType();
+        URI absoluteUri = companyBuilder(serviceUri, defaultCompany).appendEntitySetSegment(entitySetName).build();
+        return scanner.scan(entityType, absoluteUri.toASCIIString(), filter);
+    }
+
+    /**
+     * Streams the rows of an entity set to the given handler, decoding only the selected (or all primitive) properties.
+     *
+     * @return number of rows
+     */
+    public long readRows(Edm edm, String serviceUri, String entitySetName, RowHandler handler, String... select) throws Exception {
+        RowSchema schema = RowSchema.of(edm.getEntityContainer().getEntitySet(entitySetName).getEntityType(), select);
+        URIBuilder builder = companyBuilder(serviceUri, defaultCompany).appendEntitySetSegment(entitySetName);
+        return new JsonRowDecoder(schema).readAll(client, projection(edm, entitySetName, select).apply(builder).build(), handler);
+    }
+
+    /**
+     * Stores the scalar properties of the entity set in a compressed, column-oriented file, replaced only once complete.
+     *
+     * @param select properties to store; all scalar properties if none
+     * @return number of rows stored
+     */
+    public long snapshotEntities(Edm edm, String serviceUri, String entitySetName, Path file, String... select) throws Exception {
+        EdmEntityType entityType = edm.getEntityContainer().getEntitySet(entitySetName).getEntityType();
+        RowSchema schema = RowSchema.of(entityType, select);
+        try (ColumnarSnapshotWriter writer = new ColumnarSnapshotWriter(file, entityType.getFullQualifiedName().toString(), schema)) {
+            readRows(edm, serviceUri, entitySetName, writer, select);
+            writer.commit();
+            return writer.getRowCount();
+        }
+    }
+
+    /**
+     * Sends the entities changed since the last sync to the sink, see sync.* properties.
+     */
+    public DeltaSync.Result syncEntities(String serviceUri, String entitySetName, SyncSink sink) throws Exception {
+        if (deltaSync == null) {
+            throw new IllegalStateException("Incremental sync needs sync.checkpointDir");
+        }
+        return deltaSync.sync(serviceUri, defaultCompany, entitySetName, sink);
+    }
+
+    /**
+     * With the entity cache (cache.maxEntries) or shared reads (singleFlight.enabled) enabled, the entity returned may
+     * be shared with other callers: it must not be modified.
+     *
+     * @param select properties to read, validated against the Edm; all if none
+     */
+    public ClientEntity readEntityWithKey(Edm edm, String serviceUri, String entitySetName, Object keyValue, String... select) {
+        if (replicaStore != null && select.length == 0 && keyValue instanceof UUID && replicatedEntitySets.contains(entitySetName)) {
+            // entities created, updated or deleted since the last refresh are looked up remotely
+            ClientEntity entity = replica(edm, serviceUri, entitySetName).getEntity((UUID) keyValue);
+            if (entity != null) {
+                return entity;
+            }
+        }
+        if (keyBatchEnabled && select.length == 0) {
+            // concurrent lookups are merged into $filter queries; not found is reported as a plain GET would
+            try {
+                return loadEntityWithKey(edm, serviceUri, entitySetName, keyValue).join()
+                        .orElseThrow(() -> new ODataClientErrorException(
+                                new BasicStatusLine(HttpVersion.HTTP_1_1, HttpStatus.SC_NOT_FOUND, "Not Found")));
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : e;
+            }
+        }
+        URIBuilder builder = companyBuilder(serviceUri, defaultCompany).appendEntitySetSegment(entitySetName)
+                .appendKeySegment(keyValue);
+        return readEntity(edm, projection(edm, entitySetName, select).apply(builder).build());
+    }
+
+    /**
+     * Returns the local replica of an entity set in the default company of the given service, see replica.* properties;
+     * it is opened with what was replicated by a previous run, if anything, and refreshed in the background from then on.
+     */
+    public Replica replica(Edm edm, String serviceUri, String entitySetName) {
+        URI entitySetUri = entitySetUri(serviceUri, entitySetName);
+        Replica replica = replicaStore.get(entitySetUri);
+        if (replica != null) {
+            return replica;
+        }
+        List<EdmKeyPropertyRef> keys = edm.getEntityContainer().getEntitySet(entitySetName).getEntityType().getKeyPropertyRefs();
+        if (keys.size() != 1) {
+            throw new IllegalStateException("Replicas are indexed on single keys only: " + entitySetName);
+        }
+        try {
+            return replicaStore.open(entitySetName, entitySetUri, keys.get(0).getName());
+        } catch (IOException e) {
+            throw new ODataRuntimeException("Could not open replica of " + entitySetName, e);
+        }
+    }
+
+    /**
+     * Looks an entity up by key together with the other lookups on the same entity set issued within
+     * keyBatch.maxDelayMillis, up to keyBatch.maxBatchSize keys per $filter query.
+     *
+     * @return the entity, or empty if not found
+     */
+    public CompletableFuture<Optional<ClientEntity>> loadEntityWithKey(Edm edm, String serviceUri, String entitySetName, Object keyValue) {
+        KeyBatchLoader loader = keyLoaders.computeIfAbsent(entitySetUri(serviceUri, entitySetName).toASCIIString(), uri -> {
+            List<EdmKeyPropertyRef> keys = edm.getEntityContainer().getEntitySet(entitySetName).getEntityType().getKeyPropertyRefs();
+            if (keys.size() != 1) {
+                throw new IllegalStateException("Key lookups are batched for single keys only: " + entitySetName);
+            }
+            return new KeyBatchLoader(client, uri, keys.get(0).getName(), keyBatchExecutor)
+                    .setMaxBatchSize(keyBatchMaxSize)
+                    .setMaxDelayMillis(keyBatchMaxDelayMillis)
+                    .setMaxUrlLength(keyBatchMaxUrlLength);
+        });
+        return loader.load(keyValue);
+    }
+
+    /**
+     * Looks many entities up by key, each with a plain blocking request, running concurrently on the lookup executor.
+     */
+    public Map<Object, ClientEntity> readEntitiesWithKeys(Edm edm, String serviceUri, String entitySetName,
+                                                          Collection<?> keyValues) throws InterruptedException, ExecutionException {
+        Map<Object, Future<ClientEntity>> futures = new LinkedHashMap<>();
+        for (Object keyValue : keyValues) {
+            futures.put(keyValue, lookupExecutor.submit(() -> readEntityWithKey(edm, serviceUri, entitySetName, keyValue)));
+        }
+        Map<Object, ClientEntity> entities = new LinkedHashMap<>();
+        for (Entry<Object, Future<ClientEntity>> future : futures.entrySet()) {
+            entities.put(future.getKey(), future.getValue().get());
+        }
+        return entities;
+    }
+
+    /**
+     * Looks many entities up by key, batch.maxOperations per $batch request.
+     */
+    public Map<Object, ClientEntity> readEntitiesWithKeysBatched(String serviceUri, String entitySetName,
+                                                                 Collection<?> keyValues) throws InterruptedException, ExecutionException {
+        BatchExecutor batch = newBatch(serviceUri);
+        Map<Object, CompletableFuture<ClientEntity>> futures = new LinkedHashMap<>();
+        for (Object keyValue : keyValues) {
+            futures.put(keyValue, batch.readEntity(companyBuilder(serviceUri, defaultCompany)
+                    .appendEntitySetSegment(entitySetName).appendKeySegment(keyValue).build()));
+        }
+        batch.flush();
+        Map<Object, ClientEntity> entities = new LinkedHashMap<>();
+        for (Entry<Object, CompletableFuture<ClientEntity>> future : futures.entrySet()) {
+            entities.put(future.getKey(), future.getValue().get());
+        }
+        return entities;
+    }
+
+    /**
+     * Collects reads and writes (atomic ones in change sets) to be sent as $batch requests on flush.
+     */
+    public BatchExecutor newBatch(String serviceUri) {
+        return new BatchExecutor(client, serviceUri).setMaxOperations(batchMaxOperations);
     }
 
     public ClientEntity readEntityWithKeyExpand(Edm edm, String serviceUri, String entitySetName, Object keyValue,
                                                 String expandRelationName) {
-        URI absoluteUri = client.newURIBuilder(serviceUri).appendEntitySetSegment(defaultCompany).appendEntitySetSegment(entitySetName).appendKeySegment(keyValue)
+        URI absoluteUri = companyBuilder(serviceUri, defaultCompany).appendEntitySetSegment(entitySetName).appendKeySegment(keyValue)
                 .expand(expandRelationName).build();
         return readEntity(edm, absoluteUri);
     }
 
     private ClientEntity readEntity(Edm edm, URI absoluteUri) {
+        if (entityReads != null) {
+            return entityReads.execute("GET " + absoluteUri.normalize() + " application/json;odata.metadata=minimal",
+                    () -> fetchEntity(absoluteUri));
+        }
+        return fetchEntity(absoluteUri);
+    }
+
+    private ClientEntity fetchEntity(URI absoluteUri) {
+        if (entityCache != null) {
+            return entityCache.read(absoluteUri);
+        }
         ODataEntityRequest<ClientEntity> request = client.getRetrieveRequestFactory().getEntityRequest(absoluteUri);
         // odata4 sample/server limitation not handling metadata=full
         request.setAccept("application/json;odata.metadata=minimal");
@@ -280,6 +875,97 @@ public class OlingoSampleApp {
         return response.getBody();
     }
 
+    public CompletableFuture<ClientEntity> readEntityWithKeyAsync(String serviceUri, String entitySetName, Object keyValue) {
+        URI absoluteUri = companyBuilder(serviceUri, defaultCompany).appendEntitySetSegment(entitySetName)
+                .appendKeySegment(keyValue).build();
+        return asyncExecutor.readEntity(absoluteUri);
+    }
+
+    public CompletableFuture<ClientEntitySet> readEntitiesAsync(String serviceUri, String entitySetName) {
+        URI absoluteUri = companyBuilder(serviceUri, defaultCompany).appendEntitySetSegment(entitySetName).build();
+        return asyncExecutor.readEntitySet(absoluteUri);
+    }
+
+    /**
+     * Reads all pages, following next links, without blocking any thread while waiting for the server.
+     */
+    public CompletableFuture<List<ClientEntity>> readAllEntitiesAsync(String serviceUri, String entitySetName) {
+        return readEntitiesAsync(serviceUri, entitySetName).thenCompose(page -> collectPages(page, new ArrayList<>()));
+    }
+
+    private CompletableFuture<List<ClientEntity>> collectPages(ClientEntitySet page, List<ClientEntity> entities) {
+        entities.addAll(page.getEntities());
+        if (page.getNext() == null) {
+            return CompletableFuture.completedFuture(entities);
+        }
+        return asyncExecutor.readEntitySet(page.getNext()).thenCompose(next -> collectPages(next, entities));
+    }
+
+    public CompletableFuture<ClientEntity> createEntityAsync(String serviceUri, String entitySetName, ClientEntity ce) {
+        URI absoluteUri = client.newURIBuilder(serviceUri).appendEntitySetSegment(entitySetName).build();
+        return asyncExecutor.createEntity(absoluteUri, ce);
+    }
+
+    public CompletableFuture<Integer> updateEntityAsync(String serviceUri, String entityName, Object keyValue, ClientEntity ce) {
+        URI absoluteUri = client.newURIBuilder(serviceUri).appendEntitySetSegment(entityName)
+                .appendKeySegment(keyValue).build();
+        return asyncExecutor.updateEntity(absoluteUri, ce).whenComplete((status, e) -> invalidate(serviceUri, entityName, keyValue));
+    }
+
+    public CompletableFuture<Integer> deleteEntityAsync(String serviceUri, String entityName, Object keyValue) {
+        URI absoluteUri = client.newURIBuilder(serviceUri).appendEntitySetSegment(entityName)
+                .appendKeySegment(keyValue).build();
+        return asyncExecutor.deleteEntity(absoluteUri).whenComplete((status, e) -> invalidate(serviceUri, entityName, keyValue));
+    }
+
+    /**
+     * Writes mutations with bulk.workers concurrent requests, blocking the caller while bulk.maxQueued are waiting.
+     * The entity cache and the replicas are kept consistent with updates and deletions, given mutation URIs built with
+     * {@link #entitySetUri} and {@link #entityUri}, i.e. in the default company as reads are.
+     */
+    public BulkWriter newBulkWriter(String serviceUri) {
+        return new BulkWriter(client, serviceUri, bulkWorkers, bulkMaxQueued)
+                .setBatchSize(bulkBatchSize)
+                .setListener(result -> {
+                    if (result.getMutation().getKind() != BulkWriter.Kind.CREATE) {
+                        invalidate(result.getMutation().getURI());
+                    }
+                });
+    }
+
+    /**
+     * Creates all entities of the stream, going on after failures; these are reported in the summary.
+     */
+    public BulkWriter.Summary createEntities(String serviceUri, String entitySetName, Stream<ClientEntity> entities) throws InterruptedException {
+        URI absoluteUri = entitySetUri(serviceUri, entitySetName);
+        try (BulkWriter writer = newBulkWriter(serviceUri)) {
+            return writer.writeAll(entities.map(ce -> BulkWriter.Mutation.create(absoluteUri, ce, null)));
+        }
+    }
+
+    public URI entitySetUri(String serviceUri, String entitySetName) {
+        return companyBuilder(serviceUri, defaultCompany).appendEntitySetSegment(entitySetName).build();
+    }
+
+    public URI entityUri(String serviceUri, String entitySetName, Object keyValue) {
+        return companyBuilder(serviceUri, defaultCompany).appendEntitySetSegment(entitySetName).appendKeySegment(keyValue).build();
+    }
+
+    private void invalidate(String serviceUri, String entityName, Object keyValue) {
+        // writes address the entity without the company segment, the reads that were cached or replicated with it
+        invalidate(client.newURIBuilder(serviceUri).appendEntitySetSegment(entityName).appendKeySegment(keyValue).build());
+        invalidate(entityUri(serviceUri, entityName, keyValue));
+    }
+
+    private void invalidate(URI absoluteUri) {
+        if (entityCache != null) {
+            entityCache.invalidate(absoluteUri);
+        }
+        if (replicaStore != null) {
+            replicaStore.forget(absoluteUri);
+        }
+    }
+
     private ClientEntity loadEntity(String path) throws ODataDeserializerException {
         InputStream input = getClass().getResourceAsStream(path);
         return client.getBinder().getODataEntity(client.getDeserializer(ContentType.APPLICATION_JSON).toEntity(input));
@@ -308,7 +994,13 @@ public class OlingoSampleApp {
         // odata4 sample/server limitation not handling metadata=full
         request.setAccept("application/json;odata.metadata=minimal");
         ODataEntityUpdateResponse<ClientEntity> response = request.execute();
-        return response.getStatusCode();
+        invalidate(serviceUri, entityName, keyValue);
+        try {
+            return response.getStatusCode();
+        } finally {
+            // the body is not read: closing gives the connection (and rate limiter slot) back
+            response.close();
+        }
     }
 
     public int deleteEntity(String serviceUri, String entityName, Object keyValue) throws IOException {
@@ -318,6 +1010,11 @@ public class OlingoSampleApp {
         // odata4 sample/server limitation not handling metadata=full
         request.setAccept("application/json;odata.metadata=minimal");
         ODataDeleteResponse response = request.execute();
-        return response.getStatusCode();
+        invalidate(serviceUri, entityName, keyValue);
+        try {
+            return response.getStatusCode();
+        } finally {
+            response.close();
+        }
     }
 }
@@ -0,0 +1,447 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.olingo.samples.client.core.async;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import org.apache.commons.io.IOUtils;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpResponseInterceptor;
+import org.apache.http.StatusLine;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.HttpDelete;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPatch;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.impl.client.AbstractHttpClient;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
+import org.apache.http.params.HttpConnectionParams;
+import org.apache.http.params.HttpParams;
+import org.apache.http.params.HttpProtocolParams;
+import org.apache.http.protocol.BasicHttpContext;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.util.EntityUtils;
+import org.apache.olingo.client.api.ODataClient;
+import org.apache.olingo.client.api.communication.ODataClientErrorException;
+import org.apache.olingo.client.api.communication.ODataServerErrorException;
+import org.apache.olingo.client.api.domain.ClientEntity;
+import org.apache.olingo.client.api.domain.ClientEntitySet;
+import org.apache.olingo.client.api.http.HttpClientFactory;
+import org.apache.olingo.client.api.http.WrappingHttpClientFactory;
+import org.apache.olingo.client.core.http.AbstractOAuth2HttpClientFactory;
+import org.apache.olingo.commons.api.format.ContentType;
+import org.apache.olingo.commons.api.http.HttpMethod;
+import org.apache.olingo.samples.client.core.concurrent.VirtualThreads;
+import org.apache.olingo.samples.client.core.http.OAuth2TokenManager;
+import org.apache.olingo.samples.client.core.http.PoolingHttpClientFactory;
+import org.apache.olingo.samples.client.core.http.RetryBudget;
+import org.apache.olingo.samples.client.core.http.RetryPolicy;
+
+/**
+ * Shows how to send OData requests on a non-blocking (NIO) HTTP client, so that a handful of I/O threads keep hundreds
+ * of requests in flight; results are delivered as {@link CompletableFuture}s.
+ * <br/>
+ * Authentication, content coding, rate limiting and any other interceptor keep coming from the
+ * <tt>HttpClientFactory</tt> configured on the <tt>ODataClient</tt>: for each attempt a (cheap) blocking client is
+ * created by that factory, only to apply its request and response interceptors and its timeouts, and then closed.
+ * Interceptors that may wait (e.g. the rate limiter, or the very first token acquisition), as well as deserialization,
+ * run on the worker executor, never on the I/O threads. Throttled and failed requests are retried as mandated by the
+ * {@link RetryPolicy}, with the delay timed by a scheduler instead of a sleeping thread.
+ * <br/>
+ * The response interceptor of Olingo's OAuth2 factories is not applied, as it re-sends the request on the blocking
+ * client after a 401: instead, the token is refreshed through the factory's {@link OAuth2TokenManager} (if it is a
+ * {@link OAuth2TokenManager.Provider}) and the asynchronous request is retried once.
+ */
+public class AsyncODataExecutor implements Closeable {
+
+  /**
+   * Turns a successful response into the result of the request.
+   *
+   * @param <T> result type
+   */
+  public interface ResponseReader<T> {
+
+    T read(HttpResponse response) throws Exception;
+  }
+
+  public static final int DEFAULT_IO_THREADS = 2;
+
+  private final ODataClient client;
+
+  private final RetryPolicy policy;
+
+  private final CloseableHttpAsyncClient httpClient;
+
+  private final ExecutorService workers;
+
+  private final ScheduledExecutorService timer;
+
+  private final ConcurrentMap<String, RetryBudget> budgets = new ConcurrentHashMap<String, RetryBudget>();
+
+  private final AtomicInteger inFlight = new AtomicInteger();
+
+  private final LongAdder retries = new LongAdder();
+
+  public AsyncODataExecutor(final ODataClient client, final RetryPolicy policy) {
+    this(client, policy, PoolingHttpClientFactory.DEFAULT_MAX_TOTAL, PoolingHttpClientFactory.DEFAULT_MAX_PER_ROUTE,
+            DEFAULT_IO_THREADS, Runtime.getRuntime().availableProcessors());
+  }
+
+  /**
+   * @param client OData client, providing HTTP client factory, reader and writer
+   * @param policy retry policy
+   * @param maxTotal maximum number of open connections
+   * @param maxPerRoute maximum number of open connections per route
+   * @param ioThreads number of I/O threads
+   * @param workerThreads number of threads running interceptors and deserialization
+   */
+  public AsyncODataExecutor(final ODataClient client, final RetryPolicy policy,
+          final int maxTotal, final int maxPerRoute, final int ioThreads, final int workerThreads) {
+
+    this.client = client;
+    this.policy = policy;
+    this.workers = Executors.newFixedThreadPool(workerThreads, VirtualThreads.daemon("odata-async-worker-"));
+    this.timer = Executors.newSingleThreadScheduledExecutor(VirtualThreads.daemon("odata-async-retry-"));
+    this.httpClient = HttpAsyncClients.custom().
+            setMaxConnTotal(maxTotal).
+            setMaxConnPerRoute(maxPerRoute).
+            setDefaultIOReactorConfig(IOReactorConfig.custom().setIoThreadCount(ioThreads).build()).
+            setThreadFactory(VirtualThreads.daemon("odata-async-io-")).
+            build();
+    this.httpClient.start();
+  }
+
+  /**
+   * @return number of requests sent and not yet answered
+   */
+  public int getInFlight() {
+    return inFlight.get();
+  }
+
+  /**
+   * @return number of retries sent so far
+   */
+  public long getRetryCount() {
+    return retries.sum();
+  }
+
+  public CompletableFuture<ClientEntity> readEntity(final URI uri) {
+    return execute(HttpMethod.GET, new HttpGet(uri),
+            response -> client.getReader().readEntity(response.getEntity().getContent(), contentType(response)));
+  }
+
+  /**
+   * Reads one page of an entity set: the next one, if any, is at {@link ClientEntitySet#getNext()}.
+   *
+   * @param uri entity set URI, or next link
+   * @return page
+   */
+  public CompletableFuture<ClientEntitySet> readEntitySet(final URI uri) {
+    return execute(HttpMethod.GET, new HttpGet(uri),
+            response -> client.getReader().readEntitySet(response.getEntity().getContent(), contentType(response)));
+  }
+
+  public CompletableFuture<ClientEntity> createEntity(final URI uri, final ClientEntity entity) {
+    final HttpPost request = new HttpPost(uri);
+    try {
+      request.setEntity(body(entity));
+    } catch (Exception e) {
+      return failed(e);
+    }
+    return execute(HttpMethod.POST, request,
+            response -> client.getReader().readEntity(response.getEntity().getContent(), contentType(response)));
+  }
+
+  /**
+   * @param uri entity URI
+   * @param changes properties to change
+   * @return response status
+   */
+  public CompletableFuture<Integer> updateEntity(final URI uri, final ClientEntity changes) {
+    final HttpPatch request = new HttpPatch(uri);
+    try {
+      request.setEntity(body(changes));
+    } catch (Exception e) {
+      return failed(e);
+    }
+    return execute(HttpMethod.PATCH, request, response -> response.getStatusLine().getStatusCode());
+  }
+
+  /**
+   * @param uri entity URI
+   * @return response status
+   */
+  public CompletableFuture<Integer> deleteEntity(final URI uri) {
+    return execute(HttpMethod.DELETE, new HttpDelete(uri), response -> response.getStatusLine().getStatusCode());
+  }
+
+  /**
+   * Sends the given request; cancelling the returned future aborts it.
+   *
+   * @param method OData method, as passed to the HTTP client factory
+   * @param request request
+   * @param reader reads the result out of a successful response
+   * @param <T> result type
+   * @return pending result
+   */
+  public <T> CompletableFuture<T> execute(final HttpMethod method, final HttpRequestBase request,
+          final ResponseReader<T> reader) {
+
+    if (!request.containsHeader(HttpHeaders.ACCEPT)) {
+      request.addHeader(HttpHeaders.ACCEPT, ContentType.JSON.toContentTypeString());
+    }
+    request.addHeader("OData-MaxVersion", "4.0");
+
+    final CompletableFuture<T> result = new CompletableFuture<T>();
+    final Header[] headers = request.getAllHeaders();
+    budget(request.getURI()).onRequest();
+    workers.execute(() -> send(method, request, headers, reader, result, 1, 0));
+    return result;
+  }
+
+  private <T> void send(final HttpMethod method, final HttpRequestBase request, final Header[] headers,
+          final ResponseReader<T> reader, final CompletableFuture<T> result, final int attempt, final long delay) {
+
+    if (result.isDone()) {
+      return;
+    }
+    // interceptors add their headers (e.g. Authorization) again on each attempt
+    request.setHeaders(headers);
+
+    final HttpClientFactory factory = client.getConfiguration().getHttpClientFactory();
+    final HttpContext context = new BasicHttpContext();
+    final HttpClient template;
+    try {
+      template = factory.create(method, request.getURI());
+    } catch (RuntimeException e) {
+      result.completeExceptionally(e);
+      return;
+    }
+    try {
+      prepare(template, request, context);
+    } catch (Exception e) {
+      factory.close(template);
+      result.completeExceptionally(e);
+      return;
+    }
+
+    inFlight.incrementAndGet();
+    final Future<HttpResponse> sent = httpClient.execute(request, context, new FutureCallback<HttpResponse>() {
+
+      @Override
+      public void completed(final HttpResponse response) {
+        inFlight.decrementAndGet();
+        workers.execute(() -> receive(method, request, headers, reader, result, attempt, delay, factory, template,
+                context, response));
+      }
+
+      @Override
+      public void failed(final Exception exception) {
+        inFlight.decrementAndGet();
+        factory.close(template);
+        if (!(exception instanceof IOException)
+                || !retry(method, request, headers, reader, result, attempt, delay, -1, -1)) {
+          result.completeExceptionally(exception);
+        }
+      }
+
+      @Override
+      public void cancelled() {
+        inFlight.decrementAndGet();
+        factory.close(template);
+        result.cancel(false);
+      }
+    });
+    result.whenComplete((value, failure) -> {
+      if (result.isCancelled()) {
+        sent.cancel(true);
+      }
+    });
+  }
+
+  private <T> void receive(final HttpMethod method, final HttpRequestBase request, final Header[] headers,
+          final ResponseReader<T> reader, final CompletableFuture<T> result, final int attempt, final long delay,
+          final HttpClientFactory factory, final HttpClient template, final HttpContext context,
+          final HttpResponse response) {
+
+    try {
+      if (template instanceof AbstractHttpClient) {
+        final AbstractHttpClient interceptors = (AbstractHttpClient) template;
+        for (int i = 0; i < interceptors.getResponseInterceptorCount(); i++) {
+          final HttpResponseInterceptor interceptor = interceptors.getResponseInterceptor(i);
+          if (!isOAuth2Interceptor(interceptor)) {
+            interceptor.process(response, context);
+          }
+        }
+      }
+
+      final StatusLine status = response.getStatusLine();
+      final OAuth2TokenManager tokens = status.getStatusCode() == 401 && attempt == 1 ? tokenManager(factory) : null;
+      if (tokens != null && policy.isRetryable(request, status.getStatusCode())) {
+        // the token was rejected (e.g. revoked before its expiry): worth one more attempt with a new one
+        EntityUtils.consumeQuietly(response.getEntity());
+        tokens.refresh().whenComplete((token, failure) -> {
+          if (failure != null) {
+            result.completeExceptionally(failure);
+          } else if (!retry(method, request, headers, reader, result, attempt, delay, status.getStatusCode(), -1)) {
+            result.completeExceptionally(new ODataClientErrorException(status));
+          }
+        });
+        return;
+      }
+      if (policy.isRetryableStatus(status.getStatusCode()) && policy.isRetryable(request, status.getStatusCode())) {
+        EntityUtils.consumeQuietly(response.getEntity());
+        if (retry(method, request, headers, reader, result, attempt, delay, status.getStatusCode(),
+                RetryPolicy.retryAfterMillis(response))) {
+          return;
+        }
+      }
+
+      if (status.getStatusCode() >= 500) {
+        throw new ODataServerErrorException(status);
+      } else if (status.getStatusCode() >= 400) {
+        throw new ODataClientErrorException(status);
+      }
+      result.complete(reader.read(response));
+    } catch (Exception e) {
+      result.completeExceptionally(e);
+    } finally {
+      EntityUtils.consumeQuietly(response.getEntity());
+      factory.close(template);
+    }
+  }
+
+  private <T> boolean retry(final HttpMethod method, final HttpRequestBase request, final Header[] headers,
+          final ResponseReader<T> reader, final CompletableFuture<T> result, final int attempt, final long delay,
+          final int statusCode, final long retryAfter) {
+
+    if (attempt >= policy.getMaxAttempts()
+            || (statusCode == -1 && !policy.isRetryable(request, -1))
+            || retryAfter > policy.getMaxRetryAfterMillis()
+            || !budget(request.getURI()).tryAcquire()) {
+      return false;
+    }
+    retries.increment();
+
+    final long next = statusCode == 401 ? 0 : policy.nextDelayMillis(delay);
+    timer.schedule(() -> workers.execute(() -> send(method, request, headers, reader, result, attempt + 1, next)),
+            Math.max(next, retryAfter), TimeUnit.MILLISECONDS);
+    return true;
+  }
+
+  private static boolean isOAuth2Interceptor(final HttpResponseInterceptor interceptor) {
+    final Class<?> declaring = interceptor.getClass().getEnclosingClass();
+    return declaring != null && AbstractOAuth2HttpClientFactory.class.isAssignableFrom(declaring);
+  }
+
+  private static OAuth2TokenManager tokenManager(final HttpClientFactory factory) {
+    HttpClientFactory current = factory;
+    while (current != null) {
+      if (current instanceof OAuth2TokenManager.Provider) {
+        return ((OAuth2TokenManager.Provider) current).getTokenManager();
+      }
+      current = current instanceof WrappingHttpClientFactory
+              ? ((WrappingHttpClientFactory) current).getWrappedHttpClientFactory() : null;
+    }
+    return null;
+  }
+
+  private void prepare(final HttpClient template, final HttpRequestBase request, final HttpContext context)
+          throws Exception {
+
+    final HttpParams params = template.getParams();
+    if (params != null) {
+      // per-operation timeouts, as set by the configured factory
+      request.setConfig(RequestConfig.custom().
+              setConnectTimeout(HttpConnectionParams.getConnectionTimeout(params)).
+              setSocketTimeout(HttpConnectionParams.getSoTimeout(params)).
+              build());
+      final String userAgent = HttpProtocolParams.getUserAgent(params);
+      if (userAgent != null && !request.containsHeader(HttpHeaders.USER_AGENT)) {
+        request.addHeader(HttpHeaders.USER_AGENT, userAgent);
+      }
+    }
+
+    if (template instanceof AbstractHttpClient) {
+      final AbstractHttpClient interceptors = (AbstractHttpClient) template;
+      for (int i = 0; i < interceptors.getRequestInterceptorCount(); i++) {
+        interceptors.getRequestInterceptor(i).process(request, context);
+      }
+    }
+  }
+
+  private RetryBudget budget(final URI uri) {
+    return budgets.computeIfAbsent(uri.getHost() == null ? "" : uri.getHost(),
+            host -> new RetryBudget(policy.getBudgetPercent(), policy.getMinRetriesPerSecond()));
+  }
+
+  private HttpEntity body(final ClientEntity entity) throws Exception {
+    final InputStream content = client.getWriter().writeEntity(entity, ContentType.JSON);
+    try {
+      // buffered, hence repeatable: the request can be retried
+      final ByteArrayEntity body = new ByteArrayEntity(IOUtils.toByteArray(content));
+      body.setContentType(ContentType.JSON.toContentTypeString());
+      return body;
+    } finally {
+      IOUtils.closeQuietly(content);
+    }
+  }
+
+  private static ContentType contentType(final HttpResponse response) {
+    final Header header = response.getEntity() == null ? null : response.getEntity().getContentType();
+    return header == null ? ContentType.JSON : ContentType.parse(header.getValue());
+  }
+
+  private static <T> CompletableFuture<T> failed(final Exception exception) {
+    final CompletableFuture<T> result = new CompletableFuture<T>();
+    result.completeExceptionally(exception);
+    return result;
+  }
+
+  @Override
+  public void close() throws IOException {
+    try {
+      httpClient.close();
+    } finally {
+      timer.shutdownNow();
+      workers.shutdown();
+    }
+  }
+}
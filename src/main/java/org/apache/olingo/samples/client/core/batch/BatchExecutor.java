@@ -0,0 +1,428 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.olingo.samples.client.core.batch;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+import org.apache.http.HttpVersion;
+import org.apache.http.StatusLine;
+import org.apache.http.message.BasicStatusLine;
+import org.apache.olingo.client.api.ODataClient;
+import org.apache.olingo.client.api.communication.ODataClientErrorException;
+import org.apache.olingo.client.api.communication.ODataServerErrorException;
+import org.apache.olingo.client.api.communication.request.ODataBatchableRequest;
+import org.apache.olingo.client.api.communication.request.batch.BatchManager;
+import org.apache.olingo.client.api.communication.request.batch.ODataBatchRequest;
+import org.apache.olingo.client.api.communication.request.batch.ODataBatchResponseItem;
+import org.apache.olingo.client.api.communication.request.batch.ODataChangeset;
+import org.apache.olingo.client.api.communication.request.cud.ODataDeleteRequest;
+import org.apache.olingo.client.api.communication.request.cud.ODataEntityCreateRequest;
+import org.apache.olingo.client.api.communication.request.cud.ODataEntityUpdateRequest;
+import org.apache.olingo.client.api.communication.request.cud.UpdateType;
+import org.apache.olingo.client.api.communication.request.retrieve.ODataEntityRequest;
+import org.apache.olingo.client.api.communication.request.retrieve.ODataEntitySetRequest;
+import org.apache.olingo.client.api.communication.response.ODataBatchResponse;
+import org.apache.olingo.client.api.communication.response.ODataEntityCreateResponse;
+import org.apache.olingo.client.api.communication.response.ODataResponse;
+import org.apache.olingo.client.api.communication.response.ODataRetrieveResponse;
+import org.apache.olingo.client.api.domain.ClientEntity;
+import org.apache.olingo.client.api.domain.ClientEntitySet;
+import org.apache.olingo.commons.api.format.ContentType;
+import org.apache.olingo.commons.api.http.HttpHeader;
+
+/**
+ * Collects reads and writes, and sends them as <tt>$batch</tt> requests of at most {@link #setMaxOperations(int)}
+ * operations each, when {@link #flush()} is called. Each operation gets a future, completed with its own response.
+ * <br/>
+ * Writes made through a {@link ChangeSet} are atomic: the service applies all of them, or none, in which case all
+ * their futures fail. A change set is never split over two batches.
+ * <br/>
+ * Not thread-safe: operations are meant to be added by a single thread, then flushed.
+ */
+public class BatchExecutor {
+
+  /**
+   * Limit of Business Central.
+   */
+  public static final int DEFAULT_MAX_OPERATIONS = 100;
+
+  private static final String CONTINUE_ON_ERROR = "odata.continue-on-error";
+
+  /**
+   * One request, its future and how to get its result from its response.
+   */
+  private static final class Operation<T> {
+
+    private final ODataBatchableRequest request;
+
+    private final Function<ODataResponse, T> result;
+
+    private final CompletableFuture<T> future = new CompletableFuture<T>();
+
+    private Operation(final ODataBatchableRequest request, final Function<ODataResponse, T> result) {
+      this.request = request;
+      this.result = result;
+    }
+
+    private void complete(final ODataResponse response) {
+      final RuntimeException error = error(response);
+      if (error != null) {
+        future.completeExceptionally(error);
+        return;
+      }
+      try {
+        future.complete(result.apply(response));
+      } catch (RuntimeException e) {
+        future.completeExceptionally(e);
+      }
+    }
+  }
+
+  /**
+   * Writes to be applied atomically.
+   */
+  public final class ChangeSet {
+
+    private final List<Operation<?>> operations = new ArrayList<Operation<?>>();
+
+    private ChangeSet() {
+    }
+
+    public CompletableFuture<ClientEntity> createEntity(final URI entitySetURI, final ClientEntity entity) {
+      return add(operations, createRequest(entitySetURI, entity), BatchExecutor::createdEntity);
+    }
+
+    /**
+     * @return future status code
+     */
+    public CompletableFuture<Integer> updateEntity(final URI entityURI, final ClientEntity changes) {
+      return add(operations, updateRequest(entityURI, changes), ODataResponse::getStatusCode);
+    }
+
+    /**
+     * @return future status code
+     */
+    public CompletableFuture<Integer> deleteEntity(final URI entityURI) {
+      return add(operations, deleteRequest(entityURI), ODataResponse::getStatusCode);
+    }
+
+    public int size() {
+      return operations.size();
+    }
+
+    private <T> CompletableFuture<T> add(final List<Operation<?>> to, final ODataBatchableRequest request,
+            final Function<ODataResponse, T> result) {
+
+      if (operations.size() == maxOperations) {
+        throw new IllegalStateException("A change set cannot have more than " + maxOperations + " operations");
+      }
+      return BatchExecutor.add(to, request, result);
+    }
+  }
+
+  private final ODataClient client;
+
+  private final String serviceRoot;
+
+  private int maxOperations = DEFAULT_MAX_OPERATIONS;
+
+  private boolean continueOnError = true;
+
+  /**
+   * Pending parts, each one an {@link Operation} or a {@link ChangeSet}.
+   */
+  private final List<Object> parts = new ArrayList<Object>();
+
+  private int batchCount;
+
+  public BatchExecutor(final ODataClient client, final String serviceRoot) {
+    this.client = client;
+    this.serviceRoot = serviceRoot;
+  }
+
+  /**
+   * @param maxOperations maximum number of operations per <tt>$batch</tt> request
+   * @return this executor
+   */
+  public BatchExecutor setMaxOperations(final int maxOperations) {
+    this.maxOperations = maxOperations;
+    return this;
+  }
+
+  /**
+   * @param continueOnError whether the service is asked to go on after a failed operation (the default), rather than
+   * to skip the rest of the batch; the futures of skipped operations fail
+   * @return this executor
+   */
+  public BatchExecutor setContinueOnError(final boolean continueOnError) {
+    this.continueOnError = continueOnError;
+    return this;
+  }
+
+  public CompletableFuture<ClientEntity> readEntity(final URI entityURI) {
+    final ODataEntityRequest<ClientEntity> request = client.getRetrieveRequestFactory().getEntityRequest(entityURI);
+    request.setAccept(ContentType.JSON.toContentTypeString());
+    return add(parts, request, BatchExecutor::<ClientEntity>body);
+  }
+
+  /**
+   * @return future first page of the entity set
+   */
+  public CompletableFuture<ClientEntitySet> readEntitySet(final URI entitySetURI) {
+    final ODataEntitySetRequest<ClientEntitySet> request =
+            client.getRetrieveRequestFactory().getEntitySetRequest(entitySetURI);
+    request.setAccept(ContentType.JSON.toContentTypeString());
+    return add(parts, request, BatchExecutor::<ClientEntitySet>body);
+  }
+
+  /**
+   * A write on its own, not atomic with any other.
+   */
+  public CompletableFuture<ClientEntity> createEntity(final URI entitySetURI, final ClientEntity entity) {
+    return add(parts, createRequest(entitySetURI, entity), BatchExecutor::createdEntity);
+  }
+
+  /**
+   * A write on its own, not atomic with any other.
+   *
+   * @return future status code
+   */
+  public CompletableFuture<Integer> updateEntity(final URI entityURI, final ClientEntity changes) {
+    return add(parts, updateRequest(entityURI, changes), ODataResponse::getStatusCode);
+  }
+
+  /**
+   * A write on its own, not atomic with any other.
+   *
+   * @return future status code
+   */
+  public CompletableFuture<Integer> deleteEntity(final URI entityURI) {
+    return add(parts, deleteRequest(entityURI), ODataResponse::getStatusCode);
+  }
+
+  /**
+   * @return a new change set, sent with the next flush
+   */
+  public ChangeSet newChangeSet() {
+    final ChangeSet changeSet = new ChangeSet();
+    parts.add(changeSet);
+    return changeSet;
+  }
+
+  /**
+   * @return number of operations waiting for the next flush
+   */
+  public int getPendingCount() {
+    int count = 0;
+    for (Object part : parts) {
+      count += part instanceof ChangeSet ? ((ChangeSet) part).size() : 1;
+    }
+    return count;
+  }
+
+  /**
+   * @return number of <tt>$batch</tt> requests sent so far
+   */
+  public int getBatchCount() {
+    return batchCount;
+  }
+
+  /**
+   * Sends all pending operations and completes their futures. A failed batch request fails the futures of all its
+   * operations, and the next batches are still sent.
+   *
+   * @return number of <tt>$batch</tt> requests sent
+   */
+  public int flush() {
+    final List<Object> pending = new ArrayList<Object>(parts);
+    parts.clear();
+    int sent = 0;
+    List<Object> batch = new ArrayList<Object>();
+    int size = 0;
+    for (Object part : pending) {
+      final int partSize = part instanceof ChangeSet ? ((ChangeSet) part).size() : 1;
+      if (partSize == 0) {
+        continue;
+      }
+      if (size + partSize > maxOperations) {
+        send(batch);
+        sent++;
+        batch = new ArrayList<Object>();
+        size = 0;
+      }
+      batch.add(part);
+      size += partSize;
+    }
+    if (!batch.isEmpty()) {
+      send(batch);
+      sent++;
+    }
+    batchCount += sent;
+    return sent;
+  }
+
+  private void send(final List<Object> batch) {
+    try {
+      final ODataBatchRequest request = client.getBatchRequestFactory().getBatchRequest(serviceRoot);
+      if (continueOnError) {
+        request.setPrefer(CONTINUE_ON_ERROR);
+      }
+      final BatchManager payload = request.payloadManager();
+      int contentId = 0;
+      for (Object part : batch) {
+        if (part instanceof ChangeSet) {
+          final ODataChangeset changeset = payload.addChangeset();
+          for (Operation<?> operation : ((ChangeSet) part).operations) {
+            operation.request.addCustomHeader(HttpHeader.CONTENT_ID, String.valueOf(++contentId));
+            changeset.addRequest(operation.request);
+          }
+        } else {
+          payload.addRequest(((Operation<?>) part).request);
+        }
+      }
+
+      final ODataBatchResponse response = payload.getResponse();
+      try {
+        final Iterator<ODataBatchResponseItem> items = response.getBody();
+        for (Object part : batch) {
+          final ODataBatchResponseItem item = items.hasNext() ? items.next() : null;
+          try {
+            if (part instanceof ChangeSet) {
+              completeChangeSet((ChangeSet) part, item);
+            } else if (item != null && item.hasNext()) {
+              ((Operation<?>) part).complete(item.next());
+            } else {
+              fail(part, new IllegalStateException("No response in batch, previous operation failed"));
+            }
+          } finally {
+            if (item != null) {
+              item.close();
+            }
+          }
+        }
+      } finally {
+        response.close();
+      }
+    } catch (RuntimeException e) {
+      for (Object part : batch) {
+        fail(part, e);
+      }
+    }
+  }
+
+  private static void completeChangeSet(final ChangeSet changeSet, final ODataBatchResponseItem item) {
+    final List<ODataResponse> responses = new ArrayList<ODataResponse>();
+    while (item != null && item.hasNext()) {
+      responses.add(item.next());
+    }
+    // a failed change set is answered with a single error response
+    for (ODataResponse response : responses) {
+      final RuntimeException error = error(response);
+      if (error != null) {
+        fail(changeSet, error);
+        return;
+      }
+    }
+    if (responses.size() != changeSet.operations.size()) {
+      fail(changeSet, new IllegalStateException(
+              "Expected " + changeSet.operations.size() + " responses in change set, got " + responses.size()));
+      return;
+    }
+
+    final Map<String, ODataResponse> byContentId = new HashMap<String, ODataResponse>();
+    for (ODataResponse response : responses) {
+      final Collection<String> contentId = response.getHeader(HttpHeader.CONTENT_ID);
+      if (contentId != null && !contentId.isEmpty()) {
+        byContentId.put(contentId.iterator().next(), response);
+      }
+    }
+    for (int i = 0; i < changeSet.operations.size(); i++) {
+      final Operation<?> operation = changeSet.operations.get(i);
+      final ODataResponse response = byContentId.get(operation.request.getHeader(HttpHeader.CONTENT_ID));
+      operation.complete(response == null ? responses.get(i) : response);
+    }
+  }
+
+  private static void fail(final Object part, final Throwable error) {
+    if (part instanceof ChangeSet) {
+      for (Operation<?> operation : ((ChangeSet) part).operations) {
+        operation.future.completeExceptionally(error);
+      }
+    } else {
+      ((Operation<?>) part).future.completeExceptionally(error);
+    }
+  }
+
+  private static <T> CompletableFuture<T> add(final List<? super Operation<T>> to,
+          final ODataBatchableRequest request, final Function<ODataResponse, T> result) {
+
+    final Operation<T> operation = new Operation<T>(request, result);
+    to.add(operation);
+    return operation.future;
+  }
+
+  private ODataBatchableRequest createRequest(final URI entitySetURI, final ClientEntity entity) {
+    final ODataEntityCreateRequest<ClientEntity> request =
+            client.getCUDRequestFactory().getEntityCreateRequest(entitySetURI, entity);
+    request.setAccept(ContentType.JSON.toContentTypeString());
+    return request;
+  }
+
+  private ODataBatchableRequest updateRequest(final URI entityURI, final ClientEntity changes) {
+    final ODataEntityUpdateRequest<ClientEntity> request =
+            client.getCUDRequestFactory().getEntityUpdateRequest(entityURI, UpdateType.PATCH, changes);
+    request.setAccept(ContentType.JSON.toContentTypeString());
+    return request;
+  }
+
+  private ODataBatchableRequest deleteRequest(final URI entityURI) {
+    final ODataDeleteRequest request = client.getCUDRequestFactory().getDeleteRequest(entityURI);
+    request.setAccept(ContentType.JSON.toContentTypeString());
+    return request;
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <T> T body(final ODataResponse response) {
+    return ((ODataRetrieveResponse<T>) response).getBody();
+  }
+
+  @SuppressWarnings("unchecked")
+  private static ClientEntity createdEntity(final ODataResponse response) {
+    return ((ODataEntityCreateResponse<ClientEntity>) response).getBody();
+  }
+
+  /**
+   * @return the exception for an error response, or null if successful
+   */
+  private static RuntimeException error(final ODataResponse response) {
+    final int code = response.getStatusCode();
+    if (code < 400) {
+      return null;
+    }
+    final StatusLine status = new BasicStatusLine(HttpVersion.HTTP_1_1, code, response.getStatusMessage());
+    return code >= 500 ? new ODataServerErrorException(status) : new ODataClientErrorException(status);
+  }
+}
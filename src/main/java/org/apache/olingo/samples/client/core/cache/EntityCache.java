@@ -0,0 +1,360 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.olingo.samples.client.core.cache;
+
+import java.net.URI;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.ToLongFunction;
+import org.apache.http.HttpStatus;
+import org.apache.olingo.client.api.ODataClient;
+import org.apache.olingo.client.api.communication.ODataClientErrorException;
+import org.apache.olingo.client.api.communication.request.retrieve.ODataEntityRequest;
+import org.apache.olingo.client.api.communication.response.ODataRetrieveResponse;
+import org.apache.olingo.client.api.domain.ClientEntity;
+import org.apache.olingo.client.api.domain.ClientProperty;
+import org.apache.olingo.commons.api.format.ContentType;
+
+/**
+ * Read-through cache of single entities, by entity URI (including its query options, e.g. <tt>$expand</tt>).
+ * <br/>
+ * An entity is served from the cache for the time to live; after that, it is revalidated with a conditional GET
+ * (<tt>If-None-Match</tt> with its <tt>@odata.etag</tt>), and a <tt>304 Not Modified</tt> keeps it for another time to
+ * live. Entries are evicted in least recently used order when there are too many of them, or when their estimated
+ * weight is too large. The lock is never held during requests: an entity invalidated while it is being read is not
+ * cached when that read completes, since the response may predate the change.
+ * <br/>
+ * Cached entities are shared by all callers: they must not be modified.
+ */
+public class EntityCache {
+
+  public static final int DEFAULT_MAX_ENTRIES = 1000;
+
+  public static final long DEFAULT_MAX_WEIGHT = 32L * 1024 * 1024;
+
+  public static final long DEFAULT_TTL_MILLIS = 60 * 1000L;
+
+  private static final class Entry {
+
+    private final ClientEntity entity;
+
+    private final String etag;
+
+    private final long weight;
+
+    private final long expiresAt;
+
+    private Entry(final ClientEntity entity, final String etag, final long weight, final long expiresAt) {
+      this.entity = entity;
+      this.etag = etag;
+      this.weight = weight;
+      this.expiresAt = expiresAt;
+    }
+  }
+
+  /**
+   * Reads in progress on one entity path, and how many times it was invalidated meanwhile.
+   */
+  private static final class Flight {
+
+    private int readers;
+
+    private long epoch;
+  }
+
+  private final ODataClient client;
+
+  private final int maxEntries;
+
+  private final long maxWeight;
+
+  private final long ttlMillis;
+
+  private final ReentrantLock lock = new ReentrantLock();
+
+  // access order: the eldest entry is the least recently used
+  private final LinkedHashMap<URI, Entry> entries = new LinkedHashMap<URI, Entry>(16, 0.75f, true);
+
+  // entity path to reads in progress, only while there are some
+  private final Map<String, Flight> flights = new HashMap<String, Flight>();
+
+  private long weight;
+
+  private ToLongFunction<ClientEntity> weigher = EntityCache::estimateWeight;
+
+  private final AtomicLong hits = new AtomicLong();
+
+  private final AtomicLong misses = new AtomicLong();
+
+  private final AtomicLong revalidations = new AtomicLong();
+
+  private final AtomicLong evictions = new AtomicLong();
+
+  public EntityCache(final ODataClient client) {
+    this(client, DEFAULT_MAX_ENTRIES, DEFAULT_MAX_WEIGHT, DEFAULT_TTL_MILLIS);
+  }
+
+  /**
+   * @param client OData client
+   * @param maxEntries maximum number of entities
+   * @param maxWeight maximum total weight of the entities, see {@link #setWeigher(ToLongFunction)}
+   * @param ttlMillis time an entity is used without revalidation
+   */
+  public EntityCache(final ODataClient client, final int maxEntries, final long maxWeight, final long ttlMillis) {
+    this.client = client;
+    this.maxEntries = maxEntries;
+    this.maxWeight = maxWeight;
+    this.ttlMillis = ttlMillis;
+  }
+
+  /**
+   * @param weigher estimated size of an entity, in bytes; by default from the length of its property values
+   * @return this cache
+   */
+  public EntityCache setWeigher(final ToLongFunction<ClientEntity> weigher) {
+    this.weigher = weigher;
+    return this;
+  }
+
+  /**
+   * @param uri entity URI
+   * @return the entity, from the cache if fresh or not modified
+   */
+  public ClientEntity read(final URI uri) {
+    final URI key = uri.normalize();
+    final Entry cached = get(key);
+    if (cached != null && System.currentTimeMillis() < cached.expiresAt) {
+      hits.incrementAndGet();
+      return cached.entity;
+    }
+
+    final String path = path(key);
+    final long epoch = begin(path);
+    try {
+      final ODataEntityRequest<ClientEntity> request = client.getRetrieveRequestFactory().getEntityRequest(key);
+      request.setAccept(ContentType.JSON.toContentTypeString());
+      if (cached != null && cached.etag != null) {
+        request.setIfNoneMatch(cached.etag);
+      }
+      final ODataRetrieveResponse<ClientEntity> response;
+      try {
+        response = request.execute();
+      } catch (ODataClientErrorException e) {
+        if (e.getStatusLine().getStatusCode() == HttpStatus.SC_NOT_FOUND) {
+          invalidate(key);
+        }
+        throw e;
+      }
+      try {
+        if (response.getStatusCode() == HttpStatus.SC_NOT_MODIFIED && cached != null) {
+          revalidations.incrementAndGet();
+          put(key, new Entry(cached.entity, cached.etag, cached.weight, System.currentTimeMillis() + ttlMillis),
+                  path, epoch);
+          return cached.entity;
+        }
+        final ClientEntity entity = response.getBody();
+        misses.incrementAndGet();
+        final String etag = entity.getETag() == null ? response.getETag() : entity.getETag();
+        put(key, new Entry(entity, etag, weigher.applyAsLong(entity), System.currentTimeMillis() + ttlMillis),
+                path, epoch);
+        return entity;
+      } finally {
+        response.close();
+      }
+    } finally {
+      end(path);
+    }
+  }
+
+  private long begin(final String path) {
+    lock.lock();
+    try {
+      Flight flight = flights.get(path);
+      if (flight == null) {
+        flight = new Flight();
+        flights.put(path, flight);
+      }
+      flight.readers++;
+      return flight.epoch;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private void end(final String path) {
+    lock.lock();
+    try {
+      final Flight flight = flights.get(path);
+      if (--flight.readers == 0) {
+        flights.remove(path);
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private Entry get(final URI key) {
+    lock.lock();
+    try {
+      return entries.get(key);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private void put(final URI key, final Entry entry, final String path, final long epoch) {
+    if (entry.weight > maxWeight) {
+      return;
+    }
+    lock.lock();
+    try {
+      if (flights.get(path).epoch != epoch) {
+        // invalidated during the request
+        return;
+      }
+      final Entry previous = entries.put(key, entry);
+      weight += entry.weight - (previous == null ? 0 : previous.weight);
+      final Iterator<Entry> eldest = entries.values().iterator();
+      while ((entries.size() > maxEntries || weight > maxWeight) && eldest.hasNext()) {
+        weight -= eldest.next().weight;
+        eldest.remove();
+        evictions.incrementAndGet();
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Removes the given entity, whatever its query options, e.g. after it was updated or deleted; reads of it in
+   * progress will not be cached.
+   *
+   * @param uri entity URI
+   */
+  public void invalidate(final URI uri) {
+    final String path = path(uri.normalize());
+    lock.lock();
+    try {
+      final Flight flight = flights.get(path);
+      if (flight != null) {
+        flight.epoch++;
+      }
+      for (Iterator<Map.Entry<URI, Entry>> i = entries.entrySet().iterator(); i.hasNext();) {
+        final Map.Entry<URI, Entry> entry = i.next();
+        if (path(entry.getKey()).equals(path)) {
+          weight -= entry.getValue().weight;
+          i.remove();
+        }
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private static String path(final URI uri) {
+    return uri.getRawAuthority() + uri.getRawPath();
+  }
+
+  public void invalidateAll() {
+    lock.lock();
+    try {
+      for (Flight flight : flights.values()) {
+        flight.epoch++;
+      }
+      entries.clear();
+      weight = 0;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Rough size of an entity in memory: property names and values as text, plus some overhead per property.
+   *
+   * @param entity entity
+   * @return estimated size in bytes
+   */
+  public static long estimateWeight(final ClientEntity entity) {
+    long estimate = 256;
+    for (ClientProperty property : entity.getProperties()) {
+      estimate += 96 + 2L * property.getName().length();
+      if (property.hasPrimitiveValue()) {
+        estimate += 2L * String.valueOf(property.getPrimitiveValue()).length();
+      } else if (!property.hasNullValue()) {
+        estimate += 1024;
+      }
+    }
+    return estimate;
+  }
+
+  public int size() {
+    lock.lock();
+    try {
+      return entries.size();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  public long getWeight() {
+    lock.lock();
+    try {
+      return weight;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * @return lookups served from the cache without any request
+   */
+  public long getHitCount() {
+    return hits.get();
+  }
+
+  /**
+   * @return lookups which read the entity
+   */
+  public long getMissCount() {
+    return misses.get();
+  }
+
+  /**
+   * @return lookups served from the cache after a <tt>304 Not Modified</tt>
+   */
+  public long getRevalidationCount() {
+    return revalidations.get();
+  }
+
+  public long getEvictionCount() {
+    return evictions.get();
+  }
+
+  @Override
+  public String toString() {
+    final long lookups = hits.get() + misses.get() + revalidations.get();
+    return "EntityCache{size=" + size() + ", weight=" + getWeight() + ", hits=" + hits + ", misses=" + misses
+            + ", revalidations=" + revalidations + ", evictions=" + evictions
+            + ", hitRatio=" + (lookups == 0 ? 0 : (hits.get() + revalidations.get()) * 100 / lookups) + "%}";
+  }
+}
@@ -0,0 +1,104 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.olingo.samples.client.core.concurrent;
+
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs at most a given number of tasks at the same time on an unbounded executor, e.g. one starting a virtual thread
+ * per task.
+ * <br/>
+ * Submitting never blocks: each task waits for its permit on its own thread, which is cheap as long as threads are
+ * virtual. Permits are held by a {@link Semaphore}, so a waiting virtual thread never pins its carrier.
+ */
+public class BoundedExecutorService extends AbstractExecutorService {
+
+  private final ExecutorService delegate;
+
+  private final Semaphore permits;
+
+  /**
+   * @param delegate executor actually running the tasks
+   * @param maxConcurrency maximum number of tasks running at the same time
+   */
+  public BoundedExecutorService(final ExecutorService delegate, final int maxConcurrency) {
+    this.delegate = delegate;
+    this.permits = new Semaphore(maxConcurrency);
+  }
+
+  /**
+   * @return number of tasks that could start right now
+   */
+  public int getAvailablePermits() {
+    return permits.availablePermits();
+  }
+
+  /**
+   * @return estimate of the number of tasks waiting for a permit
+   */
+  public int getQueueLength() {
+    return permits.getQueueLength();
+  }
+
+  @Override
+  public void execute(final Runnable command) {
+    delegate.execute(() -> {
+      try {
+        permits.acquire();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return;
+      }
+      try {
+        command.run();
+      } finally {
+        permits.release();
+      }
+    });
+  }
+
+  @Override
+  public void shutdown() {
+    delegate.shutdown();
+  }
+
+  @Override
+  public List<Runnable> shutdownNow() {
+    return delegate.shutdownNow();
+  }
+
+  @Override
+  public boolean isShutdown() {
+    return delegate.isShutdown();
+  }
+
+  @Override
+  public boolean isTerminated() {
+    return delegate.isTerminated();
+  }
+
+  @Override
+  public boolean awaitTermination(final long timeout, final TimeUnit unit) throws InterruptedException {
+    return delegate.awaitTermination(timeout, unit);
+  }
+}
@@ -0,0 +1,167 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.olingo.samples.client.core.concurrent;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces concurrent identical calls: while a call for a key is in flight, other callers with the same key wait for
+ * its result instead of making their own call, e.g. for GET requests keyed by method, URI and <tt>Accept</tt> header.
+ * <br/>
+ * A caller joins an in-flight call only if it started less than <tt>maxShareMillis</tt> ago and has fewer than
+ * <tt>maxWaiters</tt> waiters; otherwise it makes a new call, which later callers join. Nothing is kept once a call
+ * completed: this is not a cache. Results, and failures, are shared by all waiters: results must not be modified.
+ *
+ * @param <K> key of identical calls
+ * @param <V> result
+ */
+public class SingleFlight<K, V> {
+
+  public static final long DEFAULT_MAX_SHARE_MILLIS = 5000;
+
+  public static final int DEFAULT_MAX_WAITERS = Integer.MAX_VALUE;
+
+  private static final class Call<V> {
+
+    private final CompletableFuture<V> future = new CompletableFuture<V>();
+
+    private final long startedAt = System.currentTimeMillis();
+
+    private final AtomicInteger waiters = new AtomicInteger();
+  }
+
+  private final ConcurrentMap<K, Call<V>> calls = new ConcurrentHashMap<K, Call<V>>();
+
+  private final long maxShareMillis;
+
+  private final int maxWaiters;
+
+  private final AtomicLong executions = new AtomicLong();
+
+  private final AtomicLong shared = new AtomicLong();
+
+  public SingleFlight() {
+    this(DEFAULT_MAX_SHARE_MILLIS, DEFAULT_MAX_WAITERS);
+  }
+
+  /**
+   * @param maxShareMillis age of an in-flight call beyond which new callers do not join it any more
+   * @param maxWaiters maximum number of callers joining one call
+   */
+  public SingleFlight(final long maxShareMillis, final int maxWaiters) {
+    this.maxShareMillis = maxShareMillis;
+    this.maxWaiters = maxWaiters;
+  }
+
+  /**
+   * @param key key of identical calls
+   * @param call makes the call, on the current thread, unless an identical one is in flight
+   * @return result of this call or of the identical one
+   */
+  public V execute(final K key, final Supplier<V> call) {
+    while (true) {
+      final Call<V> inFlight = calls.get(key);
+      if (inFlight != null && join(inFlight)) {
+        shared.incrementAndGet();
+        return await(inFlight.future);
+      }
+
+      final Call<V> own = new Call<V>();
+      final boolean registered = inFlight == null
+              ? calls.putIfAbsent(key, own) == null
+              : calls.replace(key, inFlight, own);
+      if (registered) {
+        executions.incrementAndGet();
+        try {
+          final V result = call.get();
+          own.future.complete(result);
+          return result;
+        } catch (RuntimeException | Error e) {
+          own.future.completeExceptionally(e);
+          throw e;
+        } finally {
+          calls.remove(key, own);
+        }
+      }
+      // lost the race against another caller: try to join its call
+    }
+  }
+
+  private boolean join(final Call<V> call) {
+    if (System.currentTimeMillis() - call.startedAt >= maxShareMillis) {
+      return false;
+    }
+    while (true) {
+      final int waiters = call.waiters.get();
+      if (waiters >= maxWaiters) {
+        return false;
+      }
+      if (call.waiters.compareAndSet(waiters, waiters + 1)) {
+        return true;
+      }
+    }
+  }
+
+  private static <V> V await(final CompletableFuture<V> future) {
+    try {
+      return future.join();
+    } catch (CompletionException e) {
+      // rethrown as the caller making the call saw it
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      if (e.getCause() instanceof Error) {
+        throw (Error) e.getCause();
+      }
+      throw e;
+    }
+  }
+
+  /**
+   * @return number of calls in flight
+   */
+  public int getInFlight() {
+    return calls.size();
+  }
+
+  /**
+   * @return number of calls actually made
+   */
+  public long getExecutionCount() {
+    return executions.get();
+  }
+
+  /**
+   * @return number of callers served by another caller's call
+   */
+  public long getSharedCount() {
+    return shared.get();
+  }
+
+  @Override
+  public String toString() {
+    return "SingleFlight{executions=" + executions + ", shared=" + shared + ", inFlight=" + getInFlight() + '}';
+  }
+}
@@ -0,0 +1,91 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.olingo.samples.client.core.concurrent;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Creates executors running blocking OData calls (e.g. <tt>request.execute()</tt>) on virtual threads when the JVM
+ * supports them (JDK 21+), and on a fixed pool of platform threads otherwise.
+ * <br/>
+ * This is the Java 8 variant, looking virtual threads up by reflection; the multi-release jar built with the
+ * <tt>jdk21</tt> profile replaces it with one calling the API directly.
+ */
+public final class VirtualThreads {
+
+  private static final boolean SUPPORTED = lookupOfVirtual() != null;
+
+  private VirtualThreads() {
+    // no instances
+  }
+
+  private static Method lookupOfVirtual() {
+    try {
+      return Thread.class.getMethod("ofVirtual");
+    } catch (NoSuchMethodException e) {
+      return null;
+    }
+  }
+
+  /**
+   * @return whether virtual threads are available
+   */
+  public static boolean isSupported() {
+    return SUPPORTED;
+  }
+
+  /**
+   * @param name thread name prefix
+   * @param maxConcurrency maximum number of tasks running at the same time
+   * @return new executor
+   */
+  public static ExecutorService newBoundedExecutor(final String name, final int maxConcurrency) {
+    if (SUPPORTED) {
+      try {
+        // Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(name, 0).factory())
+        final Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+        Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+        builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, name, 0L);
+        final ThreadFactory factory = (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+        final Method perTask = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+        return new BoundedExecutorService((ExecutorService) perTask.invoke(null, factory), maxConcurrency);
+      } catch (ReflectiveOperationException e) {
+        // fall back to platform threads
+      }
+    }
+    return Executors.newFixedThreadPool(maxConcurrency, daemon(name));
+  }
+
+  /**
+   * @param prefix thread name prefix, followed by a sequence number
+   * @return factory of platform threads which do not keep the JVM running
+   */
+  public static ThreadFactory daemon(final String prefix) {
+    final AtomicInteger count = new AtomicInteger();
+    return runnable -> {
+      final Thread thread = new Thread(runnable, prefix + count.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    };
+  }
+}
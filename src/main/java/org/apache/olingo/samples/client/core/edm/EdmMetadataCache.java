@@ -0,0 +1,257 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.olingo.samples.client.core.edm;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.Properties;
+import org.apache.commons.io.IOUtils;
+import org.apache.olingo.client.api.ODataClient;
+import org.apache.olingo.client.api.communication.request.retrieve.ODataRawRequest;
+import org.apache.olingo.client.api.communication.response.ODataRawResponse;
+import org.apache.olingo.commons.api.edm.Edm;
+import org.apache.olingo.commons.api.http.HttpHeader;
+import org.apache.olingo.commons.core.edm.EdmProviderImpl;
+
+/**
+ * Keeps the <tt>$metadata</tt> document of each service on disk, together with its <tt>ETag</tt> and
+ * <tt>Last-Modified</tt> validators and a {@link MetadataSnapshot} of it.
+ * <br/>
+ * Within the revalidation window, the Edm is served from the snapshot without any request; afterwards, a conditional
+ * GET (<tt>If-None-Match</tt> / <tt>If-Modified-Since</tt>) answered with <tt>304 Not Modified</tt> keeps using it, and
+ * only a changed document is downloaded and split again. When the service cannot be reached, a stale snapshot is used
+ * rather than failing.
+ */
+public class EdmMetadataCache {
+
+  public static final long DEFAULT_REVALIDATE_AFTER_MILLIS = 60 * 60 * 1000L;
+
+  private static final String ACCEPT = "application/xml";
+
+  private static final String SERVICE = "service";
+
+  private static final String ETAG = "etag";
+
+  private static final String LAST_MODIFIED = "lastModified";
+
+  private static final String VALIDATED = "validated";
+
+  private final ODataClient client;
+
+  private final Path directory;
+
+  private long revalidateAfterMillis = DEFAULT_REVALIDATE_AFTER_MILLIS;
+
+  /**
+   * @param client OData client, for the <tt>$metadata</tt> requests and for parsing
+   * @param directory cache directory, shared by all services
+   */
+  public EdmMetadataCache(final ODataClient client, final Path directory) {
+    this.client = client;
+    this.directory = directory;
+  }
+
+  /**
+   * @param revalidateAfterMillis how long a cached document is used without asking the service; 0 to always revalidate
+   * @return this cache
+   */
+  public EdmMetadataCache setRevalidateAfter(final long revalidateAfterMillis) {
+    this.revalidateAfterMillis = revalidateAfterMillis;
+    return this;
+  }
+
+  /**
+   * @param serviceUrl service root URL
+   * @return Edm of the service, parsing its elements lazily
+   * @throws IOException if the metadata can neither be fetched nor be found in the cache
+   */
+  public Edm getEdm(final String serviceUrl) throws IOException {
+    return new EdmProviderImpl(new SnapshotEdmProvider(client, getSnapshot(serviceUrl)));
+  }
+
+  /**
+   * @param serviceUrl service root URL
+   * @return snapshot of the <tt>$metadata</tt> document of the service, revalidated if due
+   * @throws IOException if the metadata can neither be fetched nor be found in the cache
+   */
+  public MetadataSnapshot getSnapshot(final String serviceUrl) throws IOException {
+    final String name = fileName(serviceUrl);
+    final Path validatorsFile = directory.resolve(name + ".properties");
+    final Path documentFile = directory.resolve(name + ".xml");
+    final Path snapshotFile = directory.resolve(name + ".snapshot");
+
+    final Properties validators = load(validatorsFile);
+    MetadataSnapshot snapshot = validators == null ? null : load(snapshotFile, documentFile);
+    if (snapshot != null && System.currentTimeMillis()
+            - Long.parseLong(validators.getProperty(VALIDATED, "0")) < revalidateAfterMillis) {
+      return snapshot;
+    }
+
+    final URI uri = client.newURIBuilder(serviceUrl).appendMetadataSegment().build();
+    final ODataRawRequest request = client.getRetrieveRequestFactory().getRawRequest(uri);
+    request.setAccept(ACCEPT);
+    if (snapshot != null) {
+      if (validators.getProperty(ETAG) != null) {
+        request.setIfNoneMatch(validators.getProperty(ETAG));
+      }
+      if (validators.getProperty(LAST_MODIFIED) != null) {
+        request.addCustomHeader(HttpHeader.IF_MODIFIED_SINCE, validators.getProperty(LAST_MODIFIED));
+      }
+    }
+
+    final ODataRawResponse response;
+    try {
+      response = request.execute();
+    } catch (RuntimeException e) {
+      if (snapshot == null) {
+        throw new IOException("Could not read metadata of " + serviceUrl, e);
+      }
+      System.err.println("Using cached metadata of " + serviceUrl + ", revalidation failed: " + e.getMessage());
+      return snapshot;
+    }
+
+    final Properties updated = new Properties();
+    updated.setProperty(SERVICE, serviceUrl);
+    try {
+      if (response.getStatusCode() == 304 && snapshot != null) {
+        copy(validators, updated, ETAG);
+        copy(validators, updated, LAST_MODIFIED);
+      } else {
+        final byte[] document;
+        InputStream input = null;
+        try {
+          input = response.getRawResponse();
+          document = IOUtils.toByteArray(input);
+        } finally {
+          IOUtils.closeQuietly(input);
+        }
+        snapshot = MetadataSnapshot.parse(document);
+        write(documentFile, document);
+        snapshot.write(snapshotFile);
+        if (response.getETag() != null) {
+          updated.setProperty(ETAG, response.getETag());
+        }
+        final String lastModified = header(response, HttpHeader.LAST_MODIFIED);
+        if (lastModified != null) {
+          updated.setProperty(LAST_MODIFIED, lastModified);
+        }
+      }
+    } finally {
+      response.close();
+    }
+    updated.setProperty(VALIDATED, String.valueOf(System.currentTimeMillis()));
+    store(validatorsFile, updated);
+    return snapshot;
+  }
+
+  /**
+   * @return the snapshot, rebuilt from the document if missing or unreadable; null if neither can be read
+   */
+  private static MetadataSnapshot load(final Path snapshotFile, final Path documentFile) {
+    if (Files.isRegularFile(snapshotFile)) {
+      try {
+        return MetadataSnapshot.read(snapshotFile);
+      } catch (IOException | RuntimeException e) {
+        System.err.println("Ignoring unreadable metadata snapshot " + snapshotFile + ": " + e.getMessage());
+      }
+    }
+    if (Files.isRegularFile(documentFile)) {
+      try {
+        final MetadataSnapshot snapshot = MetadataSnapshot.parse(Files.readAllBytes(documentFile));
+        snapshot.write(snapshotFile);
+        return snapshot;
+      } catch (IOException e) {
+        System.err.println("Ignoring unreadable metadata document " + documentFile + ": " + e.getMessage());
+      }
+    }
+    return null;
+  }
+
+  private static Properties load(final Path file) {
+    if (!Files.isRegularFile(file)) {
+      return null;
+    }
+    final Properties properties = new Properties();
+    try (Reader reader = Files.newBufferedReader(file, StandardCharsets.ISO_8859_1)) {
+      properties.load(reader);
+      return properties;
+    } catch (IOException e) {
+      System.err.println("Ignoring unreadable metadata validators " + file + ": " + e.getMessage());
+      return null;
+    }
+  }
+
+  private static void store(final Path file, final Properties properties) {
+    try {
+      Files.createDirectories(file.toAbsolutePath().getParent());
+      final Path temp = Files.createTempFile(file.toAbsolutePath().getParent(), file.getFileName().toString(), ".tmp");
+      try (OutputStream output = Files.newOutputStream(temp)) {
+        properties.store(output, null);
+      }
+      Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException e) {
+      // the cache only speeds up the next start
+      System.err.println("Could not write metadata validators " + file + ": " + e.getMessage());
+    }
+  }
+
+  private static void write(final Path file, final byte[] content) throws IOException {
+    Files.createDirectories(file.toAbsolutePath().getParent());
+    final Path temp = Files.createTempFile(file.toAbsolutePath().getParent(), file.getFileName().toString(), ".tmp");
+    Files.write(temp, content);
+    Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  private static void copy(final Properties from, final Properties to, final String key) {
+    if (from.getProperty(key) != null) {
+      to.setProperty(key, from.getProperty(key));
+    }
+  }
+
+  private static String header(final ODataRawResponse response, final String name) {
+    final Collection<String> values = response.getHeader(name);
+    return values == null || values.isEmpty() ? null : values.iterator().next();
+  }
+
+  /**
+   * @return file name for the given service, without extension
+   */
+  private static String fileName(final String serviceUrl) {
+    try {
+      final byte[] digest = MessageDigest.getInstance("SHA-256").digest(serviceUrl.getBytes(StandardCharsets.UTF_8));
+      final StringBuilder name = new StringBuilder("metadata-");
+      for (int i = 0; i < 12; i++) {
+        name.append(String.format("%02x", digest[i]));
+      }
+      return name.toString();
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+}
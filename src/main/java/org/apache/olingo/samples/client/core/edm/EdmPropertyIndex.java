@@ -0,0 +1,86 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.olingo.samples.client.core.edm;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.apache.olingo.commons.api.edm.Edm;
+import org.apache.olingo.commons.api.edm.EdmComplexType;
+import org.apache.olingo.commons.api.edm.EdmEntityType;
+import org.apache.olingo.commons.api.edm.EdmSchema;
+import org.apache.olingo.commons.api.edm.EdmStructuredType;
+import org.apache.olingo.commons.api.edm.FullQualifiedName;
+
+/**
+ * Immutable {@link TypeDescriptor}s of all entity and complex types of an Edm, built once, by type name.
+ * <br/>
+ * Building it walks all schemas: with a lazily parsed Edm (see {@link EdmMetadataCache}), prefer
+ * {@link TypeDescriptor#of(EdmStructuredType)} for the few types actually used.
+ */
+public final class EdmPropertyIndex {
+
+  private final Map<FullQualifiedName, TypeDescriptor> types;
+
+  private EdmPropertyIndex(final Map<FullQualifiedName, TypeDescriptor> types) {
+    this.types = Collections.unmodifiableMap(types);
+  }
+
+  /**
+   * @param edm Edm
+   * @return index of all its entity and complex types
+   */
+  public static EdmPropertyIndex of(final Edm edm) {
+    final Map<FullQualifiedName, TypeDescriptor> types = new LinkedHashMap<FullQualifiedName, TypeDescriptor>();
+    for (EdmSchema schema : edm.getSchemas()) {
+      for (EdmEntityType entityType : schema.getEntityTypes()) {
+        types.put(entityType.getFullQualifiedName(), TypeDescriptor.of(entityType));
+      }
+      for (EdmComplexType complexType : schema.getComplexTypes()) {
+        types.put(complexType.getFullQualifiedName(), TypeDescriptor.of(complexType));
+      }
+    }
+    return new EdmPropertyIndex(types);
+  }
+
+  /**
+   * @param typeName entity or complex type name, with namespace (not alias)
+   * @return descriptor, or null if there is no such type
+   */
+  public TypeDescriptor get(final FullQualifiedName typeName) {
+    return types.get(typeName);
+  }
+
+  /**
+   * @param type entity or complex type
+   * @return descriptor, or null if the type is not from the indexed Edm
+   */
+  public TypeDescriptor get(final EdmStructuredType type) {
+    return types.get(type.getFullQualifiedName());
+  }
+
+  public Collection<TypeDescriptor> getTypes() {
+    return types.values();
+  }
+
+  public int size() {
+    return types.size();
+  }
+}
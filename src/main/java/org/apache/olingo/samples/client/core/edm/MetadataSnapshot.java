@@ -0,0 +1,459 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.olingo.samples.client.core.edm;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+import javax.xml.stream.XMLEventReader;
+import javax.xml.stream.XMLEventWriter;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLOutputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.events.Attribute;
+import javax.xml.stream.events.Namespace;
+import javax.xml.stream.events.StartElement;
+import javax.xml.stream.events.XMLEvent;
+import javax.xml.namespace.QName;
+
+/**
+ * A CSDL <tt>$metadata</tt> document split into its top level schema elements (entity types, complex types, entity
+ * container, ...), each one compressed on its own, with an index by kind and name.
+ * <br/>
+ * Reading a snapshot only reads that index: a single element is inflated, and parsed by Olingo, when first asked for
+ * (see {@link SnapshotEdmProvider}), wrapped in a minimal document re-declaring its schema.
+ */
+public final class MetadataSnapshot {
+
+  /**
+   * Top level schema elements, by CSDL element name.
+   */
+  public enum Kind {
+    ENTITY_TYPE("EntityType"),
+    COMPLEX_TYPE("ComplexType"),
+    ENUM_TYPE("EnumType"),
+    TYPE_DEFINITION("TypeDefinition"),
+    ACTION("Action"),
+    FUNCTION("Function"),
+    TERM("Term"),
+    ENTITY_CONTAINER("EntityContainer"),
+    ANNOTATIONS("Annotations"),
+    OTHER(null);
+
+    private final String element;
+
+    Kind(final String element) {
+      this.element = element;
+    }
+
+    static Kind of(final String element) {
+      for (Kind kind : values()) {
+        if (element.equals(kind.element)) {
+          return kind;
+        }
+      }
+      return OTHER;
+    }
+  }
+
+  private static final class Entry {
+
+    private final Kind kind;
+
+    private final String name;
+
+    private final int offset;
+
+    private final int length;
+
+    private final int rawLength;
+
+    private Entry(final Kind kind, final String name, final int offset, final int length, final int rawLength) {
+      this.kind = kind;
+      this.name = name;
+      this.offset = offset;
+      this.length = length;
+      this.rawLength = rawLength;
+    }
+  }
+
+  /**
+   * Index of one schema.
+   */
+  public static final class Schema {
+
+    private final String namespace;
+
+    private final String alias;
+
+    private final String prefix;
+
+    private final Map<String, String> namespaces;
+
+    private final List<Entry> entries = new ArrayList<Entry>();
+
+    private Schema(final String namespace, final String alias, final String prefix,
+            final Map<String, String> namespaces) {
+
+      this.namespace = namespace;
+      this.alias = alias;
+      this.prefix = prefix;
+      this.namespaces = namespaces;
+    }
+
+    public String getNamespace() {
+      return namespace;
+    }
+
+    /**
+     * @return alias, or null if none
+     */
+    public String getAlias() {
+      return alias;
+    }
+
+    /**
+     * @param kind element kind
+     * @return names of the elements of the given kind, e.g. all entity types
+     */
+    public List<String> getNames(final Kind kind) {
+      final List<String> names = new ArrayList<String>();
+      for (Entry entry : entries) {
+        if (entry.kind == kind && !names.contains(entry.name)) {
+          names.add(entry.name);
+        }
+      }
+      return names;
+    }
+
+    private List<Entry> find(final Kind kind, final String name) {
+      final List<Entry> found = new ArrayList<Entry>(1);
+      for (Entry entry : entries) {
+        if (entry.kind == kind && (name == null || name.equals(entry.name))) {
+          found.add(entry);
+        }
+      }
+      return found;
+    }
+  }
+
+  private static final int MAGIC = 0x4F444D53;
+
+  private static final int VERSION = 1;
+
+  private static final String EDMX = "http://docs.oasis-open.org/odata/ns/edmx";
+
+  private final String version;
+
+  private final Map<String, Schema> schemas;
+
+  private final byte[] data;
+
+  private MetadataSnapshot(final String version, final Map<String, Schema> schemas, final byte[] data) {
+    this.version = version;
+    this.schemas = schemas;
+    this.data = data;
+  }
+
+  /**
+   * Splits a CSDL XML document.
+   *
+   * @param document <tt>$metadata</tt> document
+   * @return snapshot
+   * @throws IOException if the document is not well-formed XML
+   */
+  public static MetadataSnapshot parse(final byte[] document) throws IOException {
+    final XMLInputFactory inputFactory = XMLInputFactory.newInstance();
+    inputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+    final XMLOutputFactory outputFactory = XMLOutputFactory.newInstance();
+    final Map<String, Schema> schemas = new LinkedHashMap<String, Schema>();
+    final ByteArrayOutputStream data = new ByteArrayOutputStream(document.length / 4);
+    final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+    String version = "4.0";
+    try {
+      final XMLEventReader reader = inputFactory.createXMLEventReader(new ByteArrayInputStream(document));
+      Schema schema = null;
+      int depth = 0;
+      while (reader.hasNext()) {
+        final XMLEvent event = reader.nextEvent();
+        if (event.isStartElement()) {
+          final StartElement element = event.asStartElement();
+          depth++;
+          if (depth == 1) {
+            version = attribute(element, "Version", version);
+          } else if (depth == 3 && "Schema".equals(element.getName().getLocalPart())) {
+            final Map<String, String> namespaces = new LinkedHashMap<String, String>();
+            for (Iterator<?> declared = element.getNamespaces(); declared.hasNext();) {
+              final Namespace namespace = (Namespace) declared.next();
+              namespaces.put(namespace.getPrefix(), namespace.getNamespaceURI());
+            }
+            // when declared on the Edmx element instead
+            if (!namespaces.containsKey(element.getName().getPrefix())) {
+              namespaces.put(element.getName().getPrefix(), element.getName().getNamespaceURI());
+            }
+            schema = new Schema(attribute(element, "Namespace", null), attribute(element, "Alias", null),
+                    element.getName().getPrefix(), namespaces);
+            schemas.put(schema.namespace, schema);
+          } else if (depth == 4 && schema != null) {
+            final Kind kind = Kind.of(element.getName().getLocalPart());
+            final byte[] fragment = copy(element, reader, outputFactory).getBytes(StandardCharsets.UTF_8);
+            depth--;
+            final int offset = data.size();
+            deflate(deflater, fragment, data);
+            schema.entries.add(new Entry(kind,
+                    attribute(element, kind == Kind.ANNOTATIONS ? "Target" : "Name", ""),
+                    offset, data.size() - offset, fragment.length));
+          }
+        } else if (event.isEndElement()) {
+          if (depth == 3) {
+            schema = null;
+          }
+          depth--;
+        }
+      }
+      reader.close();
+    } catch (XMLStreamException e) {
+      throw new IOException("Invalid metadata document: " + e.getMessage(), e);
+    } finally {
+      deflater.end();
+    }
+    if (schemas.isEmpty()) {
+      throw new IOException("No schema in metadata document");
+    }
+    return new MetadataSnapshot(version, schemas, data.toByteArray());
+  }
+
+  private static String attribute(final StartElement element, final String name, final String defaultValue) {
+    final Attribute attribute = element.getAttributeByName(new QName(name));
+    return attribute == null ? defaultValue : attribute.getValue();
+  }
+
+  /**
+   * Copies the given element, up to its end, as XML text.
+   */
+  private static String copy(final StartElement element, final XMLEventReader reader,
+          final XMLOutputFactory outputFactory) throws XMLStreamException {
+
+    final StringWriter text = new StringWriter();
+    final XMLEventWriter writer = outputFactory.createXMLEventWriter(text);
+    writer.add(element);
+    int depth = 1;
+    while (depth > 0) {
+      final XMLEvent event = reader.nextEvent();
+      if (event.isStartElement()) {
+        depth++;
+      } else if (event.isEndElement()) {
+        depth--;
+      }
+      writer.add(event);
+    }
+    writer.close();
+    return text.toString();
+  }
+
+  private static void deflate(final Deflater deflater, final byte[] input, final ByteArrayOutputStream output) {
+    final byte[] buffer = new byte[8192];
+    deflater.reset();
+    deflater.setInput(input);
+    deflater.finish();
+    while (!deflater.finished()) {
+      output.write(buffer, 0, deflater.deflate(buffer));
+    }
+  }
+
+  /**
+   * @param file snapshot file, as written by {@link #write(Path)}
+   * @return snapshot
+   * @throws IOException if the file cannot be read, or is not a snapshot of this version
+   */
+  public static MetadataSnapshot read(final Path file) throws IOException {
+    final DataInputStream input = new DataInputStream(new ByteArrayInputStream(Files.readAllBytes(file)));
+    if (input.readInt() != MAGIC || input.readInt() != VERSION) {
+      throw new IOException("Not a metadata snapshot: " + file);
+    }
+    final String version = input.readUTF();
+    final Map<String, Schema> schemas = new LinkedHashMap<String, Schema>();
+    for (int i = input.readInt(); i > 0; i--) {
+      final String namespace = input.readUTF();
+      final String alias = input.readUTF();
+      final String prefix = input.readUTF();
+      final Map<String, String> namespaces = new LinkedHashMap<String, String>();
+      for (int j = input.readInt(); j > 0; j--) {
+        namespaces.put(input.readUTF(), input.readUTF());
+      }
+      final Schema schema = new Schema(namespace, alias.isEmpty() ? null : alias, prefix, namespaces);
+      for (int j = input.readInt(); j > 0; j--) {
+        schema.entries.add(new Entry(Kind.values()[input.readByte()], input.readUTF(),
+                input.readInt(), input.readInt(), input.readInt()));
+      }
+      schemas.put(namespace, schema);
+    }
+    final byte[] data = new byte[input.readInt()];
+    input.readFully(data);
+    return new MetadataSnapshot(version, schemas, data);
+  }
+
+  /**
+   * Writes this snapshot atomically, so that concurrent readers see either the previous or the new one.
+   *
+   * @param file snapshot file
+   * @throws IOException if the file cannot be written
+   */
+  public void write(final Path file) throws IOException {
+    final ByteArrayOutputStream bytes = new ByteArrayOutputStream(data.length + 4096);
+    final DataOutputStream output = new DataOutputStream(bytes);
+    output.writeInt(MAGIC);
+    output.writeInt(VERSION);
+    output.writeUTF(version);
+    output.writeInt(schemas.size());
+    for (Schema schema : schemas.values()) {
+      output.writeUTF(schema.namespace);
+      output.writeUTF(schema.alias == null ? "" : schema.alias);
+      output.writeUTF(schema.prefix);
+      output.writeInt(schema.namespaces.size());
+      for (Map.Entry<String, String> namespace : schema.namespaces.entrySet()) {
+        output.writeUTF(namespace.getKey());
+        output.writeUTF(namespace.getValue());
+      }
+      output.writeInt(schema.entries.size());
+      for (Entry entry : schema.entries) {
+        output.writeByte(entry.kind.ordinal());
+        output.writeUTF(entry.name);
+        output.writeInt(entry.offset);
+        output.writeInt(entry.length);
+        output.writeInt(entry.rawLength);
+      }
+    }
+    output.writeInt(data.length);
+    output.write(data);
+    output.flush();
+
+    final Path directory = file.toAbsolutePath().getParent();
+    Files.createDirectories(directory);
+    final Path temp = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+    Files.write(temp, bytes.toByteArray());
+    Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  public Collection<Schema> getSchemas() {
+    return Collections.unmodifiableCollection(schemas.values());
+  }
+
+  /**
+   * @param namespaceOrAlias schema namespace or alias
+   * @return schema, or null if none
+   */
+  public Schema getSchema(final String namespaceOrAlias) {
+    final Schema schema = schemas.get(namespaceOrAlias);
+    if (schema != null) {
+      return schema;
+    }
+    for (Schema candidate : schemas.values()) {
+      if (namespaceOrAlias.equals(candidate.alias)) {
+        return candidate;
+      }
+    }
+    return null;
+  }
+
+  /**
+   * @param schema schema
+   * @param kind element kind
+   * @param name element name, or null for all elements of the given kind
+   * @return document holding only the matching elements of the given schema, or null if there is none
+   */
+  public InputStream getDocument(final Schema schema, final Kind kind, final String name) {
+    final List<Entry> entries = schema.find(kind, name);
+    return entries.isEmpty() ? null : document(schema, entries);
+  }
+
+  /**
+   * @param schema schema
+   * @return document holding the whole schema
+   */
+  public InputStream getDocument(final Schema schema) {
+    return document(schema, schema.entries);
+  }
+
+  private InputStream document(final Schema schema, final List<Entry> entries) {
+    final StringBuilder start = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?>")
+            .append("<edmx:Edmx xmlns:edmx=\"").append(EDMX).append("\" Version=\"").append(escape(version))
+            .append("\"><edmx:DataServices><").append(qualified(schema.prefix, "Schema"));
+    for (Map.Entry<String, String> namespace : schema.namespaces.entrySet()) {
+      start.append(' ').append(namespace.getKey().isEmpty() ? "xmlns" : "xmlns:" + namespace.getKey())
+              .append("=\"").append(escape(namespace.getValue())).append('"');
+    }
+    start.append(" Namespace=\"").append(escape(schema.namespace)).append('"');
+    if (schema.alias != null) {
+      start.append(" Alias=\"").append(escape(schema.alias)).append('"');
+    }
+    start.append('>');
+    final String end = "</" + qualified(schema.prefix, "Schema") + "></edmx:DataServices></edmx:Edmx>";
+
+    final ByteArrayOutputStream document = new ByteArrayOutputStream();
+    final byte[] head = start.toString().getBytes(StandardCharsets.UTF_8);
+    document.write(head, 0, head.length);
+    final Inflater inflater = new Inflater();
+    try {
+      for (Entry entry : entries) {
+        inflater.reset();
+        inflater.setInput(data, entry.offset, entry.length);
+        final byte[] fragment = new byte[entry.rawLength];
+        int inflated = 0;
+        while (inflated < fragment.length && !inflater.finished()) {
+          inflated += inflater.inflate(fragment, inflated, fragment.length - inflated);
+        }
+        document.write(fragment, 0, inflated);
+      }
+    } catch (DataFormatException e) {
+      throw new IllegalStateException("Corrupt metadata snapshot", e);
+    } finally {
+      inflater.end();
+    }
+    final byte[] tail = end.getBytes(StandardCharsets.UTF_8);
+    document.write(tail, 0, tail.length);
+    return new ByteArrayInputStream(document.toByteArray());
+  }
+
+  private static String qualified(final String prefix, final String name) {
+    return prefix == null || prefix.isEmpty() ? name : prefix + ':' + name;
+  }
+
+  private static String escape(final String value) {
+    return value.replace("&", "&amp;").replace("\"", "&quot;").replace("<", "&lt;");
+  }
+}
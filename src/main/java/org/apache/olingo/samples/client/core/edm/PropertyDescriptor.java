@@ -0,0 +1,186 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.olingo.samples.client.core.edm;
+
+import org.apache.olingo.commons.api.edm.EdmPrimitiveTypeKind;
+import org.apache.olingo.commons.api.edm.EdmProperty;
+import org.apache.olingo.commons.api.edm.EdmType;
+import org.apache.olingo.commons.api.edm.EdmTypeDefinition;
+import org.apache.olingo.commons.api.edm.FullQualifiedName;
+import org.apache.olingo.commons.api.edm.constants.EdmTypeKind;
+
+/**
+ * What is needed to handle the values of one structural property, resolved once from the Edm: its position in the
+ * owning {@link TypeDescriptor}, its type and how its values are best stored.
+ */
+public final class PropertyDescriptor {
+
+  /**
+   * How scalar values are best stored.
+   */
+  public enum Slot {
+
+    /**
+     * Integral numbers and booleans as they are; <tt>Date</tt> as epoch day, <tt>DateTimeOffset</tt> as epoch
+     * millisecond, <tt>TimeOfDay</tt> as nanosecond of day.
+     */
+    LONG,
+    /**
+     * Floating point and decimal numbers; decimals also keep their text, for exact values.
+     */
+    DOUBLE,
+    /**
+     * GUIDs, as most and least significant 64 bits.
+     */
+    GUID,
+    /**
+     * Anything else, as characters.
+     */
+    TEXT
+
+  }
+
+  private final String name;
+
+  private final int ordinal;
+
+  private final FullQualifiedName typeName;
+
+  private final EdmTypeKind typeKind;
+
+  private final EdmPrimitiveTypeKind kind;
+
+  private final Slot slot;
+
+  private final boolean nullable;
+
+  private final boolean key;
+
+  private final boolean collection;
+
+  PropertyDescriptor(final EdmProperty property, final int ordinal, final boolean key) {
+    final EdmType type = property.getType();
+    this.name = property.getName();
+    this.ordinal = ordinal;
+    this.typeName = type.getFullQualifiedName();
+    this.typeKind = type.getKind();
+    this.kind = typeKind == EdmTypeKind.PRIMITIVE
+            ? EdmPrimitiveTypeKind.valueOfFQN(typeName)
+            : typeKind == EdmTypeKind.DEFINITION
+            ? EdmPrimitiveTypeKind.valueOfFQN(((EdmTypeDefinition) type).getUnderlyingType().getFullQualifiedName())
+            : null;
+    this.collection = property.isCollection();
+    this.slot = collection ? null : slotOf(typeKind, kind);
+    this.nullable = property.isNullable();
+    this.key = key;
+  }
+
+  private static Slot slotOf(final EdmTypeKind typeKind, final EdmPrimitiveTypeKind kind) {
+    if (typeKind == EdmTypeKind.ENUM) {
+      return Slot.TEXT;
+    }
+    if (kind == null) {
+      return null;
+    }
+    switch (kind) {
+      case Boolean:
+      case Byte:
+      case SByte:
+      case Int16:
+      case Int32:
+      case Int64:
+      case Date:
+      case DateTimeOffset:
+      case TimeOfDay:
+        return Slot.LONG;
+
+      case Single:
+      case Double:
+      case Decimal:
+        return Slot.DOUBLE;
+
+      case Guid:
+        return Slot.GUID;
+
+      default:
+        return Slot.TEXT;
+    }
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  /**
+   * @return index of this property in its type
+   */
+  public int getOrdinal() {
+    return ordinal;
+  }
+
+  public FullQualifiedName getTypeName() {
+    return typeName;
+  }
+
+  /**
+   * @return kind of type: primitive, type definition, enum or complex
+   */
+  public EdmTypeKind getTypeKind() {
+    return typeKind;
+  }
+
+  /**
+   * @return primitive type, also of type definitions; null for enum and complex types
+   */
+  public EdmPrimitiveTypeKind getKind() {
+    return kind;
+  }
+
+  /**
+   * @return storage of the values, null for complex and collection properties
+   */
+  public Slot getSlot() {
+    return slot;
+  }
+
+  /**
+   * @return whether the property has a single primitive or enum value
+   */
+  public boolean isScalar() {
+    return slot != null;
+  }
+
+  public boolean isNullable() {
+    return nullable;
+  }
+
+  public boolean isKey() {
+    return key;
+  }
+
+  public boolean isCollection() {
+    return collection;
+  }
+
+  @Override
+  public String toString() {
+    return name + '[' + ordinal + ", " + typeName + (collection ? "*" : "") + (key ? ", key" : "")
+            + (nullable ? "" : ", not null") + ']';
+  }
+}
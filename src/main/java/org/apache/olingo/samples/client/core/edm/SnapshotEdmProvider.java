@@ -0,0 +1,223 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.olingo.samples.client.core.edm;
+
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import org.apache.olingo.client.api.ODataClient;
+import org.apache.olingo.commons.api.edm.FullQualifiedName;
+import org.apache.olingo.commons.api.edm.provider.CsdlAbstractEdmProvider;
+import org.apache.olingo.commons.api.edm.provider.CsdlAction;
+import org.apache.olingo.commons.api.edm.provider.CsdlActionImport;
+import org.apache.olingo.commons.api.edm.provider.CsdlAliasInfo;
+import org.apache.olingo.commons.api.edm.provider.CsdlAnnotations;
+import org.apache.olingo.commons.api.edm.provider.CsdlComplexType;
+import org.apache.olingo.commons.api.edm.provider.CsdlEntityContainer;
+import org.apache.olingo.commons.api.edm.provider.CsdlEntityContainerInfo;
+import org.apache.olingo.commons.api.edm.provider.CsdlEntitySet;
+import org.apache.olingo.commons.api.edm.provider.CsdlEntityType;
+import org.apache.olingo.commons.api.edm.provider.CsdlEnumType;
+import org.apache.olingo.commons.api.edm.provider.CsdlFunction;
+import org.apache.olingo.commons.api.edm.provider.CsdlFunctionImport;
+import org.apache.olingo.commons.api.edm.provider.CsdlSchema;
+import org.apache.olingo.commons.api.edm.provider.CsdlSingleton;
+import org.apache.olingo.commons.api.edm.provider.CsdlTerm;
+import org.apache.olingo.commons.api.edm.provider.CsdlTypeDefinition;
+import org.apache.olingo.commons.api.format.ContentType;
+
+/**
+ * Serves the Edm from a {@link MetadataSnapshot}, parsing each element the first time it is asked for: looking up one
+ * entity type parses that entity type only, not the whole <tt>$metadata</tt> document.
+ * <br/>
+ * Listing the schemas (<tt>Edm.getSchemas()</tt>) still has to parse all of them.
+ */
+class SnapshotEdmProvider extends CsdlAbstractEdmProvider {
+
+  private final ODataClient client;
+
+  private final MetadataSnapshot snapshot;
+
+  private final ConcurrentMap<String, CsdlSchema> parsed = new ConcurrentHashMap<String, CsdlSchema>();
+
+  private volatile List<CsdlSchema> schemas;
+
+  SnapshotEdmProvider(final ODataClient client, final MetadataSnapshot snapshot) {
+    this.client = client;
+    this.snapshot = snapshot;
+  }
+
+  /**
+   * @return partial schema, holding only the elements of the given kind and name; null if there is none
+   */
+  private CsdlSchema schema(final MetadataSnapshot.Kind kind, final String namespace, final String name) {
+    final MetadataSnapshot.Schema schema = namespace == null ? null : snapshot.getSchema(namespace);
+    if (schema == null) {
+      return null;
+    }
+    return parsed.computeIfAbsent(kind + " " + schema.getNamespace() + '.' + name, key -> {
+      final InputStream document = snapshot.getDocument(schema, kind, name);
+      return document == null ? null : parse(document, schema);
+    });
+  }
+
+  private CsdlSchema schema(final MetadataSnapshot.Kind kind, final FullQualifiedName name) {
+    return name == null ? null : schema(kind, name.getNamespace(), name.getName());
+  }
+
+  private CsdlSchema parse(final InputStream document, final MetadataSnapshot.Schema schema) {
+    return client.getDeserializer(ContentType.APPLICATION_XML).toMetadata(document).getSchema(schema.getNamespace());
+  }
+
+  private MetadataSnapshot.Schema containerSchema() {
+    for (MetadataSnapshot.Schema schema : snapshot.getSchemas()) {
+      if (!schema.getNames(MetadataSnapshot.Kind.ENTITY_CONTAINER).isEmpty()) {
+        return schema;
+      }
+    }
+    return null;
+  }
+
+  @Override
+  public CsdlEntityContainer getEntityContainer() {
+    final MetadataSnapshot.Schema schema = containerSchema();
+    if (schema == null) {
+      return null;
+    }
+    final CsdlSchema parsedSchema = schema(MetadataSnapshot.Kind.ENTITY_CONTAINER, schema.getNamespace(),
+            schema.getNames(MetadataSnapshot.Kind.ENTITY_CONTAINER).get(0));
+    return parsedSchema == null ? null : parsedSchema.getEntityContainer();
+  }
+
+  @Override
+  public CsdlEntityContainerInfo getEntityContainerInfo(final FullQualifiedName entityContainerName) {
+    final MetadataSnapshot.Schema schema = containerSchema();
+    if (schema == null) {
+      return null;
+    }
+    final FullQualifiedName name = new FullQualifiedName(schema.getNamespace(),
+            schema.getNames(MetadataSnapshot.Kind.ENTITY_CONTAINER).get(0));
+    if (entityContainerName != null
+            && !(name.getName().equals(entityContainerName.getName())
+            && snapshot.getSchema(entityContainerName.getNamespace()) == schema)) {
+      return null;
+    }
+    return new CsdlEntityContainerInfo().setContainerName(name)
+            .setExtendsContainer(getEntityContainer().getExtendsContainerFQN());
+  }
+
+  @Override
+  public CsdlEntitySet getEntitySet(final FullQualifiedName entityContainer, final String entitySetName) {
+    final CsdlEntityContainer container = getEntityContainer();
+    return container == null ? null : container.getEntitySet(entitySetName);
+  }
+
+  @Override
+  public CsdlSingleton getSingleton(final FullQualifiedName entityContainer, final String singletonName) {
+    final CsdlEntityContainer container = getEntityContainer();
+    return container == null ? null : container.getSingleton(singletonName);
+  }
+
+  @Override
+  public CsdlActionImport getActionImport(final FullQualifiedName entityContainer, final String actionImportName) {
+    final CsdlEntityContainer container = getEntityContainer();
+    return container == null ? null : container.getActionImport(actionImportName);
+  }
+
+  @Override
+  public CsdlFunctionImport getFunctionImport(final FullQualifiedName entityContainer,
+          final String functionImportName) {
+
+    final CsdlEntityContainer container = getEntityContainer();
+    return container == null ? null : container.getFunctionImport(functionImportName);
+  }
+
+  @Override
+  public CsdlEntityType getEntityType(final FullQualifiedName entityTypeName) {
+    final CsdlSchema schema = schema(MetadataSnapshot.Kind.ENTITY_TYPE, entityTypeName);
+    return schema == null ? null : schema.getEntityType(entityTypeName.getName());
+  }
+
+  @Override
+  public CsdlComplexType getComplexType(final FullQualifiedName complexTypeName) {
+    final CsdlSchema schema = schema(MetadataSnapshot.Kind.COMPLEX_TYPE, complexTypeName);
+    return schema == null ? null : schema.getComplexType(complexTypeName.getName());
+  }
+
+  @Override
+  public CsdlEnumType getEnumType(final FullQualifiedName enumTypeName) {
+    final CsdlSchema schema = schema(MetadataSnapshot.Kind.ENUM_TYPE, enumTypeName);
+    return schema == null ? null : schema.getEnumType(enumTypeName.getName());
+  }
+
+  @Override
+  public CsdlTypeDefinition getTypeDefinition(final FullQualifiedName typeDefinitionName) {
+    final CsdlSchema schema = schema(MetadataSnapshot.Kind.TYPE_DEFINITION, typeDefinitionName);
+    return schema == null ? null : schema.getTypeDefinition(typeDefinitionName.getName());
+  }
+
+  @Override
+  public List<CsdlAction> getActions(final FullQualifiedName actionName) {
+    final CsdlSchema schema = schema(MetadataSnapshot.Kind.ACTION, actionName);
+    return schema == null ? null : schema.getActions(actionName.getName());
+  }
+
+  @Override
+  public List<CsdlFunction> getFunctions(final FullQualifiedName functionName) {
+    final CsdlSchema schema = schema(MetadataSnapshot.Kind.FUNCTION, functionName);
+    return schema == null ? null : schema.getFunctions(functionName.getName());
+  }
+
+  @Override
+  public CsdlTerm getTerm(final FullQualifiedName termName) {
+    final CsdlSchema schema = schema(MetadataSnapshot.Kind.TERM, termName);
+    return schema == null ? null : schema.getTerm(termName.getName());
+  }
+
+  @Override
+  public CsdlAnnotations getAnnotationsGroup(final FullQualifiedName targetName, final String qualifier) {
+    final CsdlSchema schema = schema(MetadataSnapshot.Kind.ANNOTATIONS, targetName.getNamespace(), null);
+    return schema == null ? null : schema.getAnnotationGroup(targetName.getName(), qualifier);
+  }
+
+  @Override
+  public List<CsdlAliasInfo> getAliasInfos() {
+    final List<CsdlAliasInfo> aliasInfos = new ArrayList<CsdlAliasInfo>();
+    for (MetadataSnapshot.Schema schema : snapshot.getSchemas()) {
+      if (schema.getAlias() != null) {
+        aliasInfos.add(new CsdlAliasInfo().setNamespace(schema.getNamespace()).setAlias(schema.getAlias()));
+      }
+    }
+    return aliasInfos;
+  }
+
+  @Override
+  public List<CsdlSchema> getSchemas() {
+    if (schemas == null) {
+      final List<CsdlSchema> all = new ArrayList<CsdlSchema>();
+      for (MetadataSnapshot.Schema schema : snapshot.getSchemas()) {
+        all.add(parse(snapshot.getDocument(schema), schema));
+      }
+      schemas = all;
+    }
+    return schemas;
+  }
+}
@@ -0,0 +1,134 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.olingo.samples.client.core.edm;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.olingo.commons.api.edm.EdmEntityType;
+import org.apache.olingo.commons.api.edm.EdmProperty;
+import org.apache.olingo.commons.api.edm.EdmStructuredType;
+import org.apache.olingo.commons.api.edm.FullQualifiedName;
+
+/**
+ * The structural properties of an entity or complex type, as a dense array of {@link PropertyDescriptor}s in Edm
+ * order: a property name is resolved to its ordinal once, and values are then addressed by ordinal.
+ */
+public final class TypeDescriptor {
+
+  private final FullQualifiedName name;
+
+  private final PropertyDescriptor[] properties;
+
+  private final int[] keys;
+
+  private final Map<String, PropertyDescriptor> byName;
+
+  private TypeDescriptor(final FullQualifiedName name, final PropertyDescriptor[] properties) {
+    this.name = name;
+    this.properties = properties;
+    this.byName = new HashMap<String, PropertyDescriptor>(properties.length * 2);
+    int keyCount = 0;
+    for (PropertyDescriptor property : properties) {
+      byName.put(property.getName(), property);
+      keyCount += property.isKey() ? 1 : 0;
+    }
+    this.keys = new int[keyCount];
+    keyCount = 0;
+    for (PropertyDescriptor property : properties) {
+      if (property.isKey()) {
+        keys[keyCount++] = property.getOrdinal();
+      }
+    }
+  }
+
+  /**
+   * @param type entity or complex type
+   * @return descriptor of its structural properties, navigation properties excluded
+   */
+  public static TypeDescriptor of(final EdmStructuredType type) {
+    final List<String> keyNames = type instanceof EdmEntityType
+            ? ((EdmEntityType) type).getKeyPredicateNames()
+            : Collections.<String>emptyList();
+    final List<String> names = type.getPropertyNames();
+    final PropertyDescriptor[] properties = new PropertyDescriptor[names.size()];
+    int ordinal = 0;
+    for (String propertyName : names) {
+      final EdmProperty property = type.getStructuralProperty(propertyName);
+      if (property != null) {
+        properties[ordinal] = new PropertyDescriptor(property, ordinal, keyNames.contains(propertyName));
+        ordinal++;
+      }
+    }
+    return new TypeDescriptor(type.getFullQualifiedName(), Arrays.copyOf(properties, ordinal));
+  }
+
+  public FullQualifiedName getName() {
+    return name;
+  }
+
+  public int size() {
+    return properties.length;
+  }
+
+  /**
+   * @param ordinal property ordinal, from 0 to {@link #size()} excluded
+   * @return property
+   */
+  public PropertyDescriptor getProperty(final int ordinal) {
+    return properties[ordinal];
+  }
+
+  /**
+   * To be used once per property, not per value.
+   *
+   * @param propertyName property name
+   * @return property, or null if there is no such structural property
+   */
+  public PropertyDescriptor getProperty(final String propertyName) {
+    return byName.get(propertyName);
+  }
+
+  /**
+   * @param propertyName property name
+   * @return property ordinal, or -1 if there is no such structural property
+   */
+  public int ordinalOf(final String propertyName) {
+    final PropertyDescriptor property = byName.get(propertyName);
+    return property == null ? -1 : property.getOrdinal();
+  }
+
+  public List<PropertyDescriptor> getProperties() {
+    return Collections.unmodifiableList(Arrays.asList(properties));
+  }
+
+  /**
+   * @return ordinals of the key properties, empty for complex types
+   */
+  public int[] getKeyOrdinals() {
+    return keys.clone();
+  }
+
+  @Override
+  public String toString() {
+    return name + Arrays.toString(properties);
+  }
+}
@@ -0,0 +1,106 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.olingo.samples.client.core.export;
+
+import org.apache.olingo.client.api.domain.ClientEntity;
+import org.apache.olingo.client.api.domain.ClientProperty;
+import org.apache.olingo.client.api.domain.ClientValue;
+import org.apache.olingo.samples.client.core.edm.PropertyDescriptor;
+import org.apache.olingo.samples.client.core.edm.TypeDescriptor;
+
+/**
+ * Comma-separated values (RFC 4180): a header line with the property names in the order of the entity type, then one
+ * line per entity. Null and missing values are empty cells; complex and collection values are written as JSON.
+ */
+public class CsvEncoder implements RecordEncoder {
+
+  private final TypeDescriptor type;
+
+  private final char separator;
+
+  public CsvEncoder(final TypeDescriptor type) {
+    this(type, ',');
+  }
+
+  /**
+   * @param type entity type
+   * @param separator cell separator, e.g. <tt>;</tt> for spreadsheets in locales using decimal commas
+   */
+  public CsvEncoder(final TypeDescriptor type, final char separator) {
+    this.type = type;
+    this.separator = separator;
+  }
+
+  @Override
+  public void header(final StringBuilder out) {
+    for (int ordinal = 0; ordinal < type.size(); ordinal++) {
+      if (ordinal > 0) {
+        out.append(separator);
+      }
+      appendCell(out, type.getProperty(ordinal).getName());
+    }
+    out.append("\r\n");
+  }
+
+  @Override
+  public void encode(final ClientEntity entity, final StringBuilder out) {
+    for (int ordinal = 0; ordinal < type.size(); ordinal++) {
+      if (ordinal > 0) {
+        out.append(separator);
+      }
+      final PropertyDescriptor descriptor = type.getProperty(ordinal);
+      final ClientProperty property = entity.getProperty(descriptor.getName());
+      final ClientValue value = property == null ? null : property.getValue();
+      if (Values.isNull(value)) {
+        continue;
+      }
+      if (value.isPrimitive()) {
+        appendCell(out, Values.text(value.asPrimitive()));
+      } else if (value.isEnum()) {
+        appendCell(out, value.asEnum().getValue());
+      } else {
+        final StringBuilder json = new StringBuilder();
+        Values.appendJson(json, value);
+        appendCell(out, json);
+      }
+    }
+    out.append("\r\n");
+  }
+
+  private void appendCell(final StringBuilder out, final CharSequence text) {
+    boolean quote = false;
+    for (int i = 0; i < text.length() && !quote; i++) {
+      final char c = text.charAt(i);
+      quote = c == separator || c == '"' || c == '\n' || c == '\r';
+    }
+    if (!quote) {
+      out.append(text);
+      return;
+    }
+    out.append('"');
+    for (int i = 0; i < text.length(); i++) {
+      final char c = text.charAt(i);
+      if (c == '"') {
+        out.append('"');
+      }
+      out.append(c);
+    }
+    out.append('"');
+  }
+}
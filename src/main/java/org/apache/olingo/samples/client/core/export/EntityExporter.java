@@ -0,0 +1,261 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.olingo.samples.client.core.export;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import org.apache.olingo.client.api.domain.ClientEntity;
+import org.apache.olingo.commons.api.ex.ODataRuntimeException;
+
+/**
+ * Streams entities, e.g. from a <tt>ClientEntitySetIterator</tt>, into a channel through a {@link RecordEncoder}.
+ * <br/>
+ * Records are encoded into a reused {@link StringBuilder}, then as UTF-8 straight into a large direct buffer, which is
+ * written to the channel whenever full: nothing is synchronized per record, unlike <tt>System.out</tt>. With a
+ * parallelism above 1, chunks of entities are encoded on an executor while the next ones are read, and written in
+ * their original order.
+ */
+public class EntityExporter implements Closeable {
+
+  public static final int DEFAULT_BUFFER_SIZE = 1 << 20;
+
+  public static final int DEFAULT_CHUNK_SIZE = 1000;
+
+  // records encoded before they are converted to bytes
+  private static final int TEXT_THRESHOLD = 64 * 1024;
+
+  private final WritableByteChannel channel;
+
+  private final RecordEncoder encoder;
+
+  private final ByteBuffer buffer;
+
+  private final CharsetEncoder utf8 = StandardCharsets.UTF_8.newEncoder()
+          .onMalformedInput(CodingErrorAction.REPLACE)
+          .onUnmappableCharacter(CodingErrorAction.REPLACE);
+
+  private ExecutorService executor;
+
+  private int parallelism = 1;
+
+  private int chunkSize = DEFAULT_CHUNK_SIZE;
+
+  private boolean headerWritten;
+
+  private long records;
+
+  private long bytes;
+
+  public EntityExporter(final WritableByteChannel channel, final RecordEncoder encoder) {
+    this(channel, encoder, DEFAULT_BUFFER_SIZE);
+  }
+
+  /**
+   * @param channel output, closed with this exporter
+   * @param encoder record format
+   * @param bufferSize bytes buffered before each write to the channel
+   */
+  public EntityExporter(final WritableByteChannel channel, final RecordEncoder encoder, final int bufferSize) {
+    this.channel = channel;
+    this.encoder = encoder;
+    this.buffer = ByteBuffer.allocateDirect(bufferSize);
+  }
+
+  /**
+   * @param file file to create or overwrite
+   * @param encoder record format
+   * @return exporter into the given file
+   * @throws IOException if the file cannot be opened
+   */
+  public static EntityExporter toFile(final Path file, final RecordEncoder encoder) throws IOException {
+    return new EntityExporter(FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+            StandardOpenOption.TRUNCATE_EXISTING), encoder);
+  }
+
+  /**
+   * @param executor runs the encoding of chunks
+   * @param parallelism chunks encoded at the same time; 1 to encode on the calling thread
+   * @param chunkSize entities per chunk
+   * @return this exporter
+   */
+  public EntityExporter setParallel(final ExecutorService executor, final int parallelism, final int chunkSize) {
+    this.executor = executor;
+    this.parallelism = Math.max(1, parallelism);
+    this.chunkSize = Math.max(1, chunkSize);
+    return this;
+  }
+
+  /**
+   * Writes the header, unless done already, then all entities.
+   *
+   * @param entities entities, consumed on the calling thread
+   * @return number of entities written
+   * @throws IOException if writing fails
+   */
+  public long export(final Iterator<ClientEntity> entities) throws IOException {
+    final StringBuilder text = new StringBuilder(TEXT_THRESHOLD + 1024);
+    if (!headerWritten) {
+      encoder.header(text);
+      headerWritten = true;
+    }
+    final long before = records;
+    if (executor == null || parallelism == 1) {
+      while (entities.hasNext()) {
+        encoder.encode(entities.next(), text);
+        records++;
+        if (text.length() >= TEXT_THRESHOLD) {
+          write(text);
+          text.setLength(0);
+        }
+      }
+      write(text);
+    } else {
+      write(text);
+      exportParallel(entities);
+    }
+    return records - before;
+  }
+
+  private void exportParallel(final Iterator<ClientEntity> entities) throws IOException {
+    final Deque<Future<StringBuilder>> pending = new ArrayDeque<Future<StringBuilder>>();
+    try {
+      List<ClientEntity> chunk = new ArrayList<ClientEntity>(chunkSize);
+      while (entities.hasNext()) {
+        chunk.add(entities.next());
+        if (chunk.size() == chunkSize || !entities.hasNext()) {
+          final List<ClientEntity> encoded = chunk;
+          pending.add(executor.submit(() -> encode(encoded)));
+          records += encoded.size();
+          chunk = new ArrayList<ClientEntity>(chunkSize);
+          if (pending.size() >= parallelism) {
+            write(await(pending.poll()));
+          }
+        }
+      }
+      while (!pending.isEmpty()) {
+        write(await(pending.poll()));
+      }
+    } finally {
+      for (Future<StringBuilder> future : pending) {
+        future.cancel(true);
+      }
+    }
+  }
+
+  private StringBuilder encode(final List<ClientEntity> entities) {
+    final StringBuilder text = new StringBuilder(entities.size() * 256);
+    for (ClientEntity entity : entities) {
+      encoder.encode(entity, text);
+    }
+    return text;
+  }
+
+  private static StringBuilder await(final Future<StringBuilder> future) throws IOException {
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while encoding", e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      if (e.getCause() instanceof Error) {
+        throw (Error) e.getCause();
+      }
+      throw new ODataRuntimeException("Could not encode entities", e);
+    }
+  }
+
+  private void write(final CharSequence text) throws IOException {
+    if (text.length() == 0) {
+      return;
+    }
+    final CharBuffer chars = CharBuffer.wrap(text);
+    utf8.reset();
+    CoderResult result;
+    do {
+      result = utf8.encode(chars, buffer, true);
+      if (result.isOverflow()) {
+        drain();
+      }
+    } while (result.isOverflow());
+    while (utf8.flush(buffer).isOverflow()) {
+      drain();
+    }
+  }
+
+  private void drain() throws IOException {
+    buffer.flip();
+    while (buffer.hasRemaining()) {
+      bytes += channel.write(buffer);
+    }
+    buffer.clear();
+  }
+
+  /**
+   * Writes the buffered bytes to the channel.
+   *
+   * @throws IOException if writing fails
+   */
+  public void flush() throws IOException {
+    drain();
+  }
+
+  /**
+   * @return entities written so far
+   */
+  public long getRecordCount() {
+    return records;
+  }
+
+  /**
+   * @return bytes written to the channel so far
+   */
+  public long getByteCount() {
+    return bytes;
+  }
+
+  @Override
+  public void close() throws IOException {
+    try {
+      flush();
+    } finally {
+      channel.close();
+    }
+  }
+}
@@ -0,0 +1,62 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.olingo.samples.client.core.export;
+
+import org.apache.olingo.client.api.domain.ClientEntity;
+import org.apache.olingo.client.api.domain.ClientProperty;
+import org.apache.olingo.samples.client.core.edm.PropertyDescriptor;
+import org.apache.olingo.samples.client.core.edm.TypeDescriptor;
+
+/**
+ * One JSON object per line (<tt>application/x-ndjson</tt>), with the properties in the order of the entity type;
+ * properties not read (e.g. not in <tt>$select</tt>) are left out, complex and collection values are nested.
+ */
+public class NdjsonEncoder implements RecordEncoder {
+
+  private final TypeDescriptor type;
+
+  public NdjsonEncoder(final TypeDescriptor type) {
+    this.type = type;
+  }
+
+  @Override
+  public void header(final StringBuilder out) {
+    // no header
+  }
+
+  @Override
+  public void encode(final ClientEntity entity, final StringBuilder out) {
+    out.append('{');
+    boolean first = true;
+    for (PropertyDescriptor descriptor : type.getProperties()) {
+      final ClientProperty property = entity.getProperty(descriptor.getName());
+      if (property == null) {
+        continue;
+      }
+      if (!first) {
+        out.append(',');
+      }
+      first = false;
+      Values.appendJsonString(out, descriptor.getName());
+      out.append(':');
+      Values.appendJson(out, property.getValue());
+    }
+    out.append("}\n");
+  }
+}
@@ -0,0 +1,39 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.olingo.samples.client.core.export;
+
+import org.apache.olingo.client.api.domain.ClientEntity;
+
+/**
+ * Encodes entities as text records for {@link EntityExporter}; implementations must be thread-safe, as pages may be
+ * encoded in parallel.
+ */
+public interface RecordEncoder {
+
+  /**
+   * @param out receives what comes before the first record, e.g. a header line; may be nothing
+   */
+  void header(StringBuilder out);
+
+  /**
+   * @param entity entity
+   * @param out receives the record, line terminator included
+   */
+  void encode(ClientEntity entity, StringBuilder out);
+}
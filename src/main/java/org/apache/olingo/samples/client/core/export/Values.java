@@ -0,0 +1,188 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.olingo.samples.client.core.export;
+
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Calendar;
+import java.util.Date;
+import org.apache.olingo.client.api.domain.ClientCollectionValue;
+import org.apache.olingo.client.api.domain.ClientPrimitiveValue;
+import org.apache.olingo.client.api.domain.ClientProperty;
+import org.apache.olingo.client.api.domain.ClientValue;
+import org.apache.olingo.commons.api.edm.EdmPrimitiveTypeKind;
+
+/**
+ * Text of property values, shared by the encoders. Temporal values are formatted with {@link DateTimeFormatter}s,
+ * which are immutable and thread-safe, unlike {@link java.text.SimpleDateFormat}.
+ */
+final class Values {
+
+  private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+  private Values() {
+  }
+
+  static boolean isNull(final ClientValue value) {
+    return value == null || value.isPrimitive() && value.asPrimitive().toValue() == null;
+  }
+
+  /**
+   * @return whether the value is written as a JSON number or boolean, rather than a string
+   */
+  static boolean isLiteral(final ClientPrimitiveValue value) {
+    final EdmPrimitiveTypeKind kind = value.getTypeKind();
+    if (kind == null) {
+      return false;
+    }
+    switch (kind) {
+      case Boolean:
+      case Byte:
+      case SByte:
+      case Int16:
+      case Int32:
+      case Int64:
+      case Decimal:
+        return true;
+      case Single:
+      case Double:
+        final Object number = value.toValue();
+        return number instanceof Number && !Double.isNaN(((Number) number).doubleValue())
+                && !Double.isInfinite(((Number) number).doubleValue());
+      default:
+        return false;
+    }
+  }
+
+  /**
+   * @param value primitive value, not null
+   * @return its text: ISO 8601 for temporal values, the OData literal (unquoted) otherwise
+   */
+  static String text(final ClientPrimitiveValue value) {
+    final Object object = value.toValue();
+    final EdmPrimitiveTypeKind kind = value.getTypeKind();
+    if (kind != EdmPrimitiveTypeKind.Date && kind != EdmPrimitiveTypeKind.DateTimeOffset
+            && kind != EdmPrimitiveTypeKind.TimeOfDay) {
+      return value.toString();
+    }
+
+    final Instant instant;
+    final ZoneId zone;
+    if (object instanceof Calendar) {
+      instant = ((Calendar) object).toInstant();
+      zone = ((Calendar) object).getTimeZone().toZoneId();
+    } else if (object instanceof Timestamp) {
+      instant = ((Timestamp) object).toInstant();
+      zone = ZoneOffset.UTC;
+    } else if (object instanceof Date) {
+      // java.sql.Date does not support toInstant()
+      instant = Instant.ofEpochMilli(((Date) object).getTime());
+      zone = ZoneOffset.UTC;
+    } else {
+      return value.toString();
+    }
+    switch (kind) {
+      case Date:
+        return DateTimeFormatter.ISO_LOCAL_DATE.format(instant.atZone(zone));
+      case TimeOfDay:
+        return DateTimeFormatter.ISO_LOCAL_TIME.format(instant.atZone(zone));
+      default:
+        return DateTimeFormatter.ISO_OFFSET_DATE_TIME.format(instant.atZone(zone));
+    }
+  }
+
+  /**
+   * Appends the value as JSON: primitives, enums, complex values as objects and collections as arrays.
+   */
+  static void appendJson(final StringBuilder out, final ClientValue value) {
+    if (isNull(value)) {
+      out.append("null");
+    } else if (value.isPrimitive()) {
+      final ClientPrimitiveValue primitive = value.asPrimitive();
+      if (isLiteral(primitive)) {
+        out.append(primitive.toString());
+      } else {
+        appendJsonString(out, text(primitive));
+      }
+    } else if (value.isEnum()) {
+      appendJsonString(out, value.asEnum().getValue());
+    } else if (value.isComplex()) {
+      out.append('{');
+      boolean first = true;
+      for (ClientProperty property : value.asComplex()) {
+        if (!first) {
+          out.append(',');
+        }
+        first = false;
+        appendJsonString(out, property.getName());
+        out.append(':');
+        appendJson(out, property.getValue());
+      }
+      out.append('}');
+    } else if (value.isCollection()) {
+      out.append('[');
+      boolean first = true;
+      final ClientCollectionValue<ClientValue> collection = value.asCollection();
+      for (ClientValue item : collection) {
+        if (!first) {
+          out.append(',');
+        }
+        first = false;
+        appendJson(out, item);
+      }
+      out.append(']');
+    } else {
+      out.append("null");
+    }
+  }
+
+  static void appendJsonString(final StringBuilder out, final String text) {
+    out.append('"');
+    for (int i = 0; i < text.length(); i++) {
+      final char c = text.charAt(i);
+      switch (c) {
+        case '"':
+          out.append("\\\"");
+          break;
+        case '\\':
+          out.append("\\\\");
+          break;
+        case '\n':
+          out.append("\\n");
+          break;
+        case '\r':
+          out.append("\\r");
+          break;
+        case '\t':
+          out.append("\\t");
+          break;
+        default:
+          if (c < 0x20) {
+            out.append("\\u00").append(HEX[c >> 4]).append(HEX[c & 0xF]);
+          } else {
+            out.append(c);
+          }
+      }
+    }
+    out.append('"');
+  }
+}
@@ -0,0 +1,80 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.olingo.samples.client.core.http;
+
+import com.microsoft.aad.adal4j.AuthenticationResult;
+import java.util.Date;
+
+/**
+ * Immutable OAuth2 token, as published by {@link OAuth2TokenManager}.
+ */
+public final class AccessToken {
+
+  private final String accessToken;
+
+  private final String refreshToken;
+
+  private final long expiresOn;
+
+  /**
+   * @param accessToken bearer token
+   * @param refreshToken refresh token, null if none was issued
+   * @param expiresOn expiry of the access token, in milliseconds since the epoch
+   */
+  public AccessToken(final String accessToken, final String refreshToken, final long expiresOn) {
+    if (accessToken == null) {
+      throw new IllegalArgumentException("No access token");
+    }
+    this.accessToken = accessToken;
+    this.refreshToken = refreshToken;
+    this.expiresOn = expiresOn;
+  }
+
+  public static AccessToken of(final AuthenticationResult result) {
+    final Date expiresOn = result.getExpiresOnDate();
+    return new AccessToken(result.getAccessToken(), result.getRefreshToken(),
+            expiresOn == null ? System.currentTimeMillis() + result.getExpiresAfter() * 1000 : expiresOn.getTime());
+  }
+
+  public String getAccessToken() {
+    return accessToken;
+  }
+
+  public String getRefreshToken() {
+    return refreshToken;
+  }
+
+  public long getExpiresOn() {
+    return expiresOn;
+  }
+
+  /**
+   * @param marginMillis safety margin
+   * @return whether the token expires within the given margin
+   */
+  public boolean isExpired(final long marginMillis) {
+    return System.currentTimeMillis() + marginMillis >= expiresOn;
+  }
+
+  @Override
+  public String toString() {
+    // never print the tokens themselves
+    return "AccessToken[expiresOn=" + new Date(expiresOn) + ", refreshable=" + (refreshToken != null) + "]";
+  }
+}
@@ -1,40 +1,41 @@
 package org.apache.olingo.samples.client.core.http;
 
-import com.microsoft.aad.adal4j.AuthenticationCallback;
 import com.microsoft.aad.adal4j.AuthenticationContext;
-import com.microsoft.aad.adal4j.AuthenticationResult;
 import com.microsoft.aad.adal4j.ClientCredential;
 import org.apache.http.HttpHeaders;
 import org.apache.http.impl.client.DefaultHttpClient;
 import org.apache.olingo.client.core.http.AbstractOAuth2HttpClientFactory;
+import org.apache.olingo.client.core.http.DefaultHttpClientFactory;
 import org.apache.olingo.client.core.http.OAuth2Exception;
 
 import java.awt.*;
 import java.io.IOException;
 import java.net.URI;
 import java.util.Scanner;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
+import java.util.concurrent.CompletableFuture;
 
-public class Adal4JOAuth2HttpClientFactory extends AbstractOAuth2HttpClientFactory {
+public class Adal4JOAuth2HttpClientFactory extends AbstractOAuth2HttpClientFactory implements OAuth2TokenManager.Provider {
     private final String authority;
     private final String redirectURI;
     private final String resourceURI;
     private final ClientCredential clientCredentials;
-    private String token;
-    private AuthenticationContext context;
-    private String refreshToken;
+    private final TokenBroker.Key key;
+    private volatile AuthenticationContext context;
     private String authorizationCode;
 
     public Adal4JOAuth2HttpClientFactory(String authority, final String clientId, final String clientSecret,
                                          final String redirectURI, final String resourceURI) {
-        super(createGrantURL(authority, clientId, redirectURI, resourceURI), URI.create(authority + "/oauth2/token?resource=" + resourceURI));
+        this(new DefaultHttpClientFactory(), authority, clientId, clientSecret, redirectURI, resourceURI);
+    }
+
+    public Adal4JOAuth2HttpClientFactory(final DefaultHttpClientFactory wrapped, String authority, final String clientId,
+                                         final String clientSecret, final String redirectURI, final String resourceURI) {
+        super(wrapped, createGrantURL(authority, clientId, redirectURI, resourceURI), URI.create(authority + "/oauth2/token?resource=" + resourceURI));
         this.authority = authority;
         this.clientCredentials = new ClientCredential(clientId, clientSecret);
         this.redirectURI = redirectURI;
         this.resourceURI = resourceURI;
+        this.key = new TokenBroker.Key(authority, clientId, resourceURI);
     }
 
     private static URI createGrantURL(String authority, String clientId, String redirectURI, String resourceURI) {
@@ -42,16 +43,23 @@ public class Adal4JOAuth2HttpClientFactory extends AbstractOAuth2HttpClientFacto
         return URI.create(grantURL);
     }
 
+    /**
+     * @return the manager keeping the token fresh, shared with all factories of the same tenant
+     */
+    @Override
+    public OAuth2TokenManager getTokenManager() {
+        return TokenBroker.getInstance().getManager(key, this::fetchAccessToken);
+    }
+
     @Override
     protected boolean isInited() throws OAuth2Exception {
-        return token != null;
+        // another client of the same tenant may have logged in already
+        return TokenBroker.getInstance().getToken(key) != null;
     }
 
     @Override
     protected void init() throws OAuth2Exception {
-        ExecutorService service = Executors.newFixedThreadPool(1);
         try {
-            this.context = new AuthenticationContext(authority, true, service);
             if (Desktop.isDesktopSupported()) {
                 Desktop.getDesktop().browse(oauth2GrantServiceURI); // open oauth request
             }
@@ -62,55 +70,51 @@ public class Adal4JOAuth2HttpClientFactory extends AbstractOAuth2HttpClientFacto
             e.printStackTrace();
         }
 
-        fetchAccessToken();
+        AccessToken token = OAuth2TokenManager.await(getTokenManager().refresh());
+        System.out.println("Yay, acquired auth-token! " + token);
     }
 
-    private void fetchAccessToken() {
-        final Future<AuthenticationResult> yay = this.context.acquireTokenByAuthorizationCode(authorizationCode, URI.create(redirectURI), clientCredentials, resourceURI, new AuthenticationCallback() {
-            @Override
-            public void onSuccess(Object o) {
-                AuthenticationResult result = (AuthenticationResult)o;
-                System.out.println("Yay, acquired auth-token! Expires on " + result.getExpiresOnDate());
-            }
+    private AuthenticationContext getContext() throws IOException {
+        if (context == null) {
+            // shares the broker's bounded executor instead of allocating a thread pool per factory
+            context = new AuthenticationContext(authority, true, TokenBroker.getInstance().getExecutor());
+        }
+        return context;
+    }
 
-            @Override
-            public void onFailure(Throwable throwable) {
-                throwable.printStackTrace();
-            }
-        });
+    /**
+     * Redeems the authorization code on first acquisition, the refresh token afterwards.
+     */
+    private CompletableFuture<AccessToken> fetchAccessToken(AccessToken current) {
+        final CompletableFuture<AccessToken> result = new CompletableFuture<>();
         try {
-            AuthenticationResult authenticationResult = yay.get();
-            this.token = authenticationResult.getAccessToken();
-            this.refreshToken = authenticationResult.getRefreshToken();
-        } catch (InterruptedException | ExecutionException e) {
-            e.printStackTrace();
+            if (current == null && authorizationCode != null) {
+                getContext().acquireTokenByAuthorizationCode(authorizationCode, URI.create(redirectURI), clientCredentials, resourceURI, TokenBroker.callback(result));
+                // an authorization code can be redeemed only once
+                authorizationCode = null;
+            } else if (current != null && current.getRefreshToken() != null) {
+                getContext().acquireTokenByRefreshToken(current.getRefreshToken(), clientCredentials, resourceURI, TokenBroker.callback(result));
+            } else {
+                result.completeExceptionally(new OAuth2Exception("No OAuth2 refresh token"));
+            }
+        } catch (IOException e) {
+            result.completeExceptionally(new OAuth2Exception(e));
         }
+        return result;
     }
 
     @Override
     protected void accessToken(DefaultHttpClient client) throws OAuth2Exception {
         client.addRequestInterceptor((request, context) -> {
             request.removeHeaders(HttpHeaders.AUTHORIZATION);
-            request.addHeader(HttpHeaders.AUTHORIZATION, "Bearer " + token);
+            request.addHeader(HttpHeaders.AUTHORIZATION, "Bearer " + getTokenManager().getAccessToken());
         });
     }
 
     @Override
     protected void refreshToken(DefaultHttpClient defaultHttpClient) throws OAuth2Exception {
-        this.context.acquireTokenByRefreshToken(refreshToken, clientCredentials.getClientId(), resourceURI, new AuthenticationCallback() {
-            @Override
-            public void onSuccess(Object o) {
-                if (token != null) {
-                    System.out.println("Sucessfully issued token by refreshtoken");
-                } else {
-                    throw new OAuth2Exception("No OAuth2 refresh token");
-                }
-            }
-
-            @Override
-            public void onFailure(Throwable throwable) {
-                throwable.printStackTrace();
-            }
-        });
+        // concurrent 401s all wait for the same refresh
+        OAuth2TokenManager.await(getTokenManager().refresh());
+        System.out.println("Sucessfully issued token by refreshtoken");
     }
 }
@@ -18,13 +18,14 @@
  */
 package org.apache.olingo.samples.client.core.http;
 
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.node.ObjectNode;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.URI;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.http.Header;
@@ -48,8 +49,11 @@ import org.apache.olingo.client.core.http.OAuth2Exception;
 /**
  * Shows how to work with OAuth 2.0 native applications protected by Azure Active Directory.
  * <a href="http://msdn.microsoft.com/en-us/library/azure/dn645542.aspx">More information</a>.
+ * <br/>
+ * Tokens are kept by the {@link TokenBroker}, hence shared with all other factories for the same tenant.
  */
-public class AzureADOAuth2HttpClientFactory extends AbstractOAuth2HttpClientFactory {
+public class AzureADOAuth2HttpClientFactory extends AbstractOAuth2HttpClientFactory
+        implements OAuth2TokenManager.Provider {
 
   private final String clientId;
 
@@ -59,7 +63,7 @@ public class AzureADOAuth2HttpClientFactory extends AbstractOAuth2HttpClientFact
 
   private final UsernamePasswordCredentials creds;
 
-  private ObjectNode token;
+  private final TokenBroker.Key key;
 
   public AzureADOAuth2HttpClientFactory(final String authority, final String clientId,
           final String redirectURI, final String resourceURI, final UsernamePasswordCredentials creds) {
@@ -69,16 +73,23 @@ public class AzureADOAuth2HttpClientFactory extends AbstractOAuth2HttpClientFact
     this.redirectURI = redirectURI;
     this.resourceURI = resourceURI;
     this.creds = creds;
+    this.key = new TokenBroker.Key(authority, clientId, resourceURI);
   }
 
+  /**
+   * @return the manager keeping the token fresh, shared with all factories of the same tenant
+   */
   @Override
-  protected boolean isInited() throws OAuth2Exception {
-    return token != null;
+  public OAuth2TokenManager getTokenManager() {
+    return TokenBroker.getInstance().getManager(key, this::refreshAccessToken);
   }
 
-  private void fetchAccessToken(final DefaultHttpClient httpClient, final List<BasicNameValuePair> data) {
-    token = null;
+  @Override
+  protected boolean isInited() throws OAuth2Exception {
+    return TokenBroker.getInstance().getToken(key) != null;
+  }
 
+  private AccessToken fetchAccessToken(final DefaultHttpClient httpClient, final List<BasicNameValuePair> data) {
     InputStream tokenResponse = null;
     try {
       final HttpPost post = new HttpPost(oauth2TokenServiceURI);
@@ -87,7 +98,17 @@ public class AzureADOAuth2HttpClientFactory extends AbstractOAuth2HttpClientFact
       final HttpResponse response = httpClient.execute(post);
 
       tokenResponse = response.getEntity().getContent();
-      token = (ObjectNode) new ObjectMapper().readTree(tokenResponse);
+      final JsonNode token = new ObjectMapper().readTree(tokenResponse);
+      if (token == null || !token.hasNonNull("access_token")) {
+        return null;
+      }
+
+      final long expiresOn = token.hasNonNull("expires_on")
+              ? token.get("expires_on").asLong() * 1000
+              : System.currentTimeMillis() + token.path("expires_in").asLong(3600) * 1000;
+      return new AccessToken(token.get("access_token").asText(),
+              token.hasNonNull("refresh_token") ? token.get("refresh_token").asText() : null,
+              expiresOn);
     } catch (Exception e) {
       throw new OAuth2Exception(e);
     } finally {
@@ -95,6 +116,24 @@ public class AzureADOAuth2HttpClientFactory extends AbstractOAuth2HttpClientFact
     }
   }
 
+  private CompletableFuture<AccessToken> refreshAccessToken(final AccessToken current) {
+    return CompletableFuture.supplyAsync(() -> {
+      if (current == null || current.getRefreshToken() == null) {
+        throw new OAuth2Exception("No OAuth2 refresh token");
+      }
+
+      final List<BasicNameValuePair> data = new ArrayList<BasicNameValuePair>();
+      data.add(new BasicNameValuePair("grant_type", "refresh_token"));
+      data.add(new BasicNameValuePair("refresh_token", current.getRefreshToken()));
+
+      final AccessToken token = fetchAccessToken(wrapped.create(null, null), data);
+      if (token == null) {
+        throw new OAuth2Exception("No OAuth2 refresh token");
+      }
+      return token;
+    }, TokenBroker.getInstance().getExecutor());
+  }
+
   @Override
   protected void init() throws OAuth2Exception {
     final DefaultHttpClient httpClient = wrapped.create(null, null);
@@ -182,11 +221,11 @@ public class AzureADOAuth2HttpClientFactory extends AbstractOAuth2HttpClientFact
     data.add(new BasicNameValuePair("redirect_uri", redirectURI));
     data.add(new BasicNameValuePair("resource", resourceURI));
 
-    fetchAccessToken(httpClient, data);
-
+    final AccessToken token = fetchAccessToken(httpClient, data);
     if (token == null) {
       throw new OAuth2Exception("No OAuth2 access token");
     }
+    getTokenManager().setToken(token);
   }
 
   @Override
@@ -196,22 +235,14 @@ public class AzureADOAuth2HttpClientFactory extends AbstractOAuth2HttpClientFact
       @Override
       public void process(final HttpRequest request, final HttpContext context) throws HttpException, IOException {
         request.removeHeaders(HttpHeaders.AUTHORIZATION);
-        request.addHeader(HttpHeaders.AUTHORIZATION, "Bearer " + token.get("access_token").asText());
+        request.addHeader(HttpHeaders.AUTHORIZATION, "Bearer " + getTokenManager().getAccessToken());
       }
     });
   }
 
   @Override
   protected void refreshToken(final DefaultHttpClient client) throws OAuth2Exception {
-    final List<BasicNameValuePair> data = new ArrayList<BasicNameValuePair>();
-    data.add(new BasicNameValuePair("grant_type", "refresh_token"));
-    data.add(new BasicNameValuePair("refresh_token", token.get("refresh_token").asText()));
-
-    fetchAccessToken(wrapped.create(null, null), data);
-
-    if (token == null) {
-      throw new OAuth2Exception("No OAuth2 refresh token");
-    }
+    OAuth2TokenManager.await(getTokenManager().refresh());
   }
 
 }
@@ -0,0 +1,147 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.olingo.samples.client.core.http;
+
+import com.microsoft.aad.adal4j.AuthenticationContext;
+import com.microsoft.aad.adal4j.ClientCredential;
+import java.net.MalformedURLException;
+import java.net.URI;
+import java.nio.file.Paths;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import org.apache.http.HttpHeaders;
+import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.olingo.client.core.http.AbstractOAuth2HttpClientFactory;
+import org.apache.olingo.client.core.http.DefaultHttpClientFactory;
+import org.apache.olingo.client.core.http.OAuth2Exception;
+
+/**
+ * Shows how to authenticate as service principal (OAuth2 client credentials grant), with no user interaction at all.
+ * <br/>
+ * Settings are read from <tt>credentials.properties</tt> (<tt>authority</tt>, <tt>clientId</tt>,
+ * <tt>clientSecret</tt>, <tt>resourceURL</tt> and the optional <tt>tokenCache</tt> file); when a token cache is
+ * configured, a still valid token left by a previous run is used right away.
+ */
+public class ClientCredentialsOAuth2HttpClientFactory extends AbstractOAuth2HttpClientFactory
+        implements OAuth2TokenManager.Provider {
+
+  private final String authority;
+
+  private final String resourceURI;
+
+  private final ClientCredential clientCredentials;
+
+  private final FileTokenCache tokenCache;
+
+  private final TokenBroker.Key key;
+
+  private volatile AuthenticationContext context;
+
+  /**
+   * @param wrapped factory of the actual HTTP clients
+   * @param authority AAD authority, including the tenant
+   * @param clientId application id
+   * @param clientSecret application secret
+   * @param resourceURI resource the token is requested for
+   * @param tokenCache on-disk token cache, or null for none
+   */
+  public ClientCredentialsOAuth2HttpClientFactory(final DefaultHttpClientFactory wrapped, final String authority,
+          final String clientId, final String clientSecret, final String resourceURI, final FileTokenCache tokenCache) {
+
+    super(wrapped, URI.create(authority + "/oauth2/authorize"), URI.create(authority + "/oauth2/token"));
+    this.authority = authority;
+    this.resourceURI = resourceURI;
+    this.clientCredentials = new ClientCredential(clientId, clientSecret);
+    this.tokenCache = tokenCache;
+    this.key = new TokenBroker.Key(authority, clientId, resourceURI);
+  }
+
+  /**
+   * @param wrapped factory of the actual HTTP clients
+   * @param properties as loaded from <tt>credentials.properties</tt>
+   * @return new factory
+   */
+  public static ClientCredentialsOAuth2HttpClientFactory fromProperties(final DefaultHttpClientFactory wrapped,
+          final Properties properties) {
+
+    final String authority = properties.getProperty("authority");
+    final String clientId = properties.getProperty("clientId");
+    final String clientSecret = properties.getProperty("clientSecret");
+    final String resourceURI = properties.getProperty("resourceURL");
+    final String cacheFile = properties.getProperty("tokenCache");
+
+    return new ClientCredentialsOAuth2HttpClientFactory(wrapped, authority, clientId, clientSecret, resourceURI,
+            cacheFile == null
+            ? null
+            : new FileTokenCache(Paths.get(cacheFile), clientSecret, authority + ' ' + clientId + ' ' + resourceURI));
+  }
+
+  /**
+   * @return the manager keeping the token fresh, shared with all factories of the same tenant
+   */
+  @Override
+  public OAuth2TokenManager getTokenManager() {
+    return TokenBroker.getInstance().getManager(key, current -> fetchAccessToken());
+  }
+
+  @Override
+  protected boolean isInited() throws OAuth2Exception {
+    return TokenBroker.getInstance().getToken(key) != null;
+  }
+
+  @Override
+  protected void init() throws OAuth2Exception {
+    final AccessToken cached = tokenCache == null ? null : tokenCache.load();
+    if (cached != null && !cached.isExpired(OAuth2TokenManager.DEFAULT_REFRESH_MARGIN_MILLIS / 5)) {
+      getTokenManager().setToken(cached);
+    } else {
+      OAuth2TokenManager.await(getTokenManager().refresh());
+    }
+  }
+
+  private CompletableFuture<AccessToken> fetchAccessToken() {
+    final CompletableFuture<AccessToken> result = new CompletableFuture<AccessToken>();
+    try {
+      if (context == null) {
+        context = new AuthenticationContext(authority, true, TokenBroker.getInstance().getExecutor());
+      }
+      // client credentials grants come without refresh token: just ask for a new one
+      context.acquireToken(resourceURI, clientCredentials, TokenBroker.callback(result));
+    } catch (MalformedURLException e) {
+      result.completeExceptionally(new OAuth2Exception(e));
+    }
+    return tokenCache == null ? result : result.thenApply(token -> {
+      tokenCache.store(token);
+      return token;
+    });
+  }
+
+  @Override
+  protected void accessToken(final DefaultHttpClient client) throws OAuth2Exception {
+    client.addRequestInterceptor((request, context) -> {
+      request.removeHeaders(HttpHeaders.AUTHORIZATION);
+      request.addHeader(HttpHeaders.AUTHORIZATION, "Bearer " + getTokenManager().getAccessToken());
+    });
+  }
+
+  @Override
+  protected void refreshToken(final DefaultHttpClient client) throws OAuth2Exception {
+    OAuth2TokenManager.await(getTokenManager().refresh());
+  }
+}
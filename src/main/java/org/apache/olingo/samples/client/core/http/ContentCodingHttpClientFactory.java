@@ -0,0 +1,209 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.olingo.samples.client.core.http;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.EnumMap;
+import java.util.Map;
+import org.apache.http.Header;
+import org.apache.http.HeaderElement;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpException;
+import org.apache.http.HttpHeaders;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpRequestInterceptor;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpResponseInterceptor;
+import org.apache.http.HttpVersion;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.entity.DeflateDecompressingEntity;
+import org.apache.http.client.entity.GzipDecompressingEntity;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.message.BasicHeaderElementIterator;
+import org.apache.http.params.CoreProtocolPNames;
+import org.apache.http.params.HttpConnectionParams;
+import org.apache.http.protocol.HTTP;
+import org.apache.http.protocol.HttpContext;
+import org.apache.olingo.client.api.http.HttpClientFactory;
+import org.apache.olingo.client.api.http.WrappingHttpClientFactory;
+import org.apache.olingo.client.core.http.DefaultHttpClientFactory;
+import org.apache.olingo.commons.api.http.HttpMethod;
+
+/**
+ * Shows how to enable HTTP/1.1 persistent connections together with transparent content compression.
+ * <br/>
+ * Unlike {@link ParametersHttpClientFactory}, which pins HTTP/1.0, this factory keeps connections alive for
+ * {@link #setKeepAliveMillis(long) some time} (or as long as the server's <tt>Keep-Alive</tt> header says), advertises
+ * <tt>Accept-Encoding: gzip, deflate</tt> and decorates compressed response entities so that they are inflated while
+ * being streamed to the deserializer. Connect and socket timeouts are set per {@link OperationType}, as reading large
+ * entity set pages usually takes much longer than fetching the metadata.
+ * <br/>
+ * Do not combine with Olingo's own <tt>Configuration.setGzipCompression(true)</tt>.
+ *
+ * @see ProtocolInterceptorHttpClientFactory
+ */
+public class ContentCodingHttpClientFactory extends DefaultHttpClientFactory implements WrappingHttpClientFactory {
+
+  /**
+   * Kind of operation a client is created for, used for picking the timeouts.
+   */
+  public enum OperationType {
+
+    METADATA, READ, WRITE;
+
+    public static OperationType of(final HttpMethod method, final URI uri) {
+      if (uri != null && uri.getPath() != null && uri.getPath().endsWith("$metadata")) {
+        return METADATA;
+      }
+      return method == null || method == HttpMethod.GET ? READ : WRITE;
+    }
+  }
+
+  private static final String GZIP = "gzip";
+
+  private static final String X_GZIP = "x-gzip";
+
+  private static final String DEFLATE = "deflate";
+
+  private final DefaultHttpClientFactory wrapped;
+
+  private final Map<OperationType, int[]> timeouts = new EnumMap<OperationType, int[]>(OperationType.class);
+
+  private long keepAliveMillis = 30000;
+
+  public ContentCodingHttpClientFactory() {
+    this(new DefaultHttpClientFactory());
+  }
+
+  public ContentCodingHttpClientFactory(final DefaultHttpClientFactory wrapped) {
+    this.wrapped = wrapped;
+
+    setTimeouts(OperationType.METADATA, 10000, 60000);
+    setTimeouts(OperationType.READ, 10000, 120000);
+    setTimeouts(OperationType.WRITE, 10000, 60000);
+  }
+
+  /**
+   * @param type operation type
+   * @param connectTimeoutMillis time allowed for establishing the connection
+   * @param socketTimeoutMillis maximum inactivity between two data packets
+   * @return this factory
+   */
+  public ContentCodingHttpClientFactory setTimeouts(final OperationType type,
+          final int connectTimeoutMillis, final int socketTimeoutMillis) {
+
+    timeouts.put(type, new int[] { connectTimeoutMillis, socketTimeoutMillis });
+    return this;
+  }
+
+  /**
+   * @param keepAliveMillis how long an idle connection is kept when the server does not send a <tt>Keep-Alive</tt>
+   * timeout; should stay below the idle timeout of the server and of any load balancer in between
+   * @return this factory
+   */
+  public ContentCodingHttpClientFactory setKeepAliveMillis(final long keepAliveMillis) {
+    this.keepAliveMillis = keepAliveMillis;
+    return this;
+  }
+
+  @Override
+  public HttpClientFactory getWrappedHttpClientFactory() {
+    return wrapped;
+  }
+
+  @Override
+  public DefaultHttpClient create(final HttpMethod method, final URI uri) {
+    final DefaultHttpClient httpClient = wrapped.create(method, uri);
+
+    httpClient.getParams().setParameter(CoreProtocolPNames.PROTOCOL_VERSION, HttpVersion.HTTP_1_1);
+    httpClient.getParams().setParameter(CoreProtocolPNames.HTTP_CONTENT_CHARSET, "UTF-8");
+
+    final int[] timeout = timeouts.get(OperationType.of(method, uri));
+    HttpConnectionParams.setConnectionTimeout(httpClient.getParams(), timeout[0]);
+    HttpConnectionParams.setSoTimeout(httpClient.getParams(), timeout[1]);
+
+    httpClient.setKeepAliveStrategy(new ConnectionKeepAliveStrategy() {
+
+      @Override
+      public long getKeepAliveDuration(final HttpResponse response, final HttpContext context) {
+        final BasicHeaderElementIterator it = new BasicHeaderElementIterator(response.headerIterator(HTTP.CONN_KEEP_ALIVE));
+        while (it.hasNext()) {
+          final HeaderElement element = it.nextElement();
+          if ("timeout".equalsIgnoreCase(element.getName()) && element.getValue() != null) {
+            try {
+              return Math.min(Long.parseLong(element.getValue()) * 1000, keepAliveMillis);
+            } catch (NumberFormatException e) {
+              // ignore and fall back to default
+            }
+          }
+        }
+        return keepAliveMillis;
+      }
+    });
+
+    httpClient.addRequestInterceptor(new HttpRequestInterceptor() {
+
+      @Override
+      public void process(final HttpRequest request, final HttpContext context) throws HttpException, IOException {
+        if (!request.containsHeader(HttpHeaders.ACCEPT_ENCODING)) {
+          request.addHeader(HttpHeaders.ACCEPT_ENCODING, GZIP + ", " + DEFLATE);
+        }
+      }
+    });
+
+    httpClient.addResponseInterceptor(new HttpResponseInterceptor() {
+
+      @Override
+      public void process(final HttpResponse response, final HttpContext context) throws HttpException, IOException {
+        final HttpEntity entity = response.getEntity();
+        if (entity == null || entity.getContentLength() == 0) {
+          return;
+        }
+        final Header contentEncoding = entity.getContentEncoding();
+        if (contentEncoding == null) {
+          return;
+        }
+        for (HeaderElement codec : contentEncoding.getElements()) {
+          final String name = codec.getName().toLowerCase();
+          if (GZIP.equals(name) || X_GZIP.equals(name)) {
+            response.setEntity(new GzipDecompressingEntity(entity));
+          } else if (DEFLATE.equals(name)) {
+            response.setEntity(new DeflateDecompressingEntity(entity));
+          } else {
+            continue;
+          }
+          // the decorated entity is now plain content, of unknown length
+          response.removeHeaders(HttpHeaders.CONTENT_LENGTH);
+          response.removeHeaders(HttpHeaders.CONTENT_ENCODING);
+          response.removeHeaders(HttpHeaders.CONTENT_MD5);
+          return;
+        }
+      }
+    });
+
+    return httpClient;
+  }
+
+  @Override
+  public void close(final HttpClient httpClient) {
+    wrapped.close(httpClient);
+  }
+}
@@ -0,0 +1,150 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.olingo.samples.client.core.http;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Properties;
+import javax.crypto.Cipher;
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.GCMParameterSpec;
+import javax.crypto.spec.PBEKeySpec;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * Persists an {@link AccessToken} on disk, encrypted with AES-GCM under a key derived from the client secret, so that a
+ * restarted process can use the token acquired by its predecessor without any round trip to Azure AD.
+ * <br/>
+ * The identity (authority, client id and resource) is bound to the ciphertext as associated data: a cache file written
+ * for another identity, or tampered with, is simply ignored. The client secret is a high-entropy value, hence a low
+ * PBKDF2 iteration count keeps loading within a few milliseconds.
+ */
+public class FileTokenCache {
+
+  private static final int SALT_LENGTH = 16;
+
+  private static final int IV_LENGTH = 12;
+
+  private static final int TAG_BITS = 128;
+
+  private static final int ITERATIONS = 1000;
+
+  private static final SecureRandom RANDOM = new SecureRandom();
+
+  private final Path file;
+
+  private final char[] secret;
+
+  private final byte[] identity;
+
+  /**
+   * @param file cache file
+   * @param secret secret the encryption key is derived from, usually the client secret
+   * @param identity identity the token was issued for, e.g. authority, client id and resource
+   */
+  public FileTokenCache(final Path file, final String secret, final String identity) {
+    this.file = file;
+    this.secret = secret.toCharArray();
+    this.identity = identity.getBytes(StandardCharsets.UTF_8);
+  }
+
+  /**
+   * @return the cached token, or null if there is none, or it cannot be decrypted
+   */
+  public AccessToken load() {
+    if (!Files.isRegularFile(file)) {
+      return null;
+    }
+    try {
+      final ByteBuffer buffer = ByteBuffer.wrap(Files.readAllBytes(file));
+      final byte[] salt = new byte[SALT_LENGTH];
+      final byte[] iv = new byte[IV_LENGTH];
+      buffer.get(salt).get(iv);
+      final byte[] encrypted = new byte[buffer.remaining()];
+      buffer.get(encrypted);
+
+      final Properties properties = new Properties();
+      properties.load(new ByteArrayInputStream(cipher(Cipher.DECRYPT_MODE, salt, iv).doFinal(encrypted)));
+      return new AccessToken(properties.getProperty("accessToken"), properties.getProperty("refreshToken"),
+              Long.parseLong(properties.getProperty("expiresOn")));
+    } catch (IOException | GeneralSecurityException | RuntimeException e) {
+      System.err.println("Ignoring unreadable token cache " + file + ": " + e.getMessage());
+      return null;
+    }
+  }
+
+  /**
+   * Replaces the cached token; the file is written atomically and, where supported, readable by its owner only.
+   *
+   * @param token token to cache
+   */
+  public void store(final AccessToken token) {
+    final Properties properties = new Properties();
+    properties.setProperty("accessToken", token.getAccessToken());
+    if (token.getRefreshToken() != null) {
+      properties.setProperty("refreshToken", token.getRefreshToken());
+    }
+    properties.setProperty("expiresOn", String.valueOf(token.getExpiresOn()));
+
+    try {
+      final ByteArrayOutputStream plain = new ByteArrayOutputStream();
+      properties.store(plain, null);
+
+      final byte[] salt = new byte[SALT_LENGTH];
+      final byte[] iv = new byte[IV_LENGTH];
+      RANDOM.nextBytes(salt);
+      RANDOM.nextBytes(iv);
+      final byte[] encrypted = cipher(Cipher.ENCRYPT_MODE, salt, iv).doFinal(plain.toByteArray());
+
+      final Path directory = file.toAbsolutePath().getParent();
+      Files.createDirectories(directory);
+      final Path temp = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+      try {
+        Files.setPosixFilePermissions(temp, PosixFilePermissions.fromString("rw-------"));
+      } catch (UnsupportedOperationException e) {
+        // not a POSIX file system
+      }
+      Files.write(temp, ByteBuffer.allocate(salt.length + iv.length + encrypted.length)
+              .put(salt).put(iv).put(encrypted).array());
+      Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } catch (IOException | GeneralSecurityException e) {
+      // the cache only speeds up the next start
+      System.err.println("Could not write token cache " + file + ": " + e.getMessage());
+    }
+  }
+
+  private Cipher cipher(final int mode, final byte[] salt, final byte[] iv) throws GeneralSecurityException {
+    final SecretKeyFactory factory = SecretKeyFactory.getInstance("PBKDF2WithHmacSHA256");
+    final byte[] key = factory.generateSecret(new PBEKeySpec(secret, salt, ITERATIONS, 256)).getEncoded();
+
+    final Cipher cipher = Cipher.getInstance("AES/GCM/NoPadding");
+    cipher.init(mode, new SecretKeySpec(key, "AES"), new GCMParameterSpec(TAG_BITS, iv));
+    cipher.updateAAD(identity);
+    return cipher;
+  }
+}
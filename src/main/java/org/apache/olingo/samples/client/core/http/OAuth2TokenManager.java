@@ -0,0 +1,239 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.olingo.samples.client.core.http;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import org.apache.olingo.client.core.http.OAuth2Exception;
+
+/**
+ * Keeps an OAuth2 token fresh in the background.
+ * <br/>
+ * The current token is published through a volatile reference to an immutable {@link AccessToken}, so that request
+ * threads read it without locking; a refresh is scheduled some margin before expiry. Refreshes are single-flight:
+ * concurrent callers needing a new token share the same pending acquisition instead of starting their own.
+ * <br/>
+ * Managers are usually obtained from the {@link TokenBroker}, which shares them among all clients of the same tenant.
+ */
+public class OAuth2TokenManager {
+
+  /**
+   * Acquires a new token; never called concurrently for the same manager.
+   */
+  public interface TokenSource {
+
+    /**
+     * @param current current token, null on first acquisition
+     * @return pending acquisition of the new token
+     */
+    CompletableFuture<AccessToken> fetch(AccessToken current);
+  }
+
+  /**
+   * Implemented by the HTTP client factories whose tokens are kept by a manager, e.g. to refresh a token rejected by
+   * the service outside of their blocking interceptors.
+   */
+  public interface Provider {
+
+    OAuth2TokenManager getTokenManager();
+  }
+
+  public static final long DEFAULT_REFRESH_MARGIN_MILLIS = TimeUnit.MINUTES.toMillis(5);
+
+  private static final long RETRY_DELAY_MILLIS = TimeUnit.SECONDS.toMillis(30);
+
+  private volatile TokenSource source;
+
+  private final ScheduledExecutorService scheduler;
+
+  private final AtomicReference<CompletableFuture<AccessToken>> inFlight =
+          new AtomicReference<CompletableFuture<AccessToken>>();
+
+  private volatile AccessToken token;
+
+  private volatile ScheduledFuture<?> scheduledRefresh;
+
+  private volatile long refreshMarginMillis = DEFAULT_REFRESH_MARGIN_MILLIS;
+
+  private volatile long lastAccess = System.currentTimeMillis();
+
+  private volatile boolean closed;
+
+  /**
+   * @param source where tokens come from
+   * @param scheduler runs the proactive refreshes
+   */
+  public OAuth2TokenManager(final TokenSource source, final ScheduledExecutorService scheduler) {
+    this.source = source;
+    this.scheduler = scheduler;
+  }
+
+  /**
+   * Replaces the source as long as no token was acquired, so that a source able to acquire one (e.g. holding an
+   * authorization code) takes over from one that is not.
+   *
+   * @param source where tokens come from
+   */
+  void replaceSourceIfNoToken(final TokenSource source) {
+    if (token == null) {
+      this.source = source;
+    }
+  }
+
+  /**
+   * @param refreshMarginMillis how long before expiry the token gets refreshed
+   * @return this manager
+   */
+  public OAuth2TokenManager setRefreshMarginMillis(final long refreshMarginMillis) {
+    this.refreshMarginMillis = refreshMarginMillis;
+    return this;
+  }
+
+  /**
+   * @return the current token, without any check; null if none was acquired yet
+   */
+  public AccessToken getToken() {
+    return token;
+  }
+
+  /**
+   * Publishes a token obtained elsewhere (e.g. from a cache) and schedules its refresh.
+   *
+   * @param token token
+   */
+  public void setToken(final AccessToken token) {
+    publish(token);
+  }
+
+  /**
+   * Returns a valid bearer token; blocks only if there is none or it is already expired, which does not happen as long
+   * as proactive refreshes succeed.
+   *
+   * @return bearer token
+   * @throws OAuth2Exception if no token could be acquired
+   */
+  public String getAccessToken() throws OAuth2Exception {
+    lastAccess = System.currentTimeMillis();
+    final AccessToken current = token;
+    if (current != null && !current.isExpired(0)) {
+      return current.getAccessToken();
+    }
+    return await(refresh()).getAccessToken();
+  }
+
+  /**
+   * @return when a bearer token was last asked for, in milliseconds since the epoch
+   */
+  public long getLastAccess() {
+    return lastAccess;
+  }
+
+  /**
+   * Acquires a new token, unless an acquisition is already pending.
+   *
+   * @return pending acquisition
+   */
+  public CompletableFuture<AccessToken> refresh() {
+    while (true) {
+      final CompletableFuture<AccessToken> pending = inFlight.get();
+      if (pending != null) {
+        return pending;
+      }
+      final CompletableFuture<AccessToken> created = new CompletableFuture<AccessToken>();
+      if (inFlight.compareAndSet(null, created)) {
+        CompletableFuture<AccessToken> fetching;
+        try {
+          fetching = source.fetch(token);
+        } catch (RuntimeException e) {
+          fetching = new CompletableFuture<AccessToken>();
+          fetching.completeExceptionally(e);
+        }
+        fetching.whenComplete((fetched, failure) -> {
+          if (failure == null) {
+            publish(fetched);
+            created.complete(fetched);
+          } else {
+            scheduleRetry();
+            created.completeExceptionally(failure);
+          }
+          inFlight.compareAndSet(created, null);
+        });
+        return created;
+      }
+    }
+  }
+
+  /**
+   * Waits for the given acquisition.
+   *
+   * @param acquisition pending acquisition
+   * @return acquired token
+   * @throws OAuth2Exception if the acquisition failed
+   */
+  public static AccessToken await(final CompletableFuture<AccessToken> acquisition) throws OAuth2Exception {
+    try {
+      return acquisition.join();
+    } catch (CompletionException e) {
+      throw e.getCause() instanceof OAuth2Exception ? (OAuth2Exception) e.getCause() : new OAuth2Exception(e.getCause());
+    }
+  }
+
+  /**
+   * Stops any scheduled refresh, for good.
+   */
+  public void close() {
+    closed = true;
+    cancelScheduled();
+  }
+
+  private void cancelScheduled() {
+    final ScheduledFuture<?> scheduled = scheduledRefresh;
+    if (scheduled != null) {
+      scheduled.cancel(false);
+    }
+  }
+
+  private void publish(final AccessToken fetched) {
+    token = fetched;
+    final long remaining = fetched.getExpiresOn() - System.currentTimeMillis();
+    // tokens living shorter than the margin are refreshed halfway through their lifetime
+    schedule(remaining > refreshMarginMillis ? remaining - refreshMarginMillis : Math.max(0, remaining / 2));
+  }
+
+  private void scheduleRetry() {
+    final AccessToken current = token;
+    if (current != null && !current.isExpired(RETRY_DELAY_MILLIS)) {
+      schedule(RETRY_DELAY_MILLIS);
+    }
+  }
+
+  private void schedule(final long delayMillis) {
+    cancelScheduled();
+    if (closed) {
+      return;
+    }
+    scheduledRefresh = scheduler.schedule(() -> {
+      refresh();
+    }, delayMillis, TimeUnit.MILLISECONDS);
+  }
+}
@@ -0,0 +1,162 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.olingo.samples.client.core.http;
+
+import java.net.URI;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import org.apache.http.HttpHost;
+import org.apache.http.client.HttpClient;
+import org.apache.http.conn.ClientConnectionManager;
+import org.apache.http.conn.routing.HttpRoute;
+import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.impl.conn.PoolingClientConnectionManager;
+import org.apache.http.impl.conn.SchemeRegistryFactory;
+import org.apache.http.params.CoreProtocolPNames;
+import org.apache.http.pool.PoolStats;
+import org.apache.olingo.client.core.http.DefaultHttpClientFactory;
+import org.apache.olingo.commons.api.http.HttpMethod;
+import org.apache.olingo.samples.client.core.concurrent.VirtualThreads;
+
+/**
+ * Keeps one long-lived pooled connection manager for all the HTTP clients it creates, so that subsequent OData
+ * requests reuse warm keep-alive (and already TLS-negotiated) connections instead of opening a new one each time.
+ * <br/>
+ * Olingo asks its factory for a new client per request and closes it afterwards: here <tt>create()</tt> only wraps the
+ * shared pool into a new <tt>DefaultHttpClient</tt>, and <tt>close()</tt> leaves the pool untouched; call
+ * {@link #shutdown()} once the factory is not needed anymore. A background task evicts expired and idle connections,
+ * so that connections silently dropped by the server (or by some load balancer in between) are not handed out.
+ * <br/>
+ * Being a <tt>DefaultHttpClientFactory</tt>, an instance can be passed as the wrapped factory of the OAuth2 factories.
+ * <a
+ * href="http://svn.apache.org/repos/asf/httpcomponents/site/httpcomponents-client-4.2.x/tutorial/html/connmgmt.html#d5e639">More
+ * information</a>.
+ */
+public class PoolingHttpClientFactory extends DefaultHttpClientFactory {
+
+  public static final int DEFAULT_MAX_TOTAL = 50;
+
+  public static final int DEFAULT_MAX_PER_ROUTE = 20;
+
+  public static final long DEFAULT_IDLE_TIMEOUT_MILLIS = 30000;
+
+  public static final long DEFAULT_EVICTION_INTERVAL_MILLIS = 5000;
+
+  private final PoolingClientConnectionManager connectionManager;
+
+  private final ScheduledExecutorService evictor;
+
+  public PoolingHttpClientFactory() {
+    this(DEFAULT_MAX_TOTAL, DEFAULT_MAX_PER_ROUTE);
+  }
+
+  public PoolingHttpClientFactory(final int maxTotal, final int defaultMaxPerRoute) {
+    this(maxTotal, defaultMaxPerRoute, DEFAULT_IDLE_TIMEOUT_MILLIS, DEFAULT_EVICTION_INTERVAL_MILLIS);
+  }
+
+  /**
+   * @param maxTotal maximum number of connections, over all routes
+   * @param defaultMaxPerRoute maximum number of connections per route, unless set via
+   * {@link #setMaxPerRoute(URI, int)}
+   * @param idleTimeoutMillis connections idle for longer than this are closed by the evictor
+   * @param evictionIntervalMillis how often the evictor runs
+   */
+  public PoolingHttpClientFactory(final int maxTotal, final int defaultMaxPerRoute,
+          final long idleTimeoutMillis, final long evictionIntervalMillis) {
+
+    connectionManager = new PoolingClientConnectionManager(SchemeRegistryFactory.createDefault());
+    connectionManager.setMaxTotal(maxTotal);
+    connectionManager.setDefaultMaxPerRoute(defaultMaxPerRoute);
+
+    evictor = Executors.newSingleThreadScheduledExecutor(VirtualThreads.daemon("olingo-idle-connection-evictor-"));
+    evictor.scheduleWithFixedDelay(() -> {
+      connectionManager.closeExpiredConnections();
+      connectionManager.closeIdleConnections(idleTimeoutMillis, TimeUnit.MILLISECONDS);
+    }, evictionIntervalMillis, evictionIntervalMillis, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Sets the maximum number of connections to the host of the given URI, e.g. the Business Central API host or the
+   * Azure AD authority.
+   *
+   * @param uri any URI on the target host
+   * @param max maximum number of connections for that route
+   * @return this factory
+   */
+  public PoolingHttpClientFactory setMaxPerRoute(final URI uri, final int max) {
+    connectionManager.setMaxPerRoute(route(uri), max);
+    return this;
+  }
+
+  /**
+   * @return leased, available and pending connections, over all routes
+   */
+  public PoolStats getTotalStats() {
+    return connectionManager.getTotalStats();
+  }
+
+  /**
+   * @param uri any URI on the target host
+   * @return leased, available and pending connections for the route to the host of the given URI
+   */
+  public PoolStats getStats(final URI uri) {
+    return connectionManager.getStats(route(uri));
+  }
+
+  public ClientConnectionManager getConnectionManager() {
+    return connectionManager;
+  }
+
+  private static HttpRoute route(final URI uri) {
+    final HttpHost target = new HttpHost(uri.getHost(), uri.getPort(), uri.getScheme());
+    return new HttpRoute(target, null, "https".equalsIgnoreCase(uri.getScheme()));
+  }
+
+  /**
+   * Hook for subclasses needing a customized client; the returned instance must use the given connection manager.
+   *
+   * @param connectionManager the shared connection manager
+   * @return a new HTTP client
+   */
+  protected DefaultHttpClient newHttpClient(final ClientConnectionManager connectionManager) {
+    return new DefaultHttpClient(connectionManager);
+  }
+
+  @Override
+  public DefaultHttpClient create(final HttpMethod method, final URI uri) {
+    final DefaultHttpClient httpClient = newHttpClient(connectionManager);
+    httpClient.getParams().setParameter(CoreProtocolPNames.USER_AGENT, USER_AGENT);
+
+    return httpClient;
+  }
+
+  @Override
+  public void close(final HttpClient httpClient) {
+    // connections are given back to the pool once the response has been consumed: nothing to shut down here
+  }
+
+  /**
+   * Stops the idle connection evictor and closes all pooled connections.
+   */
+  public void shutdown() {
+    evictor.shutdownNow();
+    connectionManager.shutdown();
+  }
+}
@@ -0,0 +1,183 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.olingo.samples.client.core.http;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.util.Collections;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpException;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpRequestInterceptor;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpResponseInterceptor;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.conn.ConnectionPoolTimeoutException;
+import org.apache.http.conn.EofSensorInputStream;
+import org.apache.http.conn.EofSensorWatcher;
+import org.apache.http.entity.HttpEntityWrapper;
+import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.protocol.HttpContext;
+import org.apache.olingo.client.api.http.HttpClientFactory;
+import org.apache.olingo.client.api.http.WrappingHttpClientFactory;
+import org.apache.olingo.client.core.http.DefaultHttpClientFactory;
+import org.apache.olingo.commons.api.http.HttpMethod;
+
+/**
+ * Paces the requests of one tenant through a {@link RequestRateLimiter}, keyed by the tenant (e.g. the AAD authority)
+ * and by the company segment found in the request URI.
+ * <br/>
+ * The request interceptor blocks until the request may be sent; the in-flight slot is given back once the response
+ * content has been fully read or closed, when the response has no content, or at the latest when Olingo closes the
+ * client.
+ */
+public class RateLimitingHttpClientFactory extends DefaultHttpClientFactory implements WrappingHttpClientFactory {
+
+  private static final Pattern COMPANY_SEGMENT = Pattern.compile("companies\\(([^)]+)\\)");
+
+  private final DefaultHttpClientFactory wrapped;
+
+  private final RequestRateLimiter limiter;
+
+  private final String tenant;
+
+  private final Map<HttpClient, AtomicReference<RequestRateLimiter.Lease>> leases =
+          Collections.synchronizedMap(new WeakHashMap<HttpClient, AtomicReference<RequestRateLimiter.Lease>>());
+
+  public RateLimitingHttpClientFactory(final DefaultHttpClientFactory wrapped,
+          final RequestRateLimiter limiter, final String tenant) {
+
+    this.wrapped = wrapped;
+    this.limiter = limiter;
+    this.tenant = tenant;
+  }
+
+  public RequestRateLimiter getLimiter() {
+    return limiter;
+  }
+
+  @Override
+  public HttpClientFactory getWrappedHttpClientFactory() {
+    return wrapped;
+  }
+
+  /**
+   * @param uri request URI
+   * @return company segment key, or null if the URI does not address a company
+   */
+  static String company(final URI uri) {
+    if (uri == null || uri.getPath() == null) {
+      return null;
+    }
+    final Matcher matcher = COMPANY_SEGMENT.matcher(uri.getPath());
+    return matcher.find() ? matcher.group(1) : null;
+  }
+
+  private static void release(final AtomicReference<RequestRateLimiter.Lease> current) {
+    final RequestRateLimiter.Lease lease = current.getAndSet(null);
+    if (lease != null) {
+      lease.release();
+    }
+  }
+
+  @Override
+  public DefaultHttpClient create(final HttpMethod method, final URI uri) {
+    final DefaultHttpClient httpClient = wrapped.create(method, uri);
+
+    final AtomicReference<RequestRateLimiter.Lease> current = new AtomicReference<RequestRateLimiter.Lease>();
+    leases.put(httpClient, current);
+
+    httpClient.addRequestInterceptor(new HttpRequestInterceptor() {
+
+      @Override
+      public void process(final HttpRequest request, final HttpContext context) throws HttpException, IOException {
+        // a retried request gives back the slot of the previous attempt first
+        release(current);
+
+        final URI target = request instanceof HttpUriRequest ? ((HttpUriRequest) request).getURI() : uri;
+        try {
+          current.set(limiter.acquire(tenant, company(target)));
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new InterruptedIOException("Interrupted while waiting for rate limiter");
+        } catch (TimeoutException e) {
+          throw new ConnectionPoolTimeoutException(e.getMessage());
+        }
+      }
+    });
+
+    httpClient.addResponseInterceptor(new HttpResponseInterceptor() {
+
+      @Override
+      public void process(final HttpResponse response, final HttpContext context) throws HttpException, IOException {
+        final HttpEntity entity = response.getEntity();
+        if (entity == null) {
+          release(current);
+          return;
+        }
+        response.setEntity(new HttpEntityWrapper(entity) {
+
+          @Override
+          public InputStream getContent() throws IOException {
+            return new EofSensorInputStream(super.getContent(), new EofSensorWatcher() {
+
+              @Override
+              public boolean eofDetected(final InputStream wrapped) throws IOException {
+                release(current);
+                return true;
+              }
+
+              @Override
+              public boolean streamClosed(final InputStream wrapped) throws IOException {
+                release(current);
+                return true;
+              }
+
+              @Override
+              public boolean streamAbort(final InputStream wrapped) throws IOException {
+                release(current);
+                return true;
+              }
+            });
+          }
+        });
+      }
+    });
+
+    return httpClient;
+  }
+
+  @Override
+  public void close(final HttpClient httpClient) {
+    final AtomicReference<RequestRateLimiter.Lease> current = leases.remove(httpClient);
+    if (current != null) {
+      release(current);
+    }
+    wrapped.close(httpClient);
+  }
+}
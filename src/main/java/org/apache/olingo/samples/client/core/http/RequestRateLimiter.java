@@ -0,0 +1,214 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.olingo.samples.client.core.http;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Paces requests per tenant and per company, so that throughput stays just below the limits enforced by Business
+ * Central instead of oscillating between bursts and throttling.
+ * <br/>
+ * Each request needs a permit from the tenant's {@link TokenBucket}, one from the company's bucket and one of the
+ * tenant's in-flight slots; the slot is kept until the returned {@link Lease} is released. One instance can be shared by
+ * several {@link RateLimitingHttpClientFactory} instances, e.g. one per <tt>ODataClient</tt> of the same tenant.
+ * <br/>
+ * Waiting for a slot is bounded by {@link #setMaxWaitMillis(long)}: a lease that is never released (e.g. a response
+ * nobody reads nor closes) costs a slot, but cannot block the tenant forever.
+ */
+public class RequestRateLimiter {
+
+  public static final long DEFAULT_MAX_WAIT_MILLIS = 60000;
+
+  /**
+   * Holds one in-flight slot; releasing more than once has no effect.
+   */
+  public static final class Lease {
+
+    private final Semaphore inFlight;
+
+    private final AtomicBoolean released = new AtomicBoolean();
+
+    private Lease(final Semaphore inFlight) {
+      this.inFlight = inFlight;
+    }
+
+    public void release() {
+      if (released.compareAndSet(false, true)) {
+        inFlight.release();
+      }
+    }
+  }
+
+  /**
+   * Wait-time metrics of one tenant or company.
+   */
+  public static final class WaitStats {
+
+    private final LongAdder requests = new LongAdder();
+
+    private final LongAdder delayed = new LongAdder();
+
+    private final LongAdder totalWaitNanos = new LongAdder();
+
+    private final LongAccumulator maxWaitNanos = new LongAccumulator(Math::max, 0);
+
+    private void record(final long waitNanos) {
+      requests.increment();
+      if (waitNanos > 0) {
+        delayed.increment();
+        totalWaitNanos.add(waitNanos);
+        maxWaitNanos.accumulate(waitNanos);
+      }
+    }
+
+    public long getRequests() {
+      return requests.sum();
+    }
+
+    public long getDelayed() {
+      return delayed.sum();
+    }
+
+    public long getTotalWaitMillis() {
+      return TimeUnit.NANOSECONDS.toMillis(totalWaitNanos.sum());
+    }
+
+    public long getMaxWaitMillis() {
+      return TimeUnit.NANOSECONDS.toMillis(maxWaitNanos.get());
+    }
+
+    @Override
+    public String toString() {
+      return "[requests: " + getRequests() + "; delayed: " + getDelayed()
+              + "; total wait: " + getTotalWaitMillis() + " ms; max wait: " + getMaxWaitMillis() + " ms]";
+    }
+  }
+
+  private final double tenantPermitsPerSecond;
+
+  private final int tenantBurst;
+
+  private final double companyPermitsPerSecond;
+
+  private final int companyBurst;
+
+  private final int maxInFlight;
+
+  private long maxWaitMillis = DEFAULT_MAX_WAIT_MILLIS;
+
+  private final ConcurrentMap<String, TokenBucket> buckets = new ConcurrentHashMap<String, TokenBucket>();
+
+  private final ConcurrentMap<String, Semaphore> inFlight = new ConcurrentHashMap<String, Semaphore>();
+
+  private final ConcurrentMap<String, WaitStats> stats = new ConcurrentHashMap<String, WaitStats>();
+
+  /**
+   * @param tenantPermitsPerSecond sustained request rate per tenant
+   * @param tenantBurst requests per tenant that can be sent at once after some idle time
+   * @param companyPermitsPerSecond sustained request rate per company
+   * @param companyBurst requests per company that can be sent at once after some idle time
+   * @param maxInFlight maximum concurrent requests per tenant
+   */
+  public RequestRateLimiter(final double tenantPermitsPerSecond, final int tenantBurst,
+          final double companyPermitsPerSecond, final int companyBurst, final int maxInFlight) {
+
+    this.tenantPermitsPerSecond = tenantPermitsPerSecond;
+    this.tenantBurst = tenantBurst;
+    this.companyPermitsPerSecond = companyPermitsPerSecond;
+    this.companyBurst = companyBurst;
+    this.maxInFlight = maxInFlight;
+  }
+
+  /**
+   * @param maxWaitMillis how long {@link #acquire(String, String)} waits for an in-flight slot
+   * @return this limiter
+   */
+  public RequestRateLimiter setMaxWaitMillis(final long maxWaitMillis) {
+    this.maxWaitMillis = maxWaitMillis;
+    return this;
+  }
+
+  private static String companyKey(final String tenant, final String company) {
+    return tenant + '/' + company;
+  }
+
+  private WaitStats statsFor(final String key) {
+    return stats.computeIfAbsent(key, k -> new WaitStats());
+  }
+
+  /**
+   * Waits for the permits needed to send one request.
+   *
+   * @param tenant tenant key, e.g. the AAD authority
+   * @param company company segment, or null for requests outside any company (e.g. metadata)
+   * @return lease on the in-flight slot, to be released once the response has been consumed
+   * @throws InterruptedException if interrupted while waiting
+   * @throws TimeoutException if no in-flight slot was given back within the maximum wait
+   */
+  public Lease acquire(final String tenant, final String company) throws InterruptedException, TimeoutException {
+    final long start = System.nanoTime();
+
+    final Semaphore slots = inFlight.computeIfAbsent(tenant, k -> new Semaphore(maxInFlight, true));
+    if (!slots.tryAcquire(maxWaitMillis, TimeUnit.MILLISECONDS)) {
+      throw new TimeoutException("No in-flight slot of " + tenant + " released within " + maxWaitMillis + " ms");
+    }
+    try {
+      buckets.computeIfAbsent(tenant, k -> new TokenBucket(tenantPermitsPerSecond, tenantBurst)).acquire();
+      if (company != null) {
+        final String key = companyKey(tenant, company);
+        buckets.computeIfAbsent(key, k -> new TokenBucket(companyPermitsPerSecond, companyBurst)).acquire();
+      }
+    } catch (InterruptedException e) {
+      slots.release();
+      throw e;
+    }
+
+    final long waited = System.nanoTime() - start;
+    statsFor(tenant).record(waited);
+    if (company != null) {
+      statsFor(companyKey(tenant, company)).record(waited);
+    }
+    return new Lease(slots);
+  }
+
+  /**
+   * @param tenant tenant key
+   * @return requests currently in flight for the given tenant
+   */
+  public int getInFlight(final String tenant) {
+    final Semaphore slots = inFlight.get(tenant);
+    return slots == null ? 0 : maxInFlight - slots.availablePermits();
+  }
+
+  /**
+   * @return wait-time metrics, keyed by tenant and by tenant/company
+   */
+  public Map<String, WaitStats> getWaitStats() {
+    return Collections.unmodifiableMap(stats);
+  }
+}
@@ -0,0 +1,107 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.olingo.samples.client.core.http;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Limits the retries sent on one route to a percentage of the requests sent on it, plus a small fixed number per
+ * second; when the server is overloaded, retries stop before they become the load.
+ * <br/>
+ * Every request deposits a fraction of a token, every retry withdraws a whole one; all updates are lock-free.
+ */
+public class RetryBudget {
+
+  private static final long TOKEN = 1000;
+
+  private static final long REFILL_INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+  private final long deposit;
+
+  private final long refillPerSecond;
+
+  private final long capacity;
+
+  private final AtomicLong balance;
+
+  private final AtomicLong lastRefill = new AtomicLong(System.nanoTime());
+
+  /**
+   * @param percent retries allowed as percentage of requests
+   * @param minRetriesPerSecond retries always allowed per second
+   */
+  public RetryBudget(final int percent, final int minRetriesPerSecond) {
+    this.deposit = TOKEN * percent / 100;
+    this.refillPerSecond = TOKEN * minRetriesPerSecond;
+    // allows bursts of up to ten seconds worth of minimum retries, or of the retries earned by 100 requests
+    this.capacity = Math.max(10 * refillPerSecond, 100 * deposit);
+    this.balance = new AtomicLong(refillPerSecond);
+  }
+
+  /**
+   * To be called once per original (i.e. non-retried) request.
+   */
+  public void onRequest() {
+    add(deposit);
+  }
+
+  /**
+   * @return whether a retry may be sent; if so, the token has been withdrawn
+   */
+  public boolean tryAcquire() {
+    refill();
+    while (true) {
+      final long current = balance.get();
+      if (current < TOKEN) {
+        return false;
+      }
+      if (balance.compareAndSet(current, current - TOKEN)) {
+        return true;
+      }
+    }
+  }
+
+  /**
+   * @return retries currently available
+   */
+  public double getAvailable() {
+    refill();
+    return (double) balance.get() / TOKEN;
+  }
+
+  private void refill() {
+    final long now = System.nanoTime();
+    final long last = lastRefill.get();
+    final long elapsed = now - last;
+    if (elapsed >= REFILL_INTERVAL_NANOS && lastRefill.compareAndSet(last, now)) {
+      add(refillPerSecond * elapsed / TimeUnit.SECONDS.toNanos(1));
+    }
+  }
+
+  private void add(final long amount) {
+    while (true) {
+      final long current = balance.get();
+      final long updated = Math.min(capacity, current + amount);
+      if (current == updated || balance.compareAndSet(current, updated)) {
+        return;
+      }
+    }
+  }
+}
@@ -0,0 +1,221 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.olingo.samples.client.core.http;
+
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpEntityEnclosingRequest;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+
+/**
+ * Decides whether and when a request is retried by {@link RetryingHttpClientFactory}.
+ * <br/>
+ * Delays follow exponential backoff with decorrelated jitter (each delay is picked at random between the base delay
+ * and three times the previous one, capped), so that clients throttled at the same moment do not come back at the same
+ * moment; a <tt>Retry-After</tt> sent by the server is always honoured as lower bound.
+ * <br/>
+ * Responses with status 429 are retried for any method, as the server has rejected the request without processing it.
+ * Other failures are only retried for idempotent methods, or for requests carrying the
+ * {@link #setIdempotencyHeader(String) idempotency header} (e.g. a POST with an <tt>Idempotency-Key</tt>).
+ */
+public class RetryPolicy {
+
+  public static final int SC_TOO_MANY_REQUESTS = 429;
+
+  private static final Set<String> IDEMPOTENT_METHODS =
+          new HashSet<String>(Arrays.asList("GET", "HEAD", "OPTIONS", "PUT", "DELETE"));
+
+  private int maxAttempts = 5;
+
+  private long baseDelayMillis = 500;
+
+  private long maxDelayMillis = 30000;
+
+  private long maxRetryAfterMillis = 120000;
+
+  private Set<Integer> retryStatusCodes =
+          new HashSet<Integer>(Arrays.asList(SC_TOO_MANY_REQUESTS, HttpStatus.SC_SERVICE_UNAVAILABLE));
+
+  private String idempotencyHeader = "Idempotency-Key";
+
+  private int budgetPercent = 20;
+
+  private int minRetriesPerSecond = 1;
+
+  public int getMaxAttempts() {
+    return maxAttempts;
+  }
+
+  /**
+   * @param maxAttempts maximum number of executions of a request, including the first one
+   * @return this policy
+   */
+  public RetryPolicy setMaxAttempts(final int maxAttempts) {
+    this.maxAttempts = maxAttempts;
+    return this;
+  }
+
+  public long getBaseDelayMillis() {
+    return baseDelayMillis;
+  }
+
+  public RetryPolicy setBaseDelayMillis(final long baseDelayMillis) {
+    this.baseDelayMillis = baseDelayMillis;
+    return this;
+  }
+
+  public long getMaxDelayMillis() {
+    return maxDelayMillis;
+  }
+
+  /**
+   * @param maxDelayMillis cap of the computed backoff delay
+   * @return this policy
+   */
+  public RetryPolicy setMaxDelayMillis(final long maxDelayMillis) {
+    this.maxDelayMillis = maxDelayMillis;
+    return this;
+  }
+
+  public long getMaxRetryAfterMillis() {
+    return maxRetryAfterMillis;
+  }
+
+  /**
+   * @param maxRetryAfterMillis when the server asks to come back later than this, the response is given to the caller
+   * instead of waiting
+   * @return this policy
+   */
+  public RetryPolicy setMaxRetryAfterMillis(final long maxRetryAfterMillis) {
+    this.maxRetryAfterMillis = maxRetryAfterMillis;
+    return this;
+  }
+
+  public Set<Integer> getRetryStatusCodes() {
+    return retryStatusCodes;
+  }
+
+  public RetryPolicy setRetryStatusCodes(final Integer... retryStatusCodes) {
+    this.retryStatusCodes = new HashSet<Integer>(Arrays.asList(retryStatusCodes));
+    return this;
+  }
+
+  public String getIdempotencyHeader() {
+    return idempotencyHeader;
+  }
+
+  public RetryPolicy setIdempotencyHeader(final String idempotencyHeader) {
+    this.idempotencyHeader = idempotencyHeader;
+    return this;
+  }
+
+  public int getBudgetPercent() {
+    return budgetPercent;
+  }
+
+  /**
+   * @param budgetPercent retries allowed per route, as percentage of the requests sent on that route
+   * @return this policy
+   * @see RetryBudget
+   */
+  public RetryPolicy setBudgetPercent(final int budgetPercent) {
+    this.budgetPercent = budgetPercent;
+    return this;
+  }
+
+  public int getMinRetriesPerSecond() {
+    return minRetriesPerSecond;
+  }
+
+  /**
+   * @param minRetriesPerSecond retries always allowed per route, regardless of the request volume
+   * @return this policy
+   * @see RetryBudget
+   */
+  public RetryPolicy setMinRetriesPerSecond(final int minRetriesPerSecond) {
+    this.minRetriesPerSecond = minRetriesPerSecond;
+    return this;
+  }
+
+  public boolean isRetryableStatus(final int statusCode) {
+    return retryStatusCodes.contains(statusCode);
+  }
+
+  /**
+   * @param request request to be sent again
+   * @param statusCode status of the failed response, or -1 for I/O failures
+   * @return whether sending the request once more is safe
+   */
+  public boolean isRetryable(final HttpRequest request, final int statusCode) {
+    if (request instanceof HttpEntityEnclosingRequest) {
+      final HttpEntity entity = ((HttpEntityEnclosingRequest) request).getEntity();
+      if (entity != null && !entity.isRepeatable()) {
+        return false;
+      }
+    }
+    return statusCode == SC_TOO_MANY_REQUESTS
+            || IDEMPOTENT_METHODS.contains(request.getRequestLine().getMethod().toUpperCase())
+            || (idempotencyHeader != null && request.containsHeader(idempotencyHeader));
+  }
+
+  /**
+   * @param previousDelayMillis delay applied before the previous attempt, 0 for the first retry
+   * @return delay to apply before the next attempt
+   */
+  public long nextDelayMillis(final long previousDelayMillis) {
+    final long upper = Math.max(baseDelayMillis, previousDelayMillis * 3);
+    final long delay = upper > baseDelayMillis
+            ? ThreadLocalRandom.current().nextLong(baseDelayMillis, upper + 1)
+            : baseDelayMillis;
+    return Math.min(maxDelayMillis, delay);
+  }
+
+  /**
+   * Parses the <tt>Retry-After</tt> header, given either as delay in seconds or as HTTP date.
+   *
+   * @param response response
+   * @return requested delay in milliseconds, or -1 if none (or unparsable)
+   */
+  public static long retryAfterMillis(final HttpResponse response) {
+    final Header header = response.getFirstHeader("Retry-After");
+    if (header == null || header.getValue() == null) {
+      return -1;
+    }
+    final String value = header.getValue().trim();
+    try {
+      return Math.max(0, Long.parseLong(value) * 1000);
+    } catch (NumberFormatException e) {
+      try {
+        final long date = ZonedDateTime.parse(value, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli();
+        return Math.max(0, date - System.currentTimeMillis());
+      } catch (DateTimeParseException ex) {
+        return -1;
+      }
+    }
+  }
+}
@@ -0,0 +1,244 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.olingo.samples.client.core.http;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.UnknownHostException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+import javax.net.ssl.SSLException;
+import org.apache.http.ConnectionReuseStrategy;
+import org.apache.http.HttpException;
+import org.apache.http.HttpHost;
+import org.apache.http.HttpRequest;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.AuthenticationStrategy;
+import org.apache.http.client.HttpRequestRetryHandler;
+import org.apache.http.client.RedirectStrategy;
+import org.apache.http.client.RequestDirector;
+import org.apache.http.client.UserTokenHandler;
+import org.apache.http.conn.ClientConnectionManager;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.conn.routing.HttpRoutePlanner;
+import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.params.HttpParams;
+import org.apache.http.protocol.ExecutionContext;
+import org.apache.http.protocol.HttpContext;
+import org.apache.http.protocol.HttpProcessor;
+import org.apache.http.protocol.HttpRequestExecutor;
+import org.apache.http.util.EntityUtils;
+
+/**
+ * Pooled client factory recovering from throttling and transient failures, e.g. 429 and 503 responses sent by Business
+ * Central under load.
+ * <br/>
+ * Unlike {@link RequestRetryHttpClientFactory}, whose <tt>HttpRequestRetryHandler</tt> only sees I/O exceptions and
+ * retries immediately, the clients created here also look at the response status and wait before trying again, as
+ * mandated by the {@link RetryPolicy}; retries are further limited per route by a {@link RetryBudget}. As retries
+ * happen inside the client, any interceptor installed by wrapping factories (e.g. the OAuth2 bearer token) is applied
+ * again to every attempt.
+ */
+public class RetryingHttpClientFactory extends PoolingHttpClientFactory {
+
+  private final RetryPolicy policy;
+
+  private final ConcurrentMap<String, RetryBudget> budgets = new ConcurrentHashMap<String, RetryBudget>();
+
+  private final LongAdder retries = new LongAdder();
+
+  private final LongAdder exhausted = new LongAdder();
+
+  public RetryingHttpClientFactory() {
+    this(new RetryPolicy());
+  }
+
+  public RetryingHttpClientFactory(final RetryPolicy policy) {
+    super();
+    this.policy = policy;
+  }
+
+  public RetryingHttpClientFactory(final int maxTotal, final int defaultMaxPerRoute,
+          final long idleTimeoutMillis, final long evictionIntervalMillis, final RetryPolicy policy) {
+
+    super(maxTotal, defaultMaxPerRoute, idleTimeoutMillis, evictionIntervalMillis);
+    this.policy = policy;
+  }
+
+  public RetryPolicy getPolicy() {
+    return policy;
+  }
+
+  /**
+   * @return number of retries sent so far
+   */
+  public long getRetryCount() {
+    return retries.sum();
+  }
+
+  /**
+   * @return number of times a retry was not sent because the route's budget was exhausted
+   */
+  public long getBudgetExhaustedCount() {
+    return exhausted.sum();
+  }
+
+  private RetryBudget budget(final HttpHost target) {
+    final String key = target == null ? "" : target.toHostString();
+    RetryBudget budget = budgets.get(key);
+    if (budget == null) {
+      budget = new RetryBudget(policy.getBudgetPercent(), policy.getMinRetriesPerSecond());
+      final RetryBudget existing = budgets.putIfAbsent(key, budget);
+      if (existing != null) {
+        budget = existing;
+      }
+    }
+    return budget;
+  }
+
+  private boolean acquire(final RetryBudget budget) {
+    if (budget.tryAcquire()) {
+      retries.increment();
+      return true;
+    }
+    exhausted.increment();
+    return false;
+  }
+
+  private static void sleep(final long millis) throws InterruptedIOException {
+    try {
+      Thread.sleep(millis);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while waiting for retry");
+    }
+  }
+
+  @Override
+  protected DefaultHttpClient newHttpClient(final ClientConnectionManager connectionManager) {
+    final DefaultHttpClient httpClient = new DefaultHttpClient(connectionManager) {
+
+      @Override
+      protected RequestDirector createClientRequestDirector(
+              final HttpRequestExecutor requestExec,
+              final ClientConnectionManager conman,
+              final ConnectionReuseStrategy reustrat,
+              final ConnectionKeepAliveStrategy kastrat,
+              final HttpRoutePlanner rouplan,
+              final HttpProcessor httpProcessor,
+              final HttpRequestRetryHandler retryHandler,
+              final RedirectStrategy redirectStrategy,
+              final AuthenticationStrategy targetAuthStrategy,
+              final AuthenticationStrategy proxyAuthStrategy,
+              final UserTokenHandler userTokenHandler,
+              final HttpParams params) {
+
+        return new RetryingRequestDirector(() -> super.createClientRequestDirector(
+                requestExec, conman, reustrat, kastrat, rouplan, httpProcessor, retryHandler, redirectStrategy,
+                targetAuthStrategy, proxyAuthStrategy, userTokenHandler, params));
+      }
+    };
+    httpClient.setHttpRequestRetryHandler(new BackoffRetryHandler());
+
+    return httpClient;
+  }
+
+  /**
+   * Retries responses with a retryable status, honouring <tt>Retry-After</tt>.
+   * <br/>
+   * Each attempt runs on a new director: a director keeps the connection it used, which is back in the pool once the
+   * response of the previous attempt was consumed.
+   */
+  private class RetryingRequestDirector implements RequestDirector {
+
+    private final Supplier<RequestDirector> directors;
+
+    RetryingRequestDirector(final Supplier<RequestDirector> directors) {
+      this.directors = directors;
+    }
+
+    @Override
+    public HttpResponse execute(final HttpHost target, final HttpRequest request, final HttpContext context)
+            throws HttpException, IOException {
+
+      final RetryBudget budget = budget(target);
+      budget.onRequest();
+
+      long delay = 0;
+      for (int attempt = 1;; attempt++) {
+        final HttpResponse response = directors.get().execute(target, request, context);
+        final int statusCode = response.getStatusLine().getStatusCode();
+        if (attempt >= policy.getMaxAttempts()
+                || !policy.isRetryableStatus(statusCode)
+                || !policy.isRetryable(request, statusCode)) {
+          return response;
+        }
+
+        final long retryAfter = RetryPolicy.retryAfterMillis(response);
+        if (retryAfter > policy.getMaxRetryAfterMillis() || !acquire(budget)) {
+          return response;
+        }
+        delay = policy.nextDelayMillis(delay);
+
+        // release the connection before waiting
+        EntityUtils.consume(response.getEntity());
+        sleep(Math.max(delay, retryAfter));
+      }
+    }
+  }
+
+  /**
+   * Retries I/O failures, after a backoff delay, when it is safe to do so.
+   */
+  private class BackoffRetryHandler implements HttpRequestRetryHandler {
+
+    @Override
+    public boolean retryRequest(final IOException exception, final int executionCount, final HttpContext context) {
+      if (executionCount >= policy.getMaxAttempts()
+              || exception instanceof InterruptedIOException
+              || exception instanceof UnknownHostException
+              || exception instanceof SSLException) {
+        return false;
+      }
+
+      final HttpRequest request = (HttpRequest) context.getAttribute(ExecutionContext.HTTP_REQUEST);
+      final Boolean sent = (Boolean) context.getAttribute(ExecutionContext.HTTP_REQ_SENT);
+      if (request == null || (sent != null && sent && !policy.isRetryable(request, -1))) {
+        return false;
+      }
+
+      if (!acquire(budget((HttpHost) context.getAttribute(ExecutionContext.HTTP_TARGET_HOST)))) {
+        return false;
+      }
+      try {
+        // no delay state is kept across attempts here: pick a random delay up to the one of the given attempt
+        long delay = 0;
+        for (int i = 0; i < executionCount; i++) {
+          delay = policy.nextDelayMillis(delay);
+        }
+        sleep(delay);
+      } catch (InterruptedIOException e) {
+        return false;
+      }
+      return true;
+    }
+  }
+}
@@ -0,0 +1,208 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.olingo.samples.client.core.http;
+
+import com.microsoft.aad.adal4j.AuthenticationCallback;
+import com.microsoft.aad.adal4j.AuthenticationResult;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import org.apache.olingo.samples.client.core.concurrent.VirtualThreads;
+
+/**
+ * Process-wide registry of {@link OAuth2TokenManager}s, keyed by authority, client id and resource, so that auth state
+ * grows with the number of tenants and not with the number of <tt>ODataClient</tt> instances.
+ * <br/>
+ * All token acquisitions run on one shared, bounded executor (also to be given to ADAL4J's
+ * <tt>AuthenticationContext</tt>), all proactive refreshes are timed by one shared scheduler thread. Managers not asked
+ * for a token within the idle timeout are evicted, together with their scheduled refresh.
+ */
+public final class TokenBroker {
+
+  /**
+   * Identifies the tokens of one tenant / application / resource.
+   */
+  public static final class Key {
+
+    private final String authority;
+
+    private final String clientId;
+
+    private final String resource;
+
+    public Key(final String authority, final String clientId, final String resource) {
+      this.authority = authority;
+      this.clientId = clientId;
+      this.resource = resource;
+    }
+
+    public String getAuthority() {
+      return authority;
+    }
+
+    public String getClientId() {
+      return clientId;
+    }
+
+    public String getResource() {
+      return resource;
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+      if (this == obj) {
+        return true;
+      }
+      if (!(obj instanceof Key)) {
+        return false;
+      }
+      final Key other = (Key) obj;
+      return Objects.equals(authority, other.authority)
+              && Objects.equals(clientId, other.clientId)
+              && Objects.equals(resource, other.resource);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(authority, clientId, resource);
+    }
+
+    @Override
+    public String toString() {
+      return authority + " / " + clientId + " / " + resource;
+    }
+  }
+
+  public static final int DEFAULT_THREADS = 4;
+
+  public static final int DEFAULT_QUEUE_CAPACITY = 1000;
+
+  public static final long DEFAULT_IDLE_TIMEOUT_MILLIS = TimeUnit.HOURS.toMillis(1);
+
+  private static final TokenBroker INSTANCE =
+          new TokenBroker(DEFAULT_THREADS, DEFAULT_QUEUE_CAPACITY, DEFAULT_IDLE_TIMEOUT_MILLIS);
+
+  private final ExecutorService executor;
+
+  private final ScheduledExecutorService scheduler;
+
+  private final ConcurrentMap<Key, OAuth2TokenManager> managers = new ConcurrentHashMap<Key, OAuth2TokenManager>();
+
+  private final long idleTimeoutMillis;
+
+  TokenBroker(final int threads, final int queueCapacity, final long idleTimeoutMillis) {
+    this.idleTimeoutMillis = idleTimeoutMillis;
+
+    final ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<Runnable>(queueCapacity), VirtualThreads.daemon("token-broker-"),
+            // a full queue slows the submitting thread down instead of failing its token acquisition
+            new ThreadPoolExecutor.CallerRunsPolicy());
+    pool.allowCoreThreadTimeOut(true);
+    this.executor = pool;
+
+    this.scheduler = Executors.newSingleThreadScheduledExecutor(VirtualThreads.daemon("token-broker-scheduler-"));
+    final long interval = Math.max(1000, idleTimeoutMillis / 10);
+    scheduler.scheduleWithFixedDelay(this::evictIdle, interval, interval, TimeUnit.MILLISECONDS);
+  }
+
+  public static TokenBroker getInstance() {
+    return INSTANCE;
+  }
+
+  /**
+   * @return the shared executor, to run blocking token acquisitions on
+   */
+  public ExecutorService getExecutor() {
+    return executor;
+  }
+
+  /**
+   * Returns the manager for the given key, creating it with the given source if there is none: when several clients
+   * of the same tenant ask at the same time, they all get the same manager.
+   * <br/>
+   * An existing manager that holds no token yet takes the given source over, e.g. because the source it was created
+   * with had no authorization code to start from.
+   *
+   * @param key tenant / application / resource
+   * @param source where tokens come from
+   * @return token manager
+   */
+  public OAuth2TokenManager getManager(final Key key, final OAuth2TokenManager.TokenSource source) {
+    final OAuth2TokenManager manager = managers.computeIfAbsent(key, k -> new OAuth2TokenManager(source, scheduler));
+    manager.replaceSourceIfNoToken(source);
+    return manager;
+  }
+
+  /**
+   * @param key tenant / application / resource
+   * @return the current token for the given key, or null if none (or if it was evicted)
+   */
+  public AccessToken getToken(final Key key) {
+    final OAuth2TokenManager manager = managers.get(key);
+    return manager == null ? null : manager.getToken();
+  }
+
+  /**
+   * @return number of tenants currently managed
+   */
+  public int size() {
+    return managers.size();
+  }
+
+  private void evictIdle() {
+    final long threshold = System.currentTimeMillis() - idleTimeoutMillis;
+    for (Iterator<Map.Entry<Key, OAuth2TokenManager>> itor = managers.entrySet().iterator(); itor.hasNext();) {
+      final Map.Entry<Key, OAuth2TokenManager> entry = itor.next();
+      if (entry.getValue().getLastAccess() < threshold && managers.remove(entry.getKey(), entry.getValue())) {
+        entry.getValue().close();
+      }
+    }
+  }
+
+  /**
+   * Adapts ADAL4J's callback to a future.
+   *
+   * @param future future to complete with the acquired token
+   * @return callback to pass to ADAL4J
+   */
+  @SuppressWarnings({ "rawtypes", "unchecked" })
+  public static AuthenticationCallback callback(final CompletableFuture<AccessToken> future) {
+    return new AuthenticationCallback() {
+
+      @Override
+      public void onSuccess(final Object result) {
+        future.complete(AccessToken.of((AuthenticationResult) result));
+      }
+
+      @Override
+      public void onFailure(final Throwable throwable) {
+        future.completeExceptionally(throwable);
+      }
+    };
+  }
+}
@@ -0,0 +1,81 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.olingo.samples.client.core.http;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free token bucket, implemented as generic cell rate algorithm: the only state is the theoretical arrival time
+ * of the next permit, updated by compare-and-set.
+ * <br/>
+ * Callers reserve a permit first and then wait for the returned time, so that concurrent callers are spaced evenly
+ * instead of all waking up at the same moment.
+ */
+public class TokenBucket {
+
+  private final long emissionIntervalNanos;
+
+  private final long burstToleranceNanos;
+
+  private final AtomicLong theoreticalArrival;
+
+  /**
+   * @param permitsPerSecond sustained rate
+   * @param burst permits that can be taken at once after some idle time
+   */
+  public TokenBucket(final double permitsPerSecond, final int burst) {
+    if (permitsPerSecond <= 0 || burst < 1) {
+      throw new IllegalArgumentException("Rate and burst must be positive");
+    }
+    this.emissionIntervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / permitsPerSecond);
+    this.burstToleranceNanos = emissionIntervalNanos * (burst - 1);
+    this.theoreticalArrival = new AtomicLong(System.nanoTime());
+  }
+
+  /**
+   * Reserves one permit.
+   *
+   * @return nanoseconds to wait before the permit may be used, 0 if it can be used right away
+   */
+  public long reserve() {
+    while (true) {
+      final long now = System.nanoTime();
+      final long current = theoreticalArrival.get();
+      final long base = current - now > 0 ? current : now;
+      if (theoreticalArrival.compareAndSet(current, base + emissionIntervalNanos)) {
+        return Math.max(0, base - burstToleranceNanos - now);
+      }
+    }
+  }
+
+  /**
+   * Reserves one permit and waits until it may be used.
+   *
+   * @return nanoseconds waited
+   * @throws InterruptedException if interrupted while waiting
+   */
+  public long acquire() throws InterruptedException {
+    final long wait = reserve();
+    if (wait > 0) {
+      TimeUnit.NANOSECONDS.sleep(wait);
+    }
+    return wait;
+  }
+}
@@ -0,0 +1,465 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.olingo.samples.client.core.read;
+
+import java.io.Closeable;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Queue;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import org.apache.olingo.client.api.ODataClient;
+import org.apache.olingo.client.api.communication.request.retrieve.ODataEntitySetRequest;
+import org.apache.olingo.client.api.domain.ClientEntity;
+import org.apache.olingo.client.api.domain.ClientEntitySet;
+import org.apache.olingo.client.api.domain.ClientProperty;
+import org.apache.olingo.client.api.uri.URIBuilder;
+import org.apache.olingo.commons.api.format.ContentType;
+import org.apache.olingo.commons.api.ex.ODataRuntimeException;
+
+/**
+ * Runs the same entity set query against many companies of a tenant at the same time, and merges their rows into a
+ * single iterator, each row tagged with its company.
+ * <br/>
+ * At most <tt>maxConcurrency</tt> companies of a tenant and service root are read at the same time, whatever the
+ * number of queries running; the tenant is given with each query, since the service root of the Business Central
+ * global endpoint is the same for all tenants, the tenant coming from the access token. Each query runs at most
+ * <tt>maxConcurrency</tt> tasks, reading its companies one after the other. Rows are handed over through a bounded
+ * queue, so that fast companies wait for a slow consumer.
+ * A failing company is reported in its {@link Progress} and does not affect the others.
+ */
+public class CompanyFanOut {
+
+  public static final int DEFAULT_MAX_CONCURRENCY = 4;
+
+  public static final int DEFAULT_QUEUE_CAPACITY = 10000;
+
+  private static final String COMPANIES = "companies";
+
+  /**
+   * A company of the tenant, as found in the <tt>companies</tt> entity set.
+   */
+  public static final class Company {
+
+    private final String id;
+
+    private final String name;
+
+    private final String displayName;
+
+    public Company(final String id, final String name, final String displayName) {
+      this.id = id;
+      this.name = name;
+      this.displayName = displayName;
+    }
+
+    public String getId() {
+      return id;
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    public String getDisplayName() {
+      return displayName;
+    }
+
+    /**
+     * @return segment to append to the service root, e.g. <tt>companies(...)</tt>
+     */
+    public String getSegment() {
+      return COMPANIES + '(' + id + ')';
+    }
+
+    @Override
+    public String toString() {
+      return name == null ? id : name;
+    }
+  }
+
+  /**
+   * An entity read from one of the companies.
+   */
+  public static final class CompanyRow {
+
+    private final Company company;
+
+    private final ClientEntity entity;
+
+    private CompanyRow(final Company company, final ClientEntity entity) {
+      this.company = company;
+      this.entity = entity;
+    }
+
+    public Company getCompany() {
+      return company;
+    }
+
+    public ClientEntity getEntity() {
+      return entity;
+    }
+  }
+
+  public enum State {
+    PENDING, RUNNING, DONE, FAILED, CANCELLED
+  }
+
+  /**
+   * Progress of the query against one company.
+   */
+  public static final class Progress {
+
+    private final Company company;
+
+    private volatile State state = State.PENDING;
+
+    private final AtomicLong rows = new AtomicLong();
+
+    private volatile int pages;
+
+    private volatile Exception error;
+
+    private Progress(final Company company) {
+      this.company = company;
+    }
+
+    public Company getCompany() {
+      return company;
+    }
+
+    public State getState() {
+      return state;
+    }
+
+    /**
+     * @return rows read so far, not necessarily consumed yet
+     */
+    public long getRows() {
+      return rows.get();
+    }
+
+    public int getPages() {
+      return pages;
+    }
+
+    /**
+     * @return why the company failed, or null
+     */
+    public Exception getError() {
+      return error;
+    }
+
+    @Override
+    public String toString() {
+      return company + ": " + state + ", " + rows + " rows in " + pages + " pages"
+              + (error == null ? "" : " (" + error.getMessage() + ')');
+    }
+  }
+
+  /**
+   * Merged rows of all companies, in no particular order; must be closed to stop the companies not read to the end.
+   */
+  public final class Results implements Iterator<CompanyRow>, Closeable {
+
+    private final List<Progress> progress;
+
+    // rows, and a Progress when a company is over
+    private final BlockingQueue<Object> queue = new LinkedBlockingQueue<Object>(queueCapacity);
+
+    private int remaining;
+
+    private CompanyRow next;
+
+    private volatile boolean closed;
+
+    private Results(final List<Progress> progress) {
+      this.progress = Collections.unmodifiableList(progress);
+      this.remaining = progress.size();
+    }
+
+    @Override
+    public boolean hasNext() {
+      while (next == null && remaining > 0) {
+        final Object item;
+        try {
+          item = queue.take();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new ODataRuntimeException("Interrupted while waiting for rows", e);
+        }
+        if (item instanceof CompanyRow) {
+          next = (CompanyRow) item;
+        } else {
+          remaining--;
+        }
+      }
+      return next != null;
+    }
+
+    @Override
+    public CompanyRow next() {
+      if (!hasNext()) {
+        throw new NoSuchElementException();
+      }
+      final CompanyRow row = next;
+      next = null;
+      return row;
+    }
+
+    /**
+     * @return progress of each company, updated while reading
+     */
+    public List<Progress> getProgress() {
+      return progress;
+    }
+
+    /**
+     * @return companies which failed so far
+     */
+    public List<Progress> getFailures() {
+      final List<Progress> failures = new ArrayList<Progress>();
+      for (Progress company : progress) {
+        if (company.state == State.FAILED) {
+          failures.add(company);
+        }
+      }
+      return failures;
+    }
+
+    public Stream<CompanyRow> stream() {
+      return StreamSupport.stream(Spliterators.spliteratorUnknownSize(this, Spliterator.NONNULL), false)
+              .onClose(this::close);
+    }
+
+    @Override
+    public void close() {
+      closed = true;
+      remaining = 0;
+      queue.clear();
+    }
+
+    private void drain(final Semaphore permits, final Queue<Progress> pending, final String serviceRoot,
+            final String entitySetName, final String filter) {
+
+      Progress company;
+      while ((company = pending.poll()) != null) {
+        if (closed) {
+          finish(company, State.CANCELLED, null);
+        } else {
+          read(permits, uri(serviceRoot, company.company, entitySetName, filter), company);
+        }
+      }
+    }
+
+    private void read(final Semaphore permits, final URI uri, final Progress company) {
+      try {
+        permits.acquire();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        finish(company, State.CANCELLED, e);
+        return;
+      }
+      try {
+        if (closed) {
+          finish(company, State.CANCELLED, null);
+          return;
+        }
+        company.state = State.RUNNING;
+        URI page = uri;
+        while (page != null && !closed) {
+          final ODataEntitySetRequest<ClientEntitySet> request =
+                  client.getRetrieveRequestFactory().getEntitySetRequest(page);
+          request.setAccept(ContentType.JSON.toContentTypeString());
+          final ClientEntitySet entities = request.execute().getBody();
+          for (ClientEntity entity : entities.getEntities()) {
+            if (!offer(new CompanyRow(company.company, entity))) {
+              break;
+            }
+            company.rows.incrementAndGet();
+          }
+          company.pages++;
+          report(company);
+          page = entities.getNext();
+        }
+        finish(company, closed ? State.CANCELLED : State.DONE, null);
+      } catch (Exception e) {
+        finish(company, State.FAILED, e);
+      } finally {
+        permits.release();
+      }
+    }
+
+    private void finish(final Progress company, final State state, final Exception error) {
+      company.error = error;
+      company.state = state;
+      report(company);
+      offer(company);
+    }
+
+    private boolean offer(final Object item) {
+      try {
+        while (!closed) {
+          if (queue.offer(item, 100, TimeUnit.MILLISECONDS)) {
+            return true;
+          }
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+      }
+      return false;
+    }
+  }
+
+  private final ODataClient client;
+
+  private final ExecutorService executor;
+
+  private final ConcurrentMap<String, Semaphore> tenants = new ConcurrentHashMap<String, Semaphore>();
+
+  private int maxConcurrency = DEFAULT_MAX_CONCURRENCY;
+
+  private int queueCapacity = DEFAULT_QUEUE_CAPACITY;
+
+  private Consumer<Progress> listener;
+
+  /**
+   * @param client OData client
+   * @param executor runs the company queries, up to <tt>maxConcurrency</tt> tasks per query
+   */
+  public CompanyFanOut(final ODataClient client, final ExecutorService executor) {
+    this.client = client;
+    this.executor = executor;
+  }
+
+  /**
+   * @param maxConcurrency companies of a tenant and service root read at the same time; must be set before the first
+   * query
+   * @return this fan-out
+   */
+  public CompanyFanOut setMaxConcurrency(final int maxConcurrency) {
+    this.maxConcurrency = Math.max(1, maxConcurrency);
+    return this;
+  }
+
+  /**
+   * @param queueCapacity rows read and not consumed yet, beyond which companies wait
+   * @return this fan-out
+   */
+  public CompanyFanOut setQueueCapacity(final int queueCapacity) {
+    this.queueCapacity = Math.max(1, queueCapacity);
+    return this;
+  }
+
+  /**
+   * @param listener called on every page read and when a company is over, on the thread reading it
+   * @return this fan-out
+   */
+  public CompanyFanOut setListener(final Consumer<Progress> listener) {
+    this.listener = listener;
+    return this;
+  }
+
+  /**
+   * @param serviceRoot service root URL
+   * @return all companies of the tenant
+   */
+  public List<Company> discoverCompanies(final String serviceRoot) {
+    final List<Company> companies = new ArrayList<Company>();
+    URI page = client.newURIBuilder(serviceRoot).appendEntitySetSegment(COMPANIES).build();
+    while (page != null) {
+      final ODataEntitySetRequest<ClientEntitySet> request =
+              client.getRetrieveRequestFactory().getEntitySetRequest(page);
+      request.setAccept(ContentType.JSON.toContentTypeString());
+      final ClientEntitySet entities = request.execute().getBody();
+      for (ClientEntity entity : entities.getEntities()) {
+        companies.add(new Company(value(entity, "id"), value(entity, "name"), value(entity, "displayName")));
+      }
+      page = entities.getNext();
+    }
+    return companies;
+  }
+
+  private static String value(final ClientEntity entity, final String name) {
+    final ClientProperty property = entity.getProperty(name);
+    return property == null || !property.hasPrimitiveValue() ? null : property.getPrimitiveValue().toString();
+  }
+
+  /**
+   * Starts reading the given entity set of all given companies.
+   *
+   * @param tenant tenant the client authenticates with, e.g. the AAD authority; null if the service root is enough
+   * @param serviceRoot service root URL
+   * @param companies companies to read
+   * @param entitySetName entity set name
+   * @param filter <tt>$filter</tt> to apply, or null
+   * @return merged rows, available as soon as any company delivers
+   */
+  public Results query(final String tenant, final String serviceRoot, final List<Company> companies,
+          final String entitySetName, final String filter) {
+
+    final Semaphore permits = tenants.computeIfAbsent(tenant == null ? serviceRoot : tenant + ' ' + serviceRoot,
+            key -> new Semaphore(maxConcurrency));
+    final List<Progress> progress = new ArrayList<Progress>(companies.size());
+    for (Company company : companies) {
+      progress.add(new Progress(company));
+    }
+    final Results results = new Results(progress);
+    final Queue<Progress> pending = new ConcurrentLinkedQueue<Progress>(progress);
+    for (int i = Math.min(maxConcurrency, progress.size()); i > 0; i--) {
+      executor.execute(() -> results.drain(permits, pending, serviceRoot, entitySetName, filter));
+    }
+    return results;
+  }
+
+  private URI uri(final String serviceRoot, final Company company, final String entitySetName, final String filter) {
+    final URIBuilder builder = client.newURIBuilder(serviceRoot)
+            .appendEntitySetSegment(company.getSegment()).appendEntitySetSegment(entitySetName);
+    if (filter != null) {
+      builder.filter(filter);
+    }
+    return builder.build();
+  }
+
+  private void report(final Progress company) {
+    if (listener != null) {
+      try {
+        listener.accept(company);
+      } catch (RuntimeException e) {
+        System.err.println("Fan-out listener failed on " + company.company + ": " + e.getMessage());
+      }
+    }
+  }
+}
@@ -0,0 +1,370 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.olingo.samples.client.core.read;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.time.OffsetDateTime;
+import java.util.Arrays;
+import org.apache.commons.io.IOUtils;
+import org.apache.olingo.client.api.ODataClient;
+import org.apache.olingo.client.api.communication.request.retrieve.ODataRawRequest;
+import org.apache.olingo.client.api.communication.response.ODataRawResponse;
+import org.apache.olingo.commons.api.ex.ODataRuntimeException;
+import org.apache.olingo.commons.api.format.ContentType;
+
+/**
+ * Decodes <tt>application/json;odata.metadata=minimal</tt> entity set pages straight into a {@link RowBuffer}, with
+ * a streaming parser and without building any <tt>ClientEntity</tt>: per row, no object is allocated for numbers,
+ * booleans, dates and GUIDs, and text is copied into reused buffers.
+ * <br/>
+ * Properties not in the {@link RowSchema} (navigation, complex, collections, annotations) are skipped. Dates and
+ * timestamps are parsed by hand in their usual ISO 8601 forms, with a fall back to <tt>java.time</tt> for others.
+ */
+public class JsonRowDecoder {
+
+  private static final JsonFactory JSON = new JsonFactory();
+
+  private static final String VALUE = "value";
+
+  private static final String NEXT_LINK = "@odata.nextLink";
+
+  private final RowSchema schema;
+
+  private final RowBuffer row;
+
+  /**
+   * Field names as seen at each position of the previous rows, and their columns (null if skipped): the rows of a
+   * payload all list their fields in the same order, so fields are matched by position rather than looked up by name.
+   */
+  private String[] fieldNames = new String[16];
+
+  private RowSchema.Column[] fieldColumns = new RowSchema.Column[16];
+
+  public JsonRowDecoder(final RowSchema schema) {
+    this.schema = schema;
+    this.row = new RowBuffer(schema);
+  }
+
+  public RowSchema getSchema() {
+    return schema;
+  }
+
+  /**
+   * Reads all pages of an entity set, following next links.
+   *
+   * @param client OData client, for the HTTP requests only
+   * @param uri entity set URI
+   * @param handler row handler
+   * @return number of rows
+   * @throws Exception if a request fails, or the handler does
+   */
+  public long readAll(final ODataClient client, final URI uri, final RowHandler handler) throws Exception {
+    final long first = row.getRowNumber();
+    URI next = uri;
+    while (next != null) {
+      final ODataRawRequest request = client.getRetrieveRequestFactory().getRawRequest(next);
+      request.setAccept(ContentType.JSON.toContentTypeString());
+      final ODataRawResponse response = request.execute();
+      InputStream input = null;
+      try {
+        input = response.getRawResponse();
+        final String nextLink = decode(input, handler);
+        next = nextLink == null ? null : URI.create(nextLink);
+      } finally {
+        IOUtils.closeQuietly(input);
+        response.close();
+      }
+    }
+    return row.getRowNumber() - first;
+  }
+
+  /**
+   * Decodes one page.
+   *
+   * @param input page content
+   * @param handler row handler
+   * @return next link, or null if this is the last page
+   * @throws Exception if the content cannot be parsed, or the handler fails
+   */
+  public String decode(final InputStream input, final RowHandler handler) throws Exception {
+    String nextLink = null;
+    final JsonParser parser = JSON.createParser(input);
+    try {
+      expect(parser.nextToken(), JsonToken.START_OBJECT);
+      while (parser.nextToken() == JsonToken.FIELD_NAME) {
+        final String field = parser.getCurrentName();
+        final JsonToken token = parser.nextToken();
+        if (VALUE.equals(field) && token == JsonToken.START_ARRAY) {
+          while (parser.nextToken() == JsonToken.START_OBJECT) {
+            decodeRow(parser);
+            handler.onRow(row);
+          }
+        } else if (NEXT_LINK.equals(field) && token == JsonToken.VALUE_STRING) {
+          nextLink = parser.getText();
+        } else {
+          parser.skipChildren();
+        }
+      }
+    } finally {
+      parser.close();
+    }
+    return nextLink;
+  }
+
+  private void decodeRow(final JsonParser parser) throws IOException {
+    row.next();
+    int position = 0;
+    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+      final RowSchema.Column column = column(position++, parser.getCurrentName());
+      final JsonToken token = parser.nextToken();
+      if (column == null) {
+        parser.skipChildren();
+      } else if (token == JsonToken.VALUE_NULL) {
+        row.setNull(column.getIndex());
+      } else if (token.isScalarValue()) {
+        decodeValue(parser, token, column);
+      } else {
+        parser.skipChildren();
+      }
+    }
+  }
+
+  private RowSchema.Column column(final int position, final String name) {
+    if (position == fieldNames.length) {
+      fieldNames = Arrays.copyOf(fieldNames, position * 2);
+      fieldColumns = Arrays.copyOf(fieldColumns, position * 2);
+    }
+    // field names are interned by the parser, so this is mostly an identity check
+    if (!name.equals(fieldNames[position])) {
+      fieldNames[position] = name;
+      fieldColumns[position] = schema.getColumn(name);
+    }
+    return fieldColumns[position];
+  }
+
+  private void decodeValue(final JsonParser parser, final JsonToken token, final RowSchema.Column column)
+          throws IOException {
+
+    final int index = column.getIndex();
+    final char[] chars = parser.getTextCharacters();
+    final int offset = parser.getTextOffset();
+    final int length = parser.getTextLength();
+
+    switch (column.getSlot()) {
+      case LONG:
+        if (token == JsonToken.VALUE_TRUE || token == JsonToken.VALUE_FALSE) {
+          row.setLong(index, token == JsonToken.VALUE_TRUE ? 1 : 0);
+        } else if (token == JsonToken.VALUE_NUMBER_INT) {
+          row.setLong(index, parser.getLongValue());
+        } else if (column.getKind() == null) {
+          row.setLong(index, parseLong(chars, offset, length));
+        } else {
+          switch (column.getKind()) {
+            case Date:
+              row.setLong(index, parseDate(chars, offset, length));
+              break;
+            case DateTimeOffset:
+              row.setLong(index, parseDateTimeOffset(chars, offset, length));
+              break;
+            case TimeOfDay:
+              row.setLong(index, parseTimeOfDay(chars, offset, length));
+              break;
+            default:
+              // e.g. Int64 as string, with IEEE754Compatible=true
+              row.setLong(index, parseLong(chars, offset, length));
+          }
+        }
+        break;
+
+      case DOUBLE:
+        row.setDouble(index, token == JsonToken.VALUE_STRING
+                ? Double.parseDouble(new String(chars, offset, length))
+                : parser.getDoubleValue());
+        if (column.isKeepText()) {
+          row.setText(index, chars, offset, length);
+        }
+        break;
+
+      case GUID:
+        if (length != 36) {
+          throw new NumberFormatException("Invalid GUID: " + String.valueOf(chars, offset, length));
+        }
+        row.setGuid(index, parseHex(chars, offset, 0, 18), parseHex(chars, offset, 19, 36));
+        break;
+
+      default:
+        row.setText(index, chars, offset, length);
+    }
+  }
+
+  private static void expect(final JsonToken actual, final JsonToken expected) {
+    if (actual != expected) {
+      throw new ODataRuntimeException("Expected " + expected + ", found " + actual);
+    }
+  }
+
+  private static long parseLong(final char[] chars, final int offset, final int length) {
+    // accumulated negatively, as Long.MIN_VALUE has no positive counterpart
+    long value = 0;
+    boolean negative = false;
+    boolean digits = false;
+    try {
+      for (int i = 0; i < length; i++) {
+        final char c = chars[offset + i];
+        if (i == 0 && (c == '-' || c == '+')) {
+          negative = c == '-';
+        } else if (c >= '0' && c <= '9') {
+          value = Math.subtractExact(Math.multiplyExact(value, 10), c - '0');
+          digits = true;
+        } else {
+          throw new NumberFormatException(new String(chars, offset, length));
+        }
+      }
+      if (!digits) {
+        throw new NumberFormatException(new String(chars, offset, length));
+      }
+      return negative ? value : Math.negateExact(value);
+    } catch (ArithmeticException e) {
+      throw new NumberFormatException("Out of range: " + new String(chars, offset, length));
+    }
+  }
+
+  private static int digits(final char[] chars, final int from, final int count) {
+    int value = 0;
+    for (int i = from; i < from + count; i++) {
+      final char c = chars[i];
+      if (c < '0' || c > '9') {
+        throw new NumberFormatException(String.valueOf(chars, from, count));
+      }
+      value = value * 10 + (c - '0');
+    }
+    return value;
+  }
+
+  /**
+   * Parses the hex digits between the given positions, skipping dashes; 8-4-4-4-12 GUIDs give 16 digits each for
+   * [0, 18) and [19, 36).
+   */
+  private static long parseHex(final char[] chars, final int offset, final int from, final int to) {
+    long value = 0;
+    for (int i = offset + from; i < offset + to; i++) {
+      final char c = chars[i];
+      if (c == '-') {
+        continue;
+      }
+      final int digit = Character.digit(c, 16);
+      if (digit < 0) {
+        throw new NumberFormatException("Invalid GUID: " + String.valueOf(chars, offset, 36));
+      }
+      value = (value << 4) | digit;
+    }
+    return value;
+  }
+
+  /**
+   * <tt>yyyy-MM-dd</tt> to epoch day.
+   */
+  private static long parseDate(final char[] chars, final int offset, final int length) {
+    if (length != 10 || chars[offset + 4] != '-' || chars[offset + 7] != '-') {
+      throw new NumberFormatException("Invalid date: " + String.valueOf(chars, offset, length));
+    }
+    return epochDay(digits(chars, offset, 4), digits(chars, offset + 5, 2), digits(chars, offset + 8, 2));
+  }
+
+  /**
+   * Days from civil, valid for the proleptic Gregorian calendar.
+   */
+  private static long epochDay(final int year, final int month, final int day) {
+    final int y = month <= 2 ? year - 1 : year;
+    final int era = (y >= 0 ? y : y - 399) / 400;
+    final int yearOfEra = y - era * 400;
+    final int dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+    final int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+    return era * 146097L + dayOfEra - 719468;
+  }
+
+  /**
+   * <tt>HH:mm[:ss[.fffffffff]]</tt> to nanosecond of day.
+   */
+  private static long parseTimeOfDay(final char[] chars, final int offset, final int length) {
+    return nanoOfDay(chars, offset, offset + length);
+  }
+
+  private static long nanoOfDay(final char[] chars, final int from, final int to) {
+    if (to - from < 5 || chars[from + 2] != ':') {
+      throw new NumberFormatException("Invalid time: " + String.valueOf(chars, from, to - from));
+    }
+    long nanos = (digits(chars, from, 2) * 3600L + digits(chars, from + 3, 2) * 60L) * 1000000000L;
+    int i = from + 5;
+    if (i < to && chars[i] == ':') {
+      nanos += digits(chars, i + 1, 2) * 1000000000L;
+      i += 3;
+      if (i < to && chars[i] == '.') {
+        long fraction = 0;
+        int scale = 0;
+        for (i++; i < to && chars[i] >= '0' && chars[i] <= '9'; i++) {
+          if (scale < 9) {
+            fraction = fraction * 10 + (chars[i] - '0');
+            scale++;
+          }
+        }
+        for (; scale < 9; scale++) {
+          fraction *= 10;
+        }
+        nanos += fraction;
+      }
+    }
+    if (i != to) {
+      throw new NumberFormatException("Invalid time: " + String.valueOf(chars, from, to - from));
+    }
+    return nanos;
+  }
+
+  /**
+   * <tt>yyyy-MM-ddTHH:mm[:ss[.f...]](Z|+HH:mm|-HH:mm)</tt> to epoch millisecond.
+   */
+  private static long parseDateTimeOffset(final char[] chars, final int offset, final int length) {
+    try {
+      final int end = offset + length;
+      if (length < 17 || chars[offset + 10] != 'T') {
+        throw new NumberFormatException();
+      }
+      final long day = parseDate(chars, offset, 10);
+
+      int zone = end;
+      long offsetSeconds = 0;
+      if (chars[end - 1] == 'Z') {
+        zone = end - 1;
+      } else if (chars[end - 6] == '+' || chars[end - 6] == '-') {
+        zone = end - 6;
+        offsetSeconds = (digits(chars, end - 5, 2) * 3600L + digits(chars, end - 2, 2) * 60L)
+                * (chars[zone] == '-' ? -1 : 1);
+      }
+      final long nanos = nanoOfDay(chars, offset + 11, zone);
+      return (day * 86400L - offsetSeconds) * 1000L + nanos / 1000000L;
+    } catch (RuntimeException e) {
+      return OffsetDateTime.parse(String.valueOf(chars, offset, length)).toInstant().toEpochMilli();
+    }
+  }
+}
@@ -0,0 +1,382 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.olingo.samples.client.core.read;
+
+import java.io.Closeable;
+import java.io.UnsupportedEncodingException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.http.HttpStatus;
+import org.apache.olingo.client.api.ODataClient;
+import org.apache.olingo.client.api.communication.ODataClientErrorException;
+import org.apache.olingo.client.api.communication.request.retrieve.ODataEntitySetRequest;
+import org.apache.olingo.client.api.domain.ClientEntity;
+import org.apache.olingo.client.api.domain.ClientEntitySet;
+import org.apache.olingo.client.api.domain.ClientProperty;
+import org.apache.olingo.commons.api.format.ContentType;
+import org.apache.olingo.commons.api.ex.ODataRuntimeException;
+import org.apache.olingo.samples.client.core.concurrent.VirtualThreads;
+
+/**
+ * Collects key lookups on one entity set and resolves them with a single query per batch, as
+ * <tt>$filter=id in (...)</tt>, or as <tt>id eq ... or id eq ...</tt> if the service rejected the first <tt>in</tt>
+ * query; once an <tt>in</tt> query succeeded, later errors are reported as such.
+ * <br/>
+ * A batch is sent when it holds <tt>maxBatchSize</tt> keys, or <tt>maxDelayMillis</tt> after its first key, and is
+ * split further so that no URL is longer than <tt>maxUrlLength</tt>. Identical keys of a batch share one lookup; keys
+ * not found complete with an empty result.
+ * <br/>
+ * Keys must be of the Java type of the key property (e.g. {@link java.util.UUID} for <tt>Edm.Guid</tt>), to be
+ * matched with the entities read.
+ */
+public class KeyBatchLoader implements Closeable {
+
+  public static final int DEFAULT_MAX_BATCH_SIZE = 100;
+
+  public static final long DEFAULT_MAX_DELAY_MILLIS = 5;
+
+  public static final int DEFAULT_MAX_URL_LENGTH = 2048;
+
+  private static final String FILTER = "?$filter=";
+
+  private static final class Lookup {
+
+    private final String literal;
+
+    private final CompletableFuture<Optional<ClientEntity>> future =
+            new CompletableFuture<Optional<ClientEntity>>();
+
+    private Lookup(final String literal) {
+      this.literal = literal;
+    }
+  }
+
+  private final ODataClient client;
+
+  private final String entitySetURI;
+
+  private final String keyProperty;
+
+  private final Executor executor;
+
+  private final ScheduledExecutorService timer;
+
+  private int maxBatchSize = DEFAULT_MAX_BATCH_SIZE;
+
+  private long maxDelayMillis = DEFAULT_MAX_DELAY_MILLIS;
+
+  private int maxUrlLength = DEFAULT_MAX_URL_LENGTH;
+
+  private volatile boolean useIn = true;
+
+  private volatile boolean inSupported;
+
+  private final Object lock = new Object();
+
+  private Map<String, Lookup> batch = new LinkedHashMap<String, Lookup>();
+
+  private ScheduledFuture<?> scheduled;
+
+  private boolean closed;
+
+  private final AtomicLong keys = new AtomicLong();
+
+  private final AtomicLong requests = new AtomicLong();
+
+  /**
+   * @param client OData client
+   * @param entitySetURI entity set URI, without query options
+   * @param keyProperty name of the single key property
+   * @param executor runs the queries
+   */
+  public KeyBatchLoader(final ODataClient client, final String entitySetURI, final String keyProperty,
+          final Executor executor) {
+
+    this.client = client;
+    this.entitySetURI = entitySetURI;
+    this.keyProperty = keyProperty;
+    this.executor = executor;
+    this.timer = Executors.newSingleThreadScheduledExecutor(VirtualThreads.daemon("key-batch-loader-"));
+  }
+
+  public KeyBatchLoader setMaxBatchSize(final int maxBatchSize) {
+    this.maxBatchSize = Math.max(1, maxBatchSize);
+    return this;
+  }
+
+  /**
+   * @param maxDelayMillis how long the first key of a batch waits for others
+   * @return this loader
+   */
+  public KeyBatchLoader setMaxDelayMillis(final long maxDelayMillis) {
+    this.maxDelayMillis = maxDelayMillis;
+    return this;
+  }
+
+  public KeyBatchLoader setMaxUrlLength(final int maxUrlLength) {
+    this.maxUrlLength = maxUrlLength;
+    return this;
+  }
+
+  /**
+   * @param useIn whether to try <tt>in</tt> first; it is given up anyway as soon as the service rejects it
+   * @return this loader
+   */
+  public KeyBatchLoader setUseIn(final boolean useIn) {
+    this.useIn = useIn;
+    return this;
+  }
+
+  /**
+   * @param key key value
+   * @return the entity with the given key, or empty if there is none; failed with an {@link IllegalStateException} if
+   * this loader is closed
+   */
+  public CompletableFuture<Optional<ClientEntity>> load(final Object key) {
+    final String literal = literal(key);
+    Map<String, Lookup> full = null;
+    final Lookup lookup;
+    synchronized (lock) {
+      if (closed) {
+        final CompletableFuture<Optional<ClientEntity>> rejected = new CompletableFuture<Optional<ClientEntity>>();
+        rejected.completeExceptionally(new IllegalStateException("Key batch loader closed: " + entitySetURI));
+        return rejected;
+      }
+      final Lookup pending = batch.get(literal);
+      if (pending != null) {
+        return pending.future;
+      }
+      lookup = new Lookup(literal);
+      batch.put(literal, lookup);
+      keys.incrementAndGet();
+      if (batch.size() >= maxBatchSize) {
+        full = takeBatch();
+      } else if (batch.size() == 1) {
+        scheduled = timer.schedule(this::flush, maxDelayMillis, TimeUnit.MILLISECONDS);
+      }
+    }
+    if (full != null) {
+      dispatch(full);
+    }
+    return lookup.future;
+  }
+
+  /**
+   * Sends the current batch without waiting any longer.
+   */
+  public void flush() {
+    final Map<String, Lookup> pending;
+    synchronized (lock) {
+      pending = takeBatch();
+    }
+    if (!pending.isEmpty()) {
+      dispatch(pending);
+    }
+  }
+
+  private Map<String, Lookup> takeBatch() {
+    final Map<String, Lookup> taken = batch;
+    batch = new LinkedHashMap<String, Lookup>();
+    if (scheduled != null) {
+      scheduled.cancel(false);
+      scheduled = null;
+    }
+    return taken;
+  }
+
+  private void dispatch(final Map<String, Lookup> pending) {
+    final List<Lookup> lookups = new ArrayList<Lookup>(pending.values());
+    try {
+      executor.execute(() -> query(lookups));
+    } catch (RuntimeException e) {
+      fail(lookups, e);
+    }
+  }
+
+  private void query(final List<Lookup> lookups) {
+    final boolean in = useIn;
+    final List<List<Lookup>> chunks = split(lookups, in);
+    for (int i = 0; i < chunks.size(); i++) {
+      final List<Lookup> chunk = chunks.get(i);
+      try {
+        read(chunk, in);
+        if (in) {
+          inSupported = true;
+        }
+      } catch (ODataClientErrorException e) {
+        final int status = e.getStatusLine().getStatusCode();
+        if (in && !inSupported && (status == HttpStatus.SC_BAD_REQUEST || status == HttpStatus.SC_NOT_IMPLEMENTED)) {
+          // no in: this chunk and the following ones as or-chains, which need shorter chunks
+          useIn = false;
+          final List<Lookup> remaining = new ArrayList<Lookup>();
+          for (List<Lookup> rest : chunks.subList(i, chunks.size())) {
+            remaining.addAll(rest);
+          }
+          retry(remaining);
+          return;
+        }
+        fail(chunk, e);
+      } catch (RuntimeException e) {
+        fail(chunk, e);
+      }
+    }
+  }
+
+  private void retry(final List<Lookup> lookups) {
+    for (List<Lookup> chunk : split(lookups, false)) {
+      try {
+        read(chunk, false);
+      } catch (RuntimeException e) {
+        fail(chunk, e);
+      }
+    }
+  }
+
+  /**
+   * Splits lookups so that each query URL stays within the limit; the URL length is estimated from the encoded length
+   * of each term.
+   */
+  private List<List<Lookup>> split(final List<Lookup> lookups, final boolean in) {
+    final int base = entitySetURI.length() + FILTER.length() + encodedLength(keyProperty + (in ? " in ()" : ""));
+    final List<List<Lookup>> chunks = new ArrayList<List<Lookup>>();
+    List<Lookup> chunk = new ArrayList<Lookup>();
+    int length = base;
+    for (Lookup lookup : lookups) {
+      final int term = in
+              ? encodedLength(lookup.literal + ',')
+              : encodedLength(keyProperty + " eq " + lookup.literal + " or ");
+      if (!chunk.isEmpty() && length + term > maxUrlLength) {
+        chunks.add(chunk);
+        chunk = new ArrayList<Lookup>();
+        length = base;
+      }
+      chunk.add(lookup);
+      length += term;
+    }
+    if (!chunk.isEmpty()) {
+      chunks.add(chunk);
+    }
+    return chunks;
+  }
+
+  private void read(final List<Lookup> chunk, final boolean in) {
+    final StringBuilder filter = new StringBuilder();
+    if (in) {
+      filter.append(keyProperty).append(" in (");
+      for (int i = 0; i < chunk.size(); i++) {
+        filter.append(i == 0 ? "" : ",").append(chunk.get(i).literal);
+      }
+      filter.append(')');
+    } else {
+      for (int i = 0; i < chunk.size(); i++) {
+        filter.append(i == 0 ? "" : " or ").append(keyProperty).append(" eq ").append(chunk.get(i).literal);
+      }
+    }
+
+    final Map<String, ClientEntity> found = new HashMap<String, ClientEntity>();
+    URI next = client.newURIBuilder(entitySetURI).filter(filter.toString()).build();
+    while (next != null) {
+      final ODataEntitySetRequest<ClientEntitySet> request =
+              client.getRetrieveRequestFactory().getEntitySetRequest(next);
+      request.setAccept(ContentType.JSON.toContentTypeString());
+      final ClientEntitySet page = request.execute().getBody();
+      requests.incrementAndGet();
+      for (ClientEntity entity : page.getEntities()) {
+        final ClientProperty key = entity.getProperty(keyProperty);
+        if (key != null && key.hasPrimitiveValue()) {
+          found.put(literal(key.getPrimitiveValue().toValue()), entity);
+        }
+      }
+      next = page.getNext();
+    }
+    for (Lookup lookup : chunk) {
+      lookup.future.complete(Optional.ofNullable(found.get(lookup.literal)));
+    }
+  }
+
+  private static void fail(final List<Lookup> lookups, final Throwable error) {
+    for (Lookup lookup : lookups) {
+      lookup.future.completeExceptionally(error);
+    }
+  }
+
+  /**
+   * @param key key value
+   * @return the key as URI literal: strings quoted, everything else (GUIDs, numbers) as is
+   */
+  private static String literal(final Object key) {
+    if (key instanceof CharSequence) {
+      return '\'' + key.toString().replace("'", "''") + '\'';
+    }
+    return String.valueOf(key);
+  }
+
+  private static int encodedLength(final String term) {
+    try {
+      return URLEncoder.encode(term, "UTF-8").length();
+    } catch (UnsupportedEncodingException e) {
+      throw new ODataRuntimeException(e);
+    }
+  }
+
+  /**
+   * @return keys looked up, identical ones within a batch counted once
+   */
+  public long getKeyCount() {
+    return keys.get();
+  }
+
+  /**
+   * @return requests sent, pages included
+   */
+  public long getRequestCount() {
+    return requests.get();
+  }
+
+  /**
+   * Sends the current batch and stops the timer; later lookups are rejected.
+   */
+  @Override
+  public void close() {
+    synchronized (lock) {
+      closed = true;
+    }
+    flush();
+    timer.shutdown();
+  }
+
+  @Override
+  public String toString() {
+    return "KeyBatchLoader{" + entitySetURI + ", keys=" + keys + ", requests=" + requests
+            + (useIn ? "" : ", or-chains") + '}';
+  }
+}
@@ -0,0 +1,291 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.olingo.samples.client.core.read;
+
+import java.io.InputStream;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.olingo.client.api.ODataClient;
+import org.apache.olingo.client.api.communication.request.retrieve.ODataEntitySetRequest;
+import org.apache.olingo.client.api.communication.request.retrieve.ODataRawRequest;
+import org.apache.olingo.client.api.communication.response.ODataRawResponse;
+import org.apache.olingo.client.api.domain.ClientEntity;
+import org.apache.olingo.client.api.domain.ClientEntitySet;
+import org.apache.olingo.client.api.domain.ClientPrimitiveValue;
+import org.apache.olingo.client.api.uri.URIBuilder;
+import org.apache.olingo.commons.api.edm.EdmEntityType;
+import org.apache.olingo.commons.api.edm.EdmKeyPropertyRef;
+import org.apache.olingo.commons.api.ex.ODataRuntimeException;
+import org.apache.olingo.commons.api.format.ContentType;
+
+/**
+ * Reads a whole entity set with several concurrent requests, each one scanning a partition of it; every partition is
+ * followed through its next links and read ahead as by {@link PrefetchingEntitySetReader}.
+ * <br/>
+ * Partitions are either <tt>$skip</tt> / <tt>$top</tt> windows over the <tt>$count</tt> of the entity set, or key
+ * ranges (<tt>$filter</tt>): the range boundaries are the keys found at the window boundaries, as sorted by the server
+ * itself, hence ranges are balanced and correct for any key type (GUIDs included, whose server-side sort order often
+ * differs from {@link java.util.UUID}'s). Key ranges keep working when rows are inserted or deleted during the scan,
+ * windows do not; windows are used anyway for composite keys.
+ * <br/>
+ * Ordered scans return the entities sorted by key, with partitions still fetched concurrently; unordered ones return
+ * them as soon as any partition delivers.
+ */
+public class ParallelEntitySetScanner {
+
+  public enum Partitioning {
+
+    SKIP_TOP,
+    KEY_RANGE
+
+  }
+
+  public static final int DEFAULT_PARTITIONS = 4;
+
+  private final ODataClient client;
+
+  private final ExecutorService executor;
+
+  private int partitions = DEFAULT_PARTITIONS;
+
+  private Partitioning partitioning = Partitioning.KEY_RANGE;
+
+  private boolean ordered;
+
+  private int depth = PrefetchingEntitySetReader.DEFAULT_DEPTH;
+
+  private long maxBufferedBytes = PrefetchingEntitySetReader.DEFAULT_MAX_BUFFERED_BYTES;
+
+  /**
+   * @param client OData client
+   * @param executor runs the partition scans: should allow as many concurrent tasks as partitions
+   */
+  public ParallelEntitySetScanner(final ODataClient client, final ExecutorService executor) {
+    this.client = client;
+    this.executor = executor;
+  }
+
+  /**
+   * @param partitions number of concurrent requests; the server may enforce its own limit
+   * @return this scanner
+   */
+  public ParallelEntitySetScanner setPartitions(final int partitions) {
+    this.partitions = Math.max(1, partitions);
+    return this;
+  }
+
+  public ParallelEntitySetScanner setPartitioning(final Partitioning partitioning) {
+    this.partitioning = partitioning;
+    return this;
+  }
+
+  /**
+   * @param ordered whether entities are to be returned sorted by key
+   * @return this scanner
+   */
+  public ParallelEntitySetScanner setOrdered(final boolean ordered) {
+    this.ordered = ordered;
+    return this;
+  }
+
+  /**
+   * @param depth pages read ahead, per partition when ordered, overall otherwise
+   * @param maxBufferedBytes page content held in memory, per partition when ordered, overall otherwise
+   * @return this scanner
+   */
+  public ParallelEntitySetScanner setReadAhead(final int depth, final long maxBufferedBytes) {
+    this.depth = depth;
+    this.maxBufferedBytes = maxBufferedBytes;
+    return this;
+  }
+
+  /**
+   * Scans the given entity set; the returned stream must be closed, to stop the partitions not consumed to the end.
+   *
+   * @param entityType entity type, for its key
+   * @param entitySetURI entity set URI, without query options
+   * @param filter <tt>$filter</tt> to apply, or null
+   * @return all entities of the entity set, matching the given filter
+   */
+  public Stream<ClientEntity> scan(final EdmEntityType entityType, final String entitySetURI, final String filter) {
+    final List<String> keys = new ArrayList<String>();
+    for (EdmKeyPropertyRef ref : entityType.getKeyPropertyRefs()) {
+      keys.add(ref.getName());
+    }
+    final String orderBy = StringUtils.join(keys, ',');
+
+    final long count = count(entitySetURI, filter);
+    final int actual = (int) Math.max(1, Math.min(partitions, count));
+    final long window = (count + actual - 1) / actual;
+
+    final List<URI> uris = new ArrayList<URI>(actual);
+    if (actual == 1) {
+      uris.add(builder(entitySetURI, filter).orderBy(orderBy).build());
+    } else if (partitioning == Partitioning.KEY_RANGE && keys.size() == 1) {
+      final String key = keys.get(0);
+      final List<String> bounds = boundaries(entitySetURI, filter, key, window, actual);
+      for (int i = 0; i <= bounds.size(); i++) {
+        final List<String> conditions = new ArrayList<String>();
+        if (filter != null) {
+          conditions.add('(' + filter + ')');
+        }
+        if (i > 0) {
+          conditions.add(key + " ge " + bounds.get(i - 1));
+        }
+        if (i < bounds.size()) {
+          conditions.add(key + " lt " + bounds.get(i));
+        }
+        uris.add(builder(entitySetURI, StringUtils.join(conditions, " and ")).orderBy(key).build());
+      }
+    } else {
+      for (int i = 0; i < actual; i++) {
+        uris.add(builder(entitySetURI, filter).orderBy(orderBy).skip((int) (i * window)).top((int) window).build());
+      }
+    }
+
+    final List<PrefetchingEntitySetReader> readers = new ArrayList<PrefetchingEntitySetReader>();
+    final Iterator<ClientEntity> entities;
+    if (ordered) {
+      // all partitions start right away, each is read ahead on its own
+      for (URI uri : uris) {
+        readers.add(new PrefetchingEntitySetReader(client, uri, executor, depth, maxBufferedBytes));
+      }
+      entities = concat(readers);
+    } else {
+      final PrefetchingEntitySetReader reader =
+              new PrefetchingEntitySetReader(client, uris, executor, depth, maxBufferedBytes);
+      readers.add(reader);
+      entities = reader;
+    }
+
+    return StreamSupport.stream(Spliterators.spliteratorUnknownSize(entities,
+            Spliterator.NONNULL | (ordered ? Spliterator.ORDERED : 0)), false).
+            onClose(() -> {
+              for (PrefetchingEntitySetReader reader : readers) {
+                reader.close();
+              }
+            });
+  }
+
+  private URIBuilder builder(final String entitySetURI, final String filter) {
+    final URIBuilder builder = client.newURIBuilder(entitySetURI);
+    return filter == null ? builder : builder.filter(filter);
+  }
+
+  private long count(final String entitySetURI, final String filter) {
+    final ODataRawRequest request =
+            client.getRetrieveRequestFactory().getRawRequest(builder(entitySetURI, filter).appendCountSegment().build());
+    request.setAccept("text/plain");
+    final ODataRawResponse response = request.execute();
+    InputStream input = null;
+    try {
+      input = response.getRawResponse();
+      return Long.parseLong(IOUtils.toString(input, "UTF-8").trim());
+    } catch (Exception e) {
+      throw new ODataRuntimeException("Could not count " + entitySetURI, e);
+    } finally {
+      IOUtils.closeQuietly(input);
+      response.close();
+    }
+  }
+
+  /**
+   * Finds the keys at the window boundaries, one request each, all at the same time.
+   */
+  private List<String> boundaries(final String entitySetURI, final String filter, final String key,
+          final long window, final int actual) {
+
+    final List<CompletableFuture<String>> probes = new ArrayList<CompletableFuture<String>>();
+    for (int i = 1; i < actual; i++) {
+      final URI uri = builder(entitySetURI, filter).orderBy(key).select(key).skip((int) (i * window)).top(1).build();
+      probes.add(CompletableFuture.supplyAsync(() -> keyLiteral(uri, key), executor));
+    }
+
+    final List<String> bounds = new ArrayList<String>();
+    try {
+      for (CompletableFuture<String> probe : probes) {
+        final String bound = probe.join();
+        // rows may have vanished since counting
+        if (bound != null && !bounds.contains(bound)) {
+          bounds.add(bound);
+        }
+      }
+    } catch (CompletionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      if (e.getCause() instanceof Error) {
+        throw (Error) e.getCause();
+      }
+      throw new ODataRuntimeException("Could not probe the key boundaries", e);
+    }
+    return bounds;
+  }
+
+  private String keyLiteral(final URI uri, final String key) {
+    final ODataEntitySetRequest<ClientEntitySet> request = client.getRetrieveRequestFactory().getEntitySetRequest(uri);
+    request.setAccept(ContentType.JSON.toContentTypeString());
+    final List<ClientEntity> found = request.execute().getBody().getEntities();
+    if (found.isEmpty()) {
+      return null;
+    }
+    final ClientPrimitiveValue value = found.get(0).getProperty(key).getPrimitiveValue();
+    // e.g. quotes strings, leaves GUIDs and numbers as they are
+    return value.getType().toUriLiteral(value.toString());
+  }
+
+  private static Iterator<ClientEntity> concat(final List<PrefetchingEntitySetReader> readers) {
+    return new Iterator<ClientEntity>() {
+
+      private int index;
+
+      @Override
+      public boolean hasNext() {
+        while (index < readers.size()) {
+          if (readers.get(index).hasNext()) {
+            return true;
+          }
+          readers.get(index++).close();
+        }
+        return false;
+      }
+
+      @Override
+      public ClientEntity next() {
+        if (!hasNext()) {
+          throw new NoSuchElementException();
+        }
+        return readers.get(index).next();
+      }
+    };
+  }
+}
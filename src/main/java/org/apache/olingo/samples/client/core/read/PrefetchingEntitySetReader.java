@@ -0,0 +1,309 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.olingo.samples.client.core.read;
+
+import java.io.ByteArrayInputStream;
+import java.io.Closeable;
+import java.io.InputStream;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.commons.io.IOUtils;
+import org.apache.http.HttpHeaders;
+import org.apache.olingo.client.api.ODataClient;
+import org.apache.olingo.client.api.communication.request.retrieve.ODataRawRequest;
+import org.apache.olingo.client.api.communication.response.ODataRawResponse;
+import org.apache.olingo.client.api.domain.ClientEntity;
+import org.apache.olingo.client.api.domain.ClientEntitySet;
+import org.apache.olingo.commons.api.ex.ODataRuntimeException;
+import org.apache.olingo.commons.api.format.ContentType;
+
+/**
+ * Iterates over all entities of a (server-side paged) entity set, fetching and deserializing the following pages in
+ * the background while the current one is consumed, so that network latency and processing overlap.
+ * <br/>
+ * At most <tt>depth</tt> pages are read ahead (being fetched or waiting for the consumer), and about
+ * <tt>maxBufferedBytes</tt> of (uncompressed) page content are held at a time; a single page larger than that is still
+ * let through, alone. Memory for a page is reserved before its content is read, for its announced length or else the
+ * length of the previous page of the same URI, and adjusted once read: a page longer than expected may exceed the cap
+ * by the difference while waiting for the consumer. Closing the reader before the end stops the background fetch and
+ * releases the buffered pages.
+ * <br/>
+ * Given several URIs (e.g. partitions of the same entity set), all of them are fetched at the same time, sharing depth
+ * and memory cap; entities are then returned in page arrival order.
+ */
+public class PrefetchingEntitySetReader implements Iterator<ClientEntity>, Closeable {
+
+  public static final int DEFAULT_DEPTH = 2;
+
+  public static final long DEFAULT_MAX_BUFFERED_BYTES = 64L * 1024 * 1024;
+
+  private static final int PERMIT_BYTES = 1024;
+
+  /**
+   * Element of the hand-off queue: a page, the end, or the failure that stopped the fetch.
+   */
+  private static final class Page {
+
+    private static final Page END = new Page(Collections.<ClientEntity>emptyList(), 0, null);
+
+    private final List<ClientEntity> entities;
+
+    private final int permits;
+
+    private final Exception failure;
+
+    private Page(final List<ClientEntity> entities, final int permits, final Exception failure) {
+      this.entities = entities;
+      this.permits = permits;
+      this.failure = failure;
+    }
+  }
+
+  private final ODataClient client;
+
+  private final BlockingQueue<Page> pages = new LinkedBlockingQueue<Page>();
+
+  private final Semaphore ahead;
+
+  private final Semaphore memory;
+
+  private final int maxPermits;
+
+  private final List<Future<?>> producers = new ArrayList<Future<?>>();
+
+  private final AtomicLong pageCount = new AtomicLong();
+
+  private final AtomicLong consumerWaitNanos = new AtomicLong();
+
+  private volatile boolean closed;
+
+  private Iterator<ClientEntity> current = Collections.<ClientEntity>emptyList().iterator();
+
+  private int currentPermits;
+
+  private int running;
+
+  public PrefetchingEntitySetReader(final ODataClient client, final URI uri, final ExecutorService executor) {
+    this(client, uri, executor, DEFAULT_DEPTH, DEFAULT_MAX_BUFFERED_BYTES);
+  }
+
+  /**
+   * @param client OData client
+   * @param uri entity set URI, possibly with query options
+   * @param executor runs the background fetch, for as long as the reader is open
+   * @param depth number of pages read ahead
+   * @param maxBufferedBytes maximum page content held in memory
+   */
+  public PrefetchingEntitySetReader(final ODataClient client, final URI uri, final ExecutorService executor,
+          final int depth, final long maxBufferedBytes) {
+
+    this(client, Collections.singletonList(uri), executor, depth, maxBufferedBytes);
+  }
+
+  /**
+   * @param client OData client
+   * @param uris entity set URIs, each followed through its next links
+   * @param executor runs the background fetches, one task per URI
+   * @param depth number of pages read ahead, for all URIs together
+   * @param maxBufferedBytes maximum page content held in memory, for all URIs together
+   */
+  public PrefetchingEntitySetReader(final ODataClient client, final List<URI> uris, final ExecutorService executor,
+          final int depth, final long maxBufferedBytes) {
+
+    this.client = client;
+    this.ahead = new Semaphore(depth);
+    this.maxPermits = (int) Math.min(Integer.MAX_VALUE, Math.max(1, maxBufferedBytes / PERMIT_BYTES));
+    this.memory = new Semaphore(maxPermits);
+    this.running = uris.size();
+    for (URI uri : uris) {
+      producers.add(executor.submit(() -> fetch(uri)));
+    }
+  }
+
+  private void fetch(final URI first) {
+    URI next = first;
+    try {
+      int expected = 1;
+      while (next != null && !closed) {
+        ahead.acquire();
+        final ODataRawRequest request = client.getRetrieveRequestFactory().getRawRequest(next);
+        request.setAccept(ContentType.JSON.toContentTypeString());
+        final ODataRawResponse response = request.execute();
+        int permits = 0;
+        final byte[] content;
+        InputStream input = null;
+        try {
+          // reserved before reading, as the content is held from then on
+          final int announced = permits(contentLength(response, (long) expected * PERMIT_BYTES));
+          memory.acquire(announced);
+          permits = announced;
+          input = response.getRawResponse();
+          content = IOUtils.toByteArray(input);
+          // none held if interrupted while resizing
+          permits = 0;
+          permits = resize(announced, permits(content.length));
+        } catch (Exception e) {
+          memory.release(permits);
+          throw e;
+        } finally {
+          IOUtils.closeQuietly(input);
+          response.close();
+        }
+        expected = permits;
+
+        final ClientEntitySet page;
+        try {
+          page = client.getReader().readEntitySet(new ByteArrayInputStream(content), ContentType.JSON);
+        } catch (Exception e) {
+          memory.release(permits);
+          throw e;
+        }
+        pageCount.incrementAndGet();
+        pages.put(new Page(page.getEntities(), permits, null));
+        next = page.getNext();
+      }
+      pages.put(Page.END);
+    } catch (InterruptedException e) {
+      // closed
+    } catch (Exception e) {
+      try {
+        pages.put(new Page(Collections.<ClientEntity>emptyList(), 0, e));
+      } catch (InterruptedException ie) {
+        // closed
+      }
+    }
+  }
+
+  private int permits(final long bytes) {
+    // a page larger than the cap takes the whole of it
+    return (int) Math.min(maxPermits, Math.max(1, bytes / PERMIT_BYTES));
+  }
+
+  private static long contentLength(final ODataRawResponse response, final long otherwise) {
+    final Collection<String> values = response.getHeader(HttpHeaders.CONTENT_LENGTH);
+    if (values != null) {
+      for (String value : values) {
+        try {
+          return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+          // ignored: no usable length
+        }
+      }
+    }
+    return otherwise;
+  }
+
+  /**
+   * Adjusts the permits reserved for a page to its actual length.
+   */
+  private int resize(final int reserved, final int needed) throws InterruptedException {
+    if (needed < reserved) {
+      memory.release(reserved - needed);
+    } else if (needed > reserved && !memory.tryAcquire(needed - reserved)) {
+      // waiting with permits held could block the other fetches for good
+      memory.release(reserved);
+      memory.acquire(needed);
+    }
+    return needed;
+  }
+
+  /**
+   * @return number of pages fetched so far
+   */
+  public long getPageCount() {
+    return pageCount.get();
+  }
+
+  /**
+   * @return time the consumer spent waiting for pages, in nanoseconds: if high, raise the depth
+   */
+  public long getConsumerWaitNanos() {
+    return consumerWaitNanos.get();
+  }
+
+  @Override
+  public boolean hasNext() {
+    while (!current.hasNext()) {
+      if (running == 0 || closed) {
+        return false;
+      }
+      // the page just consumed no longer counts
+      memory.release(currentPermits);
+      currentPermits = 0;
+
+      final Page page;
+      final long start = System.nanoTime();
+      try {
+        page = pages.take();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new ODataRuntimeException("Interrupted while waiting for the next page", e);
+      } finally {
+        consumerWaitNanos.addAndGet(System.nanoTime() - start);
+      }
+
+      if (page == Page.END) {
+        running--;
+      } else if (page.failure != null) {
+        close();
+        throw page.failure instanceof RuntimeException
+                ? (RuntimeException) page.failure
+                : new ODataRuntimeException(page.failure);
+      } else {
+        // taken, hence no longer read ahead
+        ahead.release();
+        current = page.entities.iterator();
+        currentPermits = page.permits;
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public ClientEntity next() {
+    if (!hasNext()) {
+      throw new NoSuchElementException();
+    }
+    return current.next();
+  }
+
+  /**
+   * Stops the background fetches, if still running, and drops the pages read ahead.
+   */
+  @Override
+  public void close() {
+    closed = true;
+    for (Future<?> producer : producers) {
+      producer.cancel(true);
+    }
+    pages.clear();
+    current = Collections.<ClientEntity>emptyList().iterator();
+  }
+}
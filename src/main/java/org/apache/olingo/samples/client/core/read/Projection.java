@@ -0,0 +1,138 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.olingo.samples.client.core.read;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import org.apache.olingo.client.api.uri.URIBuilder;
+import org.apache.olingo.commons.api.edm.EdmEntityType;
+import org.apache.olingo.commons.api.edm.EdmKeyPropertyRef;
+
+/**
+ * The structural properties to be read from an entity type, validated against the Edm and sent as <tt>$select</tt>.
+ * <br/>
+ * Key properties are always selected, so that projected entities can still be addressed (e.g. for updates).
+ */
+public final class Projection {
+
+  private final EdmEntityType entityType;
+
+  private final List<String> properties;
+
+  private Projection(final EdmEntityType entityType, final List<String> properties) {
+    this.entityType = entityType;
+    this.properties = properties;
+  }
+
+  /**
+   * @param entityType entity type
+   * @return projection selecting all properties, i.e. no <tt>$select</tt> at all
+   */
+  public static Projection all(final EdmEntityType entityType) {
+    return new Projection(entityType, null);
+  }
+
+  /**
+   * @param entityType entity type
+   * @param properties structural properties to read
+   * @return projection
+   * @throws IllegalArgumentException if any of the given names is not a structural property of the entity type
+   */
+  public static Projection of(final EdmEntityType entityType, final String... properties) {
+    return of(entityType, Arrays.asList(properties));
+  }
+
+  /**
+   * @param entityType entity type
+   * @param properties structural properties to read
+   * @return projection
+   * @throws IllegalArgumentException if any of the given names is not a structural property of the entity type
+   */
+  public static Projection of(final EdmEntityType entityType, final Collection<String> properties) {
+    final List<String> known = entityType.getPropertyNames();
+    final List<String> unknown = new ArrayList<String>();
+    final List<String> navigation = new ArrayList<String>();
+    final Set<String> selected = new LinkedHashSet<String>();
+    for (EdmKeyPropertyRef key : entityType.getKeyPropertyRefs()) {
+      selected.add(key.getName());
+    }
+    for (String property : properties) {
+      if (entityType.getNavigationProperty(property) != null) {
+        navigation.add(property);
+      } else if (!known.contains(property) || entityType.getStructuralProperty(property) == null) {
+        unknown.add(property);
+      } else {
+        selected.add(property);
+      }
+    }
+
+    if (!unknown.isEmpty() || !navigation.isEmpty()) {
+      final StringBuilder message = new StringBuilder("Invalid $select on ").append(entityType.getName());
+      if (!unknown.isEmpty()) {
+        message.append(": unknown ").append(unknown);
+      }
+      if (!navigation.isEmpty()) {
+        message.append(": navigation (use $expand) ").append(navigation);
+      }
+      throw new IllegalArgumentException(message.toString());
+    }
+    return new Projection(entityType, Collections.unmodifiableList(new ArrayList<String>(selected)));
+  }
+
+  public EdmEntityType getEntityType() {
+    return entityType;
+  }
+
+  /**
+   * @return selected properties, or null if all
+   */
+  public List<String> getProperties() {
+    return properties;
+  }
+
+  public boolean isAll() {
+    return properties == null;
+  }
+
+  /**
+   * @param property property name
+   * @return whether the given property is read
+   */
+  public boolean includes(final String property) {
+    return properties == null || properties.contains(property);
+  }
+
+  /**
+   * @param builder URI builder of the entity set or entity
+   * @return the same builder, with <tt>$select</tt> unless all properties are to be read
+   */
+  public URIBuilder apply(final URIBuilder builder) {
+    return properties == null ? builder : builder.select(properties.toArray(new String[properties.size()]));
+  }
+
+  @Override
+  public String toString() {
+    return entityType.getName() + (properties == null ? "[*]" : properties.toString());
+  }
+}
@@ -0,0 +1,163 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.olingo.samples.client.core.read;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.olingo.client.api.domain.ClientEntity;
+import org.apache.olingo.commons.api.edm.EdmEntityType;
+
+/**
+ * Learns which properties the callers of a query actually read, and narrows later runs of the same query to them.
+ * <br/>
+ * Each query is identified by a <em>site</em> (e.g. the calling method): its first runs read all properties, and the
+ * entities they return are wrapped so that every <tt>getProperty(name)</tt> of a structural property of the entity type
+ * is recorded; other names (navigation properties, typos) are not selectable and ignored. Once enough runs were seen,
+ * only the recorded properties are selected. If a caller later asks for a property that was left out, the property
+ * is recorded as well and the next run selects it again; a caller walking all properties (<tt>getProperties()</tt>)
+ * disables narrowing for that site.
+ */
+public class ProjectionLearner {
+
+  public static final int DEFAULT_WARMUP_RUNS = 3;
+
+  private static final class Site {
+
+    private final Set<String> used = ConcurrentHashMap.newKeySet();
+
+    private final AtomicInteger runs = new AtomicInteger();
+
+    private volatile boolean all;
+  }
+
+  private final int warmupRuns;
+
+  private final ConcurrentMap<String, Site> sites = new ConcurrentHashMap<String, Site>();
+
+  public ProjectionLearner() {
+    this(DEFAULT_WARMUP_RUNS);
+  }
+
+  /**
+   * @param warmupRuns runs reading all properties, before narrowing
+   */
+  public ProjectionLearner(final int warmupRuns) {
+    this.warmupRuns = warmupRuns;
+  }
+
+  private Site site(final String name) {
+    return sites.computeIfAbsent(name, key -> new Site());
+  }
+
+  /**
+   * To be called once per run of the query.
+   *
+   * @param site query identifier
+   * @param entityType entity type read by the query
+   * @return projection to use for this run
+   */
+  public Projection projectionFor(final String site, final EdmEntityType entityType) {
+    final Site learned = site(site);
+    if (learned.runs.getAndIncrement() < warmupRuns || learned.all || learned.used.isEmpty()) {
+      return Projection.all(entityType);
+    }
+    final List<String> selected = new ArrayList<String>(learned.used.size());
+    for (String name : learned.used) {
+      if (entityType.getStructuralProperty(name) != null) {
+        selected.add(name);
+      }
+    }
+    return selected.isEmpty() ? Projection.all(entityType) : Projection.of(entityType, selected);
+  }
+
+  /**
+   * @param site query identifier
+   * @return properties read so far by the callers of the query
+   */
+  public Set<String> getUsedProperties(final String site) {
+    return site(site).used;
+  }
+
+  /**
+   * @param site query identifier
+   * @param entity entity returned by the query
+   * @param projection projection the entity was read with
+   * @return the same entity, recording the properties read
+   */
+  public ClientEntity track(final String site, final ClientEntity entity, final Projection projection) {
+    if (entity == null) {
+      return null;
+    }
+    final Site learned = site(site);
+    return (ClientEntity) Proxy.newProxyInstance(ClientEntity.class.getClassLoader(),
+            new Class<?>[] { ClientEntity.class }, new InvocationHandler() {
+
+              @Override
+              public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable {
+                if ("getProperty".equals(method.getName()) && args != null && args.length == 1) {
+                  final String name = (String) args[0];
+                  if (name != null && projection.getEntityType().getStructuralProperty(name) != null
+                          && learned.used.add(name) && !projection.includes(name)) {
+                    System.err.println("Property " + name + " was not selected by " + site
+                            + ", it will be from the next run on");
+                  }
+                } else if ("getProperties".equals(method.getName())) {
+                  learned.all = true;
+                }
+                try {
+                  return method.invoke(entity, args);
+                } catch (InvocationTargetException e) {
+                  throw e.getCause();
+                }
+              }
+            });
+  }
+
+  /**
+   * @param site query identifier
+   * @param entities entities returned by the query
+   * @param projection projection the entities were read with
+   * @return the same entities, recording the properties read
+   */
+  public Iterator<ClientEntity> track(final String site, final Iterator<? extends ClientEntity> entities,
+          final Projection projection) {
+
+    return new Iterator<ClientEntity>() {
+
+      @Override
+      public boolean hasNext() {
+        return entities.hasNext();
+      }
+
+      @Override
+      public ClientEntity next() {
+        return track(site, entities.next(), projection);
+      }
+    };
+  }
+}
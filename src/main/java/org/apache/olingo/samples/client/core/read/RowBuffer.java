@@ -0,0 +1,289 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.olingo.samples.client.core.read;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.Arrays;
+import java.util.UUID;
+
+/**
+ * One decoded row, reused for all rows of a decoding run: values are valid only until the {@link RowHandler} returns.
+ * <br/>
+ * Values are stored in primitive slots, as described by {@link org.apache.olingo.samples.client.core.edm.PropertyDescriptor.Slot}; text is exposed as
+ * {@link CharSequence} views on reused buffers. The methods allocating objects (<tt>getString</tt>, <tt>getUUID</tt>,
+ * <tt>getDecimal</tt> and the <tt>java.time</tt> ones) are only there for convenience.
+ */
+public final class RowBuffer {
+
+  /**
+   * Characters of one column, valid until the next row.
+   */
+  private static final class CharView implements CharSequence {
+
+    private char[] chars = new char[32];
+
+    private int length;
+
+    private void set(final char[] source, final int offset, final int count) {
+      if (chars.length < count) {
+        chars = new char[Math.max(count, chars.length * 2)];
+      }
+      System.arraycopy(source, offset, chars, 0, count);
+      length = count;
+    }
+
+    @Override
+    public int length() {
+      return length;
+    }
+
+    @Override
+    public char charAt(final int index) {
+      if (index >= length) {
+        throw new IndexOutOfBoundsException(String.valueOf(index));
+      }
+      return chars[index];
+    }
+
+    @Override
+    public CharSequence subSequence(final int start, final int end) {
+      return new String(chars, start, end - start);
+    }
+
+    @Override
+    public String toString() {
+      return new String(chars, 0, length);
+    }
+  }
+
+  private final RowSchema schema;
+
+  private final boolean[] present;
+
+  private final boolean[] nulls;
+
+  private final long[] longs;
+
+  private final long[] lows;
+
+  private final double[] doubles;
+
+  private final CharView[] texts;
+
+  private long rowNumber = -1;
+
+  public RowBuffer(final RowSchema schema) {
+    this.schema = schema;
+    final int size = schema.size();
+    this.present = new boolean[size];
+    this.nulls = new boolean[size];
+    this.longs = new long[size];
+    this.lows = new long[size];
+    this.doubles = new double[size];
+    this.texts = new CharView[size];
+    for (RowSchema.Column column : schema.getColumns()) {
+      if (column.isKeepText()) {
+        texts[column.getIndex()] = new CharView();
+      }
+    }
+  }
+
+  public RowSchema getSchema() {
+    return schema;
+  }
+
+  /**
+   * @return number of this row in the decoding run, starting from 0
+   */
+  public long getRowNumber() {
+    return rowNumber;
+  }
+
+  void next() {
+    rowNumber++;
+    Arrays.fill(present, false);
+  }
+
+  void setNull(final int index) {
+    present[index] = true;
+    nulls[index] = true;
+  }
+
+  void setLong(final int index, final long value) {
+    present[index] = true;
+    nulls[index] = false;
+    longs[index] = value;
+  }
+
+  void setGuid(final int index, final long high, final long low) {
+    setLong(index, high);
+    lows[index] = low;
+  }
+
+  void setDouble(final int index, final double value) {
+    present[index] = true;
+    nulls[index] = false;
+    doubles[index] = value;
+  }
+
+  void setText(final int index, final char[] source, final int offset, final int count) {
+    present[index] = true;
+    nulls[index] = false;
+    texts[index].set(source, offset, count);
+  }
+
+  /**
+   * @param index column index
+   * @return whether the value was in the payload (e.g. not when excluded by <tt>$select</tt>)
+   */
+  public boolean isPresent(final int index) {
+    return present[index];
+  }
+
+  /**
+   * @param index column index
+   * @return whether the value is null or absent
+   */
+  public boolean isNull(final int index) {
+    return !present[index] || nulls[index];
+  }
+
+  /**
+   * @param index column index
+   * @return integral value, epoch day, epoch millisecond, nanosecond of day or 1 / 0 for booleans
+   */
+  public long getLong(final int index) {
+    return longs[index];
+  }
+
+  public int getInt(final int index) {
+    return (int) longs[index];
+  }
+
+  public boolean getBoolean(final int index) {
+    return longs[index] != 0;
+  }
+
+  public double getDouble(final int index) {
+    return doubles[index];
+  }
+
+  /**
+   * @param index column index
+   * @return most significant 64 bits of a GUID
+   */
+  public long getGuidHigh(final int index) {
+    return longs[index];
+  }
+
+  /**
+   * @param index column index
+   * @return least significant 64 bits of a GUID
+   */
+  public long getGuidLow(final int index) {
+    return lows[index];
+  }
+
+  /**
+   * @param index column index
+   * @return characters of the value, valid until the next row; null if not kept for this column
+   */
+  public CharSequence getText(final int index) {
+    return isNull(index) ? null : texts[index];
+  }
+
+  public String getString(final int index) {
+    final CharSequence text = getText(index);
+    return text == null ? null : text.toString();
+  }
+
+  public UUID getUUID(final int index) {
+    return isNull(index) ? null : new UUID(longs[index], lows[index]);
+  }
+
+  /**
+   * @param index column index
+   * @return exact value of a <tt>Decimal</tt> column
+   */
+  public BigDecimal getDecimal(final int index) {
+    final CharSequence text = getText(index);
+    return text == null ? null : new BigDecimal(text.toString());
+  }
+
+  public LocalDate getLocalDate(final int index) {
+    return isNull(index) ? null : LocalDate.ofEpochDay(longs[index]);
+  }
+
+  public Instant getInstant(final int index) {
+    return isNull(index) ? null : Instant.ofEpochMilli(longs[index]);
+  }
+
+  public LocalTime getLocalTime(final int index) {
+    return isNull(index) ? null : LocalTime.ofNanoOfDay(longs[index]);
+  }
+
+  /**
+   * @param name property name
+   * @return value as object, mostly for debugging
+   */
+  public Object get(final String name) {
+    final RowSchema.Column column = schema.getColumn(name);
+    if (column == null || isNull(column.getIndex())) {
+      return null;
+    }
+    final int index = column.getIndex();
+    switch (column.getSlot()) {
+      case LONG:
+        if (column.getKind() == null) {
+          return longs[index];
+        }
+        switch (column.getKind()) {
+          case Boolean:
+            return getBoolean(index);
+          case Date:
+            return getLocalDate(index);
+          case DateTimeOffset:
+            return getInstant(index);
+          case TimeOfDay:
+            return getLocalTime(index);
+          default:
+            return longs[index];
+        }
+      case DOUBLE:
+        return column.isKeepText() ? getDecimal(index) : doubles[index];
+      case GUID:
+        return getUUID(index);
+      default:
+        return getString(index);
+    }
+  }
+
+  @Override
+  public String toString() {
+    final StringBuilder builder = new StringBuilder("Row ").append(rowNumber).append(" {");
+    for (RowSchema.Column column : schema.getColumns()) {
+      builder.append(column.getIndex() == 0 ? "" : ", ").append(column.getName()).append('=')
+              .append(get(column.getName()));
+    }
+    return builder.append('}').toString();
+  }
+}
@@ -0,0 +1,164 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.olingo.samples.client.core.read;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.olingo.commons.api.edm.EdmEntityType;
+import org.apache.olingo.commons.api.edm.EdmPrimitiveTypeKind;
+import org.apache.olingo.samples.client.core.edm.PropertyDescriptor;
+import org.apache.olingo.samples.client.core.edm.TypeDescriptor;
+
+/**
+ * Columns of the rows decoded by {@link JsonRowDecoder}: the scalar (primitive and enum) properties of an entity type,
+ * each with its index in the {@link RowBuffer} and the kind of slot its values are stored in.
+ */
+public final class RowSchema {
+
+  /**
+   * One column.
+   */
+  public static final class Column {
+
+    private final PropertyDescriptor property;
+
+    private final int index;
+
+    Column(final PropertyDescriptor property, final int index) {
+      this.property = property;
+      this.index = index;
+    }
+
+    public String getName() {
+      return property.getName();
+    }
+
+    public int getIndex() {
+      return index;
+    }
+
+    public PropertyDescriptor getProperty() {
+      return property;
+    }
+
+    /**
+     * @return primitive type, or null for enums
+     */
+    public EdmPrimitiveTypeKind getKind() {
+      return property.getKind();
+    }
+
+    public PropertyDescriptor.Slot getSlot() {
+      return property.getSlot();
+    }
+
+    /**
+     * @return whether the text of the value is kept, besides the slot
+     */
+    public boolean isKeepText() {
+      return property.getSlot() == PropertyDescriptor.Slot.TEXT || property.getKind() == EdmPrimitiveTypeKind.Decimal;
+    }
+
+    @Override
+    public String toString() {
+      return getName() + '[' + index + ", " + (getKind() == null ? "Enum" : getKind().name()) + ']';
+    }
+  }
+
+  private final List<Column> columns;
+
+  private final Map<String, Column> byName = new HashMap<String, Column>();
+
+  private RowSchema(final List<Column> columns) {
+    this.columns = Collections.unmodifiableList(columns);
+    for (Column column : columns) {
+      byName.put(column.getName(), column);
+    }
+  }
+
+  /**
+   * @param entityType entity type
+   * @param select properties to decode, in this order; all scalar properties if none
+   * @return schema
+   */
+  public static RowSchema of(final EdmEntityType entityType, final String... select) {
+    return of(TypeDescriptor.of(entityType), select);
+  }
+
+  /**
+   * @param type entity type descriptor, e.g. from an {@link org.apache.olingo.samples.client.core.edm.EdmPropertyIndex}
+   * @param select properties to decode, in this order; all scalar properties if none
+   * @return schema
+   */
+  public static RowSchema of(final TypeDescriptor type, final String... select) {
+    final List<PropertyDescriptor> properties = new ArrayList<PropertyDescriptor>();
+    if (select == null || select.length == 0) {
+      properties.addAll(type.getProperties());
+    } else {
+      for (String name : select) {
+        properties.add(type.getProperty(name));
+      }
+    }
+
+    final List<Column> columns = new ArrayList<Column>();
+    for (PropertyDescriptor property : properties) {
+      if (property != null && property.isScalar()) {
+        columns.add(new Column(property, columns.size()));
+      }
+    }
+    return new RowSchema(columns);
+  }
+
+  public int size() {
+    return columns.size();
+  }
+
+  public List<Column> getColumns() {
+    return columns;
+  }
+
+  public Column getColumn(final int index) {
+    return columns.get(index);
+  }
+
+  /**
+   * @param name property name
+   * @return column, or null if the property is not decoded
+   */
+  public Column getColumn(final String name) {
+    return byName.get(name);
+  }
+
+  /**
+   * @param name property name
+   * @return column index, or -1 if the property is not decoded
+   */
+  public int indexOf(final String name) {
+    final Column column = byName.get(name);
+    return column == null ? -1 : column.getIndex();
+  }
+
+  @Override
+  public String toString() {
+    return columns.toString();
+  }
+}
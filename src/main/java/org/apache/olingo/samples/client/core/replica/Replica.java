@@ -0,0 +1,496 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.olingo.samples.client.core.replica;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Properties;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import org.apache.commons.io.IOUtils;
+import org.apache.olingo.client.api.ODataClient;
+import org.apache.olingo.client.api.communication.request.retrieve.ODataRawRequest;
+import org.apache.olingo.client.api.communication.response.ODataRawResponse;
+import org.apache.olingo.client.api.domain.ClientEntity;
+import org.apache.olingo.commons.api.ex.ODataRuntimeException;
+import org.apache.olingo.commons.api.format.ContentType;
+
+/**
+ * Local copy of one entity set, keyed by a GUID property, kept in memory-mapped files.
+ * <br/>
+ * Each refresh reads the whole entity set into a new generation: a data file with the JSON of each entity, as sent by
+ * the service, and an index file holding an open addressing hash table of (GUID, offset) slots. Both files are mapped,
+ * so lookups touch neither the network nor the heap: {@link #get(UUID)} returns a read-only view of the entity's
+ * bytes, and only {@link #getEntity(UUID)} builds a {@link ClientEntity}. The new generation replaces the current one
+ * once complete; a failed refresh keeps serving the previous one, which also survives restarts.
+ * <br/>
+ * Entities written since the last refresh are {@link #forget(UUID) forgotten}: lookups miss them until a refresh
+ * started after the write, so that callers read them from the service instead.
+ * <br/>
+ * Each generation file is mapped as a single buffer, hence limited to 2 GB: enough for master data.
+ */
+public class Replica {
+
+  private static final JsonFactory JSON = new JsonFactory();
+
+  private static final String VALUE = "value";
+
+  private static final String NEXT_LINK = "@odata.nextLink";
+
+  private static final String GENERATION = "generation";
+
+  private static final int INDEX_MAGIC = 0x4F525831;
+
+  private static final int INDEX_HEADER = 16;
+
+  // GUID high and low bits, then data offset + 1 (0 marks an empty slot)
+  private static final int SLOT = 24;
+
+  /**
+   * Mapped files of one generation, immutable once published.
+   */
+  private static final class Generation {
+
+    private final long number;
+
+    private final ByteBuffer data;
+
+    private final ByteBuffer index;
+
+    private final int mask;
+
+    private final int size;
+
+    private Generation(final long number, final ByteBuffer data, final ByteBuffer index) {
+      this.number = number;
+      this.data = data;
+      this.index = index;
+      if (index.getInt(0) != INDEX_MAGIC) {
+        throw new ODataRuntimeException("Not a replica index");
+      }
+      this.mask = index.getInt(4) - 1;
+      this.size = index.getInt(8);
+    }
+
+    /**
+     * @return offset of the record in the data file, or -1
+     */
+    private long find(final long high, final long low) {
+      int slot = hash(high, low) & mask;
+      while (true) {
+        final int position = INDEX_HEADER + slot * SLOT;
+        final long offset = index.getLong(position + 16);
+        if (offset == 0) {
+          return -1;
+        }
+        if (index.getLong(position) == high && index.getLong(position + 8) == low) {
+          return offset - 1;
+        }
+        slot = (slot + 1) & mask;
+      }
+    }
+  }
+
+  private final ODataClient client;
+
+  private final Path directory;
+
+  private final String name;
+
+  private final URI entitySetURI;
+
+  private final String keyProperty;
+
+  private final ReentrantLock refreshing = new ReentrantLock();
+
+  private volatile Generation current;
+
+  private volatile long refreshedAt;
+
+  // forgotten keys with the write sequence they were forgotten at
+  private final Map<UUID, Long> written = new ConcurrentHashMap<UUID, Long>();
+
+  private final AtomicLong writes = new AtomicLong();
+
+  /**
+   * Opens the replica, with the generation found on disk if any; nothing is read from the service.
+   *
+   * @param client OData client
+   * @param directory directory of the generation files
+   * @param name file name prefix, e.g. the entity set name
+   * @param entitySetURI entity set URI
+   * @param keyProperty name of the GUID key property
+   * @throws IOException if the generation on disk cannot be mapped
+   */
+  public Replica(final ODataClient client, final Path directory, final String name, final URI entitySetURI,
+          final String keyProperty) throws IOException {
+
+    this.client = client;
+    this.directory = directory;
+    this.name = name;
+    this.entitySetURI = entitySetURI;
+    this.keyProperty = keyProperty;
+
+    final Path pointer = directory.resolve(name + ".current");
+    if (Files.isRegularFile(pointer)) {
+      final Properties properties = new Properties();
+      try (Reader reader = Files.newBufferedReader(pointer, StandardCharsets.ISO_8859_1)) {
+        properties.load(reader);
+        final long number = Long.parseLong(properties.getProperty(GENERATION));
+        current = map(number);
+        refreshedAt = Files.getLastModifiedTime(pointer).toMillis();
+      } catch (IOException | RuntimeException e) {
+        System.err.println("Ignoring unreadable replica " + pointer + ", refresh needed: " + e.getMessage());
+      }
+    }
+  }
+
+  private Path dataFile(final long number) {
+    return directory.resolve(name + '.' + number + ".data");
+  }
+
+  private Path indexFile(final long number) {
+    return directory.resolve(name + '.' + number + ".index");
+  }
+
+  private Generation map(final long number) throws IOException {
+    return new Generation(number, mapReadOnly(dataFile(number)), mapReadOnly(indexFile(number)));
+  }
+
+  private static ByteBuffer mapReadOnly(final Path file) throws IOException {
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      // the mapping stays valid after the channel is closed
+      return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    }
+  }
+
+  /**
+   * Reads the whole entity set into a new generation, then switches lookups to it. Concurrent refreshes are
+   * serialized; lookups go on with the current generation meanwhile.
+   *
+   * @return number of entities
+   * @throws IOException if the generation cannot be written; the current one is then kept
+   */
+  public int refresh() throws IOException {
+    refreshing.lock();
+    try {
+      final long writtenBefore = writes.get();
+      final long number = current == null ? 1 : current.number + 1;
+      Files.createDirectories(directory);
+      final long[] keys = writeData(number);
+      writeIndex(number, keys);
+      final Generation next = map(number);
+
+      final Path pointer = directory.resolve(name + ".current");
+      final Path temp = Files.createTempFile(directory, name, ".tmp");
+      try {
+        final Properties properties = new Properties();
+        properties.setProperty(GENERATION, String.valueOf(number));
+        try (OutputStream output = Files.newOutputStream(temp)) {
+          properties.store(output, entitySetURI.toASCIIString());
+        }
+        Files.move(temp, pointer, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+      } finally {
+        Files.deleteIfExists(temp);
+      }
+      current = next;
+      refreshedAt = System.currentTimeMillis();
+      // the keys written again while reading stay forgotten
+      for (Map.Entry<UUID, Long> entry : written.entrySet()) {
+        if (entry.getValue() <= writtenBefore) {
+          written.remove(entry.getKey(), entry.getValue());
+        }
+      }
+      deleteOtherGenerations(number);
+      return next.size;
+    } finally {
+      refreshing.unlock();
+    }
+  }
+
+  /**
+   * Writes the records of all pages, each as length and JSON bytes.
+   *
+   * @return GUID high, low and record offset of each entity, three longs each
+   */
+  private long[] writeData(final long number) throws IOException {
+    long[] keys = new long[3 * 1024];
+    int count = 0;
+    long offset = 0;
+    try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+            Files.newOutputStream(dataFile(number)), 1 << 16))) {
+
+      URI next = entitySetURI;
+      while (next != null) {
+        final ODataRawRequest request = client.getRetrieveRequestFactory().getRawRequest(next);
+        request.setAccept(ContentType.JSON.toContentTypeString());
+        final ODataRawResponse response = request.execute();
+        final byte[] page;
+        InputStream input = null;
+        try {
+          input = response.getRawResponse();
+          page = IOUtils.toByteArray(input);
+        } finally {
+          IOUtils.closeQuietly(input);
+          response.close();
+        }
+
+        String nextLink = null;
+        final JsonParser parser = JSON.createParser(page);
+        try {
+          expect(parser.nextToken(), JsonToken.START_OBJECT);
+          while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            final String field = parser.getCurrentName();
+            final JsonToken token = parser.nextToken();
+            if (VALUE.equals(field) && token == JsonToken.START_ARRAY) {
+              while (parser.nextToken() == JsonToken.START_OBJECT) {
+                final int start = (int) parser.getTokenLocation().getByteOffset();
+                final UUID key = readKey(parser);
+                final int end = (int) parser.getCurrentLocation().getByteOffset();
+                if (key == null) {
+                  continue;
+                }
+                if (count * 3 == keys.length) {
+                  keys = Arrays.copyOf(keys, keys.length * 2);
+                }
+                keys[count * 3] = key.getMostSignificantBits();
+                keys[count * 3 + 1] = key.getLeastSignificantBits();
+                keys[count * 3 + 2] = offset;
+                count++;
+                out.writeInt(end - start);
+                out.write(page, start, end - start);
+                offset += 4 + end - start;
+              }
+            } else if (NEXT_LINK.equals(field) && token == JsonToken.VALUE_STRING) {
+              nextLink = parser.getText();
+            } else {
+              parser.skipChildren();
+            }
+          }
+        } finally {
+          parser.close();
+        }
+        next = nextLink == null ? null : URI.create(nextLink);
+      }
+    }
+    if (offset > Integer.MAX_VALUE) {
+      throw new IOException("Replica " + name + " exceeds 2 GB");
+    }
+    return Arrays.copyOf(keys, count * 3);
+  }
+
+  /**
+   * Reads one entity up to its end, returning its key.
+   */
+  private UUID readKey(final JsonParser parser) throws IOException {
+    UUID key = null;
+    while (parser.nextToken() == JsonToken.FIELD_NAME) {
+      final String field = parser.getCurrentName();
+      final JsonToken token = parser.nextToken();
+      if (keyProperty.equals(field) && token == JsonToken.VALUE_STRING) {
+        key = UUID.fromString(parser.getText());
+      } else {
+        parser.skipChildren();
+      }
+    }
+    return key;
+  }
+
+  private static void expect(final JsonToken actual, final JsonToken expected) throws IOException {
+    if (actual != expected) {
+      throw new IOException("Expected " + expected + ", got " + actual);
+    }
+  }
+
+  private void writeIndex(final long number, final long[] keys) throws IOException {
+    final int count = keys.length / 3;
+    // load factor at most 0.5, for short probe sequences
+    int capacity = 16;
+    while (capacity < count * 2) {
+      capacity <<= 1;
+    }
+    final int mask = capacity - 1;
+    try (FileChannel channel = FileChannel.open(indexFile(number), StandardOpenOption.CREATE,
+            StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+
+      final MappedByteBuffer index = channel.map(FileChannel.MapMode.READ_WRITE, 0,
+              INDEX_HEADER + (long) capacity * SLOT);
+      index.putInt(0, INDEX_MAGIC);
+      index.putInt(4, capacity);
+      int size = 0;
+      for (int i = 0; i < count; i++) {
+        final long high = keys[i * 3];
+        final long low = keys[i * 3 + 1];
+        int slot = hash(high, low) & mask;
+        while (true) {
+          final int position = INDEX_HEADER + slot * SLOT;
+          if (index.getLong(position + 16) == 0) {
+            index.putLong(position, high);
+            index.putLong(position + 8, low);
+            index.putLong(position + 16, keys[i * 3 + 2] + 1);
+            size++;
+            break;
+          }
+          if (index.getLong(position) == high && index.getLong(position + 8) == low) {
+            // same entity on two pages, e.g. inserted during the read: the later one wins
+            index.putLong(position + 16, keys[i * 3 + 2] + 1);
+            break;
+          }
+          slot = (slot + 1) & mask;
+        }
+      }
+      index.putInt(8, size);
+      index.force();
+    }
+  }
+
+  private static int hash(final long high, final long low) {
+    // GUIDs are mostly random already, the mixing only guards against sequential ones
+    long h = high ^ low * 0x9E3779B97F4A7C15L;
+    h ^= h >>> 32;
+    return (int) (h ^ h >>> 16);
+  }
+
+  private void deleteOtherGenerations(final long number) {
+    final String keep = name + '.' + number + '.';
+    try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, name + ".*.{data,index}")) {
+      for (Path file : files) {
+        if (!file.getFileName().toString().startsWith(keep)) {
+          // still mapped by concurrent lookups on some systems: deleted on the next refresh then
+          try {
+            Files.deleteIfExists(file);
+          } catch (IOException e) {
+            System.err.println("Could not delete old replica file " + file + ": " + e.getMessage());
+          }
+        }
+      }
+    } catch (IOException e) {
+      System.err.println("Could not list old replica files of " + name + ": " + e.getMessage());
+    }
+  }
+
+  /**
+   * Stops serving an entity which was updated or deleted, until the next refresh started from now on.
+   *
+   * @param key key value
+   */
+  public void forget(final UUID key) {
+    written.put(key, writes.incrementAndGet());
+  }
+
+  private boolean isForgotten(final UUID key) {
+    return !written.isEmpty() && written.containsKey(key);
+  }
+
+  /**
+   * @param key key value
+   * @return read-only view of the entity's JSON in the mapped file, or null if not found, forgotten or never refreshed
+   */
+  public ByteBuffer get(final UUID key) {
+    final Generation generation = current;
+    if (generation == null || isForgotten(key)) {
+      return null;
+    }
+    final long offset = generation.find(key.getMostSignificantBits(), key.getLeastSignificantBits());
+    if (offset < 0) {
+      return null;
+    }
+    final ByteBuffer record = generation.data.duplicate();
+    final int position = (int) offset + 4;
+    record.limit(position + generation.data.getInt((int) offset)).position(position);
+    return record.slice().asReadOnlyBuffer();
+  }
+
+  /**
+   * @param key key value
+   * @return the entity, or null if not found, forgotten or never refreshed
+   */
+  public ClientEntity getEntity(final UUID key) {
+    final ByteBuffer record = get(key);
+    if (record == null) {
+      return null;
+    }
+    final byte[] bytes = new byte[record.remaining()];
+    record.get(bytes);
+    try {
+      return client.getBinder().getODataEntity(
+              client.getDeserializer(ContentType.APPLICATION_JSON).toEntity(new ByteArrayInputStream(bytes)));
+    } catch (Exception e) {
+      throw new ODataRuntimeException("Could not read replicated entity " + key + " of " + name, e);
+    }
+  }
+
+  public boolean contains(final UUID key) {
+    final Generation generation = current;
+    return generation != null && !isForgotten(key)
+            && generation.find(key.getMostSignificantBits(), key.getLeastSignificantBits()) >= 0;
+  }
+
+  /**
+   * @return whether a generation is available, from a refresh or from disk
+   */
+  public boolean isLoaded() {
+    return current != null;
+  }
+
+  public int size() {
+    final Generation generation = current;
+    return generation == null ? 0 : generation.size;
+  }
+
+  /**
+   * @return time of the last successful refresh, 0 if none
+   */
+  public long getRefreshedAt() {
+    return refreshedAt;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  @Override
+  public String toString() {
+    final Generation generation = current;
+    return "Replica{" + name + ", generation=" + (generation == null ? 0 : generation.number) + ", size=" + size()
+            + '}';
+  }
+}
@@ -0,0 +1,189 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.olingo.samples.client.core.replica;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import org.apache.olingo.client.api.ODataClient;
+import org.apache.olingo.samples.client.core.concurrent.VirtualThreads;
+
+/**
+ * Replicas of entity sets in one directory, each refreshed in the background every <tt>refreshMillis</tt>.
+ * <br/>
+ * The first refresh of a replica with nothing on disk starts right away; replicas found on disk are served as they
+ * are until their next refresh is due. A failed refresh is reported and retried at the next period.
+ */
+public class ReplicaStore implements Closeable {
+
+  public static final long DEFAULT_REFRESH_MILLIS = 15 * 60 * 1000L;
+
+  private final ODataClient client;
+
+  private final Path directory;
+
+  private final long refreshMillis;
+
+  private final Map<URI, Replica> replicas = new ConcurrentHashMap<URI, Replica>();
+
+  // held while mapping files, which must not pin virtual threads as a monitor or a map bin lock would
+  private final ReentrantLock opening = new ReentrantLock();
+
+  private final ScheduledExecutorService refresher =
+          Executors.newSingleThreadScheduledExecutor(VirtualThreads.daemon("replica-refresher-"));
+
+  private final AtomicLong refreshes = new AtomicLong();
+
+  private final AtomicLong failures = new AtomicLong();
+
+  /**
+   * @param client OData client
+   * @param directory directory of the replica files
+   * @param refreshMillis refresh period, 0 for no background refresh
+   */
+  public ReplicaStore(final ODataClient client, final Path directory, final long refreshMillis) {
+    this.client = client;
+    this.directory = directory;
+    this.refreshMillis = refreshMillis;
+  }
+
+  /**
+   * Returns the replica of an entity set, opening it and scheduling its refreshes on first use. Replicas are told apart
+   * by entity set URI, so that the same entity set of different tenants or companies is replicated separately.
+   *
+   * @param name readable prefix of the replica files, e.g. the entity set name
+   * @param entitySetURI entity set URI, possibly with <tt>$filter</tt> or <tt>$select</tt>
+   * @param keyProperty name of the GUID key property
+   * @return the replica, possibly empty until its first refresh
+   * @throws IOException if the replica found on disk cannot be mapped
+   */
+  public Replica open(final String name, final URI entitySetURI, final String keyProperty) throws IOException {
+    final Replica existing = replicas.get(entitySetURI);
+    if (existing != null) {
+      return existing;
+    }
+    opening.lock();
+    try {
+      Replica replica = replicas.get(entitySetURI);
+      if (replica == null) {
+        // the URI digest keeps the files of different URIs apart
+        final String fileName = name + '-'
+                + UUID.nameUUIDFromBytes(entitySetURI.toASCIIString().getBytes(StandardCharsets.UTF_8));
+        replica = new Replica(client, directory, fileName, entitySetURI, keyProperty);
+        replicas.put(entitySetURI, replica);
+        schedule(replica);
+      }
+      return replica;
+    } finally {
+      opening.unlock();
+    }
+  }
+
+  private void schedule(final Replica replica) {
+    if (refreshMillis > 0) {
+      final long age = System.currentTimeMillis() - replica.getRefreshedAt();
+      final long delay = replica.isLoaded() ? Math.max(0, refreshMillis - age) : 0;
+      refresher.scheduleAtFixedRate(() -> refresh(replica), delay, refreshMillis, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  private void refresh(final Replica replica) {
+    try {
+      replica.refresh();
+      refreshes.incrementAndGet();
+    } catch (Exception e) {
+      // keep the task scheduled: the previous generation stays in use
+      failures.incrementAndGet();
+      System.err.println("Could not refresh replica " + replica.getName() + ": " + e.getMessage());
+    }
+  }
+
+  /**
+   * @param entitySetURI entity set URI
+   * @return the replica, or null if not opened yet
+   */
+  public Replica get(final URI entitySetURI) {
+    return replicas.get(entitySetURI);
+  }
+
+  /**
+   * Makes the replica of its entity set, if opened, {@link Replica#forget(UUID) forget} an updated or deleted entity.
+   *
+   * @param entityURI entity URI, the entity set URI of the replica followed by a GUID key segment
+   */
+  public void forget(final URI entityURI) {
+    final String uri = entityURI.toASCIIString();
+    final int open = uri.lastIndexOf('(');
+    if (open < 0 || !uri.endsWith(")")) {
+      return;
+    }
+    final Replica replica = replicas.get(URI.create(uri.substring(0, open)));
+    if (replica != null) {
+      try {
+        replica.forget(UUID.fromString(uri.substring(open + 1, uri.length() - 1)));
+      } catch (IllegalArgumentException e) {
+        // not a GUID key: not replicated
+      }
+    }
+  }
+
+  public Collection<Replica> getReplicas() {
+    return Collections.unmodifiableCollection(replicas.values());
+  }
+
+  /**
+   * @return background refreshes that succeeded
+   */
+  public long getRefreshCount() {
+    return refreshes.get();
+  }
+
+  /**
+   * @return background refreshes that failed
+   */
+  public long getFailureCount() {
+    return failures.get();
+  }
+
+  /**
+   * Stops the background refreshes; replicas stay readable.
+   */
+  @Override
+  public void close() {
+    refresher.shutdownNow();
+  }
+
+  @Override
+  public String toString() {
+    return "ReplicaStore{" + directory + ", replicas=" + replicas.values() + ", refreshes=" + refreshes
+            + ", failures=" + failures + '}';
+  }
+}
@@ -0,0 +1,165 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.olingo.samples.client.core.snapshot;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Null count and value range of a column, in a block or in the whole snapshot, to skip blocks without decoding them.
+ * <br/>
+ * Ranges are {@link Long}s for integral, temporal and boolean columns (as stored, e.g. epoch days), {@link Double}s for
+ * floating point and decimal columns and {@link String}s for text columns; GUID columns have none.
+ */
+public final class ColumnStats {
+
+  private static final byte NONE = 0;
+
+  private static final byte LONG = 1;
+
+  private static final byte DOUBLE = 2;
+
+  private static final byte TEXT = 3;
+
+  private long nullCount;
+
+  private Object min;
+
+  private Object max;
+
+  public long getNullCount() {
+    return nullCount;
+  }
+
+  /**
+   * @return smallest non null value, or null if none or not tracked
+   */
+  public Object getMin() {
+    return min;
+  }
+
+  /**
+   * @return largest non null value, or null if none or not tracked
+   */
+  public Object getMax() {
+    return max;
+  }
+
+  /**
+   * @param from smallest value looked for, inclusive, or null
+   * @param to largest value looked for, inclusive, or null
+   * @return false if no value of the range can be there
+   */
+  public boolean mayContain(final Comparable<?> from, final Comparable<?> to) {
+    if (min == null) {
+      // nothing known
+      return true;
+    }
+    return (from == null || compare(max, from) >= 0) && (to == null || compare(min, to) <= 0);
+  }
+
+  @SuppressWarnings("unchecked")
+  private static int compare(final Object one, final Object other) {
+    return ((Comparable<Object>) one).compareTo(other);
+  }
+
+  void addNull() {
+    nullCount++;
+  }
+
+  void add(final Comparable<?> value) {
+    if (min == null || compare(value, min) < 0) {
+      min = value;
+    }
+    if (max == null || compare(value, max) > 0) {
+      max = value;
+    }
+  }
+
+  void merge(final ColumnStats other) {
+    nullCount += other.nullCount;
+    if (other.min != null) {
+      add((Comparable<?>) other.min);
+      add((Comparable<?>) other.max);
+    }
+  }
+
+  void write(final DataOutput out) throws IOException {
+    out.writeLong(nullCount);
+    if (min instanceof Long) {
+      out.writeByte(LONG);
+      out.writeLong((Long) min);
+      out.writeLong((Long) max);
+    } else if (min instanceof Double) {
+      out.writeByte(DOUBLE);
+      out.writeDouble((Double) min);
+      out.writeDouble((Double) max);
+    } else if (min instanceof String) {
+      out.writeByte(TEXT);
+      writeString(out, (String) min);
+      writeString(out, (String) max);
+    } else {
+      out.writeByte(NONE);
+    }
+  }
+
+  static ColumnStats read(final DataInput in) throws IOException {
+    final ColumnStats stats = new ColumnStats();
+    stats.nullCount = in.readLong();
+    switch (in.readByte()) {
+      case LONG:
+        stats.add(in.readLong());
+        stats.add(in.readLong());
+        break;
+      case DOUBLE:
+        stats.add(in.readDouble());
+        stats.add(in.readDouble());
+        break;
+      case TEXT:
+        stats.add(readString(in));
+        stats.add(readString(in));
+        break;
+      default:
+        break;
+    }
+    return stats;
+  }
+
+  /**
+   * Strings as length and UTF-8 bytes, not limited to 64 KB unlike {@link DataOutput#writeUTF(String)}.
+   */
+  static void writeString(final DataOutput out, final String value) throws IOException {
+    final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  static String readString(final DataInput in) throws IOException {
+    final byte[] bytes = new byte[in.readInt()];
+    in.readFully(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  @Override
+  public String toString() {
+    return "{nulls=" + nullCount + (min == null ? "" : ", min=" + min + ", max=" + max) + '}';
+  }
+}
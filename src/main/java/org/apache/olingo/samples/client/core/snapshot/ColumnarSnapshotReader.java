@@ -0,0 +1,402 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.olingo.samples.client.core.snapshot;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.Predicate;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import org.apache.olingo.commons.api.edm.EdmPrimitiveTypeKind;
+import org.apache.olingo.commons.api.ex.ODataRuntimeException;
+import org.apache.olingo.samples.client.core.edm.PropertyDescriptor;
+
+/**
+ * Reads a snapshot written by {@link ColumnarSnapshotWriter}, block by block.
+ * <br/>
+ * Blocks can be skipped from their {@link ColumnStats} alone, and within a block a column is only inflated and
+ * decoded when first accessed: a scan pays for the columns it uses, not for the whole entity.
+ */
+public class ColumnarSnapshotReader implements Closeable {
+
+  /**
+   * Receives the blocks of a scan.
+   */
+  public interface BlockHandler {
+
+    /**
+     * @param block block, valid until the handler returns
+     * @throws Exception to stop the scan
+     */
+    void onBlock(Block block) throws Exception;
+  }
+
+  /**
+   * Decoded values of one column in a block.
+   */
+  private static final class ColumnData {
+
+    private byte[] nulls;
+
+    private long[] longs;
+
+    private long[] lows;
+
+    private double[] doubles;
+
+    private int scale;
+
+    private String[] dictionary;
+
+    private int[] codes;
+  }
+
+  /**
+   * Rows of one block, accessed by column and row position.
+   */
+  public final class Block {
+
+    private final int rows;
+
+    private final byte[] encodings;
+
+    private final byte[][] compressed;
+
+    private final int[] rawLengths;
+
+    private final ColumnStats[] stats;
+
+    private final ColumnData[] data;
+
+    private Block(final int rows) {
+      this.rows = rows;
+      this.encodings = new byte[columns.size()];
+      this.compressed = new byte[columns.size()][];
+      this.rawLengths = new int[columns.size()];
+      this.stats = new ColumnStats[columns.size()];
+      this.data = new ColumnData[columns.size()];
+    }
+
+    public int getRowCount() {
+      return rows;
+    }
+
+    public ColumnStats getStats(final int column) {
+      return stats[column];
+    }
+
+    public boolean isNull(final int column, final int row) {
+      return (data(column).nulls[row >> 3] & 1 << (row & 7)) != 0;
+    }
+
+    /**
+     * @return integral value, epoch day, epoch millisecond, nanosecond of day or 1 / 0 for booleans
+     */
+    public long getLong(final int column, final int row) {
+      return data(column).longs[row];
+    }
+
+    /**
+     * @return floating point value, or decimal value as double
+     */
+    public double getDouble(final int column, final int row) {
+      final ColumnData values = data(column);
+      if (values.doubles != null) {
+        return values.doubles[row];
+      }
+      return columns.get(column).isDecimal() ? getDecimal(column, row).doubleValue() : Double.NaN;
+    }
+
+    /**
+     * @return exact value of a <tt>Decimal</tt> column
+     */
+    public BigDecimal getDecimal(final int column, final int row) {
+      if (isNull(column, row)) {
+        return null;
+      }
+      final ColumnData values = data(column);
+      return values.dictionary == null
+              ? BigDecimal.valueOf(values.longs[row], values.scale)
+              : new BigDecimal(values.dictionary[values.codes[row]]);
+    }
+
+    public long getGuidHigh(final int column, final int row) {
+      return data(column).longs[row];
+    }
+
+    public long getGuidLow(final int column, final int row) {
+      return data(column).lows[row];
+    }
+
+    public UUID getUUID(final int column, final int row) {
+      return isNull(column, row) ? null : new UUID(getGuidHigh(column, row), getGuidLow(column, row));
+    }
+
+    /**
+     * @return dictionary code of a text value, equal for equal values within the block
+     */
+    public int getCode(final int column, final int row) {
+      return data(column).codes[row];
+    }
+
+    public String getString(final int column, final int row) {
+      if (isNull(column, row)) {
+        return null;
+      }
+      final ColumnData values = data(column);
+      return values.dictionary[values.codes[row]];
+    }
+
+    private ColumnData data(final int column) {
+      if (data[column] == null) {
+        data[column] = decode(encodings[column], inflate(compressed[column], rawLengths[column]));
+        compressed[column] = null;
+      }
+      return data[column];
+    }
+
+    private ColumnData decode(final byte encoding, final ByteBuffer raw) {
+      final ColumnData values = new ColumnData();
+      values.nulls = new byte[(rows + 7) / 8];
+      raw.get(values.nulls);
+      switch (encoding) {
+        case ColumnarSnapshotWriter.LONG:
+          values.longs = new long[rows];
+          raw.asLongBuffer().get(values.longs);
+          break;
+        case ColumnarSnapshotWriter.DOUBLE:
+          values.doubles = new double[rows];
+          raw.asDoubleBuffer().get(values.doubles);
+          break;
+        case ColumnarSnapshotWriter.DECIMAL:
+          values.scale = raw.get();
+          values.longs = new long[rows];
+          raw.asLongBuffer().get(values.longs);
+          break;
+        case ColumnarSnapshotWriter.GUID:
+          values.longs = new long[rows];
+          values.lows = new long[rows];
+          for (int i = 0; i < rows; i++) {
+            values.longs[i] = raw.getLong();
+            values.lows[i] = raw.getLong();
+          }
+          break;
+        case ColumnarSnapshotWriter.DICTIONARY:
+          values.dictionary = new String[raw.getInt()];
+          for (int i = 0; i < values.dictionary.length; i++) {
+            final byte[] bytes = new byte[raw.getInt()];
+            raw.get(bytes);
+            values.dictionary[i] = new String(bytes, StandardCharsets.UTF_8);
+          }
+          final int width = raw.get();
+          values.codes = new int[rows];
+          for (int i = 0; i < rows; i++) {
+            values.codes[i] = width == 1 ? raw.get() & 0xFF : width == 2 ? raw.getShort() & 0xFFFF : raw.getInt();
+          }
+          break;
+        default:
+          throw new ODataRuntimeException("Unknown column encoding " + encoding + " in " + file);
+      }
+      return values;
+    }
+  }
+
+  private final Path file;
+
+  private final String entityType;
+
+  private final List<SnapshotColumn> columns;
+
+  private final long rowCount;
+
+  private final ColumnStats[] totals;
+
+  private final long headerLength;
+
+  private final Inflater inflater = new Inflater();
+
+  /**
+   * @param file snapshot file
+   * @throws IOException if the file cannot be read or is not a snapshot
+   */
+  public ColumnarSnapshotReader(final Path file) throws IOException {
+    this.file = file;
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      final DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+      if (in.readInt() != ColumnarSnapshotWriter.MAGIC) {
+        throw new IOException("Not a columnar snapshot: " + file);
+      }
+      entityType = ColumnStats.readString(in);
+      final int count = in.readInt();
+      final List<SnapshotColumn> read = new ArrayList<SnapshotColumn>(count);
+      long length = 4 + 4 + utf8Length(entityType) + 4;
+      for (int i = 0; i < count; i++) {
+        final String name = ColumnStats.readString(in);
+        final PropertyDescriptor.Slot slot = PropertyDescriptor.Slot.values()[in.readByte()];
+        final String kind = ColumnStats.readString(in);
+        read.add(new SnapshotColumn(name, slot, kind.isEmpty() ? null : EdmPrimitiveTypeKind.valueOf(kind)));
+        length += 4 + utf8Length(name) + 1 + 4 + utf8Length(kind);
+      }
+      columns = Collections.unmodifiableList(read);
+      headerLength = length;
+
+      // footer: row count and column stats, located by the last 8 bytes
+      final ByteBuffer position = ByteBuffer.allocate(8);
+      channel.read(position, channel.size() - 8);
+      position.flip();
+      channel.position(position.getLong());
+      final DataInputStream footer = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+      rowCount = footer.readLong();
+      totals = new ColumnStats[count];
+      for (int i = 0; i < count; i++) {
+        totals[i] = ColumnStats.read(footer);
+      }
+    } catch (EOFException | RuntimeException e) {
+      throw new IOException("Corrupt columnar snapshot: " + file, e);
+    }
+  }
+
+  private static int utf8Length(final String value) {
+    return value.getBytes(StandardCharsets.UTF_8).length;
+  }
+
+  public String getEntityType() {
+    return entityType;
+  }
+
+  public List<SnapshotColumn> getColumns() {
+    return columns;
+  }
+
+  /**
+   * @return column index, or -1 if there is no such column
+   */
+  public int indexOf(final String name) {
+    for (int i = 0; i < columns.size(); i++) {
+      if (columns.get(i).getName().equals(name)) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  public long getRowCount() {
+    return rowCount;
+  }
+
+  /**
+   * @return stats of the whole column
+   */
+  public ColumnStats getStats(final int column) {
+    return totals[column];
+  }
+
+  /**
+   * @param handler receives all blocks
+   * @return number of rows scanned
+   * @throws Exception if reading fails, or the handler does
+   */
+  public long scan(final BlockHandler handler) throws Exception {
+    return scan(stats -> true, handler);
+  }
+
+  /**
+   * @param filter decides from the stats of its columns whether a block may hold rows of interest
+   * @param handler receives the blocks accepted by the filter
+   * @return number of rows in the blocks handled
+   * @throws Exception if reading fails, or the handler does
+   */
+  public long scan(final Predicate<ColumnStats[]> filter, final BlockHandler handler) throws Exception {
+    long scanned = 0;
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      channel.position(headerLength);
+      final DataInputStream in =
+              new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel), 1 << 16));
+      int rows;
+      while ((rows = in.readInt()) > 0) {
+        final Block block = new Block(rows);
+        for (int i = 0; i < columns.size(); i++) {
+          block.stats[i] = ColumnStats.read(in);
+        }
+        final boolean accepted = filter.test(block.stats);
+        for (int i = 0; i < columns.size(); i++) {
+          block.encodings[i] = in.readByte();
+          block.rawLengths[i] = in.readInt();
+          final int length = in.readInt();
+          if (accepted) {
+            block.compressed[i] = new byte[length];
+            in.readFully(block.compressed[i]);
+          } else {
+            skip(in, length);
+          }
+        }
+        if (accepted) {
+          handler.onBlock(block);
+          scanned += rows;
+        }
+      }
+    }
+    return scanned;
+  }
+
+  private void skip(final DataInputStream in, final long length) throws IOException {
+    long remaining = length;
+    while (remaining > 0) {
+      final long skipped = in.skip(remaining);
+      if (skipped <= 0) {
+        throw new EOFException("Truncated block in " + file);
+      }
+      remaining -= skipped;
+    }
+  }
+
+  private ByteBuffer inflate(final byte[] compressed, final int rawLength) {
+    final byte[] raw = new byte[rawLength];
+    inflater.reset();
+    inflater.setInput(compressed);
+    try {
+      int length = 0;
+      while (length < rawLength && !inflater.finished()) {
+        length += inflater.inflate(raw, length, rawLength - length);
+      }
+    } catch (DataFormatException e) {
+      throw new ODataRuntimeException("Corrupt block in " + file, e);
+    }
+    return ByteBuffer.wrap(raw);
+  }
+
+  @Override
+  public void close() {
+    inflater.end();
+  }
+}
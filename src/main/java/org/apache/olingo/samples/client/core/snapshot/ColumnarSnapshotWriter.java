@@ -0,0 +1,425 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.olingo.samples.client.core.snapshot;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.Deflater;
+import org.apache.olingo.samples.client.core.edm.PropertyDescriptor;
+import org.apache.olingo.samples.client.core.read.RowBuffer;
+import org.apache.olingo.samples.client.core.read.RowHandler;
+import org.apache.olingo.samples.client.core.read.RowSchema;
+
+/**
+ * Writes the rows decoded by {@link org.apache.olingo.samples.client.core.read.JsonRowDecoder} into a column-oriented
+ * binary file, read back by {@link ColumnarSnapshotReader}.
+ * <br/>
+ * Rows are grouped into blocks; in each block, every column is stored on its own and compressed with a
+ * {@link Deflater}: integral, temporal and floating point values as 8 bytes, GUIDs as 16, decimals as unscaled longs
+ * with a common scale, text as a dictionary of the distinct values followed by one code per row. Each block starts
+ * with the {@link ColumnStats} of its columns, uncompressed, and the file ends with the stats of whole columns.
+ * <br/>
+ * The file is written next to its final location and only moved there by {@link #commit()}: closing without
+ * committing leaves any previous snapshot in place.
+ */
+public class ColumnarSnapshotWriter implements RowHandler, Closeable {
+
+  public static final int DEFAULT_BLOCK_ROWS = 64 * 1024;
+
+  static final int MAGIC = 0x4F435331;
+
+  static final byte LONG = 1;
+
+  static final byte DOUBLE = 2;
+
+  static final byte DECIMAL = 3;
+
+  static final byte GUID = 4;
+
+  static final byte DICTIONARY = 5;
+
+  /**
+   * Values of one column in the current block.
+   */
+  private static final class ColumnBuffer {
+
+    private final SnapshotColumn column;
+
+    private final int index;
+
+    private byte[] nulls;
+
+    private long[] longs;
+
+    private long[] lows;
+
+    private double[] doubles;
+
+    private BigDecimal[] decimals;
+
+    private int[] codes;
+
+    private final Map<String, Integer> dictionary = new HashMap<String, Integer>();
+
+    private final List<String> entries = new ArrayList<String>();
+
+    private ColumnStats stats = new ColumnStats();
+
+    private ColumnBuffer(final SnapshotColumn column, final int index, final int blockRows) {
+      this.column = column;
+      this.index = index;
+      this.nulls = new byte[(blockRows + 7) / 8];
+      switch (column.getSlot()) {
+        case LONG:
+          longs = new long[blockRows];
+          break;
+        case DOUBLE:
+          if (column.isDecimal()) {
+            decimals = new BigDecimal[blockRows];
+          } else {
+            doubles = new double[blockRows];
+          }
+          break;
+        case GUID:
+          longs = new long[blockRows];
+          lows = new long[blockRows];
+          break;
+        default:
+          codes = new int[blockRows];
+      }
+    }
+
+    private void add(final RowBuffer row, final int position) {
+      if (row.isNull(index)) {
+        nulls[position >> 3] |= 1 << (position & 7);
+        stats.addNull();
+        return;
+      }
+      switch (column.getSlot()) {
+        case LONG:
+          longs[position] = row.getLong(index);
+          stats.add(longs[position]);
+          break;
+        case DOUBLE:
+          if (decimals != null) {
+            decimals[position] = row.getDecimal(index);
+            stats.add(decimals[position].doubleValue());
+          } else {
+            doubles[position] = row.getDouble(index);
+            stats.add(doubles[position]);
+          }
+          break;
+        case GUID:
+          longs[position] = row.getGuidHigh(index);
+          lows[position] = row.getGuidLow(index);
+          break;
+        default:
+          final String text = row.getString(index);
+          Integer code = dictionary.get(text);
+          if (code == null) {
+            code = entries.size();
+            dictionary.put(text, code);
+            entries.add(text);
+            stats.add(text);
+          }
+          codes[position] = code;
+      }
+    }
+
+    private void write(final DataOutputStream out, final int rows, final Deflater deflater) throws IOException {
+      final ByteArrayOutputStream raw = new ByteArrayOutputStream();
+      final DataOutputStream values = new DataOutputStream(raw);
+      values.write(nulls, 0, (rows + 7) / 8);
+      final byte encoding = encode(values, rows);
+      values.flush();
+
+      final byte[] bytes = raw.toByteArray();
+      deflater.reset();
+      deflater.setInput(bytes);
+      deflater.finish();
+      final ByteArrayOutputStream compressed = new ByteArrayOutputStream(bytes.length / 4 + 64);
+      final byte[] chunk = new byte[8192];
+      while (!deflater.finished()) {
+        compressed.write(chunk, 0, deflater.deflate(chunk));
+      }
+
+      out.writeByte(encoding);
+      out.writeInt(bytes.length);
+      out.writeInt(compressed.size());
+      compressed.writeTo(out);
+    }
+
+    private byte encode(final DataOutputStream values, final int rows) throws IOException {
+      switch (column.getSlot()) {
+        case LONG:
+          for (int i = 0; i < rows; i++) {
+            values.writeLong(longs[i]);
+          }
+          return LONG;
+        case DOUBLE:
+          if (decimals == null) {
+            for (int i = 0; i < rows; i++) {
+              values.writeDouble(doubles[i]);
+            }
+            return DOUBLE;
+          }
+          return encodeDecimals(values, rows);
+        case GUID:
+          for (int i = 0; i < rows; i++) {
+            values.writeLong(longs[i]);
+            values.writeLong(lows[i]);
+          }
+          return GUID;
+        default:
+          writeDictionary(values, entries, codes, rows);
+          return DICTIONARY;
+      }
+    }
+
+    /**
+     * Unscaled longs with the largest scale of the block, or a dictionary of their text if some do not fit.
+     */
+    private byte encodeDecimals(final DataOutputStream values, final int rows) throws IOException {
+      int scale = 0;
+      for (int i = 0; i < rows; i++) {
+        if (decimals[i] != null) {
+          scale = Math.max(scale, decimals[i].scale());
+        }
+      }
+      final long[] unscaled = new long[rows];
+      boolean fits = scale <= 18;
+      for (int i = 0; i < rows && fits; i++) {
+        if (decimals[i] != null) {
+          final BigDecimal value = decimals[i].setScale(scale);
+          fits = value.unscaledValue().bitLength() < 64;
+          unscaled[i] = fits ? value.unscaledValue().longValue() : 0;
+        }
+      }
+      if (fits) {
+        values.writeByte(scale);
+        for (int i = 0; i < rows; i++) {
+          values.writeLong(unscaled[i]);
+        }
+        return DECIMAL;
+      }
+
+      final Map<String, Integer> texts = new HashMap<String, Integer>();
+      final List<String> distinct = new ArrayList<String>();
+      final int[] textCodes = new int[rows];
+      for (int i = 0; i < rows; i++) {
+        if (decimals[i] != null) {
+          final String text = decimals[i].toPlainString();
+          Integer code = texts.get(text);
+          if (code == null) {
+            code = distinct.size();
+            texts.put(text, code);
+            distinct.add(text);
+          }
+          textCodes[i] = code;
+        }
+      }
+      writeDictionary(values, distinct, textCodes, rows);
+      return DICTIONARY;
+    }
+
+    private static void writeDictionary(final DataOutputStream values, final List<String> entries, final int[] codes,
+            final int rows) throws IOException {
+
+      values.writeInt(entries.size());
+      for (String entry : entries) {
+        ColumnStats.writeString(values, entry);
+      }
+      // codes as narrow as the dictionary allows
+      final int width = entries.size() <= 0xFF ? 1 : entries.size() <= 0xFFFF ? 2 : 4;
+      values.writeByte(width);
+      for (int i = 0; i < rows; i++) {
+        if (width == 1) {
+          values.writeByte(codes[i]);
+        } else if (width == 2) {
+          values.writeShort(codes[i]);
+        } else {
+          values.writeInt(codes[i]);
+        }
+      }
+    }
+
+    private void reset() {
+      Arrays.fill(nulls, (byte) 0);
+      if (decimals != null) {
+        Arrays.fill(decimals, null);
+      }
+      dictionary.clear();
+      entries.clear();
+      stats = new ColumnStats();
+    }
+  }
+
+  private final Path file;
+
+  private final Path temp;
+
+  private final FileChannel channel;
+
+  private final DataOutputStream out;
+
+  private final int blockRows;
+
+  private final ColumnBuffer[] columns;
+
+  private final ColumnStats[] totals;
+
+  private final Deflater deflater;
+
+  private int rows;
+
+  private long rowCount;
+
+  private int blockCount;
+
+  private boolean committed;
+
+  public ColumnarSnapshotWriter(final Path file, final String entityType, final RowSchema schema) throws IOException {
+    this(file, entityType, schema, DEFAULT_BLOCK_ROWS, Deflater.DEFAULT_COMPRESSION);
+  }
+
+  /**
+   * @param file snapshot file, replaced on commit
+   * @param entityType name of the entity type, kept in the file
+   * @param schema columns: the scalar properties of the entity type, or some of them
+   * @param blockRows rows per block
+   * @param level deflate level, from 1 (fastest) to 9 (smallest)
+   * @throws IOException if the temporary file cannot be created
+   */
+  public ColumnarSnapshotWriter(final Path file, final String entityType, final RowSchema schema,
+          final int blockRows, final int level) throws IOException {
+
+    this.file = file;
+    this.blockRows = blockRows;
+    this.deflater = new Deflater(level);
+    this.columns = new ColumnBuffer[schema.size()];
+    this.totals = new ColumnStats[schema.size()];
+    final Path directory = file.toAbsolutePath().getParent();
+    Files.createDirectories(directory);
+    this.temp = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+    this.channel = FileChannel.open(temp, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+    this.out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16));
+
+    out.writeInt(MAGIC);
+    ColumnStats.writeString(out, entityType);
+    out.writeInt(schema.size());
+    for (RowSchema.Column column : schema.getColumns()) {
+      final SnapshotColumn snapshotColumn = new SnapshotColumn(column.getName(), column.getSlot(), column.getKind());
+      columns[column.getIndex()] = new ColumnBuffer(snapshotColumn, column.getIndex(), blockRows);
+      totals[column.getIndex()] = new ColumnStats();
+      ColumnStats.writeString(out, column.getName());
+      out.writeByte(column.getSlot().ordinal());
+      ColumnStats.writeString(out, column.getKind() == null ? "" : column.getKind().name());
+    }
+  }
+
+  @Override
+  public void onRow(final RowBuffer row) throws IOException {
+    for (ColumnBuffer column : columns) {
+      column.add(row, rows);
+    }
+    rows++;
+    rowCount++;
+    if (rows == blockRows) {
+      writeBlock();
+    }
+  }
+
+  private void writeBlock() throws IOException {
+    if (rows == 0) {
+      return;
+    }
+    out.writeInt(rows);
+    // stats first, so that readers skip the block without reading its columns
+    for (ColumnBuffer column : columns) {
+      column.stats.write(out);
+    }
+    for (int i = 0; i < columns.length; i++) {
+      columns[i].write(out, rows, deflater);
+      totals[i].merge(columns[i].stats);
+      columns[i].reset();
+    }
+    rows = 0;
+    blockCount++;
+  }
+
+  /**
+   * Writes the last block and the column stats, then moves the file in place.
+   *
+   * @throws IOException if the snapshot cannot be written; the previous one is then kept
+   */
+  public void commit() throws IOException {
+    writeBlock();
+    out.writeInt(0);
+    out.flush();
+    final long footer = channel.position();
+    out.writeLong(rowCount);
+    for (ColumnStats stats : totals) {
+      stats.write(out);
+    }
+    out.writeLong(footer);
+    out.flush();
+    channel.force(false);
+    out.close();
+    Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    committed = true;
+  }
+
+  public long getRowCount() {
+    return rowCount;
+  }
+
+  public int getBlockCount() {
+    return blockCount;
+  }
+
+  /**
+   * Releases the file; without commit, what was written is discarded.
+   */
+  @Override
+  public void close() throws IOException {
+    deflater.end();
+    if (!committed) {
+      try {
+        out.close();
+      } finally {
+        Files.deleteIfExists(temp);
+      }
+    }
+  }
+}
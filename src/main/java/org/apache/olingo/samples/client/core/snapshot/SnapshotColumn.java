@@ -0,0 +1,64 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.olingo.samples.client.core.snapshot;
+
+import org.apache.olingo.commons.api.edm.EdmPrimitiveTypeKind;
+import org.apache.olingo.samples.client.core.edm.PropertyDescriptor;
+
+/**
+ * One column of a columnar snapshot: a scalar property, stored according to its slot.
+ */
+public final class SnapshotColumn {
+
+  private final String name;
+
+  private final PropertyDescriptor.Slot slot;
+
+  private final EdmPrimitiveTypeKind kind;
+
+  SnapshotColumn(final String name, final PropertyDescriptor.Slot slot, final EdmPrimitiveTypeKind kind) {
+    this.name = name;
+    this.slot = slot;
+    this.kind = kind;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public PropertyDescriptor.Slot getSlot() {
+    return slot;
+  }
+
+  /**
+   * @return primitive type, or null for enums
+   */
+  public EdmPrimitiveTypeKind getKind() {
+    return kind;
+  }
+
+  boolean isDecimal() {
+    return kind == EdmPrimitiveTypeKind.Decimal;
+  }
+
+  @Override
+  public String toString() {
+    return name + ':' + (kind == null ? "Enum" : kind.name());
+  }
+}
@@ -0,0 +1,118 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.olingo.samples.client.core.sync;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.util.Properties;
+
+/**
+ * Keeps one {@link SyncCheckpoint} file per company and entity set in a directory. Checkpoints are written to a
+ * temporary file first, then moved over the previous one: a crash leaves either the old or the new checkpoint, never a
+ * partial one.
+ */
+public class CheckpointStore {
+
+  private static final String DELTA_LINK = "deltaLink";
+
+  private static final String LAST_MODIFIED = "lastModified";
+
+  private static final String SYNCED_AT = "syncedAt";
+
+  private final Path directory;
+
+  public CheckpointStore(final Path directory) {
+    this.directory = directory;
+  }
+
+  /**
+   * @param company company segment, e.g. <tt>companies(...)</tt>
+   * @param entitySetName entity set name
+   * @return last committed checkpoint, or null if none (or unreadable)
+   */
+  public SyncCheckpoint load(final String company, final String entitySetName) {
+    final Path file = file(company, entitySetName);
+    if (!Files.isRegularFile(file)) {
+      return null;
+    }
+    final Properties properties = new Properties();
+    try (Reader reader = Files.newBufferedReader(file, StandardCharsets.ISO_8859_1)) {
+      properties.load(reader);
+      final String lastModified = properties.getProperty(LAST_MODIFIED);
+      return new SyncCheckpoint(properties.getProperty(DELTA_LINK),
+              lastModified == null ? null : Instant.parse(lastModified),
+              Long.parseLong(properties.getProperty(SYNCED_AT, "0")));
+    } catch (IOException | RuntimeException e) {
+      System.err.println("Ignoring unreadable checkpoint " + file + ", syncing from scratch: " + e.getMessage());
+      return null;
+    }
+  }
+
+  /**
+   * @param company company segment
+   * @param entitySetName entity set name
+   * @param checkpoint checkpoint to commit
+   * @throws IOException if the checkpoint cannot be written; the previous one is then kept
+   */
+  public void commit(final String company, final String entitySetName, final SyncCheckpoint checkpoint)
+          throws IOException {
+
+    final Properties properties = new Properties();
+    if (checkpoint.getDeltaLink() != null) {
+      properties.setProperty(DELTA_LINK, checkpoint.getDeltaLink());
+    }
+    if (checkpoint.getLastModified() != null) {
+      properties.setProperty(LAST_MODIFIED, checkpoint.getLastModified().toString());
+    }
+    properties.setProperty(SYNCED_AT, String.valueOf(checkpoint.getSyncedAt()));
+
+    final Path file = file(company, entitySetName);
+    Files.createDirectories(directory);
+    final Path temp = Files.createTempFile(directory, file.getFileName().toString(), ".tmp");
+    try {
+      try (OutputStream output = Files.newOutputStream(temp)) {
+        properties.store(output, company + '/' + entitySetName);
+      }
+      Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    } finally {
+      Files.deleteIfExists(temp);
+    }
+  }
+
+  /**
+   * Forgets the checkpoint, so that the next sync reads the whole entity set again.
+   *
+   * @param company company segment
+   * @param entitySetName entity set name
+   * @throws IOException if the checkpoint cannot be deleted
+   */
+  public void reset(final String company, final String entitySetName) throws IOException {
+    Files.deleteIfExists(file(company, entitySetName));
+  }
+
+  private Path file(final String company, final String entitySetName) {
+    return directory.resolve((company + '.' + entitySetName).replaceAll("[^A-Za-z0-9._-]", "_") + ".checkpoint");
+  }
+}
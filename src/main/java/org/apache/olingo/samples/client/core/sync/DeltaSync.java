@@ -0,0 +1,286 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.olingo.samples.client.core.sync;
+
+import java.net.URI;
+import java.time.Instant;
+import java.time.OffsetDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import org.apache.olingo.client.api.ODataClient;
+import org.apache.olingo.client.api.communication.ODataClientErrorException;
+import org.apache.olingo.client.api.communication.request.retrieve.ODataDeltaRequest;
+import org.apache.olingo.client.api.communication.request.retrieve.ODataEntitySetRequest;
+import org.apache.olingo.client.api.domain.ClientDeletedEntity;
+import org.apache.olingo.client.api.domain.ClientDelta;
+import org.apache.olingo.client.api.domain.ClientEntity;
+import org.apache.olingo.client.api.domain.ClientEntitySet;
+import org.apache.olingo.client.api.domain.ClientProperty;
+import org.apache.olingo.client.api.uri.URIBuilder;
+import org.apache.olingo.commons.api.format.ContentType;
+
+/**
+ * Incremental sync of entity sets into a {@link SyncSink}, one {@link SyncCheckpoint} per company and entity set.
+ * <ul>
+ * <li>the first sync reads the whole entity set, asking for change tracking (<tt>Prefer: odata.track-changes</tt>);</li>
+ * <li>if the service returned a delta link, the next syncs follow it: changed entities and deletions only;</li>
+ * <li>otherwise (or when the delta link expired), they read the entities modified since the latest modification time
+ * seen so far, with a <tt>$filter</tt> on <tt>lastModifiedDateTime</tt>: deletions cannot be seen this way;</li>
+ * <li>entity sets without such a property are read in full each time.</li>
+ * </ul>
+ * The <tt>$filter</tt> reaches back a little before that time (see {@link #setOverlapMillis(long)}): entities saved in
+ * the same instant as the last one seen, or whose transaction committed later with an earlier time, are not missed, at
+ * the price of sending a few entities again.<br/>
+ * The checkpoint is committed after the sink was flushed: a failed sync is simply repeated by the next one.
+ */
+public class DeltaSync {
+
+  public static final String DEFAULT_MODIFIED_PROPERTY = "lastModifiedDateTime";
+
+  public static final long DEFAULT_OVERLAP_MILLIS = 1000;
+
+  private static final String TRACK_CHANGES = "odata.track-changes";
+
+  /**
+   * How changes were found.
+   */
+  public enum Mode {
+    FULL, DELTA, FILTER
+  }
+
+  /**
+   * Outcome of one sync.
+   */
+  public static final class Result {
+
+    private final Mode mode;
+
+    private final long upserts;
+
+    private final long deletes;
+
+    private final int pages;
+
+    private final SyncCheckpoint checkpoint;
+
+    private Result(final Mode mode, final long upserts, final long deletes, final int pages,
+            final SyncCheckpoint checkpoint) {
+
+      this.mode = mode;
+      this.upserts = upserts;
+      this.deletes = deletes;
+      this.pages = pages;
+      this.checkpoint = checkpoint;
+    }
+
+    public Mode getMode() {
+      return mode;
+    }
+
+    public long getUpserts() {
+      return upserts;
+    }
+
+    public long getDeletes() {
+      return deletes;
+    }
+
+    public int getPages() {
+      return pages;
+    }
+
+    public SyncCheckpoint getCheckpoint() {
+      return checkpoint;
+    }
+
+    @Override
+    public String toString() {
+      return mode + " sync: " + upserts + " upserts, " + deletes + " deletes in " + pages + " pages";
+    }
+  }
+
+  /**
+   * State of one sync.
+   */
+  private final class Run {
+
+    private final SyncSink sink;
+
+    private Instant lastModified;
+
+    private String deltaLink;
+
+    private long upserts;
+
+    private long deletes;
+
+    private int pages;
+
+    private Run(final SyncSink sink, final Instant lastModified) {
+      this.sink = sink;
+      this.lastModified = lastModified;
+    }
+
+    private void readPages(final URI uri) throws Exception {
+      URI next = uri;
+      while (next != null) {
+        final ODataEntitySetRequest<ClientEntitySet> request =
+                client.getRetrieveRequestFactory().getEntitySetRequest(next);
+        request.setAccept(ContentType.JSON.toContentTypeString());
+        request.setPrefer(TRACK_CHANGES);
+        final ClientEntitySet page = request.execute().getBody();
+        pages++;
+        for (ClientEntity entity : page.getEntities()) {
+          upsert(entity);
+        }
+        next = page.getNext();
+        if (next == null) {
+          deltaLink = page.getDeltaLink() == null ? null : page.getDeltaLink().toASCIIString();
+        }
+      }
+    }
+
+    private void readDelta(final URI uri) throws Exception {
+      URI next = uri;
+      while (next != null) {
+        final ODataDeltaRequest request = client.getRetrieveRequestFactory().getDeltaRequest(next);
+        request.setAccept(ContentType.JSON.toContentTypeString());
+        final ClientDelta delta = request.execute().getBody();
+        pages++;
+        for (ClientEntity entity : delta.getEntities()) {
+          upsert(entity);
+        }
+        // "changed" means out of the tracked set, which is a deletion too from the sink's point of view
+        for (ClientDeletedEntity deleted : delta.getDeletedEntities()) {
+          sink.delete(deleted.getId());
+          deletes++;
+        }
+        next = delta.getNext();
+        if (next == null) {
+          deltaLink = delta.getDeltaLink() == null ? null : delta.getDeltaLink().toASCIIString();
+        }
+      }
+    }
+
+    private void upsert(final ClientEntity entity) throws Exception {
+      sink.upsert(entity);
+      upserts++;
+      final ClientProperty modified = entity.getProperty(modifiedProperty);
+      if (modified != null && modified.hasPrimitiveValue()) {
+        try {
+          final Instant instant = OffsetDateTime.parse(modified.getPrimitiveValue().toString()).toInstant();
+          if (lastModified == null || instant.isAfter(lastModified)) {
+            lastModified = instant;
+          }
+        } catch (DateTimeParseException e) {
+          // not a DateTimeOffset: no filtering on it
+        }
+      }
+    }
+  }
+
+  private final ODataClient client;
+
+  private final CheckpointStore store;
+
+  private final Set<String> running = ConcurrentHashMap.newKeySet();
+
+  private String modifiedProperty = DEFAULT_MODIFIED_PROPERTY;
+
+  private long overlapMillis = DEFAULT_OVERLAP_MILLIS;
+
+  public DeltaSync(final ODataClient client, final CheckpointStore store) {
+    this.client = client;
+    this.store = store;
+  }
+
+  /**
+   * @param modifiedProperty DateTimeOffset property holding the last modification time of the entities
+   * @return this sync
+   */
+  public DeltaSync setModifiedProperty(final String modifiedProperty) {
+    this.modifiedProperty = modifiedProperty;
+    return this;
+  }
+
+  /**
+   * @param overlapMillis how far before the latest modification time seen the <tt>$filter</tt> starts
+   * @return this sync
+   */
+  public DeltaSync setOverlapMillis(final long overlapMillis) {
+    this.overlapMillis = overlapMillis;
+    return this;
+  }
+
+  public CheckpointStore getStore() {
+    return store;
+  }
+
+  /**
+   * Sends the changes since the last sync to the sink, then commits the new checkpoint.
+   *
+   * @param serviceUri service root URL
+   * @param company company segment, e.g. <tt>companies(...)</tt>
+   * @param entitySetName entity set name
+   * @param sink receives the changes
+   * @return outcome
+   * @throws Exception if a request or the sink fails; the previous checkpoint is then kept
+   */
+  public Result sync(final String serviceUri, final String company, final String entitySetName, final SyncSink sink)
+          throws Exception {
+
+    final String key = company + '/' + entitySetName;
+    if (!running.add(key)) {
+      throw new IllegalStateException("Already syncing " + key);
+    }
+    try {
+      final SyncCheckpoint checkpoint = store.load(company, entitySetName);
+      final Run run = new Run(sink, checkpoint == null ? null : checkpoint.getLastModified());
+      Mode mode = null;
+      if (checkpoint != null && checkpoint.getDeltaLink() != null) {
+        try {
+          run.readDelta(URI.create(checkpoint.getDeltaLink()));
+          mode = Mode.DELTA;
+        } catch (ODataClientErrorException e) {
+          // expired or invalid delta token: whatever was sent already is sent again, upserts being idempotent
+          System.err.println("Delta link of " + key + " rejected (" + e.getStatusLine() + "), reading changes again");
+        }
+      }
+      if (mode == null) {
+        final URIBuilder builder = client.newURIBuilder(serviceUri)
+                .appendEntitySetSegment(company).appendEntitySetSegment(entitySetName);
+        if (checkpoint != null && checkpoint.getLastModified() != null) {
+          builder.filter(modifiedProperty + " ge " + checkpoint.getLastModified().minusMillis(overlapMillis));
+          mode = Mode.FILTER;
+        } else {
+          mode = Mode.FULL;
+        }
+        run.readPages(builder.build());
+      }
+
+      sink.flush();
+      final SyncCheckpoint next = new SyncCheckpoint(run.deltaLink, run.lastModified, System.currentTimeMillis());
+      store.commit(company, entitySetName, next);
+      return new Result(mode, run.upserts, run.deletes, run.pages, next);
+    } finally {
+      running.remove(key);
+    }
+  }
+}
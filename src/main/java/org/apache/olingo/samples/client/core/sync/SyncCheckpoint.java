@@ -0,0 +1,68 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.olingo.samples.client.core.sync;
+
+import java.time.Instant;
+
+/**
+ * Where the last successful sync of an entity set stopped: the delta link returned by the service, if it supports
+ * change tracking, and the latest modification time seen, for filtering otherwise.
+ */
+public final class SyncCheckpoint {
+
+  private final String deltaLink;
+
+  private final Instant lastModified;
+
+  private final long syncedAt;
+
+  /**
+   * @param deltaLink delta link, or null
+   * @param lastModified latest modification time seen, as reported by the service; or null
+   * @param syncedAt time of the sync, in milliseconds
+   */
+  public SyncCheckpoint(final String deltaLink, final Instant lastModified, final long syncedAt) {
+    this.deltaLink = deltaLink;
+    this.lastModified = lastModified;
+    this.syncedAt = syncedAt;
+  }
+
+  /**
+   * @return delta link, or null if the service returned none
+   */
+  public String getDeltaLink() {
+    return deltaLink;
+  }
+
+  /**
+   * @return latest modification time seen, or null if unknown
+   */
+  public Instant getLastModified() {
+    return lastModified;
+  }
+
+  public long getSyncedAt() {
+    return syncedAt;
+  }
+
+  @Override
+  public String toString() {
+    return "SyncCheckpoint{deltaLink=" + deltaLink + ", lastModified=" + lastModified + ", syncedAt=" + syncedAt + '}';
+  }
+}
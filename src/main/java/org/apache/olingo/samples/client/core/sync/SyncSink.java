@@ -0,0 +1,50 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.olingo.samples.client.core.sync;
+
+import java.net.URI;
+import org.apache.olingo.client.api.domain.ClientEntity;
+
+/**
+ * Receives the changes found by {@link DeltaSync}.
+ * <br/>
+ * The checkpoint is committed only once {@link #flush()} returned: after a failure, the same changes are delivered
+ * again by the next sync, hence upserts and deletes must be idempotent.
+ */
+public interface SyncSink {
+
+  /**
+   * @param entity new or changed entity
+   * @throws Exception to abort the sync, without committing its checkpoint
+   */
+  void upsert(ClientEntity entity) throws Exception;
+
+  /**
+   * @param id id of the deleted entity, e.g. <tt>items(...)</tt>
+   * @throws Exception to abort the sync, without committing its checkpoint
+   */
+  void delete(URI id) throws Exception;
+
+  /**
+   * Makes the changes received so far durable.
+   *
+   * @throws Exception to abort the sync, without committing its checkpoint
+   */
+  void flush() throws Exception;
+}
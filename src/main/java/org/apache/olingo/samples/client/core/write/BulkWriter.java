@@ -0,0 +1,487 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.olingo.samples.client.core.write;
+
+import java.io.Closeable;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import org.apache.olingo.client.api.ODataClient;
+import org.apache.olingo.client.api.communication.request.cud.ODataDeleteRequest;
+import org.apache.olingo.client.api.communication.request.cud.ODataEntityCreateRequest;
+import org.apache.olingo.client.api.communication.request.cud.ODataEntityUpdateRequest;
+import org.apache.olingo.client.api.communication.request.cud.UpdateType;
+import org.apache.olingo.client.api.communication.response.ODataDeleteResponse;
+import org.apache.olingo.client.api.communication.response.ODataEntityCreateResponse;
+import org.apache.olingo.client.api.communication.response.ODataEntityUpdateResponse;
+import org.apache.olingo.client.api.domain.ClientEntity;
+import org.apache.olingo.commons.api.format.ContentType;
+import org.apache.olingo.samples.client.core.batch.BatchExecutor;
+import org.apache.olingo.samples.client.core.concurrent.VirtualThreads;
+
+/**
+ * Writes a stream of mutations with a fixed number of workers.
+ * <br/>
+ * At most <tt>workers * batchSize + maxQueued</tt> mutations are in flight or queued: beyond that,
+ * {@link #write(Mutation)} blocks the producer until some of them completed, so that memory stays bounded whatever
+ * the length of the stream. A failed mutation is reported in its {@link Result} and does not stop the others; retries
+ * of throttled or failed requests are left to the HTTP client factory.
+ * <br/>
+ * With a batch size above 1, each worker sends its mutations as one <tt>$batch</tt> request (with
+ * <tt>odata.continue-on-error</tt>, not atomic), which saves a round trip per mutation.
+ * <br/>
+ * Mutations must be written from a single producer thread.
+ */
+public class BulkWriter implements Closeable {
+
+  public static final int DEFAULT_WORKERS = 8;
+
+  public static final int DEFAULT_MAX_QUEUED = 1000;
+
+  public static final int DEFAULT_BATCH_SIZE = 1;
+
+  public enum Kind {
+    CREATE, UPDATE, DELETE
+  }
+
+  /**
+   * One write: an entity to create in an entity set, changes to an entity, or an entity to delete.
+   */
+  public static final class Mutation {
+
+    private final Kind kind;
+
+    private final URI uri;
+
+    private final ClientEntity entity;
+
+    private final Object tag;
+
+    private Mutation(final Kind kind, final URI uri, final ClientEntity entity, final Object tag) {
+      this.kind = kind;
+      this.uri = uri;
+      this.entity = entity;
+      this.tag = tag;
+    }
+
+    /**
+     * @param entitySetURI entity set URI
+     * @param entity entity to create
+     * @param tag identifies the record in results, e.g. a line number; may be null
+     * @return mutation
+     */
+    public static Mutation create(final URI entitySetURI, final ClientEntity entity, final Object tag) {
+      return new Mutation(Kind.CREATE, entitySetURI, entity, tag);
+    }
+
+    /**
+     * @param entityURI entity URI
+     * @param changes properties to change (<tt>PATCH</tt>)
+     * @param tag identifies the record in results; may be null
+     * @return mutation
+     */
+    public static Mutation update(final URI entityURI, final ClientEntity changes, final Object tag) {
+      return new Mutation(Kind.UPDATE, entityURI, changes, tag);
+    }
+
+    /**
+     * @param entityURI entity URI
+     * @param tag identifies the record in results; may be null
+     * @return mutation
+     */
+    public static Mutation delete(final URI entityURI, final Object tag) {
+      return new Mutation(Kind.DELETE, entityURI, null, tag);
+    }
+
+    public Kind getKind() {
+      return kind;
+    }
+
+    public URI getURI() {
+      return uri;
+    }
+
+    public ClientEntity getEntity() {
+      return entity;
+    }
+
+    public Object getTag() {
+      return tag;
+    }
+
+    @Override
+    public String toString() {
+      return kind + " " + uri + (tag == null ? "" : " [" + tag + ']');
+    }
+  }
+
+  /**
+   * Outcome of one mutation.
+   */
+  public static final class Result {
+
+    private final Mutation mutation;
+
+    private final ClientEntity created;
+
+    private final Throwable error;
+
+    private Result(final Mutation mutation, final ClientEntity created, final Throwable error) {
+      this.mutation = mutation;
+      this.created = created;
+      this.error = error;
+    }
+
+    public Mutation getMutation() {
+      return mutation;
+    }
+
+    /**
+     * @return the entity as created by the service, for successful creations
+     */
+    public ClientEntity getCreated() {
+      return created;
+    }
+
+    /**
+     * @return why the mutation failed, or null if successful
+     */
+    public Throwable getError() {
+      return error;
+    }
+
+    public boolean isSuccess() {
+      return error == null;
+    }
+
+    @Override
+    public String toString() {
+      return mutation + (error == null ? ": OK" : ": " + error);
+    }
+  }
+
+  /**
+   * Outcome of all mutations written so far.
+   */
+  public static final class Summary {
+
+    private final long succeeded;
+
+    private final long failed;
+
+    private final long elapsedNanos;
+
+    private final List<Result> failures;
+
+    private Summary(final long succeeded, final long failed, final long elapsedNanos, final List<Result> failures) {
+      this.succeeded = succeeded;
+      this.failed = failed;
+      this.elapsedNanos = elapsedNanos;
+      this.failures = failures;
+    }
+
+    public long getSucceeded() {
+      return succeeded;
+    }
+
+    public long getFailed() {
+      return failed;
+    }
+
+    public long getElapsedMillis() {
+      return TimeUnit.NANOSECONDS.toMillis(elapsedNanos);
+    }
+
+    public double getRecordsPerSecond() {
+      return elapsedNanos == 0 ? 0 : (succeeded + failed) * 1e9 / elapsedNanos;
+    }
+
+    public List<Result> getFailures() {
+      return failures;
+    }
+
+    @Override
+    public String toString() {
+      return (succeeded + failed) + " records (" + failed + " failed) in " + getElapsedMillis() + " ms, "
+              + String.format("%.1f", getRecordsPerSecond()) + " records/s";
+    }
+  }
+
+  private final ODataClient client;
+
+  private final String serviceRoot;
+
+  private final int workerCount;
+
+  private final ExecutorService workers;
+
+  private final int maxQueued;
+
+  // workers * batchSize + maxQueued
+  private int limit;
+
+  private final Semaphore permits;
+
+  private int batchSize = DEFAULT_BATCH_SIZE;
+
+  private Consumer<Result> listener;
+
+  private List<Mutation> chunk = new ArrayList<Mutation>();
+
+  private final AtomicLong succeeded = new AtomicLong();
+
+  private final AtomicLong failed = new AtomicLong();
+
+  private final ConcurrentLinkedQueue<Result> failures = new ConcurrentLinkedQueue<Result>();
+
+  private volatile long startNanos;
+
+  public BulkWriter(final ODataClient client, final String serviceRoot) {
+    this(client, serviceRoot, DEFAULT_WORKERS, DEFAULT_MAX_QUEUED);
+  }
+
+  /**
+   * @param client OData client
+   * @param serviceRoot service root URL, for <tt>$batch</tt> requests
+   * @param workers number of concurrent requests
+   * @param maxQueued number of mutations waiting for a worker before the producer is blocked
+   */
+  public BulkWriter(final ODataClient client, final String serviceRoot, final int workers, final int maxQueued) {
+    this.client = client;
+    this.serviceRoot = serviceRoot;
+    this.workerCount = workers;
+    // the work queue is bounded by the permits, not by its own capacity
+    this.workers = new ThreadPoolExecutor(workers, workers, 0L, TimeUnit.MILLISECONDS,
+            new LinkedBlockingQueue<Runnable>(), VirtualThreads.daemon("bulk-writer-"));
+    this.maxQueued = maxQueued;
+    this.limit = workers * batchSize + maxQueued;
+    this.permits = new Semaphore(limit);
+  }
+
+  /**
+   * @param batchSize mutations per request: 1 for plain requests, more for <tt>$batch</tt> requests; must be set
+   * before writing
+   * @return this writer
+   */
+  public BulkWriter setBatchSize(final int batchSize) {
+    if (batchSize < 1) {
+      throw new IllegalArgumentException("Batch size must be positive: " + batchSize);
+    }
+    if (startNanos != 0) {
+      throw new IllegalStateException("Batch size cannot be changed once writing started");
+    }
+    // every worker may hold a full batch on top of the queued mutations
+    final int next = workerCount * batchSize + maxQueued;
+    if (next > limit) {
+      permits.release(next - limit);
+    } else {
+      permits.acquireUninterruptibly(limit - next);
+    }
+    this.limit = next;
+    this.batchSize = batchSize;
+    return this;
+  }
+
+  /**
+   * @param listener called with the result of every mutation, on a worker thread, e.g. to log or retry failures later
+   * @return this writer
+   */
+  public BulkWriter setListener(final Consumer<Result> listener) {
+    this.listener = listener;
+    return this;
+  }
+
+  /**
+   * Queues a mutation, blocking while too many are in flight or queued.
+   *
+   * @param mutation mutation
+   * @throws InterruptedException if interrupted while blocked
+   */
+  public void write(final Mutation mutation) throws InterruptedException {
+    if (startNanos == 0) {
+      startNanos = System.nanoTime();
+    }
+    permits.acquire();
+    chunk.add(mutation);
+    if (chunk.size() >= batchSize) {
+      dispatch();
+    }
+  }
+
+  /**
+   * Writes all mutations of the stream, then waits for them to complete.
+   *
+   * @param mutations mutations, consumed lazily as permits are available
+   * @return outcome
+   * @throws InterruptedException if interrupted while blocked
+   */
+  public Summary writeAll(final Stream<Mutation> mutations) throws InterruptedException {
+    for (Iterator<Mutation> i = mutations.iterator(); i.hasNext();) {
+      write(i.next());
+    }
+    return awaitCompletion();
+  }
+
+  /**
+   * Sends the mutations not yet dispatched and waits for all of them to complete.
+   *
+   * @return outcome of all mutations written so far
+   * @throws InterruptedException if interrupted while waiting
+   */
+  public Summary awaitCompletion() throws InterruptedException {
+    if (!chunk.isEmpty()) {
+      dispatch();
+    }
+    permits.acquire(limit);
+    permits.release(limit);
+    return getSummary();
+  }
+
+  private void dispatch() {
+    final List<Mutation> work = chunk;
+    chunk = new ArrayList<Mutation>(batchSize);
+    workers.execute(() -> {
+      try {
+        if (work.size() == 1) {
+          complete(execute(work.get(0)));
+        } else {
+          executeBatch(work);
+        }
+      } finally {
+        permits.release(work.size());
+      }
+    });
+  }
+
+  private Result execute(final Mutation mutation) {
+    try {
+      switch (mutation.kind) {
+        case CREATE:
+          final ODataEntityCreateRequest<ClientEntity> create =
+                  client.getCUDRequestFactory().getEntityCreateRequest(mutation.uri, mutation.entity);
+          create.setAccept(ContentType.JSON.toContentTypeString());
+          final ODataEntityCreateResponse<ClientEntity> created = create.execute();
+          return new Result(mutation, created.getBody(), null);
+
+        case UPDATE:
+          final ODataEntityUpdateRequest<ClientEntity> update =
+                  client.getCUDRequestFactory().getEntityUpdateRequest(mutation.uri, UpdateType.PATCH, mutation.entity);
+          update.setAccept(ContentType.JSON.toContentTypeString());
+          final ODataEntityUpdateResponse<ClientEntity> updated = update.execute();
+          updated.close();
+          return new Result(mutation, null, null);
+
+        default:
+          final ODataDeleteRequest delete = client.getCUDRequestFactory().getDeleteRequest(mutation.uri);
+          delete.setAccept(ContentType.JSON.toContentTypeString());
+          final ODataDeleteResponse deleted = delete.execute();
+          deleted.close();
+          return new Result(mutation, null, null);
+      }
+    } catch (RuntimeException e) {
+      return new Result(mutation, null, e);
+    }
+  }
+
+  private void executeBatch(final List<Mutation> work) {
+    final BatchExecutor batch = new BatchExecutor(client, serviceRoot)
+            .setMaxOperations(work.size())
+            .setContinueOnError(true);
+    final List<CompletableFuture<?>> futures = new ArrayList<CompletableFuture<?>>(work.size());
+    for (Mutation mutation : work) {
+      switch (mutation.kind) {
+        case CREATE:
+          futures.add(batch.createEntity(mutation.uri, mutation.entity));
+          break;
+        case UPDATE:
+          futures.add(batch.updateEntity(mutation.uri, mutation.entity));
+          break;
+        default:
+          futures.add(batch.deleteEntity(mutation.uri));
+      }
+    }
+    batch.flush();
+    for (int i = 0; i < work.size(); i++) {
+      final Mutation mutation = work.get(i);
+      try {
+        final Object value = futures.get(i).get();
+        complete(new Result(mutation, mutation.kind == Kind.CREATE ? (ClientEntity) value : null, null));
+      } catch (ExecutionException | CompletionException e) {
+        complete(new Result(mutation, null, e.getCause()));
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        complete(new Result(mutation, null, e));
+      }
+    }
+  }
+
+  private void complete(final Result result) {
+    if (result.isSuccess()) {
+      succeeded.incrementAndGet();
+    } else {
+      failed.incrementAndGet();
+      failures.add(result);
+    }
+    if (listener != null) {
+      try {
+        listener.accept(result);
+      } catch (RuntimeException e) {
+        System.err.println("Bulk write listener failed on " + result.mutation + ": " + e.getMessage());
+      }
+    }
+  }
+
+  /**
+   * @return mutations written and not completed yet
+   */
+  public int getPendingCount() {
+    return limit - permits.availablePermits();
+  }
+
+  /**
+   * @return outcome of the mutations completed so far, e.g. to report progress
+   */
+  public Summary getSummary() {
+    final long start = startNanos;
+    return new Summary(succeeded.get(), failed.get(), start == 0 ? 0 : System.nanoTime() - start,
+            Collections.unmodifiableList(new ArrayList<Result>(failures)));
+  }
+
+  /**
+   * Stops the workers; mutations not completed yet are abandoned.
+   */
+  @Override
+  public void close() {
+    workers.shutdownNow();
+  }
+}
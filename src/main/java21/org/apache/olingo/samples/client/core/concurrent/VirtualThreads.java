@@ -0,0 +1,66 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.olingo.samples.client.core.concurrent;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Creates executors running blocking OData calls (e.g. <tt>request.execute()</tt>) on virtual threads.
+ * <br/>
+ * This is the JDK 21 variant, packaged under <tt>META-INF/versions/21</tt> by the <tt>jdk21</tt> profile.
+ */
+public final class VirtualThreads {
+
+  private VirtualThreads() {
+    // no instances
+  }
+
+  /**
+   * @return whether virtual threads are available
+   */
+  public static boolean isSupported() {
+    return true;
+  }
+
+  /**
+   * @param name thread name prefix
+   * @param maxConcurrency maximum number of tasks running at the same time
+   * @return new executor
+   */
+  public static ExecutorService newBoundedExecutor(final String name, final int maxConcurrency) {
+    return new BoundedExecutorService(
+            Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(name, 0).factory()), maxConcurrency);
+  }
+
+  /**
+   * @param prefix thread name prefix, followed by a sequence number
+   * @return factory of platform threads which do not keep the JVM running
+   */
+  public static ThreadFactory daemon(final String prefix) {
+    final AtomicInteger count = new AtomicInteger();
+    return runnable -> {
+      final Thread thread = new Thread(runnable, prefix + count.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    };
+  }
+}
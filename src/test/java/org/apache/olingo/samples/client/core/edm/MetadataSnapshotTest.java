@@ -0,0 +1,181 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.olingo.samples.client.core.edm;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.apache.commons.io.IOUtils;
+import org.apache.olingo.client.api.ODataClient;
+import org.apache.olingo.client.core.ODataClientFactory;
+import org.apache.olingo.commons.api.edm.Edm;
+import org.apache.olingo.commons.api.edm.EdmAnnotation;
+import org.apache.olingo.commons.api.edm.EdmEntitySet;
+import org.apache.olingo.commons.api.edm.EdmEntityType;
+import org.apache.olingo.commons.api.edm.EdmEnumType;
+import org.apache.olingo.commons.api.edm.EdmNavigationProperty;
+import org.apache.olingo.commons.api.edm.EdmProperty;
+import org.apache.olingo.commons.api.edm.EdmSchema;
+import org.apache.olingo.commons.api.edm.FullQualifiedName;
+import org.apache.olingo.commons.core.edm.EdmProviderImpl;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class MetadataSnapshotTest {
+
+  private static final String EDM = "http://docs.oasis-open.org/odata/ns/edm";
+
+  private static final FullQualifiedName CUSTOMER = new FullQualifiedName("Microsoft.NAV", "customer");
+
+  private static ODataClient client;
+
+  private static String fixture;
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @BeforeClass
+  public static void readFixture() throws Exception {
+    client = ODataClientFactory.getClient();
+    try (InputStream metadata = MetadataSnapshotTest.class.getResourceAsStream("/bc-metadata.xml")) {
+      fixture = IOUtils.toString(metadata, StandardCharsets.UTF_8);
+    }
+  }
+
+  /**
+   * The fixture with the CSDL namespace declared on the Edmx element rather than on the Schema element.
+   */
+  private static String declaredOnEdmx(final String prefix) {
+    final String declaration = prefix.isEmpty() ? "xmlns=\"" + EDM + "\"" : "xmlns:" + prefix + "=\"" + EDM + "\"";
+    String document = fixture.replace(" xmlns=\"" + EDM + "\"", "")
+            .replace("<edmx:Edmx ", "<edmx:Edmx " + declaration + ' ');
+    if (!prefix.isEmpty()) {
+      document = document.replaceAll("<(/?)(?!edmx:)([A-Z])", "<$1" + prefix + ":$2");
+    }
+    return document;
+  }
+
+  private static Edm fullParse(final String document) {
+    return client.getReader().readMetadata(new ByteArrayInputStream(document.getBytes(StandardCharsets.UTF_8)));
+  }
+
+  private static Edm snapshotEdm(final MetadataSnapshot snapshot) {
+    return new EdmProviderImpl(new SnapshotEdmProvider(client, snapshot));
+  }
+
+  private static List<String> describe(final EdmEntityType entityType) {
+    final List<String> description = new ArrayList<String>();
+    description.add("key " + entityType.getKeyPredicateNames());
+    for (String name : entityType.getPropertyNames()) {
+      final EdmProperty property = entityType.getStructuralProperty(name);
+      description.add(name + ": " + property.getType().getFullQualifiedName()
+              + (property.isCollection() ? "[]" : "") + (property.isNullable() ? "" : " not null")
+              + (property.getMaxLength() == null ? "" : " max " + property.getMaxLength()));
+    }
+    for (String name : entityType.getNavigationPropertyNames()) {
+      final EdmNavigationProperty property = entityType.getNavigationProperty(name);
+      description.add(name + " -> " + property.getType().getFullQualifiedName()
+              + (property.isCollection() ? "[]" : "") + (property.containsTarget() ? " contained" : ""));
+    }
+    for (EdmAnnotation annotation : entityType.getAnnotations()) {
+      description.add("@" + annotation.getExpression().asConstant().getValueAsString());
+    }
+    return description;
+  }
+
+  private static void assertSameEdm(final Edm expected, final Edm actual) {
+    int entityTypes = 0;
+    for (EdmSchema schema : expected.getSchemas()) {
+      for (EdmEntityType entityType : schema.getEntityTypes()) {
+        final EdmEntityType snapshotType = actual.getEntityType(entityType.getFullQualifiedName());
+        assertNotNull(entityType.getName(), snapshotType);
+        assertEquals(entityType.getName(), describe(entityType), describe(snapshotType));
+        entityTypes++;
+      }
+      for (EdmEnumType enumType : schema.getEnumTypes()) {
+        assertEquals(enumType.getMemberNames(), actual.getEnumType(enumType.getFullQualifiedName()).getMemberNames());
+      }
+    }
+    assertEquals(3, entityTypes);
+
+    for (EdmEntitySet entitySet : expected.getEntityContainer().getEntitySets()) {
+      final EdmEntitySet snapshotSet = actual.getEntityContainer().getEntitySet(entitySet.getName());
+      assertNotNull(entitySet.getName(), snapshotSet);
+      assertEquals(entitySet.getEntityType().getFullQualifiedName(),
+              snapshotSet.getEntityType().getFullQualifiedName());
+      assertEquals(entitySet.getAnnotations().size(), snapshotSet.getAnnotations().size());
+    }
+  }
+
+  @Test
+  public void servesSameEdmAsFullParse() throws Exception {
+    final MetadataSnapshot snapshot = MetadataSnapshot.parse(fixture.getBytes(StandardCharsets.UTF_8));
+
+    assertEquals("NAV", snapshot.getSchema("Microsoft.NAV").getAlias());
+    assertEquals(Arrays.asList("company", "customer", "paymentTerm"),
+            snapshot.getSchema("NAV").getNames(MetadataSnapshot.Kind.ENTITY_TYPE));
+    assertSameEdm(fullParse(fixture), snapshotEdm(snapshot));
+  }
+
+  @Test
+  public void resolvesAliasQualifiedNames() throws Exception {
+    final Edm edm = snapshotEdm(MetadataSnapshot.parse(fixture.getBytes(StandardCharsets.UTF_8)));
+
+    final EdmEntityType customer = edm.getEntityType(new FullQualifiedName("NAV", "customer"));
+    assertEquals(CUSTOMER, customer.getFullQualifiedName());
+    assertEquals(new FullQualifiedName("Microsoft.NAV", "postaladdresstype"),
+            customer.getStructuralProperty("address").getType().getFullQualifiedName());
+    assertEquals(new FullQualifiedName("Microsoft.NAV", "blocked"),
+            customer.getStructuralProperty("blocked").getType().getFullQualifiedName());
+    assertEquals("Customers of the company",
+            customer.getAnnotations().get(0).getExpression().asConstant().getValueAsString());
+    assertNull(edm.getEntityType(new FullQualifiedName("NAV", "vendor")));
+  }
+
+  @Test
+  public void handlesCsdlNamespaceDeclaredOnEdmx() throws Exception {
+    for (String prefix : Arrays.asList("", "edm")) {
+      final String document = declaredOnEdmx(prefix);
+      final MetadataSnapshot snapshot = MetadataSnapshot.parse(document.getBytes(StandardCharsets.UTF_8));
+
+      assertSameEdm(fullParse(document), snapshotEdm(snapshot));
+    }
+  }
+
+  @Test
+  public void survivesWriteAndRead() throws Exception {
+    final Path file = folder.getRoot().toPath().resolve("metadata.snapshot");
+    MetadataSnapshot.parse(declaredOnEdmx("edm").getBytes(StandardCharsets.UTF_8)).write(file);
+
+    final MetadataSnapshot snapshot = MetadataSnapshot.read(file);
+
+    assertEquals("NAV", snapshot.getSchema("Microsoft.NAV").getAlias());
+    assertSameEdm(fullParse(fixture), snapshotEdm(snapshot));
+  }
+}
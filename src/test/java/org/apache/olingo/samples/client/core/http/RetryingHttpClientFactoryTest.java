@@ -0,0 +1,85 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.olingo.samples.client.core.http;
+
+import static org.junit.Assert.assertEquals;
+
+import com.sun.net.httpserver.HttpServer;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.HttpClient;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.util.EntityUtils;
+import org.apache.olingo.commons.api.http.HttpMethod;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class RetryingHttpClientFactoryTest {
+
+  private HttpServer server;
+
+  private final AtomicInteger requests = new AtomicInteger();
+
+  private RetryingHttpClientFactory factory;
+
+  @Before
+  public void setUp() throws Exception {
+    server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+    server.createContext("/", exchange -> {
+      final byte[] body;
+      if (requests.incrementAndGet() == 1) {
+        body = "throttled".getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Retry-After", "0");
+        exchange.sendResponseHeaders(RetryPolicy.SC_TOO_MANY_REQUESTS, body.length);
+      } else {
+        body = "ok".getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(200, body.length);
+      }
+      try (OutputStream output = exchange.getResponseBody()) {
+        output.write(body);
+      }
+    });
+    server.start();
+    factory = new RetryingHttpClientFactory(new RetryPolicy().setBaseDelayMillis(1));
+  }
+
+  @After
+  public void tearDown() {
+    factory.shutdown();
+    server.stop(0);
+  }
+
+  @Test
+  public void retriesThrottledRequestOnFreshConnection() throws Exception {
+    final URI uri = URI.create("http://127.0.0.1:" + server.getAddress().getPort() + "/items");
+    final HttpClient httpClient = factory.create(HttpMethod.GET, uri);
+
+    final HttpResponse response = httpClient.execute(new HttpGet(uri));
+
+    assertEquals(200, response.getStatusLine().getStatusCode());
+    assertEquals("ok", EntityUtils.toString(response.getEntity()));
+    assertEquals(2, requests.get());
+    assertEquals(1, factory.getRetryCount());
+  }
+}
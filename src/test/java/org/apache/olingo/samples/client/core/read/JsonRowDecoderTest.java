@@ -0,0 +1,248 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.olingo.samples.client.core.read;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.OffsetDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.UUID;
+import org.apache.olingo.client.api.ODataClient;
+import org.apache.olingo.client.core.ODataClientFactory;
+import org.apache.olingo.commons.api.edm.Edm;
+import org.apache.olingo.commons.api.edm.EdmEntityType;
+import org.apache.olingo.commons.api.edm.FullQualifiedName;
+import org.apache.olingo.samples.client.core.edm.PropertyDescriptor;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+public class JsonRowDecoderTest {
+
+  private static EdmEntityType customer;
+
+  @BeforeClass
+  public static void readMetadata() throws Exception {
+    final ODataClient client = ODataClientFactory.getClient();
+    try (InputStream metadata = JsonRowDecoderTest.class.getResourceAsStream("/bc-metadata.xml")) {
+      final Edm edm = client.getReader().readMetadata(metadata);
+      customer = edm.getEntityType(new FullQualifiedName("Microsoft.NAV", "customer"));
+    }
+  }
+
+  private static List<Map<String, Object>> decode(final RowSchema schema, final String json) throws Exception {
+    final List<Map<String, Object>> rows = new ArrayList<Map<String, Object>>();
+    new JsonRowDecoder(schema).decode(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)), row -> {
+      final Map<String, Object> values = new TreeMap<String, Object>();
+      for (RowSchema.Column column : schema.getColumns()) {
+        if (row.isPresent(column.getIndex())) {
+          values.put(column.getName(), row.get(column.getName()));
+        }
+      }
+      rows.add(values);
+    });
+    return rows;
+  }
+
+  private static Object decodeOne(final String property, final String jsonValue) throws Exception {
+    final List<Map<String, Object>> rows = decode(RowSchema.of(customer, property),
+            "{\"value\":[{\"" + property + "\":" + jsonValue + "}]}");
+    return rows.get(0).get(property);
+  }
+
+  @Test
+  public void schemaHasPrimitiveAndEnumPropertiesOnly() {
+    final RowSchema schema = RowSchema.of(customer);
+
+    assertEquals(-1, schema.indexOf("address"));
+    assertEquals(-1, schema.indexOf("paymentTerm"));
+    assertEquals(PropertyDescriptor.Slot.GUID, schema.getColumn("id").getSlot());
+    assertEquals(PropertyDescriptor.Slot.TEXT, schema.getColumn("blocked").getSlot());
+    assertEquals(PropertyDescriptor.Slot.DOUBLE, schema.getColumn("creditLimit").getSlot());
+    assertTrue(schema.getColumn("creditLimit").isKeepText());
+    assertEquals(PropertyDescriptor.Slot.LONG, schema.getColumn("firstOrderDate").getSlot());
+    assertEquals(customer.getPropertyNames().size() - 1, schema.size());
+  }
+
+  @Test
+  public void decodesPageWithNullsReorderedFieldsAndNextLink() throws Exception {
+    final RowSchema schema = RowSchema.of(customer,
+            "id", "number", "displayName", "phoneNumber", "taxLiable", "creditLimit", "blocked", "paymentDays");
+    final String json = "{\"@odata.context\":\"https://api.businesscentral.dynamics.com/v1.0/api/beta/$metadata"
+            + "#companies(d6a06f5d-0d04-473a-9edb-b79a792d84aa)/customers\",\"value\":["
+            + "{\"@odata.etag\":\"W/\\\"JzQ0O0VnQUFBQUo3QlRBQU1BQXdBREFBTUFBQUFBQT0xMDsn\\\"\","
+            + "\"id\":\"3b5c7a4d-9f3e-4c9b-a1f0-2e8d6c4b5a71\",\"number\":\"10000\","
+            + "\"displayName\":\"Adatum Corporation\",\"address\":{\"street\":\"192 Market Square\","
+            + "\"city\":\"Atlanta\"},\"phoneNumber\":null,\"taxLiable\":true,\"creditLimit\":0,"
+            + "\"blocked\":\"_x0020_\",\"paymentDays\":30,\"unknown\":[1,{\"a\":2}]},"
+            + "{\"blocked\":\"All\",\"paymentDays\":-7,\"creditLimit\":12345.678901234567890123,"
+            + "\"taxLiable\":false,\"displayName\":\"Trey \\\"Research\\\"\",\"id\":\"c2a0f3b1-04f0-4c5b-8e1c-"
+            + "9d2a6f8b7e30\",\"phoneNumber\":\"+1 425 555 0100\"}],"
+            + "\"@odata.nextLink\":\"https://api.businesscentral.dynamics.com/v1.0/api/beta/companies"
+            + "(d6a06f5d-0d04-473a-9edb-b79a792d84aa)/customers?$skiptoken=10000\"}";
+
+    final List<Map<String, Object>> rows = new ArrayList<Map<String, Object>>();
+    final String nextLink = new JsonRowDecoder(schema).decode(
+            new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)), row -> {
+              final Map<String, Object> values = new TreeMap<String, Object>();
+              for (RowSchema.Column column : schema.getColumns()) {
+                values.put(column.getName(), row.isPresent(column.getIndex()) ? row.get(column.getName()) : "absent");
+              }
+              rows.add(values);
+            });
+
+    assertEquals("https://api.businesscentral.dynamics.com/v1.0/api/beta/companies"
+            + "(d6a06f5d-0d04-473a-9edb-b79a792d84aa)/customers?$skiptoken=10000", nextLink);
+    assertEquals(2, rows.size());
+
+    final Map<String, Object> first = rows.get(0);
+    assertEquals(UUID.fromString("3b5c7a4d-9f3e-4c9b-a1f0-2e8d6c4b5a71"), first.get("id"));
+    assertEquals("10000", first.get("number"));
+    assertEquals("Adatum Corporation", first.get("displayName"));
+    assertNull(first.get("phoneNumber"));
+    assertEquals(Boolean.TRUE, first.get("taxLiable"));
+    assertEquals(new BigDecimal("0"), first.get("creditLimit"));
+    assertEquals("_x0020_", first.get("blocked"));
+    assertEquals(30L, first.get("paymentDays"));
+
+    final Map<String, Object> second = rows.get(1);
+    assertEquals(UUID.fromString("c2a0f3b1-04f0-4c5b-8e1c-9d2a6f8b7e30"), second.get("id"));
+    // not in the second row: nothing left over from the first one
+    assertEquals("absent", second.get("number"));
+    assertEquals("Trey \"Research\"", second.get("displayName"));
+    assertEquals("+1 425 555 0100", second.get("phoneNumber"));
+    assertEquals(Boolean.FALSE, second.get("taxLiable"));
+    assertEquals(new BigDecimal("12345.678901234567890123"), second.get("creditLimit"));
+    assertEquals("All", second.get("blocked"));
+    assertEquals(-7L, second.get("paymentDays"));
+  }
+
+  @Test
+  public void nullAfterValueInSameColumn() throws Exception {
+    final List<Map<String, Object>> rows = decode(RowSchema.of(customer, "displayName", "balance"),
+            "{\"value\":[{\"displayName\":\"x\",\"balance\":1.5},{\"displayName\":null,\"balance\":null}]}");
+
+    assertEquals("x", rows.get(0).get("displayName"));
+    assertTrue(rows.get(1).containsKey("displayName"));
+    assertNull(rows.get(1).get("displayName"));
+    assertNull(rows.get(1).get("balance"));
+  }
+
+  @Test
+  public void decodesGuidsOverTheWholeHexRange() throws Exception {
+    for (String guid : Arrays.asList(
+            "00000000-0000-0000-0000-000000000000",
+            "ffffffff-ffff-ffff-ffff-ffffffffffff",
+            "FFFFFFFF-FFFF-FFFF-FFFF-FFFFFFFFFFFF",
+            "80000000-0000-0000-8000-000000000000",
+            "7fffffff-ffff-ffff-7fff-ffffffffffff",
+            "0123abcd-4567-89ef-ABCD-0123456789ab")) {
+
+      assertEquals(guid, UUID.fromString(guid), decodeOne("id", "\"" + guid + "\""));
+    }
+  }
+
+  @Test
+  public void rejectsMalformedGuids() throws Exception {
+    for (String guid : Arrays.asList("3b5c7a4d-9f3e-4c9b-a1f0-2e8d6c4b5a7", "3b5c7a4d-9f3e-4c9b-a1f0-2e8d6c4b5a7g")) {
+      try {
+        decodeOne("id", "\"" + guid + "\"");
+        fail(guid);
+      } catch (NumberFormatException e) {
+        // expected
+      }
+    }
+  }
+
+  @Test
+  public void decodesDates() throws Exception {
+    for (String date : Arrays.asList("0001-01-01", "1753-01-01", "1970-01-01", "2000-02-29", "2024-12-31")) {
+      assertEquals(date, LocalDate.parse(date), decodeOne("firstOrderDate", "\"" + date + "\""));
+    }
+  }
+
+  @Test
+  public void decodesDateTimeOffsets() throws Exception {
+    for (String timestamp : Arrays.asList(
+            "0001-01-01T00:00:00Z",
+            "1969-12-31T23:59:59.999Z",
+            "2019-03-05T14:02:11.53Z",
+            "2023-05-17T08:15:30.1234567Z",
+            "2023-05-17T08:15Z",
+            "2023-05-17T08:15:30+02:00",
+            "2023-05-17T08:15:30.5-05:30")) {
+
+      final Instant expected = OffsetDateTime.parse(timestamp).toInstant();
+      assertEquals(timestamp, Instant.ofEpochMilli(expected.toEpochMilli()),
+              decodeOne("lastModifiedDateTime", "\"" + timestamp + "\""));
+    }
+  }
+
+  @Test
+  public void decodesTimesOfDay() throws Exception {
+    for (String time : Arrays.asList("00:00", "00:00:00", "08:30:00", "23:59:59.9999999", "12:00:00.000000001")) {
+      assertEquals(time, LocalTime.parse(time), decodeOne("preferredDeliveryTime", "\"" + time + "\""));
+    }
+  }
+
+  @Test
+  public void decodesInt64AsNumberAndAsString() throws Exception {
+    assertEquals(Long.MAX_VALUE, decodeOne("entryNumber", String.valueOf(Long.MAX_VALUE)));
+    // IEEE754Compatible=true
+    assertEquals(Long.MAX_VALUE, decodeOne("entryNumber", "\"9223372036854775807\""));
+    assertEquals(Long.MIN_VALUE, decodeOne("entryNumber", "\"-9223372036854775808\""));
+    assertEquals(42L, decodeOne("entryNumber", "\"+42\""));
+  }
+
+  @Test
+  public void rejectsInt64OutOfRange() throws Exception {
+    for (String value : Arrays.asList("\"9223372036854775808\"", "\"-9223372036854775809\"",
+            "\"99999999999999999999\"", "\"-\"", "\"\"", "\"12a\"")) {
+      try {
+        decodeOne("entryNumber", value);
+        fail(value);
+      } catch (NumberFormatException e) {
+        // expected
+      }
+    }
+  }
+
+  @Test
+  public void skipsNonScalarValuesOfDecodedColumns() throws Exception {
+    final List<Map<String, Object>> rows = decode(RowSchema.of(customer, "number", "displayName"),
+            "{\"value\":[{\"number\":{\"nested\":[1,2]},\"displayName\":\"after\"}]}");
+
+    assertFalse(rows.get(0).containsKey("number"));
+    assertEquals("after", rows.get(0).get("displayName"));
+  }
+}
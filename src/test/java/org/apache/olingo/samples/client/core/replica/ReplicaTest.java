@@ -0,0 +1,211 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.olingo.samples.client.core.replica;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Proxy;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import org.apache.olingo.client.api.ODataClient;
+import org.apache.olingo.client.api.communication.request.retrieve.ODataRawRequest;
+import org.apache.olingo.client.api.communication.request.retrieve.RetrieveRequestFactory;
+import org.apache.olingo.client.api.communication.response.ODataRawResponse;
+import org.apache.olingo.client.core.ODataClientFactory;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ReplicaTest {
+
+  private static final String ITEMS = "http://localhost/api/v2.0/companies(1)/items";
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  // JSON of each page by URI
+  private final Map<String, String> pages = new HashMap<String, String>();
+
+  private int requests;
+
+  private ODataClient client;
+
+  private Path directory;
+
+  @SuppressWarnings("unchecked")
+  private static <T> T proxy(final Class<T> type, final InvocationHandler handler) {
+    return (T) Proxy.newProxyInstance(ReplicaTest.class.getClassLoader(), new Class<?>[] {type}, handler);
+  }
+
+  @Before
+  public void setUp() throws Exception {
+    directory = folder.getRoot().toPath();
+    // only raw requests are sent, answered from the pages
+    final RetrieveRequestFactory requestFactory = proxy(RetrieveRequestFactory.class, (factory, method, args) -> {
+      final String page = pages.get(args[0].toString());
+      requests++;
+      final ODataRawResponse response = proxy(ODataRawResponse.class, (r, responseMethod, a) ->
+              "getRawResponse".equals(responseMethod.getName())
+              ? new ByteArrayInputStream(page.getBytes(StandardCharsets.UTF_8)) : null);
+      return proxy(ODataRawRequest.class, (request, requestMethod, a) ->
+              "execute".equals(requestMethod.getName()) ? response : null);
+    });
+    client = proxy(ODataClient.class, (c, method, args) ->
+            "getRetrieveRequestFactory".equals(method.getName()) ? requestFactory : null);
+  }
+
+  private static String item(final UUID id, final String number) {
+    return "{\"@odata.etag\":\"W/\\\"1\\\"\",\"id\":\"" + id + "\",\"number\":\"" + number
+            + "\",\"unitPrice\":1.5,\"itemCategory\":{\"code\":\"\u00c9\"}}";
+  }
+
+  private void page(final String uri, final List<String> items, final String nextLink) {
+    pages.put(uri, "{\"@odata.context\":\"" + ITEMS + "/$metadata\",\"value\":[" + String.join(",", items) + "]"
+            + (nextLink == null ? "" : ",\"@odata.nextLink\":\"" + nextLink + "\"") + "}");
+  }
+
+  private static String text(final ByteBuffer record) {
+    return StandardCharsets.UTF_8.decode(record).toString();
+  }
+
+  private Replica open() throws Exception {
+    return new Replica(client, directory, "items", URI.create(ITEMS), "id");
+  }
+
+  @Test
+  public void looksEntitiesUpAcrossPages() throws Exception {
+    final List<UUID> ids = new ArrayList<UUID>();
+    for (int i = 0; i < 3000; i++) {
+      ids.add(UUID.randomUUID());
+    }
+    for (int p = 0; p < 3; p++) {
+      final List<String> items = new ArrayList<String>();
+      for (int i = p * 1000; i < (p + 1) * 1000; i++) {
+        items.add(item(ids.get(i), "I" + i));
+      }
+      page(p == 0 ? ITEMS : ITEMS + "?$skiptoken=" + p, items, p < 2 ? ITEMS + "?$skiptoken=" + (p + 1) : null);
+    }
+    final Replica replica = open();
+    assertFalse(replica.isLoaded());
+    assertNull(replica.get(ids.get(0)));
+
+    assertEquals(3000, replica.refresh());
+
+    assertEquals(3, requests);
+    assertEquals(3000, replica.size());
+    for (int i = 0; i < ids.size(); i++) {
+      assertEquals(item(ids.get(i), "I" + i), text(replica.get(ids.get(i))));
+    }
+    assertTrue(replica.contains(ids.get(1234)));
+    assertNull(replica.get(UUID.randomUUID()));
+    assertFalse(replica.contains(new UUID(ids.get(0).getMostSignificantBits(), 0)));
+  }
+
+  @Test
+  public void keepsTheLaterOfDuplicateEntities() throws Exception {
+    final UUID id = UUID.randomUUID();
+    final UUID other = UUID.randomUUID();
+    page(ITEMS, Arrays.asList(item(id, "before"), item(other, "other")), ITEMS + "?$skiptoken=1");
+    page(ITEMS + "?$skiptoken=1", Arrays.asList(item(id, "after")), null);
+    final Replica replica = open();
+
+    assertEquals(2, replica.refresh());
+
+    assertEquals(item(id, "after"), text(replica.get(id)));
+    assertEquals(item(other, "other"), text(replica.get(other)));
+  }
+
+  @Test
+  public void switchesToTheNewGeneration() throws Exception {
+    final UUID kept = UUID.randomUUID();
+    final UUID deleted = UUID.randomUUID();
+    final UUID created = UUID.randomUUID();
+    page(ITEMS, Arrays.asList(item(kept, "1"), item(deleted, "2")), null);
+    final Replica replica = open();
+    replica.refresh();
+    final ByteBuffer before = replica.get(kept);
+
+    page(ITEMS, Arrays.asList(item(kept, "1 changed"), item(created, "3")), null);
+    assertEquals(2, replica.refresh());
+
+    assertEquals(item(kept, "1 changed"), text(replica.get(kept)));
+    assertEquals(item(created, "3"), text(replica.get(created)));
+    assertNull(replica.get(deleted));
+    // views handed out before the switch stay readable
+    assertEquals(item(kept, "1"), text(before));
+    final List<String> files = new ArrayList<String>(Arrays.asList(directory.toFile().list()));
+    files.sort(null);
+    assertEquals(Arrays.asList("items.2.data", "items.2.index", "items.current"), files);
+  }
+
+  @Test
+  public void reopensTheGenerationOnDisk() throws Exception {
+    final UUID id = UUID.randomUUID();
+    page(ITEMS, Arrays.asList(item(id, "1")), null);
+    final Replica replica = open();
+    replica.refresh();
+    replica.refresh();
+    requests = 0;
+
+    final Replica reopened = open();
+
+    assertTrue(reopened.isLoaded());
+    assertEquals(1, reopened.size());
+    assertEquals(item(id, "1"), text(reopened.get(id)));
+    assertEquals(0, requests);
+    assertTrue(reopened.getRefreshedAt() > 0);
+    assertTrue(reopened.toString().contains("generation=2"));
+  }
+
+  @Test
+  public void forgetsWrittenEntitiesUntilTheNextRefresh() throws Exception {
+    final UUID id = UUID.randomUUID();
+    final UUID other = UUID.randomUUID();
+    page(ITEMS, Arrays.asList(item(id, "1"), item(other, "2")), null);
+    final ReplicaStore store = new ReplicaStore(client, directory, 0);
+    final Replica replica = store.open("items", URI.create(ITEMS), "id");
+    replica.refresh();
+
+    // as built for updates and deletions
+    store.forget(ODataClientFactory.getClient().newURIBuilder(ITEMS).appendKeySegment(id).build());
+    store.forget(URI.create(ITEMS + "('" + other + "')"));
+
+    assertNull(replica.get(id));
+    assertFalse(replica.contains(id));
+    assertEquals(item(other, "2"), text(replica.get(other)));
+    page(ITEMS, Arrays.asList(item(id, "1 changed"), item(other, "2")), null);
+    replica.refresh();
+    assertEquals(item(id, "1 changed"), text(replica.get(id)));
+    store.close();
+  }
+}
@@ -0,0 +1,280 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.olingo.samples.client.core.snapshot;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.zip.Deflater;
+import org.apache.olingo.client.api.ODataClient;
+import org.apache.olingo.client.core.ODataClientFactory;
+import org.apache.olingo.commons.api.edm.Edm;
+import org.apache.olingo.commons.api.edm.EdmEntityType;
+import org.apache.olingo.commons.api.edm.FullQualifiedName;
+import org.apache.olingo.samples.client.core.read.JsonRowDecoder;
+import org.apache.olingo.samples.client.core.read.RowSchema;
+import org.junit.BeforeClass;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ColumnarSnapshotTest {
+
+  private static EdmEntityType customer;
+
+  @Rule
+  public TemporaryFolder folder = new TemporaryFolder();
+
+  @BeforeClass
+  public static void readMetadata() throws Exception {
+    final ODataClient client = ODataClientFactory.getClient();
+    try (InputStream metadata = ColumnarSnapshotTest.class.getResourceAsStream("/bc-metadata.xml")) {
+      final Edm edm = client.getReader().readMetadata(metadata);
+      customer = edm.getEntityType(new FullQualifiedName("Microsoft.NAV", "customer"));
+    }
+  }
+
+  /**
+   * Customers with the given values, JSON literals in column order; null for a property left out.
+   */
+  private static String page(final String[] properties, final List<String[]> rows) {
+    final StringBuilder json = new StringBuilder("{\"value\":[");
+    for (int row = 0; row < rows.size(); row++) {
+      json.append(row == 0 ? "{" : ",{");
+      boolean first = true;
+      for (int i = 0; i < properties.length; i++) {
+        if (rows.get(row)[i] != null) {
+          json.append(first ? "" : ",").append('"').append(properties[i]).append("\":").append(rows.get(row)[i]);
+          first = false;
+        }
+      }
+      json.append('}');
+    }
+    return json.append("]}").toString();
+  }
+
+  private Path write(final Path file, final int blockRows, final String[] properties, final List<String[]> rows,
+          final boolean commit) throws Exception {
+
+    final RowSchema schema = RowSchema.of(customer, properties);
+    try (ColumnarSnapshotWriter writer = new ColumnarSnapshotWriter(file, customer.getFullQualifiedName().toString(),
+            schema, blockRows, Deflater.BEST_SPEED)) {
+      new JsonRowDecoder(schema).decode(
+              new ByteArrayInputStream(page(properties, rows).getBytes(StandardCharsets.UTF_8)), writer);
+      if (commit) {
+        writer.commit();
+        assertEquals(rows.size(), writer.getRowCount());
+        assertEquals((rows.size() + blockRows - 1) / blockRows, writer.getBlockCount());
+      }
+    }
+    return file;
+  }
+
+  private static List<ColumnarSnapshotReader.Block> blocks(final List<Object[]> values,
+          final ColumnarSnapshotReader reader) throws Exception {
+
+    final List<ColumnarSnapshotReader.Block> blocks = new ArrayList<ColumnarSnapshotReader.Block>();
+    reader.scan(block -> {
+      blocks.add(block);
+      for (int row = 0; row < block.getRowCount(); row++) {
+        final Object[] rowValues = new Object[reader.getColumns().size()];
+        for (int column = 0; column < rowValues.length; column++) {
+          final SnapshotColumn snapshotColumn = reader.getColumns().get(column);
+          if (block.isNull(column, row)) {
+            rowValues[column] = null;
+          } else if (snapshotColumn.isDecimal()) {
+            rowValues[column] = block.getDecimal(column, row);
+          } else {
+            switch (snapshotColumn.getSlot()) {
+              case LONG:
+                rowValues[column] = block.getLong(column, row);
+                break;
+              case GUID:
+                rowValues[column] = block.getUUID(column, row);
+                break;
+              default:
+                rowValues[column] = block.getString(column, row);
+            }
+          }
+        }
+        values.add(rowValues);
+      }
+    });
+    return blocks;
+  }
+
+  @Test
+  public void roundTripsNullsAcrossBlocks() throws Exception {
+    final String[] properties = {"id", "number", "paymentDays"};
+    final List<String[]> rows = new ArrayList<String[]>();
+    for (int i = 0; i < 10; i++) {
+      rows.add(new String[] {
+        "\"" + new UUID(i, -i) + "\"",
+        // no number at all in the second block, an explicit null or a missing property
+        i >= 3 && i < 6 ? (i % 2 == 0 ? "null" : null) : "\"C" + i + "\"",
+        // nulls on the first and the last row of blocks
+        i % 3 == 0 ? "null" : String.valueOf(i)
+      });
+    }
+
+    try (ColumnarSnapshotReader reader = new ColumnarSnapshotReader(
+            write(folder.getRoot().toPath().resolve("customers.snapshot"), 3, properties, rows, true))) {
+      assertEquals("Microsoft.NAV.customer", reader.getEntityType());
+      assertEquals(10, reader.getRowCount());
+      final List<Object[]> values = new ArrayList<Object[]>();
+      final List<ColumnarSnapshotReader.Block> blocks = blocks(values, reader);
+
+      assertEquals(4, blocks.size());
+      assertEquals(1, blocks.get(3).getRowCount());
+      assertEquals(10, values.size());
+      for (int i = 0; i < 10; i++) {
+        assertArrayEquals(String.valueOf(i), new Object[] {
+          new UUID(i, -i),
+          i >= 3 && i < 6 ? null : "C" + i,
+          i % 3 == 0 ? null : (long) i
+        }, values.get(i));
+      }
+      final int number = reader.indexOf("number");
+      assertEquals(3, reader.getStats(number).getNullCount());
+      assertEquals("C0", reader.getStats(number).getMin());
+      assertEquals("C9", reader.getStats(number).getMax());
+      assertEquals(4, reader.getStats(reader.indexOf("paymentDays")).getNullCount());
+      assertEquals(1L, reader.getStats(reader.indexOf("paymentDays")).getMin());
+      assertEquals(8L, reader.getStats(reader.indexOf("paymentDays")).getMax());
+    }
+  }
+
+  @Test
+  public void keepsDecimalsWhichDoNotFitUnscaledLongsAsText() throws Exception {
+    final String[] properties = {"id", "creditLimit"};
+    final String[] decimals = {
+      // fits: scale 3
+      "1.5", "-12345.678",
+      // scale above 18
+      "0.1234567890123456789012", "1",
+      // scale 0, but unscaled beyond a long
+      "92233720368547758080", "-3",
+      // Long.MAX_VALUE + 1 once scaled to 2
+      "92233720368547758.08", "0.01"
+    };
+    final List<String[]> rows = new ArrayList<String[]>();
+    for (int i = 0; i < decimals.length; i++) {
+      rows.add(new String[] {"\"" + new UUID(0, i) + "\"", decimals[i]});
+    }
+    rows.add(new String[] {"\"" + new UUID(0, decimals.length) + "\"", "null"});
+
+    try (ColumnarSnapshotReader reader = new ColumnarSnapshotReader(
+            write(folder.getRoot().toPath().resolve("decimals.snapshot"), 2, properties, rows, true))) {
+      final List<Object[]> values = new ArrayList<Object[]>();
+      blocks(values, reader);
+
+      for (int i = 0; i < decimals.length; i++) {
+        assertEquals(decimals[i], 0, new BigDecimal(decimals[i]).compareTo((BigDecimal) values.get(i)[1]));
+      }
+      assertEquals(null, values.get(decimals.length)[1]);
+    }
+  }
+
+  @Test
+  public void narrowsDictionaryCodesToTheDictionarySize() throws Exception {
+    final String[] properties = {"id", "displayName"};
+    for (int distinct : new int[] {200, 300, 70000}) {
+      final List<String[]> rows = new ArrayList<String[]>();
+      for (int i = 0; i < distinct + 10; i++) {
+        // the last rows repeat the first values
+        rows.add(new String[] {"\"" + new UUID(distinct, i) + "\"", "\"Name " + i % distinct + "\""});
+      }
+
+      try (ColumnarSnapshotReader reader = new ColumnarSnapshotReader(write(
+              folder.getRoot().toPath().resolve("names" + distinct + ".snapshot"), 100000, properties, rows, true))) {
+        final int displayName = reader.indexOf("displayName");
+        final List<Object[]> values = new ArrayList<Object[]>();
+        final ColumnarSnapshotReader.Block block = blocks(values, reader).get(0);
+
+        for (int i = 0; i < rows.size(); i++) {
+          assertEquals("Name " + i % distinct, values.get(i)[1]);
+        }
+        assertEquals(block.getCode(displayName, 0), block.getCode(displayName, distinct));
+        assertEquals(distinct - 1, block.getCode(displayName, distinct - 1));
+      }
+    }
+  }
+
+  @Test
+  public void scanSkipsBlocksOutsideTheFilter() throws Exception {
+    final String[] properties = {"id", "paymentDays"};
+    final List<String[]> rows = new ArrayList<String[]>();
+    for (int i = 0; i < 50; i++) {
+      rows.add(new String[] {"\"" + new UUID(1, i) + "\"", String.valueOf(i)});
+    }
+
+    try (ColumnarSnapshotReader reader = new ColumnarSnapshotReader(
+            write(folder.getRoot().toPath().resolve("days.snapshot"), 10, properties, rows, true))) {
+      final int paymentDays = reader.indexOf("paymentDays");
+      final List<Long> days = new ArrayList<Long>();
+      final long scanned = reader.scan(stats -> stats[paymentDays].mayContain(25L, 27L), block -> {
+        for (int row = 0; row < block.getRowCount(); row++) {
+          days.add(block.getLong(paymentDays, row));
+        }
+      });
+
+      assertEquals(10, scanned);
+      assertEquals(20L, (long) days.get(0));
+      assertEquals(29L, (long) days.get(9));
+      assertEquals(0, reader.scan(stats -> stats[paymentDays].mayContain(50L, null), block -> {
+        throw new AssertionError("Block not skipped");
+      }));
+    }
+  }
+
+  @Test
+  public void closeWithoutCommitKeepsThePreviousSnapshot() throws Exception {
+    final String[] properties = {"id", "number"};
+    final List<String[]> rows = new ArrayList<String[]>();
+    for (int i = 0; i < 5; i++) {
+      rows.add(new String[] {"\"" + new UUID(2, i) + "\"", "\"C" + i + "\""});
+    }
+    final Path file = folder.getRoot().toPath().resolve("kept.snapshot");
+    write(file, 2, properties, rows.subList(0, 3), true);
+
+    write(file, 2, properties, rows, false);
+
+    try (ColumnarSnapshotReader reader = new ColumnarSnapshotReader(file)) {
+      assertEquals(3, reader.getRowCount());
+      final List<Object[]> values = new ArrayList<Object[]>();
+      blocks(values, reader);
+      assertEquals(3, values.size());
+      assertEquals("C2", values.get(2)[1]);
+    }
+    final String[] left = folder.getRoot().list();
+    assertEquals(1, left.length);
+    assertTrue(file.toFile().exists());
+    assertFalse(left[0].endsWith(".tmp"));
+  }
+}